@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of {@link LruCache} and {@link ConcurrentLruCache} when 8 threads read
+ * from the cache and put the values they did not find, with a key range that is twice the size
+ * of the cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class LruCacheBenchmark {
+    private static final int MAX_SIZE = 1024;
+    private static final int KEY_COUNT = 2 * MAX_SIZE;
+
+    @Param({"LruCache", "ConcurrentLruCache"})
+    public String implementation;
+
+    private Cache mCache;
+    private Integer[] mKeys;
+
+    @Setup
+    public void setup() {
+        if ("LruCache".equals(implementation)) {
+            final LruCache<Integer, Integer> cache = new LruCache<>(MAX_SIZE);
+            mCache = new Cache() {
+                @Override
+                public Integer get(Integer key) {
+                    return cache.get(key);
+                }
+
+                @Override
+                public void put(Integer key, Integer value) {
+                    cache.put(key, value);
+                }
+            };
+        } else {
+            final ConcurrentLruCache<Integer, Integer> cache = new ConcurrentLruCache<>(MAX_SIZE,
+                    8);
+            mCache = new Cache() {
+                @Override
+                public Integer get(Integer key) {
+                    return cache.get(key);
+                }
+
+                @Override
+                public void put(Integer key, Integer value) {
+                    cache.put(key, value);
+                }
+            };
+        }
+        mKeys = new Integer[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            mKeys[i] = i;
+        }
+    }
+
+    @Benchmark
+    public Integer getOrPut() {
+        final Integer key = mKeys[ThreadLocalRandom.current().nextInt(KEY_COUNT)];
+        Integer value = mCache.get(key);
+        if (value == null) {
+            value = key;
+            mCache.put(key, value);
+        }
+        return value;
+    }
+
+    private interface Cache {
+        Integer get(Integer key);
+
+        void put(Integer key, Integer value);
+    }
+}
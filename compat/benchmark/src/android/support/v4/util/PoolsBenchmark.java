@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of {@link Pools.SynchronizedPool} and {@link Pools.ConcurrentPool} when
+ * 8 threads acquire an instance from a shared pool and release it again, creating a new instance
+ * when the pool is empty.
+ * <p>
+ * The threads only contend for the pool when they run on separate cores, so the results are
+ * meaningless on hosts with fewer than 8 CPUs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class PoolsBenchmark {
+    private static final int MAX_POOL_SIZE = 32;
+
+    @Param({"SynchronizedPool", "ConcurrentPool"})
+    public String implementation;
+
+    private Pools.Pool<Object> mPool;
+
+    @Setup
+    public void setup() {
+        if ("SynchronizedPool".equals(implementation)) {
+            mPool = new Pools.SynchronizedPool<>(MAX_POOL_SIZE);
+        } else {
+            mPool = new Pools.ConcurrentPool<>(MAX_POOL_SIZE);
+        }
+    }
+
+    @Benchmark
+    public Object acquireRelease() {
+        Object instance = mPool.acquire();
+        if (instance == null) {
+            instance = new Object();
+        }
+        mPool.release(instance);
+        return instance;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link IntObjectHashMap} and {@link LongObjectHashMap} with {@link SparseArrayCompat}
+ * and {@link LongSparseArray} for lookups and for replacing an entry with a new key, at different
+ * sizes. The keys are random so that the sparse arrays cannot append.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrimitiveMapBenchmark {
+    @Param({"8", "32", "128", "512", "4096"})
+    public int size;
+
+    private final SparseArrayCompat<Object> mSparseArray = new SparseArrayCompat<>();
+    private final IntObjectHashMap<Object> mIntHashMap = new IntObjectHashMap<>();
+    private final LongSparseArray<Object> mLongSparseArray = new LongSparseArray<>();
+    private final LongObjectHashMap<Object> mLongHashMap = new LongObjectHashMap<>();
+
+    private int[] mKeys;
+    private int mIndex;
+    private int mNextKey;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(42);
+        mKeys = new int[size];
+        for (int i = 0; i < size; i++) {
+            int key;
+            do {
+                key = random.nextInt();
+            } while (mIntHashMap.containsKey(key));
+            mKeys[i] = key;
+            mSparseArray.put(key, this);
+            mIntHashMap.put(key, this);
+            mLongSparseArray.put(key, this);
+            mLongHashMap.put(key, this);
+        }
+        mNextKey = random.nextInt();
+    }
+
+    private int nextIndex() {
+        final int index = mIndex;
+        mIndex = index + 1 == size ? 0 : index + 1;
+        return index;
+    }
+
+    // A pseudo random key for the entry that is replaced.
+    private int nextKey() {
+        mNextKey = mNextKey * 1103515245 + 12345;
+        return mNextKey;
+    }
+
+    @Benchmark
+    public Object getSparseArrayCompat() {
+        return mSparseArray.get(mKeys[nextIndex()]);
+    }
+
+    @Benchmark
+    public Object getIntObjectHashMap() {
+        return mIntHashMap.get(mKeys[nextIndex()]);
+    }
+
+    @Benchmark
+    public Object getLongSparseArray() {
+        return mLongSparseArray.get(mKeys[nextIndex()]);
+    }
+
+    @Benchmark
+    public Object getLongObjectHashMap() {
+        return mLongHashMap.get(mKeys[nextIndex()]);
+    }
+
+    @Benchmark
+    public void replaceSparseArrayCompat() {
+        final int index = nextIndex();
+        final int key = nextKey();
+        mSparseArray.remove(mKeys[index]);
+        mSparseArray.put(key, this);
+        mKeys[index] = key;
+    }
+
+    @Benchmark
+    public void replaceIntObjectHashMap() {
+        final int index = nextIndex();
+        final int key = nextKey();
+        mIntHashMap.remove(mKeys[index]);
+        mIntHashMap.put(key, this);
+        mKeys[index] = key;
+    }
+
+    @Benchmark
+    public void replaceLongSparseArray() {
+        final int index = nextIndex();
+        final int key = nextKey();
+        mLongSparseArray.remove(mKeys[index]);
+        mLongSparseArray.put(key, this);
+        mKeys[index] = key;
+    }
+
+    @Benchmark
+    public void replaceLongObjectHashMap() {
+        final int index = nextIndex();
+        final int key = nextKey();
+        mLongHashMap.remove(mKeys[index]);
+        mLongHashMap.put(key, this);
+        mKeys[index] = key;
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+/**
+ * Recycles the arrays of {@link SimpleArrayMap}, {@link ArrayMap} and {@link ArraySet} to avoid
+ * spamming garbage when these containers grow, shrink or are cleared.
+ * <p>
+ * The arrays are cached by the thread that releases them, so that containers can recycle arrays
+ * without locking. They are grouped in size classes that each hold the capacities between two
+ * powers of two. A container that needs a given capacity gets cached arrays that are at least as
+ * large, but less than twice as large, and otherwise allocates arrays of exactly that capacity.
+ * The arrays cached by each thread take up at most {@link #getMaxCachedBytes()} bytes, which can
+ * be changed with {@link #setMaxCachedBytes(int)}.
+ * <p>
+ * The statistics of the cache are kept per thread as well, and are meant for tuning the maximum
+ * size of the cache:
+ * <pre>
+ *     Log.d(TAG, "array cache hits " + ArrayRecycler.hitCount() + " misses "
+ *             + ArrayRecycler.missCount());
+ * </pre>
+ */
+public final class ArrayRecycler {
+    /**
+     * The smallest capacity of recycled arrays, which is the lower bound of the first size class.
+     */
+    static final int BASE_SIZE = 4;
+
+    // BASE_SIZE << (CLASS_COUNT - 1) is the largest power of two capacity
+    private static final int CLASS_COUNT = 29;
+
+    private static final int DEFAULT_MAX_CACHED_BYTES = 16 * 1024;
+
+    // Estimated sizes of an array header and of a reference on the heap.
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final int REFERENCE_BYTES = 4;
+
+    private static volatile int sMaxCachedBytes = DEFAULT_MAX_CACHED_BYTES;
+
+    private static final ThreadLocal<ArrayRecycler> sRecycler = new ThreadLocal<ArrayRecycler>() {
+        @Override
+        protected ArrayRecycler initialValue() {
+            return new ArrayRecycler();
+        }
+    };
+
+    /**
+     * Linked lists of cached arrays for containers with one and two objects per entry, by size
+     * class. The first element of each cached array is a pointer to the next array in the list;
+     * the second element is a pointer to the int[] hash code array for it.
+     */
+    private final Object[][] mCaches = new Object[2][CLASS_COUNT];
+    private int mCachedBytes;
+
+    private int mHitCount;
+    private int mMissCount;
+
+    private ArrayRecycler() {
+    }
+
+    /**
+     * Returns the maximum number of bytes that the arrays cached by each thread take up.
+     */
+    public static int getMaxCachedBytes() {
+        return sMaxCachedBytes;
+    }
+
+    /**
+     * Sets the maximum number of bytes that the arrays cached by each thread take up. Threads
+     * that cache more than that trim their cache the next time they recycle arrays.
+     *
+     * @param maxBytes The maximum size of the cache of each thread in bytes, 0 to disable
+     *                 recycling.
+     */
+    public static void setMaxCachedBytes(int maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes < 0");
+        }
+        sMaxCachedBytes = maxBytes;
+    }
+
+    /**
+     * Returns the estimated number of bytes taken up by the arrays cached by the calling thread.
+     */
+    public static int cachedBytes() {
+        return sRecycler.get().mCachedBytes;
+    }
+
+    /**
+     * Returns the number of times the calling thread allocated the arrays of a container from the
+     * cache.
+     */
+    public static int hitCount() {
+        return sRecycler.get().mHitCount;
+    }
+
+    /**
+     * Returns the number of times the calling thread had to create new arrays for a container
+     * because there were no cached arrays of the required size class.
+     */
+    public static int missCount() {
+        return sRecycler.get().mMissCount;
+    }
+
+    /**
+     * Releases all arrays cached by the calling thread.
+     */
+    public static void evictAll() {
+        sRecycler.get().trimToSize(0);
+    }
+
+    static ArrayRecycler get() {
+        return sRecycler.get();
+    }
+
+    /**
+     * Takes cached arrays with at least the given capacity, but less than twice of it, from the
+     * cache.
+     *
+     * @param entrySize The number of objects per entry in the container.
+     * @param capacity The capacity the container needs.
+     * @return The array with the entries, whose second element is the hash code array. The caller
+     * must clear the first two elements. Null if there were no suitable cached arrays.
+     */
+    Object[] obtain(int entrySize, int capacity) {
+        if (capacity >= BASE_SIZE) {
+            final Object[] cache = mCaches[entrySize - 1];
+            // the size class of the capacity and the next one can hold suitable arrays
+            final int sizeClass = sizeClass(capacity);
+            Object[] array = take(cache, sizeClass, capacity, entrySize);
+            if (array == null && sizeClass + 1 < CLASS_COUNT) {
+                array = take(cache, sizeClass + 1, capacity, entrySize);
+            }
+            if (array != null) {
+                mHitCount++;
+                return array;
+            }
+        }
+        mMissCount++;
+        return null;
+    }
+
+    private Object[] take(Object[] cache, int sizeClass, int capacity, int entrySize) {
+        final Object[] array = (Object[]) cache[sizeClass];
+        if (array == null) {
+            return null;
+        }
+        final int arrayCapacity = ((int[]) array[1]).length;
+        if (arrayCapacity < capacity || arrayCapacity - capacity >= capacity) {
+            return null;
+        }
+        cache[sizeClass] = array[0];
+        mCachedBytes -= bytes(arrayCapacity, entrySize);
+        return array;
+    }
+
+    /**
+     * Caches the arrays of a container if they fit into the cache.
+     *
+     * @param entrySize The number of objects per entry in the container.
+     * @param hashes The hash code array of the container.
+     * @param array The array with the entries of the container.
+     * @param size The number of entries in the arrays, which are cleared.
+     */
+    void recycle(int entrySize, int[] hashes, Object[] array, int size) {
+        final int capacity = hashes.length;
+        if (capacity < BASE_SIZE) {
+            return;
+        }
+        final int bytes = bytes(capacity, entrySize);
+        final int maxBytes = sMaxCachedBytes;
+        if (mCachedBytes + bytes > maxBytes) {
+            if (mCachedBytes > maxBytes) {
+                trimToSize(maxBytes);
+            }
+            return;
+        }
+        final Object[] cache = mCaches[entrySize - 1];
+        final int sizeClass = sizeClass(capacity);
+        array[0] = cache[sizeClass];
+        array[1] = hashes;
+        for (int i = size * entrySize - 1; i >= 2; i--) {
+            array[i] = null;
+        }
+        cache[sizeClass] = array;
+        mCachedBytes += bytes;
+    }
+
+    // Drops the largest arrays first, which are the least likely to be reused.
+    private void trimToSize(int maxBytes) {
+        for (int sizeClass = CLASS_COUNT - 1; sizeClass >= 0; sizeClass--) {
+            for (int entrySize = 1; entrySize <= 2; entrySize++) {
+                final Object[] cache = mCaches[entrySize - 1];
+                while (mCachedBytes > maxBytes && cache[sizeClass] != null) {
+                    final Object[] array = (Object[]) cache[sizeClass];
+                    cache[sizeClass] = array[0];
+                    mCachedBytes -= bytes(((int[]) array[1]).length, entrySize);
+                }
+            }
+        }
+    }
+
+    // The size class of capacities from BASE_SIZE << sizeClass to twice of that, exclusive.
+    private static int sizeClass(int capacity) {
+        return Integer.numberOfLeadingZeros(BASE_SIZE) - Integer.numberOfLeadingZeros(capacity);
+    }
+
+    private static int bytes(int capacity, int entrySize) {
+        return 2 * ARRAY_HEADER_BYTES + capacity * 4 + capacity * entrySize * REFERENCE_BYTES;
+    }
+}
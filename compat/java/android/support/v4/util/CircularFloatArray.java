@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+/**
+ * CircularFloatArray is a circular float array data structure that provides O(1) random read, O(1)
+ * prepend and O(1) append. The CircularFloatArray automatically grows its capacity when number of
+ * added floats is over its capacity.
+ */
+public final class CircularFloatArray
+{
+    private float[] mElements;
+    private int mHead;
+    private int mTail;
+    private int mCapacityBitmask;
+
+    private void doubleCapacity() {
+        int n = mElements.length;
+        int r = n - mHead;
+        int newCapacity = n << 1;
+        if (newCapacity < 0) {
+            throw new RuntimeException("Max array capacity exceeded");
+        }
+        float[] a = new float[newCapacity];
+        System.arraycopy(mElements, mHead, a, 0, r);
+        System.arraycopy(mElements, 0, a, r, mHead);
+        mElements = a;
+        mHead = 0;
+        mTail = n;
+        mCapacityBitmask = newCapacity - 1;
+    }
+
+    /**
+     * Creates a circular array with default capacity.
+     */
+    public CircularFloatArray() {
+        this(8);
+    }
+
+    /**
+     * Creates a circular array with capacity for at least {@code minCapacity}
+     * elements.
+     *
+     * @param minCapacity the minimum capacity, between 1 and 2^30 inclusive
+     */
+    public CircularFloatArray(int minCapacity) {
+        if (minCapacity < 1) {
+            throw new IllegalArgumentException("capacity must be >= 1");
+        }
+        if (minCapacity > (2 << 29)) {
+            throw new IllegalArgumentException("capacity must be <= 2^30");
+        }
+
+        // If minCapacity isn't a power of 2, round up to the next highest
+        // power of 2.
+        final int arrayCapacity;
+        if (Integer.bitCount(minCapacity) != 1) {
+            arrayCapacity = Integer.highestOneBit(minCapacity - 1) << 1;
+        } else {
+            arrayCapacity = minCapacity;
+        }
+
+        mCapacityBitmask = arrayCapacity - 1;
+        mElements = new float[arrayCapacity];
+    }
+
+    /**
+     * Add an float in front of the CircularFloatArray.
+     * @param e  Float to add.
+     */
+    public void addFirst(float e) {
+        mHead = (mHead - 1) & mCapacityBitmask;
+        mElements[mHead] = e;
+        if (mHead == mTail) {
+            doubleCapacity();
+        }
+    }
+
+    /**
+     * Add an float at end of the CircularFloatArray.
+     * @param e  Float to add.
+     */
+    public void addLast(float e) {
+        mElements[mTail] = e;
+        mTail = (mTail + 1) & mCapacityBitmask;
+        if (mTail == mHead) {
+            doubleCapacity();
+        }
+    }
+
+    /**
+     * Remove first float from front of the CircularFloatArray and return it.
+     * @return  The float removed.
+     * @throws ArrayIndexOutOfBoundsException if CircularFloatArray is empty.
+     */
+    public float popFirst() {
+        if (mHead == mTail) throw new ArrayIndexOutOfBoundsException();
+        float result = mElements[mHead];
+        mHead = (mHead + 1) & mCapacityBitmask;
+        return result;
+    }
+
+    /**
+     * Remove last float from end of the CircularFloatArray and return it.
+     * @return  The float removed.
+     * @throws ArrayIndexOutOfBoundsException if CircularFloatArray is empty.
+     */
+    public float popLast() {
+        if (mHead == mTail) throw new ArrayIndexOutOfBoundsException();
+        int t = (mTail - 1) & mCapacityBitmask;
+        float result = mElements[t];
+        mTail = t;
+        return result;
+    }
+
+    /**
+     * Remove all floats from the CircularFloatArray.
+     */
+    public void clear() {
+        mTail = mHead;
+    }
+
+    /**
+     * Remove multiple floats from front of the CircularFloatArray, ignore when numOfElements
+     * is less than or equals to 0.
+     * @param numOfElements  Number of floats to remove.
+     * @throws ArrayIndexOutOfBoundsException if numOfElements is larger than
+     *         {@link #size()}
+     */
+    public void removeFromStart(int numOfElements) {
+        if (numOfElements <= 0) {
+            return;
+        }
+        if (numOfElements > size()) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        mHead = (mHead + numOfElements) & mCapacityBitmask;
+    }
+
+    /**
+     * Remove multiple elements from end of the CircularFloatArray, ignore when numOfElements
+     * is less than or equals to 0.
+     * @param numOfElements  Number of floats to remove.
+     * @throws ArrayIndexOutOfBoundsException if numOfElements is larger than
+     *         {@link #size()}
+     */
+    public void removeFromEnd(int numOfElements) {
+        if (numOfElements <= 0) {
+            return;
+        }
+        if (numOfElements > size()) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        mTail = (mTail - numOfElements) & mCapacityBitmask;
+    }
+
+    /**
+     * Shrink the capacity of the CircularFloatArray to the smallest power of two that holds its
+     * floats, to release memory after many floats were removed.
+     */
+    public void trimToSize() {
+        final int size = size();
+        final int newCapacity = size == 0 ? 1 : Integer.highestOneBit(size) << 1;
+        if (newCapacity == mElements.length) {
+            return;
+        }
+        float[] a = new float[newCapacity];
+        final int r = Math.min(size, mElements.length - mHead);
+        System.arraycopy(mElements, mHead, a, 0, r);
+        System.arraycopy(mElements, 0, a, r, size - r);
+        mElements = a;
+        mHead = 0;
+        mTail = size;
+        mCapacityBitmask = newCapacity - 1;
+    }
+
+    /**
+     * Get first float of the CircularFloatArray.
+     * @return The first float.
+     * @throws {@link ArrayIndexOutOfBoundsException} if CircularFloatArray is empty.
+     */
+    public float getFirst() {
+        if (mHead == mTail) throw new ArrayIndexOutOfBoundsException();
+        return mElements[mHead];
+    }
+
+    /**
+     * Get last float of the CircularFloatArray.
+     * @return The last float.
+     * @throws {@link ArrayIndexOutOfBoundsException} if CircularFloatArray is empty.
+     */
+    public float getLast() {
+        if (mHead == mTail) throw new ArrayIndexOutOfBoundsException();
+        return mElements[(mTail - 1) & mCapacityBitmask];
+    }
+
+    /**
+     * Get nth (0 <= n <= size()-1) float of the CircularFloatArray.
+     * @param n  The zero based element index in the CircularFloatArray.
+     * @return The nth float.
+     * @throws {@link ArrayIndexOutOfBoundsException} if n < 0 or n >= size().
+     */
+    public float get(int n) {
+        if (n < 0 || n >= size()) throw new ArrayIndexOutOfBoundsException();
+        return mElements[(mHead + n) & mCapacityBitmask];
+    }
+
+    /**
+     * Get number of floats in the CircularFloatArray.
+     * @return Number of floats in the CircularFloatArray.
+     */
+    public int size() {
+        return (mTail - mHead) & mCapacityBitmask;
+    }
+
+    /**
+     * Return true if size() is 0.
+     * @return true if size() is 0.
+     */
+    public boolean isEmpty() {
+        return mHead == mTail;
+    }
+
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+/**
+ * CircularLongArray is a circular long array data structure that provides O(1) random read, O(1)
+ * prepend and O(1) append. The CircularLongArray automatically grows its capacity when number of
+ * added longs is over its capacity.
+ */
+public final class CircularLongArray
+{
+    private long[] mElements;
+    private int mHead;
+    private int mTail;
+    private int mCapacityBitmask;
+
+    private void doubleCapacity() {
+        int n = mElements.length;
+        int r = n - mHead;
+        int newCapacity = n << 1;
+        if (newCapacity < 0) {
+            throw new RuntimeException("Max array capacity exceeded");
+        }
+        long[] a = new long[newCapacity];
+        System.arraycopy(mElements, mHead, a, 0, r);
+        System.arraycopy(mElements, 0, a, r, mHead);
+        mElements = a;
+        mHead = 0;
+        mTail = n;
+        mCapacityBitmask = newCapacity - 1;
+    }
+
+    /**
+     * Creates a circular array with default capacity.
+     */
+    public CircularLongArray() {
+        this(8);
+    }
+
+    /**
+     * Creates a circular array with capacity for at least {@code minCapacity}
+     * elements.
+     *
+     * @param minCapacity the minimum capacity, between 1 and 2^30 inclusive
+     */
+    public CircularLongArray(int minCapacity) {
+        if (minCapacity < 1) {
+            throw new IllegalArgumentException("capacity must be >= 1");
+        }
+        if (minCapacity > (2 << 29)) {
+            throw new IllegalArgumentException("capacity must be <= 2^30");
+        }
+
+        // If minCapacity isn't a power of 2, round up to the next highest
+        // power of 2.
+        final int arrayCapacity;
+        if (Integer.bitCount(minCapacity) != 1) {
+            arrayCapacity = Integer.highestOneBit(minCapacity - 1) << 1;
+        } else {
+            arrayCapacity = minCapacity;
+        }
+
+        mCapacityBitmask = arrayCapacity - 1;
+        mElements = new long[arrayCapacity];
+    }
+
+    /**
+     * Add an long in front of the CircularLongArray.
+     * @param e  Long to add.
+     */
+    public void addFirst(long e) {
+        mHead = (mHead - 1) & mCapacityBitmask;
+        mElements[mHead] = e;
+        if (mHead == mTail) {
+            doubleCapacity();
+        }
+    }
+
+    /**
+     * Add an long at end of the CircularLongArray.
+     * @param e  Long to add.
+     */
+    public void addLast(long e) {
+        mElements[mTail] = e;
+        mTail = (mTail + 1) & mCapacityBitmask;
+        if (mTail == mHead) {
+            doubleCapacity();
+        }
+    }
+
+    /**
+     * Remove first long from front of the CircularLongArray and return it.
+     * @return  The long removed.
+     * @throws ArrayIndexOutOfBoundsException if CircularLongArray is empty.
+     */
+    public long popFirst() {
+        if (mHead == mTail) throw new ArrayIndexOutOfBoundsException();
+        long result = mElements[mHead];
+        mHead = (mHead + 1) & mCapacityBitmask;
+        return result;
+    }
+
+    /**
+     * Remove last long from end of the CircularLongArray and return it.
+     * @return  The long removed.
+     * @throws ArrayIndexOutOfBoundsException if CircularLongArray is empty.
+     */
+    public long popLast() {
+        if (mHead == mTail) throw new ArrayIndexOutOfBoundsException();
+        int t = (mTail - 1) & mCapacityBitmask;
+        long result = mElements[t];
+        mTail = t;
+        return result;
+    }
+
+    /**
+     * Remove all longs from the CircularLongArray.
+     */
+    public void clear() {
+        mTail = mHead;
+    }
+
+    /**
+     * Remove multiple longs from front of the CircularLongArray, ignore when numOfElements
+     * is less than or equals to 0.
+     * @param numOfElements  Number of longs to remove.
+     * @throws ArrayIndexOutOfBoundsException if numOfElements is larger than
+     *         {@link #size()}
+     */
+    public void removeFromStart(int numOfElements) {
+        if (numOfElements <= 0) {
+            return;
+        }
+        if (numOfElements > size()) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        mHead = (mHead + numOfElements) & mCapacityBitmask;
+    }
+
+    /**
+     * Remove multiple elements from end of the CircularLongArray, ignore when numOfElements
+     * is less than or equals to 0.
+     * @param numOfElements  Number of longs to remove.
+     * @throws ArrayIndexOutOfBoundsException if numOfElements is larger than
+     *         {@link #size()}
+     */
+    public void removeFromEnd(int numOfElements) {
+        if (numOfElements <= 0) {
+            return;
+        }
+        if (numOfElements > size()) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        mTail = (mTail - numOfElements) & mCapacityBitmask;
+    }
+
+    /**
+     * Shrink the capacity of the CircularLongArray to the smallest power of two that holds its
+     * longs, to release memory after many longs were removed.
+     */
+    public void trimToSize() {
+        final int size = size();
+        final int newCapacity = size == 0 ? 1 : Integer.highestOneBit(size) << 1;
+        if (newCapacity == mElements.length) {
+            return;
+        }
+        long[] a = new long[newCapacity];
+        final int r = Math.min(size, mElements.length - mHead);
+        System.arraycopy(mElements, mHead, a, 0, r);
+        System.arraycopy(mElements, 0, a, r, size - r);
+        mElements = a;
+        mHead = 0;
+        mTail = size;
+        mCapacityBitmask = newCapacity - 1;
+    }
+
+    /**
+     * Get first long of the CircularLongArray.
+     * @return The first long.
+     * @throws {@link ArrayIndexOutOfBoundsException} if CircularLongArray is empty.
+     */
+    public long getFirst() {
+        if (mHead == mTail) throw new ArrayIndexOutOfBoundsException();
+        return mElements[mHead];
+    }
+
+    /**
+     * Get last long of the CircularLongArray.
+     * @return The last long.
+     * @throws {@link ArrayIndexOutOfBoundsException} if CircularLongArray is empty.
+     */
+    public long getLast() {
+        if (mHead == mTail) throw new ArrayIndexOutOfBoundsException();
+        return mElements[(mTail - 1) & mCapacityBitmask];
+    }
+
+    /**
+     * Get nth (0 <= n <= size()-1) long of the CircularLongArray.
+     * @param n  The zero based element index in the CircularLongArray.
+     * @return The nth long.
+     * @throws {@link ArrayIndexOutOfBoundsException} if n < 0 or n >= size().
+     */
+    public long get(int n) {
+        if (n < 0 || n >= size()) throw new ArrayIndexOutOfBoundsException();
+        return mElements[(mHead + n) & mCapacityBitmask];
+    }
+
+    /**
+     * Get number of longs in the CircularLongArray.
+     * @return Number of longs in the CircularLongArray.
+     */
+    public int size() {
+        return (mTail - mHead) & mCapacityBitmask;
+    }
+
+    /**
+     * Return true if size() is 0.
+     * @return true if size() is 0.
+     */
+    public boolean isEmpty() {
+        return mHead == mTail;
+    }
+
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+/**
+ * CircularMultiIntArray is a circular array of rows with a fixed number of integer columns. It
+ * provides O(1) random read and write, O(1) prepend and O(1) append of rows, and automatically
+ * grows its capacity when number of added rows is over its capacity.
+ * <p>
+ * The columns of a row are stored next to each other in a single integer array, so that records
+ * of a few integers can be kept for many items without allocating an object per item:
+ * <pre>
+ *     static final int COLUMN_ROW = 0;
+ *     static final int COLUMN_OFFSET = 1;
+ *     static final int COLUMN_SIZE = 2;
+ *
+ *     CircularMultiIntArray mLocations = new CircularMultiIntArray(3, 64);
+ *
+ *     mLocations.addLast();
+ *     final int last = mLocations.size() - 1;
+ *     mLocations.set(last, COLUMN_ROW, row);
+ *     mLocations.set(last, COLUMN_OFFSET, offset);
+ *     mLocations.set(last, COLUMN_SIZE, size);
+ * </pre>
+ */
+public final class CircularMultiIntArray {
+    private final int mColumnCount;
+    private int[] mElements;
+    // head and tail are row indices
+    private int mHead;
+    private int mTail;
+    private int mCapacityBitmask;
+
+    private void setCapacity(int newCapacity, int size) {
+        final int r = Math.min(size, mCapacityBitmask + 1 - mHead);
+        int[] a = new int[newCapacity * mColumnCount];
+        System.arraycopy(mElements, mHead * mColumnCount, a, 0, r * mColumnCount);
+        System.arraycopy(mElements, 0, a, r * mColumnCount, (size - r) * mColumnCount);
+        mElements = a;
+        mHead = 0;
+        mTail = size;
+        mCapacityBitmask = newCapacity - 1;
+    }
+
+    private void doubleCapacity() {
+        int n = mCapacityBitmask + 1;
+        int newCapacity = n << 1;
+        if (newCapacity < 0 || (long) newCapacity * mColumnCount > Integer.MAX_VALUE) {
+            throw new RuntimeException("Max array capacity exceeded");
+        }
+        // the array is full, so the head and the tail are at the same row
+        setCapacity(newCapacity, n);
+    }
+
+    /**
+     * Creates a circular array with default capacity.
+     *
+     * @param columnCount the number of integers in each row, at least 1
+     */
+    public CircularMultiIntArray(int columnCount) {
+        this(columnCount, 8);
+    }
+
+    /**
+     * Creates a circular array with capacity for at least {@code minCapacity}
+     * rows.
+     *
+     * @param columnCount the number of integers in each row, at least 1
+     * @param minCapacity the minimum capacity, between 1 and 2^30 inclusive
+     */
+    public CircularMultiIntArray(int columnCount, int minCapacity) {
+        if (columnCount < 1) {
+            throw new IllegalArgumentException("columnCount must be >= 1");
+        }
+        if (minCapacity < 1) {
+            throw new IllegalArgumentException("capacity must be >= 1");
+        }
+        if (minCapacity > (2 << 29)) {
+            throw new IllegalArgumentException("capacity must be <= 2^30");
+        }
+
+        // If minCapacity isn't a power of 2, round up to the next highest
+        // power of 2.
+        final int arrayCapacity;
+        if (Integer.bitCount(minCapacity) != 1) {
+            arrayCapacity = Integer.highestOneBit(minCapacity - 1) << 1;
+        } else {
+            arrayCapacity = minCapacity;
+        }
+
+        mColumnCount = columnCount;
+        mCapacityBitmask = arrayCapacity - 1;
+        mElements = new int[arrayCapacity * columnCount];
+    }
+
+    /**
+     * Get the number of integers in each row.
+     * @return The number of columns.
+     */
+    public int getColumnCount() {
+        return mColumnCount;
+    }
+
+    /**
+     * Add a row of zeros in front of the CircularMultiIntArray.
+     */
+    public void addFirst() {
+        mHead = (mHead - 1) & mCapacityBitmask;
+        clearRow(mHead);
+        if (mHead == mTail) {
+            doubleCapacity();
+        }
+    }
+
+    /**
+     * Add a row of zeros at end of the CircularMultiIntArray.
+     */
+    public void addLast() {
+        clearRow(mTail);
+        mTail = (mTail + 1) & mCapacityBitmask;
+        if (mTail == mHead) {
+            doubleCapacity();
+        }
+    }
+
+    private void clearRow(int row) {
+        final int start = row * mColumnCount;
+        for (int i = start + mColumnCount - 1; i >= start; i--) {
+            mElements[i] = 0;
+        }
+    }
+
+    /**
+     * Remove first row from front of the CircularMultiIntArray.
+     * @throws ArrayIndexOutOfBoundsException if CircularMultiIntArray is empty.
+     */
+    public void popFirst() {
+        if (mHead == mTail) throw new ArrayIndexOutOfBoundsException();
+        mHead = (mHead + 1) & mCapacityBitmask;
+    }
+
+    /**
+     * Remove last row from end of the CircularMultiIntArray.
+     * @throws ArrayIndexOutOfBoundsException if CircularMultiIntArray is empty.
+     */
+    public void popLast() {
+        if (mHead == mTail) throw new ArrayIndexOutOfBoundsException();
+        mTail = (mTail - 1) & mCapacityBitmask;
+    }
+
+    /**
+     * Remove all rows from the CircularMultiIntArray.
+     */
+    public void clear() {
+        mTail = mHead;
+    }
+
+    /**
+     * Remove multiple rows from front of the CircularMultiIntArray, ignore when numOfRows
+     * is less than or equals to 0.
+     * @param numOfRows  Number of rows to remove.
+     * @throws ArrayIndexOutOfBoundsException if numOfRows is larger than
+     *         {@link #size()}
+     */
+    public void removeFromStart(int numOfRows) {
+        if (numOfRows <= 0) {
+            return;
+        }
+        if (numOfRows > size()) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        mHead = (mHead + numOfRows) & mCapacityBitmask;
+    }
+
+    /**
+     * Remove multiple rows from end of the CircularMultiIntArray, ignore when numOfRows
+     * is less than or equals to 0.
+     * @param numOfRows  Number of rows to remove.
+     * @throws ArrayIndexOutOfBoundsException if numOfRows is larger than
+     *         {@link #size()}
+     */
+    public void removeFromEnd(int numOfRows) {
+        if (numOfRows <= 0) {
+            return;
+        }
+        if (numOfRows > size()) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        mTail = (mTail - numOfRows) & mCapacityBitmask;
+    }
+
+    /**
+     * Shrink the capacity of the CircularMultiIntArray to the smallest power of two that holds
+     * its rows, to release memory after many rows were removed.
+     */
+    public void trimToSize() {
+        final int size = size();
+        final int newCapacity = size == 0 ? 1 : Integer.highestOneBit(size) << 1;
+        if (newCapacity != mCapacityBitmask + 1) {
+            setCapacity(newCapacity, size);
+        }
+    }
+
+    /**
+     * Get an integer of the nth (0 <= n <= size()-1) row of the CircularMultiIntArray.
+     * @param n  The zero based row index in the CircularMultiIntArray.
+     * @param column  The zero based column index in the row.
+     * @return The integer in the given column of the nth row.
+     * @throws {@link ArrayIndexOutOfBoundsException} if n < 0 or n >= size(), or if the column
+     *         is out of range.
+     */
+    public int get(int n, int column) {
+        return mElements[elementIndex(n, column)];
+    }
+
+    /**
+     * Set an integer of the nth (0 <= n <= size()-1) row of the CircularMultiIntArray.
+     * @param n  The zero based row index in the CircularMultiIntArray.
+     * @param column  The zero based column index in the row.
+     * @param e  Integer to set.
+     * @throws {@link ArrayIndexOutOfBoundsException} if n < 0 or n >= size(), or if the column
+     *         is out of range.
+     */
+    public void set(int n, int column, int e) {
+        mElements[elementIndex(n, column)] = e;
+    }
+
+    private int elementIndex(int n, int column) {
+        if (n < 0 || n >= size() || column < 0 || column >= mColumnCount) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        return ((mHead + n) & mCapacityBitmask) * mColumnCount + column;
+    }
+
+    /**
+     * Get number of rows in the CircularMultiIntArray.
+     * @return Number of rows in the CircularMultiIntArray.
+     */
+    public int size() {
+        return (mTail - mHead) & mCapacityBitmask;
+    }
+
+    /**
+     * Return true if size() is 0.
+     * @return true if size() is 0.
+     */
+    public boolean isEmpty() {
+        return mHead == mTail;
+    }
+}
@@ -0,0 +1,507 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A variant of {@link LruCache} for caches that are used by many threads at the same time.
+ * <p>
+ * LruCache guards all of its state with a single lock, which becomes a point of contention when
+ * several threads, e.g. the decoder threads of an image loader, hit the cache in parallel. This
+ * cache is split into segments that each hold a part of the entries, selected by the hash code of
+ * the key. Each segment has its own lock, its own least recently used order and its own hit and
+ * miss counters, so threads that access different keys rarely wait for each other.
+ * <p>
+ * The {@link #sizeOf}, {@link #create} and {@link #entryRemoved} methods have the same contract
+ * as in LruCache, and the maximum size applies to the sum of the sizes of all entries, however
+ * they are spread over the segments. When the cache is full, it evicts the least recently used
+ * entries of the segments in turn, so the evicted entries are not necessarily the least recently
+ * used ones of the whole cache.
+ *
+ * @param <K> Type of the keys.
+ * @param <V> Type of the values.
+ */
+public class ConcurrentLruCache<K, V> {
+    private static final int MAX_SEGMENT_COUNT = 64;
+
+    private final Segment<K, V>[] mSegments;
+    private final int mSegmentShift;
+    private volatile int mMaxSize;
+
+    // The sum of the sizes of the segments, updated together with them.
+    private final AtomicLong mSize = new AtomicLong();
+
+    // The segment to evict from next. Races only make the eviction order less fair.
+    private int mEvictionIndex;
+
+    /**
+     * Creates a cache with a number of segments that depends on the number of available
+     * processors.
+     *
+     * @param maxSize for caches that do not override {@link #sizeOf}, this is
+     *     the maximum number of entries in the cache. For all other caches,
+     *     this is the maximum sum of the sizes of the entries in this cache.
+     */
+    public ConcurrentLruCache(int maxSize) {
+        this(maxSize, 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param maxSize for caches that do not override {@link #sizeOf}, this is
+     *     the maximum number of entries in the cache. For all other caches,
+     *     this is the maximum sum of the sizes of the entries in this cache.
+     * @param concurrencyLevel The expected number of threads that access the cache at the same
+     *     time. The number of segments is the next power of two, but not more than 64.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ConcurrentLruCache(int maxSize, int concurrencyLevel) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("concurrencyLevel <= 0");
+        }
+        int segmentCount = 1;
+        int shift = 32;
+        while (segmentCount < concurrencyLevel && segmentCount < MAX_SEGMENT_COUNT) {
+            segmentCount *= 2;
+            shift--;
+        }
+        mSegmentShift = shift;
+        mSegments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            mSegments[i] = new Segment<>();
+        }
+        mMaxSize = maxSize;
+    }
+
+    Segment<K, V> segmentFor(Object key) {
+        if (mSegments.length == 1) {
+            return mSegments[0];
+        }
+        // spread the hash code so that the high bits select the segment
+        final int hash = key.hashCode() * 0x9E3779B9;
+        return mSegments[hash >>> mSegmentShift];
+    }
+
+    /**
+     * Sets the size of the cache.
+     *
+     * @param maxSize The new maximum size.
+     */
+    public void resize(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        mMaxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    /**
+     * Returns the value for {@code key} if it exists in the cache or can be
+     * created by {@code #create}. If a value was returned, it is moved to the
+     * head of the queue of its segment. This returns null if a value is not
+     * cached and cannot be created.
+     */
+    public final V get(K key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+
+        final Segment<K, V> segment = segmentFor(key);
+        V mapValue;
+        synchronized (segment) {
+            mapValue = segment.map.get(key);
+            if (mapValue != null) {
+                segment.hitCount++;
+                return mapValue;
+            }
+            segment.missCount++;
+        }
+
+        /*
+         * Attempt to create a value. This may take a long time, and the map
+         * may be different when create() returns. If a conflicting value was
+         * added to the map while create() was working, we leave that value in
+         * the map and release the created value.
+         */
+
+        V createdValue = create(key);
+        if (createdValue == null) {
+            return null;
+        }
+
+        synchronized (segment) {
+            segment.createCount++;
+            mapValue = segment.map.put(key, createdValue);
+
+            if (mapValue != null) {
+                // There was a conflict so undo that last put
+                segment.map.put(key, mapValue);
+            } else {
+                final int size = safeSizeOf(key, createdValue);
+                segment.size += size;
+                mSize.addAndGet(size);
+            }
+        }
+
+        if (mapValue != null) {
+            entryRemoved(false, key, createdValue, mapValue);
+            return mapValue;
+        } else {
+            trimToSize(mMaxSize);
+            return createdValue;
+        }
+    }
+
+    /**
+     * Caches {@code value} for {@code key}. The value is moved to the head of
+     * the queue of its segment.
+     *
+     * @return the previous value mapped by {@code key}.
+     */
+    public final V put(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("key == null || value == null");
+        }
+
+        final Segment<K, V> segment = segmentFor(key);
+        V previous;
+        synchronized (segment) {
+            segment.putCount++;
+            int size = safeSizeOf(key, value);
+            previous = segment.map.put(key, value);
+            if (previous != null) {
+                size -= safeSizeOf(key, previous);
+            }
+            segment.size += size;
+            mSize.addAndGet(size);
+        }
+
+        if (previous != null) {
+            entryRemoved(false, key, previous, value);
+        }
+
+        trimToSize(mMaxSize);
+        return previous;
+    }
+
+    /**
+     * Remove the eldest entries of the segments in turn until the total of the remaining entries
+     * is at or below the requested size.
+     *
+     * @param maxSize the maximum size of the cache before returning. May be -1
+     *            to evict even 0-sized elements.
+     */
+    public void trimToSize(int maxSize) {
+        final int segmentCount = mSegments.length;
+        // stop after a pass over the segments that did not find anything to evict
+        int emptySegments = 0;
+        while (emptySegments < segmentCount && (maxSize < 0 || mSize.get() > maxSize)) {
+            final int index = mEvictionIndex;
+            mEvictionIndex = index + 1 == segmentCount ? 0 : index + 1;
+            if (evictEldest(mSegments[index])) {
+                emptySegments = 0;
+            } else {
+                emptySegments++;
+            }
+        }
+    }
+
+    /**
+     * Evicts the least recently used entry of the given segment.
+     *
+     * @return False if the segment is empty.
+     */
+    private boolean evictEldest(Segment<K, V> segment) {
+        K key;
+        V value;
+        synchronized (segment) {
+            if (segment.size < 0 || (segment.map.isEmpty() && segment.size != 0)) {
+                throw new IllegalStateException(getClass().getName()
+                        + ".sizeOf() is reporting inconsistent results!");
+            }
+            if (segment.map.isEmpty()) {
+                return false;
+            }
+
+            Map.Entry<K, V> toEvict = segment.map.entrySet().iterator().next();
+            key = toEvict.getKey();
+            value = toEvict.getValue();
+            segment.map.remove(key);
+            final int size = safeSizeOf(key, value);
+            segment.size -= size;
+            mSize.addAndGet(-size);
+            segment.evictionCount++;
+        }
+
+        entryRemoved(true, key, value, null);
+        return true;
+    }
+
+    /**
+     * Removes the entry for {@code key} if it exists.
+     *
+     * @return the previous value mapped by {@code key}.
+     */
+    public final V remove(K key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+
+        final Segment<K, V> segment = segmentFor(key);
+        V previous;
+        synchronized (segment) {
+            previous = segment.map.remove(key);
+            if (previous != null) {
+                final int size = safeSizeOf(key, previous);
+                segment.size -= size;
+                mSize.addAndGet(-size);
+            }
+        }
+
+        if (previous != null) {
+            entryRemoved(false, key, previous, null);
+        }
+
+        return previous;
+    }
+
+    /**
+     * Called for entries that have been evicted or removed. This method is
+     * invoked when a value is evicted to make space, removed by a call to
+     * {@link #remove}, or replaced by a call to {@link #put}. The default
+     * implementation does nothing.
+     *
+     * <p>The method is called without synchronization: other threads may
+     * access the cache while this method is executing.
+     *
+     * @param evicted true if the entry is being removed to make space, false
+     *     if the removal was caused by a {@link #put} or {@link #remove}.
+     * @param newValue the new value for {@code key}, if it exists. If non-null,
+     *     this removal was caused by a {@link #put}. Otherwise it was caused by
+     *     an eviction or a {@link #remove}.
+     */
+    protected void entryRemoved(boolean evicted, K key, V oldValue, V newValue) {}
+
+    /**
+     * Called after a cache miss to compute a value for the corresponding key.
+     * Returns the computed value or null if no value can be computed. The
+     * default implementation returns null.
+     *
+     * <p>The method is called without synchronization: other threads may
+     * access the cache while this method is executing.
+     *
+     * <p>If a value for {@code key} exists in the cache when this method
+     * returns, the created value will be released with {@link #entryRemoved}
+     * and discarded. This can occur when multiple threads request the same key
+     * at the same time (causing multiple values to be created), or when one
+     * thread calls {@link #put} while another is creating a value for the same
+     * key.
+     */
+    protected V create(K key) {
+        return null;
+    }
+
+    private int safeSizeOf(K key, V value) {
+        int result = sizeOf(key, value);
+        if (result < 0) {
+            throw new IllegalStateException("Negative size: " + key + "=" + value);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the size of the entry for {@code key} and {@code value} in
+     * user-defined units.  The default implementation returns 1 so that size
+     * is the number of entries and max size is the maximum number of entries.
+     *
+     * <p>An entry's size must not change while it is in the cache.
+     */
+    protected int sizeOf(K key, V value) {
+        return 1;
+    }
+
+    /**
+     * Clear the cache, calling {@link #entryRemoved} on each removed entry.
+     */
+    public final void evictAll() {
+        trimToSize(-1); // -1 will evict 0-sized elements
+    }
+
+    /**
+     * Returns the number of segments the entries of this cache are split into.
+     */
+    public final int segmentCount() {
+        return mSegments.length;
+    }
+
+    /**
+     * For caches that do not override {@link #sizeOf}, this returns the number
+     * of entries in the cache. For all other caches, this returns the sum of
+     * the sizes of the entries in this cache.
+     */
+    public final int size() {
+        return (int) mSize.get();
+    }
+
+    /**
+     * For caches that do not override {@link #sizeOf}, this returns the maximum
+     * number of entries in the cache. For all other caches, this returns the
+     * maximum sum of the sizes of the entries in this cache.
+     */
+    public final int maxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Returns the number of times {@link #get} returned a value that was
+     * already present in the cache.
+     */
+    public final int hitCount() {
+        int count = 0;
+        for (Segment<K, V> segment : mSegments) {
+            synchronized (segment) {
+                count += segment.hitCount;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of times {@link #get} returned a value that was already present in
+     * the given segment.
+     *
+     * @param segment The index of the segment, less than {@link #segmentCount()}.
+     */
+    public final int segmentHitCount(int segment) {
+        final Segment<K, V> s = mSegments[segment];
+        synchronized (s) {
+            return s.hitCount;
+        }
+    }
+
+    /**
+     * Returns the number of times {@link #get} returned null or required a new
+     * value to be created.
+     */
+    public final int missCount() {
+        int count = 0;
+        for (Segment<K, V> segment : mSegments) {
+            synchronized (segment) {
+                count += segment.missCount;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of times {@link #get} returned null or required a new value to be
+     * created for a key of the given segment.
+     *
+     * @param segment The index of the segment, less than {@link #segmentCount()}.
+     */
+    public final int segmentMissCount(int segment) {
+        final Segment<K, V> s = mSegments[segment];
+        synchronized (s) {
+            return s.missCount;
+        }
+    }
+
+    /**
+     * Returns the number of times {@link #create(Object)} returned a value.
+     */
+    public final int createCount() {
+        int count = 0;
+        for (Segment<K, V> segment : mSegments) {
+            synchronized (segment) {
+                count += segment.createCount;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of times {@link #put} was called.
+     */
+    public final int putCount() {
+        int count = 0;
+        for (Segment<K, V> segment : mSegments) {
+            synchronized (segment) {
+                count += segment.putCount;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of values that have been evicted.
+     */
+    public final int evictionCount() {
+        int count = 0;
+        for (Segment<K, V> segment : mSegments) {
+            synchronized (segment) {
+                count += segment.evictionCount;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns a copy of the current contents of the cache. The entries of each segment are
+     * ordered from least recently accessed to most recently accessed, the segments are not
+     * ordered relative to each other.
+     */
+    public final Map<K, V> snapshot() {
+        final LinkedHashMap<K, V> snapshot = new LinkedHashMap<K, V>();
+        for (Segment<K, V> segment : mSegments) {
+            synchronized (segment) {
+                snapshot.putAll(segment.map);
+            }
+        }
+        return snapshot;
+    }
+
+    @Override public final String toString() {
+        int hitCount = hitCount();
+        int missCount = missCount();
+        int accesses = hitCount + missCount;
+        int hitPercent = accesses != 0 ? (100 * hitCount / accesses) : 0;
+        return String.format(
+                "ConcurrentLruCache[maxSize=%d,segments=%d,hits=%d,misses=%d,hitRate=%d%%]",
+                mMaxSize, mSegments.length, hitCount, missCount, hitPercent);
+    }
+
+    /**
+     * A part of the cache, guarded by its own lock.
+     */
+    static final class Segment<K, V> {
+        final LinkedHashMap<K, V> map = new LinkedHashMap<K, V>(0, 0.75f, true);
+
+        /** Size of this segment in units. Not necessarily the number of elements. */
+        int size;
+
+        int putCount;
+        int createCount;
+        int evictionCount;
+        int hitCount;
+        int missCount;
+    }
+}
@@ -17,6 +17,10 @@
 
 package android.support.v4.util;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Helper class for creating pools of objects. An example use looks like this:
@@ -163,4 +167,109 @@ public final class Pools {
             }
         }
     }
+
+    /**
+     * Lock-free pool of objects, for objects that are acquired and released by several threads
+     * concurrently.
+     * <p>
+     * The pooled objects are kept in an array of slots that are claimed with compare-and-set
+     * operations instead of a lock. Each thread starts looking for a pooled object or a free slot
+     * at a different index, so that threads rarely compete for the same slot, and a thread that
+     * releases an object and acquires one again usually gets it back from the first slot it
+     * looks at. When other threads take the objects it finds first, {@link #acquire()} can return
+     * null even though the pool is not empty.
+     * <p>
+     * Releasing an instance that is already in the pool is only detected if the pool is created
+     * with checks enabled, since the check needs a lock. Enable them in debug builds. The check is
+     * best-effort: the instances in the pool are tracked separately from the slots, so a release
+     * that races with an acquire or another release of the same instance may not be reported.
+     *
+     * @param <T> The pooled type.
+     */
+    public static class ConcurrentPool<T> implements Pool<T> {
+        private final AtomicReferenceArray<T> mPool;
+
+        // The instances in the pool, or null if checks are disabled.
+        private final Set<T> mPooledInstances;
+
+        /**
+         * Creates a new instance that does not check for instances that are released twice.
+         *
+         * @param maxPoolSize The max pool size.
+         *
+         * @throws IllegalArgumentException If the max pool size is less than zero.
+         */
+        public ConcurrentPool(int maxPoolSize) {
+            this(maxPoolSize, false);
+        }
+
+        /**
+         * Creates a new instance.
+         *
+         * @param maxPoolSize The max pool size.
+         * @param checkReleases Whether {@link #release(Object)} throws if the instance is
+         *                      already in the pool, for example <code>BuildConfig.DEBUG</code>.
+         *
+         * @throws IllegalArgumentException If the max pool size is less than zero.
+         */
+        public ConcurrentPool(int maxPoolSize, boolean checkReleases) {
+            if (maxPoolSize <= 0) {
+                throw new IllegalArgumentException("The max pool size must be > 0");
+            }
+            mPool = new AtomicReferenceArray<>(maxPoolSize);
+            mPooledInstances = checkReleases
+                    ? Collections.synchronizedSet(
+                            Collections.newSetFromMap(new IdentityHashMap<T, Boolean>()))
+                    : null;
+        }
+
+        @Override
+        public T acquire() {
+            final AtomicReferenceArray<T> pool = mPool;
+            final int length = pool.length();
+            int index = startIndex(length);
+            for (int i = 0; i < length; i++) {
+                final T instance = pool.get(index);
+                if (instance != null && pool.compareAndSet(index, instance, null)) {
+                    if (mPooledInstances != null) {
+                        mPooledInstances.remove(instance);
+                    }
+                    return instance;
+                }
+                index = index + 1 == length ? 0 : index + 1;
+            }
+            return null;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @throws IllegalStateException If the instance is already in the pool and checks are
+         *                               enabled.
+         */
+        @Override
+        public boolean release(T instance) {
+            if (mPooledInstances != null && !mPooledInstances.add(instance)) {
+                throw new IllegalStateException("Already in the pool!");
+            }
+            final AtomicReferenceArray<T> pool = mPool;
+            final int length = pool.length();
+            int index = startIndex(length);
+            for (int i = 0; i < length; i++) {
+                if (pool.get(index) == null && pool.compareAndSet(index, null, instance)) {
+                    return true;
+                }
+                index = index + 1 == length ? 0 : index + 1;
+            }
+            if (mPooledInstances != null) {
+                mPooledInstances.remove(instance);
+            }
+            return false;
+        }
+
+        private static int startIndex(int length) {
+            final int hash = (int) Thread.currentThread().getId() * 0x9E3779B9;
+            return (hash >>> 1) % length;
+        }
+    }
 }
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class ArrayRecyclerTest {
+    private int mMaxCachedBytes;
+
+    @Before
+    public void setUp() {
+        mMaxCachedBytes = ArrayRecycler.getMaxCachedBytes();
+        ArrayRecycler.evictAll();
+    }
+
+    @After
+    public void tearDown() {
+        ArrayRecycler.setMaxCachedBytes(mMaxCachedBytes);
+        ArrayRecycler.evictAll();
+    }
+
+    @Test
+    public void capacityIsNotRounded() {
+        assertEquals(1025, new ArrayMap<Integer, Integer>(1025).mHashes.length);
+        assertEquals(1025, new ArraySet<Integer>(1025).mHashes.length);
+        ArrayRecycler.setMaxCachedBytes(0);
+        assertEquals(12, new SimpleArrayMap<Integer, Integer>(12).mHashes.length);
+    }
+
+    @Test
+    public void recycledArraysAreLessThanTwiceAsLarge() {
+        SimpleArrayMap<Integer, Integer> map = new SimpleArrayMap<>(12);
+        map.put(1, 1);
+        map.clear();
+
+        int hits = ArrayRecycler.hitCount();
+        // the cached arrays are too large for 6 entries and too small for 16
+        SimpleArrayMap<Integer, Integer> small = new SimpleArrayMap<>(6);
+        assertEquals(hits, ArrayRecycler.hitCount());
+        assertEquals(6, small.mHashes.length);
+        SimpleArrayMap<Integer, Integer> large = new SimpleArrayMap<>(16);
+        assertEquals(hits, ArrayRecycler.hitCount());
+        assertEquals(16, large.mHashes.length);
+
+        SimpleArrayMap<Integer, Integer> reused = new SimpleArrayMap<>(9);
+        assertEquals(hits + 1, ArrayRecycler.hitCount());
+        assertEquals(12, reused.mHashes.length);
+    }
+
+    @Test
+    public void largeMapArraysAreRecycled() {
+        SimpleArrayMap<Integer, String> map = new SimpleArrayMap<>(100);
+        for (int i = 0; i < 100; i++) {
+            map.put(i, "v" + i);
+        }
+        map.clear();
+        assertTrue(ArrayRecycler.cachedBytes() > 0);
+
+        final int hits = ArrayRecycler.hitCount();
+        SimpleArrayMap<Integer, String> other = new SimpleArrayMap<>(100);
+        assertEquals(hits + 1, ArrayRecycler.hitCount());
+        assertEquals(0, ArrayRecycler.cachedBytes());
+        // the recycled arrays must not leak the entries of the cleared map
+        other.put(1000, "a");
+        assertEquals(1, other.size());
+        assertEquals(null, other.get(50));
+        for (int i = 2; i < other.mArray.length; i++) {
+            assertEquals(null, other.mArray[i]);
+        }
+    }
+
+    @Test
+    public void mapsAndSetsUseSeparateCaches() {
+        ArraySet<Integer> set = new ArraySet<>(8);
+        set.add(1);
+        set.clear();
+
+        final int misses = ArrayRecycler.missCount();
+        new SimpleArrayMap<Integer, Integer>(8);
+        assertEquals(misses + 1, ArrayRecycler.missCount());
+
+        final int hits = ArrayRecycler.hitCount();
+        new ArraySet<Integer>(8);
+        assertEquals(hits + 1, ArrayRecycler.hitCount());
+    }
+
+    @Test
+    public void cacheIsLimitedToMaxBytes() {
+        ArrayRecycler.setMaxCachedBytes(1024);
+        SimpleArrayMap<Integer, Integer> small = new SimpleArrayMap<>(8);
+        small.put(1, 1);
+        small.clear();
+        final int cached = ArrayRecycler.cachedBytes();
+        assertTrue(cached > 0 && cached <= 1024);
+
+        SimpleArrayMap<Integer, Integer> large = new SimpleArrayMap<>(1000);
+        large.put(1, 1);
+        large.clear();
+        assertEquals(cached, ArrayRecycler.cachedBytes());
+
+        ArrayRecycler.setMaxCachedBytes(0);
+        SimpleArrayMap<Integer, Integer> map = new SimpleArrayMap<>(4);
+        map.put(1, 1);
+        map.clear();
+        assertEquals(0, ArrayRecycler.cachedBytes());
+    }
+
+    @Test
+    public void cacheIsPerThread() throws InterruptedException {
+        SimpleArrayMap<Integer, Integer> map = new SimpleArrayMap<>(8);
+        map.put(1, 1);
+        map.clear();
+        final int[] cachedBytes = new int[1];
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                cachedBytes[0] = ArrayRecycler.cachedBytes();
+            }
+        });
+        thread.start();
+        thread.join();
+        assertEquals(0, cachedBytes[0]);
+        assertTrue(ArrayRecycler.cachedBytes() > 0);
+    }
+}
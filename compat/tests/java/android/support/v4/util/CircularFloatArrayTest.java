@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import static org.junit.Assert.assertEquals;
+
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class CircularFloatArrayTest {
+
+    @Test
+    public void addRemoveAndTrim() {
+        CircularFloatArray array = new CircularFloatArray(4);
+        for (int i = 0; i < 40; i++) {
+            array.addLast(i * 0.5f);
+        }
+        array.addFirst(-0.5f);
+        assertEquals(41, array.size());
+        assertEquals(-0.5f, array.getFirst(), 0f);
+        assertEquals(19.5f, array.getLast(), 0f);
+
+        array.removeFromStart(30);
+        array.trimToSize();
+        assertEquals(11, array.size());
+        assertEquals(14.5f, array.get(0), 0f);
+        assertEquals(19.5f, array.popLast(), 0f);
+        assertEquals(14.5f, array.popFirst(), 0f);
+    }
+}
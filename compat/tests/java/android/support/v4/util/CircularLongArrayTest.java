@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class CircularLongArrayTest {
+
+    @Test
+    public void addAndRemoveAtBothEnds() {
+        CircularLongArray array = new CircularLongArray(2);
+        for (long i = 0; i < 10; i++) {
+            array.addLast(Long.MAX_VALUE - i);
+            array.addFirst(i);
+        }
+        assertEquals(20, array.size());
+        assertEquals(9, array.getFirst());
+        assertEquals(Long.MAX_VALUE - 9, array.getLast());
+        assertEquals(0, array.get(9));
+        assertEquals(Long.MAX_VALUE, array.get(10));
+
+        array.removeFromStart(5);
+        array.removeFromEnd(5);
+        assertEquals(10, array.size());
+        assertEquals(4, array.popFirst());
+        assertEquals(Long.MAX_VALUE - 4, array.popLast());
+    }
+
+    @Test
+    public void trimToSizeKeepsWrappedElements() {
+        CircularLongArray array = new CircularLongArray(64);
+        for (long i = 0; i < 60; i++) {
+            array.addLast(i);
+        }
+        array.removeFromStart(58);
+        // wraps around the end of the array
+        array.addLast(60);
+        array.addLast(61);
+        array.addLast(62);
+        array.addLast(63);
+        array.addLast(64);
+        array.trimToSize();
+        assertEquals(7, array.size());
+        for (int i = 0; i < array.size(); i++) {
+            assertEquals(58 + i, array.get(i));
+        }
+        array.addLast(65);
+        array.addFirst(57);
+        assertEquals(57, array.getFirst());
+        assertEquals(65, array.getLast());
+    }
+
+    @Test
+    public void trimToSizeWhenEmpty() {
+        CircularLongArray array = new CircularLongArray(16);
+        array.addLast(1);
+        array.clear();
+        array.trimToSize();
+        assertTrue(array.isEmpty());
+        array.addLast(2);
+        array.addLast(3);
+        assertEquals(2, array.getFirst());
+        assertEquals(3, array.getLast());
+    }
+}
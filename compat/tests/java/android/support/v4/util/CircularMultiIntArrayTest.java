@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class CircularMultiIntArrayTest {
+
+    @Test
+    public void rowsSurviveGrowingAtBothEnds() {
+        CircularMultiIntArray array = new CircularMultiIntArray(3, 2);
+        for (int i = 0; i < 20; i++) {
+            array.addLast();
+            setRow(array, array.size() - 1, i);
+            array.addFirst();
+            setRow(array, 0, -i);
+        }
+        assertEquals(40, array.size());
+        for (int n = 0; n < 40; n++) {
+            final int value = n < 20 ? n - 19 : n - 20;
+            assertRow(array, n, value);
+        }
+    }
+
+    @Test
+    public void addedRowsAreCleared() {
+        CircularMultiIntArray array = new CircularMultiIntArray(2, 4);
+        array.addLast();
+        array.set(0, 0, 5);
+        array.set(0, 1, 6);
+        array.popLast();
+        array.addLast();
+        assertEquals(0, array.get(0, 0));
+        assertEquals(0, array.get(0, 1));
+    }
+
+    @Test
+    public void removeAndTrim() {
+        CircularMultiIntArray array = new CircularMultiIntArray(3, 32);
+        for (int i = 0; i < 30; i++) {
+            array.addLast();
+            setRow(array, i, i);
+        }
+        array.removeFromStart(26);
+        for (int i = 30; i < 34; i++) {
+            array.addLast();
+            setRow(array, array.size() - 1, i);
+        }
+        array.removeFromEnd(1);
+        array.trimToSize();
+        assertEquals(7, array.size());
+        for (int n = 0; n < 7; n++) {
+            assertRow(array, n, 26 + n);
+        }
+        array.addLast();
+        setRow(array, 7, 33);
+        assertRow(array, 7, 33);
+        assertRow(array, 0, 26);
+    }
+
+    @Test
+    public void columnOutOfRange() {
+        CircularMultiIntArray array = new CircularMultiIntArray(2);
+        array.addLast();
+        try {
+            array.get(0, 2);
+            fail("column 2 of 2");
+        } catch (ArrayIndexOutOfBoundsException expected) {
+        }
+    }
+
+    private static void setRow(CircularMultiIntArray array, int n, int value) {
+        array.set(n, 0, value);
+        array.set(n, 1, value * 10);
+        array.set(n, 2, value * 100);
+    }
+
+    private static void assertRow(CircularMultiIntArray array, int n, int value) {
+        assertEquals(value, array.get(n, 0));
+        assertEquals(value * 10, array.get(n, 1));
+        assertEquals(value * 100, array.get(n, 2));
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class ConcurrentLruCacheTest {
+
+    @Test
+    public void evictsLeastRecentlyUsedWithOneSegment() {
+        final List<String> evicted = new ArrayList<>();
+        ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(3, 1) {
+            @Override
+            protected void entryRemoved(boolean evicted1, String key, String oldValue,
+                    String newValue) {
+                if (evicted1) {
+                    evicted.add(key);
+                }
+            }
+        };
+        assertEquals(1, cache.segmentCount());
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.put("c", "C");
+        assertEquals("A", cache.get("a"));
+        cache.put("d", "D");
+        assertEquals(Arrays.asList("b"), evicted);
+        assertNull(cache.get("b"));
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+        assertEquals(4, cache.putCount());
+        assertEquals(1, cache.evictionCount());
+    }
+
+    @Test
+    public void segmentCountIsLimited() {
+        assertEquals(4, new ConcurrentLruCache<String, String>(100, 3).segmentCount());
+        assertEquals(64, new ConcurrentLruCache<String, String>(1000, 1000).segmentCount());
+        // the segments share the maximum size
+        assertEquals(16, new ConcurrentLruCache<String, String>(3, 16).segmentCount());
+    }
+
+    @Test
+    public void maxSizeIsSharedBySegments() {
+        ConcurrentLruCache<Integer, Integer> cache = new ConcurrentLruCache<>(64, 8);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, i);
+        }
+        assertEquals(64, cache.size());
+        int hits = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (cache.get(i) != null) {
+                hits++;
+            }
+        }
+        assertEquals(cache.size(), hits);
+        assertEquals(cache.size(), cache.snapshot().size());
+        int segmentHits = 0;
+        int segmentMisses = 0;
+        for (int i = 0; i < cache.segmentCount(); i++) {
+            segmentHits += cache.segmentHitCount(i);
+            segmentMisses += cache.segmentMissCount(i);
+        }
+        assertEquals(hits, segmentHits);
+        assertEquals(1000 - hits, segmentMisses);
+    }
+
+    @Test
+    public void entryLargerThanShareOfSegmentIsKept() {
+        ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(100,
+                64) {
+            @Override
+            protected int sizeOf(String key, String value) {
+                return value.length();
+            }
+        };
+        final String large = new String(new char[90]);
+        cache.put("large", large);
+        assertEquals(large, cache.get("large"));
+        cache.put("small", "0123456789");
+        assertEquals(100, cache.size());
+        cache.put("other", "x");
+        // something had to be evicted, but the cache stays within its maximum size
+        assertTrue(cache.size() <= 100);
+        assertEquals(1, cache.evictionCount());
+    }
+
+    @Test
+    public void createAndSizeOf() {
+        ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(10, 1) {
+            @Override
+            protected String create(String key) {
+                return key.toUpperCase();
+            }
+
+            @Override
+            protected int sizeOf(String key, String value) {
+                return value.length();
+            }
+        };
+        assertEquals("ABCD", cache.get("abcd"));
+        assertEquals("EFGHIJ", cache.get("efghij"));
+        assertEquals(10, cache.size());
+        assertEquals("K", cache.get("k"));
+        // abcd was evicted to make room
+        assertEquals(7, cache.size());
+        assertEquals(3, cache.createCount());
+        cache.resize(5);
+        assertEquals(1, cache.size());
+        cache.evictAll();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void concurrentAccess() throws InterruptedException {
+        final AtomicInteger removedSize = new AtomicInteger();
+        final ConcurrentLruCache<Integer, Integer> cache =
+                new ConcurrentLruCache<Integer, Integer>(100, 4) {
+                    @Override
+                    protected void entryRemoved(boolean evicted, Integer key, Integer oldValue,
+                            Integer newValue) {
+                        removedSize.incrementAndGet();
+                    }
+                };
+        final int threadCount = 4;
+        final int putsPerThread = 10000;
+        final CountDownLatch done = new CountDownLatch(threadCount);
+        for (int t = 0; t < threadCount; t++) {
+            final int offset = t;
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < putsPerThread; i++) {
+                        final int key = (i * threadCount + offset) % 500;
+                        if (cache.get(key) == null) {
+                            cache.put(key, key);
+                        }
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        done.await();
+        assertTrue(cache.size() <= 100);
+        // every entry that was put is either still cached or was removed
+        assertEquals(cache.putCount(), cache.size() + removedSize.get());
+        assertEquals(threadCount * putsPerThread, cache.hitCount() + cache.missCount());
+    }
+}
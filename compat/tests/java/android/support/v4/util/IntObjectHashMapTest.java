@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class IntObjectHashMapTest {
+
+    @Test
+    public void putGetRemove() {
+        IntObjectHashMap<String> map = new IntObjectHashMap<>();
+        map.put(3, "three");
+        map.put(-7, "minus seven");
+        map.put(3, "THREE");
+        assertEquals(2, map.size());
+        assertEquals("THREE", map.get(3));
+        assertEquals("minus seven", map.get(-7));
+        assertNull(map.get(4));
+        assertEquals("default", map.get(4, "default"));
+        assertTrue(map.containsKey(-7));
+
+        map.remove(3);
+        assertEquals(1, map.size());
+        assertFalse(map.containsKey(3));
+        assertEquals(-7, map.keyAt(0));
+        assertEquals("minus seven", map.valueAt(0));
+    }
+
+    @Test
+    public void removeAtMovesLastEntry() {
+        IntObjectHashMap<String> map = new IntObjectHashMap<>();
+        map.put(1, "a");
+        map.put(2, "b");
+        map.put(3, "c");
+        map.removeAt(0);
+        assertEquals(2, map.size());
+        assertEquals(3, map.keyAt(0));
+        assertEquals(0, map.indexOfKey(3));
+        map.setValueAt(0, "C");
+        assertEquals("C", map.get(3));
+        assertEquals("b", map.get(2));
+    }
+
+    @Test
+    public void clear() {
+        IntObjectHashMap<String> map = new IntObjectHashMap<>(0);
+        for (int i = 0; i < 100; i++) {
+            map.put(i * 16, "v" + i);
+        }
+        map.clear();
+        assertEquals(0, map.size());
+        assertNull(map.get(16));
+        assertEquals("{}", map.toString());
+        map.put(16, "again");
+        assertEquals("{16=again}", map.toString());
+    }
+
+    @Test
+    public void matchesHashMap() {
+        Random random = new Random(42);
+        IntObjectHashMap<Integer> map = new IntObjectHashMap<>();
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            // a small key range so that removals hit and probe sequences overlap
+            final int key = random.nextInt(500) * 1024;
+            if (random.nextInt(3) == 0) {
+                map.remove(key);
+                expected.remove(key);
+            } else {
+                map.put(key, i);
+                expected.put(key, i);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (int i = 0; i < map.size(); i++) {
+            assertEquals(expected.get(map.keyAt(i)), map.valueAt(i));
+        }
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class PoolsTest {
+
+    @Test
+    public void concurrentPoolIsBounded() {
+        Pools.ConcurrentPool<Object> pool = new Pools.ConcurrentPool<>(2);
+        assertNull(pool.acquire());
+        Object a = new Object();
+        Object b = new Object();
+        assertTrue(pool.release(a));
+        assertTrue(pool.release(b));
+        assertFalse(pool.release(new Object()));
+
+        Object first = pool.acquire();
+        Object second = pool.acquire();
+        assertTrue(first == a ? second == b : first == b && second == a);
+        assertNull(pool.acquire());
+    }
+
+    @Test
+    public void concurrentPoolReturnsLastReleasedOnSameThread() {
+        Pools.ConcurrentPool<Object> pool = new Pools.ConcurrentPool<>(8);
+        Object instance = new Object();
+        pool.release(instance);
+        assertSame(instance, pool.acquire());
+    }
+
+    @Test
+    public void concurrentPoolChecksReleases() {
+        Pools.ConcurrentPool<Object> pool = new Pools.ConcurrentPool<>(4, true);
+        Object instance = new Object();
+        pool.release(instance);
+        try {
+            pool.release(instance);
+            fail("released twice");
+        } catch (IllegalStateException expected) {
+        }
+        assertSame(instance, pool.acquire());
+        // not in the pool anymore
+        assertTrue(pool.release(instance));
+    }
+
+    @Test
+    public void concurrentPoolHandsOutInstancesOnce() throws InterruptedException {
+        final Pools.ConcurrentPool<AtomicBoolean> pool = new Pools.ConcurrentPool<>(16, true);
+        final AtomicInteger errors = new AtomicInteger();
+        final int threadCount = 4;
+        final CountDownLatch done = new CountDownLatch(threadCount);
+        for (int t = 0; t < threadCount; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 20000; i++) {
+                        AtomicBoolean inUse = pool.acquire();
+                        if (inUse == null) {
+                            inUse = new AtomicBoolean();
+                        }
+                        if (!inUse.compareAndSet(false, true)) {
+                            errors.incrementAndGet();
+                        }
+                        inUse.set(false);
+                        pool.release(inUse);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(0, errors.get());
+    }
+}
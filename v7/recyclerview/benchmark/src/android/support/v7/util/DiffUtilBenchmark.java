@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link DiffUtil} on lists that changed in the ways adapters usually see.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiffUtilBenchmark {
+    /**
+     * shuffled: a random permutation of the old list.
+     * appended: the old list followed by 10% new items.
+     * moved: the old list with 1% of its items moved to random positions.
+     */
+    @Param({"shuffled", "appended", "moved"})
+    public String change;
+
+    @Param({"100", "1000"})
+    public int size;
+
+    private List<Long> mOldList;
+    private List<Long> mNewList;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(42);
+        mOldList = new ArrayList<>(size);
+        for (long i = 0; i < size; i++) {
+            mOldList.add(i);
+        }
+        mNewList = new ArrayList<>(mOldList);
+        switch (change) {
+            case "shuffled":
+                Collections.shuffle(mNewList, random);
+                break;
+            case "appended":
+                for (long i = 0; i < size / 10; i++) {
+                    mNewList.add(size + i);
+                }
+                break;
+            case "moved":
+                for (int i = 0; i < Math.max(1, size / 100); i++) {
+                    final Long item = mNewList.remove(random.nextInt(size));
+                    mNewList.add(random.nextInt(size), item);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("unknown change " + change);
+        }
+    }
+
+    @Benchmark
+    public DiffUtil.DiffResult calculateDiff() {
+        return DiffUtil.calculateDiff(new LongListCallback(mOldList, mNewList), true);
+    }
+
+    @Benchmark
+    public DiffUtil.DiffResult calculateDiffWithoutMoves() {
+        return DiffUtil.calculateDiff(new LongListCallback(mOldList, mNewList), false);
+    }
+
+    @Benchmark
+    public DiffUtil.DiffResult calculateDiffByItemIds() {
+        return DiffUtil.calculateDiffByItemIds(new LongListCallback(mOldList, mNewList));
+    }
+
+    static class LongListCallback extends DiffUtil.ItemIdCallback {
+        private final List<Long> mOld;
+        private final List<Long> mNew;
+
+        LongListCallback(List<Long> old, List<Long> aNew) {
+            mOld = old;
+            mNew = aNew;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOld.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNew.size();
+        }
+
+        @Override
+        public long getOldItemId(int oldItemPosition) {
+            return mOld.get(oldItemPosition);
+        }
+
+        @Override
+        public long getNewItemId(int newItemPosition) {
+            return mNew.get(newItemPosition);
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures adding to and removing from a {@link SortedList}, with and without batching, for both
+ * the array and the chunked storage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SortedListBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int size;
+
+    @Param({"array", "chunked"})
+    public String storage;
+
+    private Integer[] mItems;
+    private ExecutorService mExecutor;
+    private final BlockingQueue<Runnable> mMainQueue = new LinkedBlockingQueue<>();
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(42);
+        mItems = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            mItems[i] = random.nextInt();
+        }
+        mExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown
+    public void tearDown() {
+        mExecutor.shutdown();
+    }
+
+    @Benchmark
+    public SortedList<Integer> add() {
+        final SortedList<Integer> list = createList();
+        for (Integer item : mItems) {
+            list.add(item);
+        }
+        return list;
+    }
+
+    @Benchmark
+    public SortedList<Integer> addBatched() {
+        final SortedList<Integer> list = createList();
+        list.beginBatchedUpdates();
+        for (Integer item : mItems) {
+            list.add(item);
+        }
+        list.endBatchedUpdates();
+        return list;
+    }
+
+    @Benchmark
+    public SortedList<Integer> addAll() {
+        final SortedList<Integer> list = createList();
+        list.addAll(mItems, false);
+        return list;
+    }
+
+    @Benchmark
+    public SortedList<Integer> addAllAsync() throws InterruptedException {
+        final SortedList<Integer> list = createList();
+        list.mMainThreadExecutor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mMainQueue.add(command);
+            }
+        };
+        list.addAllAsync(mItems, false, mExecutor);
+        // apply the result, like the main thread would
+        mMainQueue.take().run();
+        return list;
+    }
+
+    @Benchmark
+    public SortedList<Integer> addAllInHalves() {
+        final SortedList<Integer> list = createList();
+        final int half = size / 2;
+        final Integer[] first = new Integer[half];
+        final Integer[] second = new Integer[size - half];
+        System.arraycopy(mItems, 0, first, 0, half);
+        System.arraycopy(mItems, half, second, 0, size - half);
+        list.addAll(first, true);
+        // the second call merges into existing data
+        list.addAll(second, true);
+        return list;
+    }
+
+    @Benchmark
+    public SortedList<Integer> addAllThenRemove() {
+        final SortedList<Integer> list = createList();
+        list.addAll(mItems, false);
+        for (Integer item : mItems) {
+            list.remove(item);
+        }
+        return list;
+    }
+
+    @Benchmark
+    public SortedList<Integer> addAllThenRemoveBatched() {
+        final SortedList<Integer> list = createList();
+        list.addAll(mItems, false);
+        list.beginBatchedUpdates();
+        for (Integer item : mItems) {
+            list.remove(item);
+        }
+        list.endBatchedUpdates();
+        return list;
+    }
+
+    private SortedList<Integer> createList() {
+        if ("chunked".equals(storage)) {
+            return SortedList.createChunked(Integer.class, new IntegerCallback());
+        }
+        return new SortedList<>(Integer.class, new IntegerCallback());
+    }
+
+    static class IntegerCallback extends SortedList.Callback<Integer> {
+        int mEventCount;
+
+        @Override
+        public int compare(Integer o1, Integer o2) {
+            return o1.compareTo(o2);
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            mEventCount++;
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            mEventCount++;
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mEventCount++;
+        }
+
+        @Override
+        public void onChanged(int position, int count) {
+            mEventCount++;
+        }
+
+        @Override
+        public boolean areContentsTheSame(Integer oldItem, Integer newItem) {
+            return oldItem.equals(newItem);
+        }
+
+        @Override
+        public boolean areItemsTheSame(Integer item1, Integer item2) {
+            return item1.equals(item2);
+        }
+    }
+}
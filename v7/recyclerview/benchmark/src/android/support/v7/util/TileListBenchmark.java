@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link TileList} lookups, as done by {@link AsyncListUtil#getItem(int)}, for
+ * sequential access within the last accessed tile and for random access across tiles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TileListBenchmark {
+    private static final int ITEM_COUNT = 10000;
+
+    @Param({"10", "100"})
+    public int tileSize;
+
+    private TileList<Integer> mTileList;
+    private int[] mRandomPositions;
+
+    @Setup
+    public void setup() {
+        mTileList = new TileList<>(tileSize);
+        for (int start = 0; start < ITEM_COUNT; start += tileSize) {
+            final TileList.Tile<Integer> tile = new TileList.Tile<>(Integer.class, tileSize);
+            tile.mStartPosition = start;
+            tile.mItemCount = Math.min(tileSize, ITEM_COUNT - start);
+            for (int i = 0; i < tile.mItemCount; i++) {
+                tile.mItems[i] = start + i;
+            }
+            mTileList.addOrReplace(tile);
+        }
+        final Random random = new Random(42);
+        mRandomPositions = new int[ITEM_COUNT];
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            mRandomPositions[i] = random.nextInt(ITEM_COUNT);
+        }
+    }
+
+    @Benchmark
+    public void sequentialLookup(Blackhole blackhole) {
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            blackhole.consume(mTileList.getItemAt(i));
+        }
+    }
+
+    @Benchmark
+    public void randomLookup(Blackhole blackhole) {
+        for (int position : mRandomPositions) {
+            blackhole.consume(mTileList.getItemAt(position));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.widget;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast {@link AdapterHelper} consolidates a batch of adapter updates, both through
+ * the pre-processing path used for predictive animations (which runs {@link OpReorderer}) and
+ * through the single pass path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdapterHelperBenchmark {
+    private static final int ITEM_COUNT = 1000;
+
+    @Param({"10", "100"})
+    public int opCount;
+
+    private AdapterHelper mAdapterHelper;
+
+    // recorded ops, replayed on each invocation
+    private int[] mCmds;
+    private int[] mStarts;
+    private int[] mCounts;
+
+    @Setup
+    public void setup() {
+        mAdapterHelper = new AdapterHelper(new NoOpCallback());
+        final Random random = new Random(42);
+        mCmds = new int[opCount];
+        mStarts = new int[opCount];
+        mCounts = new int[opCount];
+        int itemCount = ITEM_COUNT;
+        for (int i = 0; i < opCount; i++) {
+            final int start = random.nextInt(itemCount);
+            switch (random.nextInt(4)) {
+                case 0:
+                    mCmds[i] = AdapterHelper.UpdateOp.ADD;
+                    mCounts[i] = 1 + random.nextInt(5);
+                    itemCount += mCounts[i];
+                    break;
+                case 1:
+                    mCmds[i] = AdapterHelper.UpdateOp.REMOVE;
+                    mCounts[i] = 1 + random.nextInt(Math.min(5, itemCount - start));
+                    itemCount -= mCounts[i];
+                    break;
+                case 2:
+                    mCmds[i] = AdapterHelper.UpdateOp.UPDATE;
+                    mCounts[i] = 1 + random.nextInt(Math.min(5, itemCount - start));
+                    break;
+                default:
+                    mCmds[i] = AdapterHelper.UpdateOp.MOVE;
+                    // for moves, the count is the target position
+                    mCounts[i] = random.nextInt(itemCount);
+                    break;
+            }
+            mStarts[i] = start;
+        }
+    }
+
+    private void enqueueOps() {
+        for (int i = 0; i < opCount; i++) {
+            switch (mCmds[i]) {
+                case AdapterHelper.UpdateOp.ADD:
+                    mAdapterHelper.onItemRangeInserted(mStarts[i], mCounts[i]);
+                    break;
+                case AdapterHelper.UpdateOp.REMOVE:
+                    mAdapterHelper.onItemRangeRemoved(mStarts[i], mCounts[i]);
+                    break;
+                case AdapterHelper.UpdateOp.UPDATE:
+                    mAdapterHelper.onItemRangeChanged(mStarts[i], mCounts[i], null);
+                    break;
+                case AdapterHelper.UpdateOp.MOVE:
+                    mAdapterHelper.onItemRangeMoved(mStarts[i], mCounts[i], 1);
+                    break;
+            }
+        }
+    }
+
+    @Benchmark
+    public AdapterHelper preProcess() {
+        enqueueOps();
+        mAdapterHelper.preProcess();
+        mAdapterHelper.consumePostponedUpdates();
+        return mAdapterHelper;
+    }
+
+    @Benchmark
+    public AdapterHelper consumeUpdatesInOnePass() {
+        enqueueOps();
+        mAdapterHelper.consumeUpdatesInOnePass();
+        return mAdapterHelper;
+    }
+
+    /**
+     * A callback without any laid out views, so every update is dispatched without affecting
+     * ViewHolders.
+     */
+    static class NoOpCallback implements AdapterHelper.Callback {
+        @Override
+        public RecyclerView.ViewHolder findViewHolder(int position) {
+            return null;
+        }
+
+        @Override
+        public void offsetPositionsForRemovingInvisible(int positionStart, int itemCount) {
+        }
+
+        @Override
+        public void offsetPositionsForRemovingLaidOutOrNewView(int positionStart,
+                int itemCount) {
+        }
+
+        @Override
+        public void markViewHoldersUpdated(int positionStart, int itemCount, Object payloads) {
+        }
+
+        @Override
+        public void onDispatchFirstPass(AdapterHelper.UpdateOp updateOp) {
+        }
+
+        @Override
+        public void onDispatchSecondPass(AdapterHelper.UpdateOp updateOp) {
+        }
+
+        @Override
+        public void offsetPositionsForAdd(int positionStart, int itemCount) {
+        }
+
+        @Override
+        public void offsetPositionsForMove(int from, int to) {
+        }
+    }
+}
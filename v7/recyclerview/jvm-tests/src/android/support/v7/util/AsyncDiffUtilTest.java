@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import android.support.test.filters.SmallTest;
+import android.support.v4.os.CancellationSignal;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+@RunWith(JUnit4.class)
+@SmallTest
+public class AsyncDiffUtilTest {
+    private final QueueExecutor mBackground = new QueueExecutor();
+    private final QueueExecutor mMain = new QueueExecutor();
+
+    @Test
+    public void dispatchesOnMainExecutor() {
+        final List<String> target = new ArrayList<>(Arrays.asList("a", "b", "c"));
+        final List<String> newList = Arrays.asList("b", "c", "d", "a");
+        final List<String> swapped = new ArrayList<>();
+        AsyncDiffUtil asyncDiffUtil = new AsyncDiffUtil(mBackground, mMain,
+                new ApplyingCallback(target));
+        asyncDiffUtil.calculateDiff(new ListCallback(new ArrayList<>(target), newList), true,
+                new AsyncDiffUtil.OnDiffCalculatedListener() {
+                    @Override
+                    public void onDiffCalculated(DiffUtil.DiffResult result) {
+                        swapped.addAll(newList);
+                    }
+                });
+        assertThat(asyncDiffUtil.hasPendingCalculation(), is(true));
+        mBackground.runAll();
+        assertThat(target, is(Arrays.asList("a", "b", "c")));
+        mMain.runAll();
+        assertThat(swapped, is(newList));
+        assertApplied(target, newList);
+        assertThat(asyncDiffUtil.hasPendingCalculation(), is(false));
+    }
+
+    @Test
+    public void staleGenerationIsDropped() {
+        final List<String> old = Arrays.asList("a", "b", "c");
+        final List<String> first = Arrays.asList("c", "b");
+        final List<String> second = Arrays.asList("a", "x", "c", "y");
+        final List<String> target = new ArrayList<>(old);
+        AsyncDiffUtil asyncDiffUtil = new AsyncDiffUtil(mBackground, mMain,
+                new ApplyingCallback(target));
+
+        asyncDiffUtil.calculateDiff(new ListCallback(old, first), true, null);
+        // first one finishes before the second one is requested but is not dispatched yet
+        mBackground.runAll();
+        int generation = asyncDiffUtil.calculateDiff(new ListCallback(old, second), true, null);
+        assertThat(generation, is(2));
+        mBackground.runAll();
+        mMain.runAll();
+        assertApplied(target, second);
+    }
+
+    @Test
+    public void cancelBeforeRun() {
+        final List<String> target = new ArrayList<>(Arrays.asList("a", "b"));
+        AsyncDiffUtil asyncDiffUtil = new AsyncDiffUtil(mBackground, mMain,
+                new ApplyingCallback(target));
+        asyncDiffUtil.calculateDiff(new ListCallback(target, Collections.<String>emptyList()),
+                true, null);
+        asyncDiffUtil.cancel();
+        mBackground.runAll();
+        assertThat(mMain.mQueue.size(), is(0));
+        assertThat(target, is(Arrays.asList("a", "b")));
+    }
+
+    @Test
+    public void cancelAfterCalculation() {
+        final List<String> target = new ArrayList<>(Arrays.asList("a", "b"));
+        AsyncDiffUtil asyncDiffUtil = new AsyncDiffUtil(mBackground, mMain,
+                new ApplyingCallback(target));
+        asyncDiffUtil.calculateDiff(new ListCallback(target, Collections.<String>emptyList()),
+                true, null);
+        mBackground.runAll();
+        asyncDiffUtil.cancel();
+        mMain.runAll();
+        assertThat(target, is(Arrays.asList("a", "b")));
+    }
+
+    @Test
+    public void cancelledDiffReturnsNull() {
+        final CancellationSignal signal = new CancellationSignal();
+        final List<String> old = Arrays.asList("a", "b", "c", "d");
+        final List<String> newList = Arrays.asList("d", "c", "b", "a");
+        DiffUtil.Callback callback = new ListCallback(old, newList) {
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                signal.cancel();
+                return super.areItemsTheSame(oldItemPosition, newItemPosition);
+            }
+        };
+        assertThat(DiffUtil.calculateDiff(callback, true, new DiffUtil.Workspace(), signal),
+                nullValue());
+    }
+
+    @Test
+    public void workspaceIsReused() {
+        Random random = new Random(42);
+        DiffUtil.Workspace workspace = new DiffUtil.Workspace();
+        for (int i = 0; i < 50; i++) {
+            List<String> old = randomList(random, 30);
+            List<String> newList = randomList(random, 30);
+            List<String> target = new ArrayList<>(old);
+            DiffUtil.DiffResult result = DiffUtil.calculateDiff(new ListCallback(old, newList),
+                    i % 2 == 0, workspace, null);
+            //noinspection ConstantConditions
+            result.dispatchUpdatesTo(new ApplyingCallback(target));
+            assertApplied(target, newList);
+        }
+    }
+
+    private static void assertApplied(List<String> target, List<String> newList) {
+        assertThat(target.size(), is(newList.size()));
+        for (int i = 0; i < target.size(); i++) {
+            if (target.get(i) == null) {
+                target.set(i, newList.get(i));
+            }
+        }
+        assertThat(target, is(newList));
+    }
+
+    private static List<String> randomList(Random random, int maxSize) {
+        final int size = random.nextInt(maxSize);
+        final List<String> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add("i" + random.nextInt(maxSize * 2));
+        }
+        // items must be unique for the callback below
+        return new ArrayList<>(new LinkedHashSet<>(result));
+    }
+
+    static class QueueExecutor implements Executor {
+        final List<Runnable> mQueue = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            mQueue.add(command);
+        }
+
+        void runAll() {
+            while (!mQueue.isEmpty()) {
+                mQueue.remove(0).run();
+            }
+        }
+    }
+
+    static class ListCallback extends DiffUtil.Callback {
+        final List<String> mOld;
+        final List<String> mNew;
+
+        ListCallback(List<String> old, List<String> aNew) {
+            mOld = old;
+            mNew = aNew;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOld.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNew.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOld.get(oldItemPosition).equals(mNew.get(newItemPosition));
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return true;
+        }
+    }
+
+    /**
+     * Applies the updates to the target list. Inserted items are added as nulls and resolved from
+     * the new list in {@link #assertApplied(List, List)}.
+     */
+    static class ApplyingCallback implements ListUpdateCallback {
+        final List<String> mTarget;
+
+        ApplyingCallback(List<String> target) {
+            mTarget = target;
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            for (int i = 0; i < count; i++) {
+                mTarget.add(position, null);
+            }
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            for (int i = 0; i < count; i++) {
+                mTarget.remove(position);
+            }
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mTarget.add(toPosition, mTarget.remove(fromPosition));
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+        }
+
+    }
+}
@@ -46,7 +46,17 @@ public class DiffUtilTest {
     private List<Item> mAfter = new ArrayList<>();
     private StringBuilder mLog = new StringBuilder();
 
-    private DiffUtil.Callback mCallback = new DiffUtil.Callback() {
+    private DiffUtil.ItemIdCallback mCallback = new DiffUtil.ItemIdCallback() {
+        @Override
+        public long getOldItemId(int oldItemPosition) {
+            return mBefore.get(oldItemPosition).id;
+        }
+
+        @Override
+        public long getNewItemId(int newItemPosition) {
+            return mAfter.get(newItemPosition).id;
+        }
+
         @Override
         public int getOldListSize() {
             return mBefore.size();
@@ -95,6 +105,22 @@ public class DiffUtilTest {
         check();
     }
 
+    @Test
+    public void testReverseById() {
+        initWithSize(6);
+        for (int i = 0; i < 5; i++) {
+            move(5, i);
+        }
+        check();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateIds() {
+        initWithSize(2);
+        mAfter.add(mAfter.get(0));
+        DiffUtil.calculateDiffByItemIds(mCallback);
+    }
+
     @Test
     public void testAddItems() {
         initWithSize(2);
@@ -320,6 +346,10 @@ public class DiffUtilTest {
 
         List<Item> applied = applyUpdates(mBefore, result);
         assertEquals(applied, mAfter);
+
+        DiffUtil.DiffResult idResult = DiffUtil.calculateDiffByItemIds(mCallback);
+        log("id snakes", idResult.getSnakes());
+        assertEquals(applyUpdates(mBefore, idResult), mAfter);
     }
 
     private void initWithSize(int size) {
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import android.support.test.filters.SmallTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+
+@RunWith(JUnit4.class)
+@SmallTest
+public class OffHeapTileCacheTest {
+    private static final int TILE_SIZE = 10;
+
+    private final StringCodec mCodec = new StringCodec();
+
+    @Test
+    public void roundTrip() {
+        OffHeapTileCache<String> cache = OffHeapTileCache.createDirect(mCodec, 8 * 1024);
+        cache.put(20, tile(20, 100), TILE_SIZE);
+        String[] items = new String[TILE_SIZE];
+        assertThat(cache.get(20, items, TILE_SIZE), is(true));
+        assertThat(items, is(tile(20, 100)));
+        assertThat(cache.hitCount(), is(1));
+    }
+
+    @Test
+    public void spansMultipleBlocks() {
+        OffHeapTileCache<String> cache = OffHeapTileCache.createDirect(mCodec, 8 * 1024);
+        // 10 items of ~500 bytes take up 5 blocks
+        cache.put(0, tile(0, 500), TILE_SIZE);
+        cache.put(10, tile(10, 10), TILE_SIZE);
+        assertThat(cache.size(), is(6 * OffHeapTileCache.BLOCK_SIZE));
+        String[] items = new String[TILE_SIZE];
+        assertThat(cache.get(0, items, TILE_SIZE), is(true));
+        assertThat(items, is(tile(0, 500)));
+    }
+
+    @Test
+    public void missingOrDifferentSizeTile() {
+        OffHeapTileCache<String> cache = OffHeapTileCache.createDirect(mCodec, 8 * 1024);
+        cache.put(0, tile(0, 10), TILE_SIZE);
+        String[] items = new String[TILE_SIZE];
+        assertThat(cache.get(10, items, TILE_SIZE), is(false));
+        assertThat(cache.get(0, items, 5), is(false));
+        assertThat(cache.missCount(), is(2));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedByBytes() {
+        OffHeapTileCache<String> cache = OffHeapTileCache.createDirect(mCodec,
+                4 * OffHeapTileCache.BLOCK_SIZE);
+        cache.put(0, tile(0, 10), TILE_SIZE);
+        cache.put(10, tile(10, 10), TILE_SIZE);
+        cache.put(20, tile(20, 10), TILE_SIZE);
+        String[] items = new String[TILE_SIZE];
+        // 0 is now more recently used than 10 and 20
+        assertThat(cache.get(0, items, TILE_SIZE), is(true));
+        // needs 2 blocks, 1 is free
+        cache.put(30, tile(30, 150), TILE_SIZE);
+        assertThat(cache.evictionCount(), is(1));
+        assertThat(cache.get(10, items, TILE_SIZE), is(false));
+        assertThat(cache.get(20, items, TILE_SIZE), is(true));
+        assertThat(cache.get(0, items, TILE_SIZE), is(true));
+        assertThat(cache.get(30, items, TILE_SIZE), is(true));
+        assertThat(items, is(tile(30, 150)));
+        assertThat(cache.size(), is(cache.maxSize()));
+    }
+
+    @Test
+    public void replacesTile() {
+        OffHeapTileCache<String> cache = OffHeapTileCache.createDirect(mCodec,
+                2 * OffHeapTileCache.BLOCK_SIZE);
+        for (int i = 0; i < 10; i++) {
+            cache.put(0, tile(i, 150), TILE_SIZE);
+        }
+        String[] items = new String[TILE_SIZE];
+        assertThat(cache.get(0, items, TILE_SIZE), is(true));
+        assertThat(items, is(tile(9, 150)));
+        assertThat(cache.evictionCount(), is(0));
+    }
+
+    @Test
+    public void tooLargeTileIsNotCached() {
+        OffHeapTileCache<String> cache = OffHeapTileCache.createDirect(mCodec,
+                OffHeapTileCache.BLOCK_SIZE);
+        cache.put(0, tile(0, 10), TILE_SIZE);
+        cache.put(10, tile(10, 500), TILE_SIZE);
+        String[] items = new String[TILE_SIZE];
+        assertThat(cache.get(10, items, TILE_SIZE), is(false));
+        assertThat(cache.get(0, items, TILE_SIZE), is(true));
+    }
+
+    @Test
+    public void clear() {
+        OffHeapTileCache<String> cache = OffHeapTileCache.createDirect(mCodec, 8 * 1024);
+        cache.put(0, tile(0, 10), TILE_SIZE);
+        cache.clear();
+        assertThat(cache.size(), is(0));
+        assertThat(cache.get(0, new String[TILE_SIZE], TILE_SIZE), is(false));
+    }
+
+    @Test
+    public void reusesItems() {
+        OffHeapTileCache<Holder> cache = OffHeapTileCache.createDirect(
+                new OffHeapTileCache.ItemCodec<Holder>() {
+                    @Override
+                    public void write(Holder item, DataOutput out) throws IOException {
+                        out.writeInt(item.mValue);
+                    }
+
+                    @Override
+                    public Holder read(DataInput in, Holder reuse) throws IOException {
+                        Holder holder = reuse != null ? reuse : new Holder();
+                        holder.mValue = in.readInt();
+                        return holder;
+                    }
+                }, 8 * 1024);
+        Holder[] items = new Holder[] {new Holder(), new Holder()};
+        items[0].mValue = 3;
+        items[1].mValue = 4;
+        cache.put(0, items, 2);
+        Holder[] recycled = new Holder[] {new Holder(), null};
+        Holder reused = recycled[0];
+        assertThat(cache.get(0, recycled, 2), is(true));
+        assertThat(recycled[0], sameInstance(reused));
+        assertThat(recycled[0].mValue, is(3));
+        assertThat(recycled[1].mValue, is(4));
+    }
+
+    @Test
+    public void mappedFile() throws IOException {
+        File file = File.createTempFile("tiles", null);
+        try {
+            OffHeapTileCache<String> cache = OffHeapTileCache.createMapped(mCodec, file,
+                    16 * 1024);
+            assertThat(file.length(), is(16 * 1024L));
+            for (int i = 0; i < 100; i += TILE_SIZE) {
+                cache.put(i, tile(i, 300), TILE_SIZE);
+            }
+            String[] items = new String[TILE_SIZE];
+            assertThat(cache.get(90, items, TILE_SIZE), is(true));
+            assertThat(items, is(tile(90, 300)));
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    private static String[] tile(int startPosition, int itemLength) {
+        String[] items = new String[TILE_SIZE];
+        for (int i = 0; i < TILE_SIZE; i++) {
+            StringBuilder sb = new StringBuilder().append(startPosition + i).append(':');
+            while (sb.length() < itemLength) {
+                sb.append('x');
+            }
+            items[i] = sb.toString();
+        }
+        return items;
+    }
+
+    static class Holder {
+        int mValue;
+    }
+
+    static class StringCodec implements OffHeapTileCache.ItemCodec<String> {
+        @Override
+        public void write(String item, DataOutput out) throws IOException {
+            out.writeUTF(item);
+        }
+
+        @Override
+        public String read(DataInput in, String reuse) throws IOException {
+            return in.readUTF();
+        }
+    }
+}
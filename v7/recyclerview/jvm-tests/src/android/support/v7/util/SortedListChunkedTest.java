@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.util;
+
+import android.support.test.filters.SmallTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Runs the {@link SortedListTest} cases against a SortedList with chunked storage. Chunks are
+ * kept tiny so that splitting and merging chunks is exercised.
+ */
+@RunWith(JUnit4.class)
+@SmallTest
+public class SortedListChunkedTest extends SortedListTest {
+    private static final int CHUNK_CAPACITY = 4;
+
+    @Override
+    SortedList<Item> createList(SortedList.Callback<Item> callback) {
+        return new SortedList<>(Item.class, callback,
+                new ChunkedArray<>(Item.class, CHUNK_CAPACITY));
+    }
+
+    @Override
+    void assertStorageIntegrity() {
+        assertNull(mList.mData);
+        final ChunkedArray<Item> chunkedData = mList.mChunkedData;
+        assertEquals(mList.size(), chunkedData.size());
+        int size = 0;
+        for (int i = 0; i < chunkedData.getChunkCount(); i++) {
+            assertTrue(chunkedData.getChunkSize(i) > 0);
+            assertTrue(chunkedData.getChunkSize(i) <= CHUNK_CAPACITY);
+            size += chunkedData.getChunkSize(i);
+        }
+        assertEquals(mList.size(), size);
+        for (int index = 0; index < mList.size(); index++) {
+            assertNotNull(chunkedData.get(index));
+        }
+    }
+
+    @Test
+    public void testSameEventsAsArrayStorage() {
+        final List<String> arrayEvents = new ArrayList<>();
+        final List<String> chunkedEvents = new ArrayList<>();
+        final SortedList<Item> arrayList = new SortedList<>(Item.class,
+                new LoggingCallback(arrayEvents));
+        final SortedList<Item> chunkedList = createList(new LoggingCallback(chunkedEvents));
+        final Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            switch (random.nextInt(5)) {
+                case 0:
+                case 1: {
+                    // few distinct sort values so that there are many items that compare equal
+                    Item item = new Item(random.nextInt(100), random.nextInt(20));
+                    assertEquals(arrayList.add(item), chunkedList.add(item));
+                    break;
+                }
+                case 2:
+                    if (arrayList.size() > 0) {
+                        final int index = random.nextInt(arrayList.size());
+                        assertSame(arrayList.removeItemAt(index), chunkedList.removeItemAt(index));
+                    }
+                    break;
+                case 3:
+                    if (arrayList.size() > 0) {
+                        final int index = random.nextInt(arrayList.size());
+                        final Item item = new Item(arrayList.get(index).id, random.nextInt(20));
+                        arrayList.updateItemAt(index, item);
+                        chunkedList.updateItemAt(index, item);
+                    }
+                    break;
+                case 4: {
+                    final Item[] items = new Item[random.nextInt(10) + 1];
+                    for (int j = 0; j < items.length; j++) {
+                        items[j] = new Item(random.nextInt(100), random.nextInt(20));
+                    }
+                    arrayList.addAll(items);
+                    chunkedList.addAll(items);
+                    break;
+                }
+            }
+            assertEquals(arrayEvents, chunkedEvents);
+            assertEquals(arrayList.size(), chunkedList.size());
+        }
+        for (int i = 0; i < arrayList.size(); i++) {
+            final Item item = arrayList.get(i);
+            assertSame(item, chunkedList.get(i));
+            // ids are not unique, so the index may be that of another item with the same id
+            assertEquals(arrayList.indexOf(item), chunkedList.indexOf(item));
+        }
+    }
+
+    private static class LoggingCallback extends SortedList.Callback<Item> {
+        final List<String> mEvents;
+
+        LoggingCallback(List<String> events) {
+            mEvents = events;
+        }
+
+        @Override
+        public int compare(Item o1, Item o2) {
+            return o1.cmpField < o2.cmpField ? -1 : (o1.cmpField == o2.cmpField ? 0 : 1);
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            mEvents.add("insert " + position + " " + count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            mEvents.add("remove " + position + " " + count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mEvents.add("move " + fromPosition + " " + toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count) {
+            mEvents.add("change " + position + " " + count);
+        }
+
+        @Override
+        public boolean areContentsTheSame(Item oldItem, Item newItem) {
+            return oldItem.cmpField == newItem.cmpField && oldItem.data == newItem.data;
+        }
+
+        @Override
+        public boolean areItemsTheSame(Item item1, Item item2) {
+            return item1.id == item2.id;
+        }
+    }
+}
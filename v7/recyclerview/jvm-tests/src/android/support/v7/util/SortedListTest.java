@@ -31,6 +31,12 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 @RunWith(JUnit4.class)
 @SmallTest
@@ -108,7 +114,23 @@ public class SortedListTest extends TestCase {
         };
         mInsertedCallback = null;
         mChangedCallback = null;
-        mList = new SortedList<Item>(Item.class, mCallback);
+        mList = createList(mCallback);
+    }
+
+    SortedList<Item> createList(SortedList.Callback<Item> callback) {
+        return new SortedList<Item>(Item.class, callback);
+    }
+
+    /**
+     * Checks that the backing storage holds exactly the items of the list.
+     */
+    void assertStorageIntegrity() {
+        for (int index = 0; index < mList.size(); index++) {
+            assertNotNull(mList.mData[index]);
+        }
+        for (int index = mList.size(); index < mList.mData.length; index++) {
+            assertNull(mList.mData[index]);
+        }
     }
 
     @Test
@@ -251,12 +273,7 @@ public class SortedListTest extends TestCase {
                     assertTrue(copy.contains(mList.get(index)));
                 }
 
-                for (int index = 0; index < mList.size(); index++) {
-                    assertNotNull(mList.mData[index]);
-                }
-                for (int index = mList.size(); index < mList.mData.length; index++) {
-                    assertNull(mList.mData[index]);
-                }
+                assertStorageIntegrity();
             }
         } catch (Throwable t) {
             Collections.sort(copy, sItemComparator);
@@ -670,6 +687,163 @@ public class SortedListTest extends TestCase {
         assertIntegrity(5, "Modification from callback");
     }
 
+    @Test
+    public void testAddAllAsyncSameAsAddAll() {
+        for (int parallelism = 1; parallelism <= 4; parallelism++) {
+            final Random random = new Random(parallelism);
+            final Item[] initial = createRandomItems(random, 3000);
+            final Item[] batch = createRandomItems(random, 5 * ParallelAddAll.MIN_SLICE_SIZE);
+
+            final SortedList<Item> expected = createList(mCallback);
+            expected.addAll(initial);
+            clearEvents();
+            expected.addAll(batch, false);
+            final List<Pair> expectedAdditions = new ArrayList<>(mAdditions);
+            final List<Pair> expectedUpdates = new ArrayList<>(mUpdates);
+
+            mList = createList(mCallback);
+            mList.addAll(initial);
+            final int initialSize = mList.size();
+            clearEvents();
+            AsyncDiffUtilTest.QueueExecutor background = new AsyncDiffUtilTest.QueueExecutor();
+            AsyncDiffUtilTest.QueueExecutor main = new AsyncDiffUtilTest.QueueExecutor();
+            mList.mMainThreadExecutor = main;
+            mList.addAllAsync(batch, false, background, parallelism);
+            background.runAll();
+            assertEquals(initialSize, mList.size());
+            assertEquals(0, mAdditions.size() + mUpdates.size());
+
+            main.runAll();
+            assertEquals(expectedAdditions, mAdditions);
+            assertEquals(expectedUpdates, mUpdates);
+            assertEquals(0, mRemovals.size() + mMoves.size());
+            assertSameItems(expected, mList);
+            assertStorageIntegrity();
+        }
+    }
+
+    @Test
+    public void testAddAllAsyncStaleSnapshot() {
+        AsyncDiffUtilTest.QueueExecutor background = new AsyncDiffUtilTest.QueueExecutor();
+        AsyncDiffUtilTest.QueueExecutor main = new AsyncDiffUtilTest.QueueExecutor();
+        mList.mMainThreadExecutor = main;
+        mList.addAll(createItems(0, 8, 2));
+        mList.addAllAsync(shuffle(createItems(1, 9, 2)), true, background);
+        background.runAll();
+        mList.add(new Item(10, 10));
+        mList.remove(mList.get(0));
+        clearEvents();
+
+        main.runAll();
+        assertIntegrity(10, "addAllAsync after modification");
+        assertEquals(1, mList.get(0).cmpField);
+        assertEquals(10, mList.get(9).cmpField);
+        assertStorageIntegrity();
+    }
+
+    @Test
+    public void testAddAllAsyncAppliedInOrder() {
+        AsyncDiffUtilTest.QueueExecutor background = new AsyncDiffUtilTest.QueueExecutor();
+        AsyncDiffUtilTest.QueueExecutor main = new AsyncDiffUtilTest.QueueExecutor();
+        mList.mMainThreadExecutor = main;
+        Item[] first = createItems(0, 4, 1);
+        Item[] second = createItems(0, 4, 1);
+        for (Item item : second) {
+            item.data = -1;
+        }
+        mList.addAllAsync(first, true, background);
+        mList.addAllAsync(second, true, background);
+        background.runAll();
+        main.runAll();
+        assertIntegrity(5, "two addAllAsync calls");
+        for (int i = 0; i < 5; i++) {
+            assertSame(second[i], mList.get(i));
+        }
+        assertEquals(1, mAdditions.size());
+        assertTrue(mUpdates.contains(new Pair(0, 5)));
+    }
+
+    @Test
+    public void testAddAllAsyncRethrowsOnMainThread() {
+        final RuntimeException failure = new RuntimeException();
+        mList = createList(new SortedList.BatchedCallback<Item>(mCallback) {
+            @Override
+            public int compare(Item o1, Item o2) {
+                if (o1.cmpField == 3 || o2.cmpField == 3) {
+                    throw failure;
+                }
+                return super.compare(o1, o2);
+            }
+        });
+        AsyncDiffUtilTest.QueueExecutor background = new AsyncDiffUtilTest.QueueExecutor();
+        AsyncDiffUtilTest.QueueExecutor main = new AsyncDiffUtilTest.QueueExecutor();
+        mList.mMainThreadExecutor = main;
+        mList.addAllAsync(createItems(0, 5, 1), true, background);
+        background.runAll();
+        try {
+            main.runAll();
+            fail("the exception thrown by the callback should be re-thrown");
+        } catch (RuntimeException e) {
+            assertSame(failure, e);
+        }
+        assertEquals(0, mList.size());
+    }
+
+    @Test
+    public void testAddAllAsyncOnThreadPool() throws InterruptedException {
+        final Random random = new Random(42);
+        final Item[] initial = createRandomItems(random, 10000);
+        final Item[] batch = createRandomItems(random, 50000);
+        final SortedList<Item> expected = createList(mCallback);
+        expected.addAll(initial);
+        expected.addAll(batch, false);
+
+        mList.addAll(initial);
+        final BlockingQueue<Runnable> mainQueue = new LinkedBlockingQueue<>();
+        mList.mMainThreadExecutor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mainQueue.add(command);
+            }
+        };
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            mList.addAllAsync(batch, false, pool, 4);
+            final Runnable apply = mainQueue.poll(10, TimeUnit.SECONDS);
+            assertNotNull(apply);
+            apply.run();
+        } finally {
+            pool.shutdown();
+        }
+        assertSameItems(expected, mList);
+        assertStorageIntegrity();
+    }
+
+    private void clearEvents() {
+        mAdditions.clear();
+        mRemovals.clear();
+        mMoves.clear();
+        mUpdates.clear();
+    }
+
+    private static Item[] createRandomItems(Random random, int count) {
+        final Item[] items = new Item[count];
+        for (int i = 0; i < count; i++) {
+            // same ids have the same sort order so that they are deduplicated
+            final int id = random.nextInt(count * 2);
+            items[i] = new Item(id, id % 1000);
+            items[i].data = random.nextInt(3);
+        }
+        return items;
+    }
+
+    private static void assertSameItems(SortedList<Item> expected, SortedList<Item> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i), actual.get(i));
+        }
+    }
+
     @Test
     public void testAddAllOutsideBatchedUpdates() {
         mList.add(new Item(1));
@@ -297,6 +297,69 @@ public class AdapterHelperTest extends AndroidTestCase {
         assertEquals(1, mAdapterHelper.mPendingUpdates.size());
     }
 
+    @Test
+    public void testMergeAppendedAdds() {
+        setupBasic(10, 2, 3);
+        add(10, 1);
+        add(11, 2);
+        add(3, 1);
+        assertEquals(2, mAdapterHelper.mPendingUpdates.size());
+        preProcess();
+    }
+
+    @Test
+    public void testDoNotMergeAddsInReverseOrder() {
+        setupBasic(10, 2, 3);
+        add(5, 1);
+        add(5, 1);
+        assertEquals(2, mAdapterHelper.mPendingUpdates.size());
+        preProcess();
+    }
+
+    @Test
+    public void testMergeTouchingRemoves() {
+        setupBasic(10, 2, 3);
+        rm(5, 1);
+        rm(4, 1);
+        rm(2, 3);
+        assertEquals(1, mAdapterHelper.mPendingUpdates.size());
+        preProcess();
+    }
+
+    @Test
+    public void testMergeAdjacentUpdates() {
+        setupBasic(10, 2, 3);
+        Object payload = new Object();
+        up(3, 1, payload);
+        up(4, 2, payload);
+        up(2, 1, payload);
+        assertEquals(1, mAdapterHelper.mPendingUpdates.size());
+        preProcess();
+        assertOps(mSecondPassUpdates, upOp(2, 3, payload));
+    }
+
+    @Test
+    public void testDoNotMergeOverlappingUpdatesOrDifferentPayloads() {
+        setupBasic(10, 2, 3);
+        up(3, 2, "a");
+        up(4, 1, "a");
+        up(5, 1, "b");
+        up(6, 1, null);
+        assertEquals(4, mAdapterHelper.mPendingUpdates.size());
+        preProcess();
+    }
+
+    @Test
+    public void testOnlyFirstPendingUpdateTriggersProcessing() {
+        setupBasic(10, 2, 3);
+        assertTrue(mAdapterHelper.onItemRangeChanged(2, 1, null));
+        assertFalse(mAdapterHelper.onItemRangeChanged(3, 1, null));
+        assertFalse(mAdapterHelper.onItemRangeInserted(0, 1));
+        assertEquals(2, mAdapterHelper.mPendingUpdates.size());
+        mAdapterHelper.reset();
+        assertTrue(mAdapterHelper.onItemRangeRemoved(0, 1));
+    }
+
     @Test
     public void testAddProcess() {
         setupBasic(0, 0, 0);
@@ -321,7 +384,7 @@ public class AdapterHelperTest extends AndroidTestCase {
         rm(3, 1);
         rm(3, 1);
         preProcess();
-        assertDispatch(1, 2);
+        assertDispatch(1, 1);
     }
 
     @Test
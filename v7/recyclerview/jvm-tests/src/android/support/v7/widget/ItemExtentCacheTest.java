@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.support.v7.widget;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import android.support.test.filters.SmallTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+@RunWith(JUnit4.class)
+@SmallTest
+public class ItemExtentCacheTest {
+    private static final double DELTA = 1e-6;
+
+    private final Random mRandom = new Random(7);
+    private final ItemExtentCache mCache = new ItemExtentCache();
+    // the expected extent of each item, null if it is not measured
+    private final List<Integer> mExtents = new ArrayList<>();
+
+    @Test
+    public void empty() {
+        assertThat(mCache.hasMeasuredItems(), is(false));
+        assertThat(mCache.getTotalExtent(), is(0d));
+        assertThat(mCache.findPositionAt(10), is(RecyclerView.NO_POSITION));
+    }
+
+    @Test
+    public void unmeasuredItemsUseAverage() {
+        setItemCount(10);
+        measure(0, 10);
+        measure(1, 30);
+        assertThat(mCache.getEstimatedExtent(), is(20d));
+        assertThat(mCache.getTotalExtent(), is(200d));
+        assertThat(mCache.getOffsetOf(1), is(10d));
+        assertThat(mCache.getOffsetOf(3), is(60d));
+        assertThat(mCache.findPositionAt(0), is(0));
+        assertThat(mCache.findPositionAt(9.5), is(0));
+        assertThat(mCache.findPositionAt(10), is(1));
+        assertThat(mCache.findPositionAt(59), is(2));
+        assertThat(mCache.findPositionAt(1000), is(9));
+    }
+
+    @Test
+    public void remeasure() {
+        setItemCount(5);
+        measure(2, 10);
+        measure(2, 50);
+        assertThat(mCache.getTotalExtent(), is(250d));
+        assertThat(mCache.getOffsetOf(3), is(150d));
+    }
+
+    @Test
+    public void insertKeepsExtentsOfItems() {
+        setItemCount(4);
+        for (int i = 0; i < 4; i++) {
+            measure(i, 10 * (i + 1));
+        }
+        mCache.onItemsAdded(2, 2);
+        mExtents.add(2, null);
+        mExtents.add(2, null);
+        assertThat(mCache.getExtent(4), is(30));
+        assertThat(mCache.getExtent(5), is(40));
+        assertCache();
+    }
+
+    @Test
+    public void removeForgetsExtents() {
+        setItemCount(4);
+        for (int i = 0; i < 4; i++) {
+            measure(i, 10 * (i + 1));
+        }
+        mCache.onItemsRemoved(1, 2);
+        mExtents.subList(1, 3).clear();
+        assertThat(mCache.getEstimatedExtent(), is(25d));
+        assertCache();
+    }
+
+    @Test
+    public void updateForgetsExtents() {
+        setItemCount(4);
+        for (int i = 0; i < 4; i++) {
+            measure(i, 10 * (i + 1));
+        }
+        assertCache();
+        mCache.onItemsUpdated(3, 1);
+        mExtents.set(3, null);
+        assertThat(mCache.getEstimatedExtent(), is(20d));
+        assertCache();
+        mCache.onItemsUpdated(0, 2);
+        mExtents.set(0, null);
+        mExtents.set(1, null);
+        assertThat(mCache.getEstimatedExtent(), is(30d));
+        assertCache();
+    }
+
+    @Test
+    public void move() {
+        setItemCount(4);
+        for (int i = 0; i < 4; i++) {
+            measure(i, 10 * (i + 1));
+        }
+        mCache.onItemsMoved(0, 3, 1);
+        mExtents.add(3, mExtents.remove(0));
+        assertCache();
+        mCache.onItemsMoved(3, 1, 1);
+        mExtents.add(1, mExtents.remove(3));
+        assertCache();
+    }
+
+    @Test
+    public void resize() {
+        setItemCount(10);
+        measure(8, 10);
+        setItemCount(5);
+        assertThat(mCache.hasMeasuredItems(), is(false));
+        setItemCount(20);
+        measure(19, 10);
+        assertCache();
+    }
+
+    @Test
+    public void random() {
+        setItemCount(1000);
+        for (int round = 0; round < 500; round++) {
+            final int size = mExtents.size();
+            switch (mRandom.nextInt(6)) {
+                case 0: {
+                    final int start = mRandom.nextInt(size + 1);
+                    final int count = 1 + mRandom.nextInt(20);
+                    mCache.onItemsAdded(start, count);
+                    for (int i = 0; i < count; i++) {
+                        mExtents.add(start, null);
+                    }
+                    break;
+                }
+                case 1: {
+                    if (size == 0) {
+                        break;
+                    }
+                    final int start = mRandom.nextInt(size);
+                    final int count = 1 + mRandom.nextInt(Math.min(20, size - start));
+                    mCache.onItemsRemoved(start, count);
+                    mExtents.subList(start, start + count).clear();
+                    break;
+                }
+                case 2: {
+                    if (size == 0) {
+                        break;
+                    }
+                    final int from = mRandom.nextInt(size);
+                    final int to = mRandom.nextInt(size);
+                    mCache.onItemsMoved(from, to, 1);
+                    mExtents.add(to, mExtents.remove(from));
+                    break;
+                }
+                case 3: {
+                    if (size == 0) {
+                        break;
+                    }
+                    final int position = mRandom.nextInt(size);
+                    mCache.onItemsUpdated(position, 1);
+                    mExtents.set(position, null);
+                    break;
+                }
+                default: {
+                    // lay out a few items
+                    for (int i = 0; i < 10 && size > 0; i++) {
+                        measure(mRandom.nextInt(size), mRandom.nextInt(200));
+                    }
+                    break;
+                }
+            }
+            if (round % 10 == 0) {
+                assertCache();
+            }
+        }
+        assertCache();
+    }
+
+    private void setItemCount(int count) {
+        mCache.setItemCount(count);
+        while (mExtents.size() < count) {
+            mExtents.add(null);
+        }
+        while (mExtents.size() > count) {
+            mExtents.remove(mExtents.size() - 1);
+        }
+    }
+
+    private void measure(int position, int extent) {
+        mCache.setExtent(position, extent);
+        mExtents.set(position, extent);
+    }
+
+    private void assertCache() {
+        assertThat(mCache.getItemCount(), is(mExtents.size()));
+        long sum = 0;
+        int count = 0;
+        for (Integer extent : mExtents) {
+            if (extent != null) {
+                sum += extent;
+                count++;
+            }
+        }
+        final double estimate = count == 0 ? 0 : (double) sum / count;
+        assertThat(mCache.getEstimatedExtent(), is(estimate));
+        double offset = 0;
+        for (int i = 0; i < mExtents.size(); i++) {
+            assertEquals("offset of " + i, offset, mCache.getOffsetOf(i));
+            final Integer extent = mExtents.get(i);
+            final double itemExtent = extent == null ? estimate : extent;
+            if (itemExtent > 0) {
+                // an offset inside the item finds it
+                assertThat(mCache.findPositionAt(offset + itemExtent / 2), is(i));
+            }
+            offset += itemExtent;
+        }
+        assertEquals("total", offset, mCache.getTotalExtent());
+    }
+
+    private static void assertEquals(String message, double expected, double actual) {
+        org.junit.Assert.assertEquals(message, expected, actual, DELTA * Math.max(1, expected));
+    }
+}
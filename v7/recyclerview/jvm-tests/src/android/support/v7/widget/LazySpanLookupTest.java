@@ -0,0 +1,324 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.support.v7.widget;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import android.support.test.filters.SmallTest;
+import android.support.v7.widget.StaggeredGridLayoutManager.LayoutParams;
+import android.support.v7.widget.StaggeredGridLayoutManager.LazySpanLookup;
+import android.support.v7.widget.StaggeredGridLayoutManager.LazySpanLookup.FullSpanItem;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+@RunWith(JUnit4.class)
+@SmallTest
+public class LazySpanLookupTest {
+    private static final int INVALID = LayoutParams.INVALID_SPAN_ID;
+    private static final int SPAN_COUNT = 3;
+    private static final int MAX_POSITION = 200;
+
+    private final Random mRandom = new Random(11);
+    private LazySpanLookup mLookup = new LazySpanLookup();
+    // the expected span of each position, positions after the end of the list are invalid
+    private final List<Integer> mSpans = new ArrayList<>();
+    // the expected full span items and their positions, sorted by position
+    private final List<FullSpanItem> mFullSpanItems = new ArrayList<>();
+    private final List<Integer> mFullSpanPositions = new ArrayList<>();
+
+    @Test
+    public void empty() {
+        assertThat(mLookup.getSpan(0), is(INVALID));
+        assertThat(mLookup.getRunCount(), is(0));
+        assertThat(mLookup.invalidateAfter(0), is(RecyclerView.NO_POSITION));
+        assertThat(mLookup.getFirstFullSpanItemInRange(0, 100, 0, false), nullValue());
+    }
+
+    @Test
+    public void runsAreMerged() {
+        for (int i = 0; i < 100; i++) {
+            setSpan(i, i < 50 ? 0 : 1);
+        }
+        assertThat(mLookup.getRunCount(), is(2));
+        setSpan(50, 0);
+        assertThat(mLookup.getRunCount(), is(2));
+        setSpan(20, 2);
+        assertThat(mLookup.getRunCount(), is(4));
+        setSpan(20, 0);
+        assertThat(mLookup.getRunCount(), is(2));
+        assertSpans();
+    }
+
+    @Test
+    public void farPositionDoesNotGrowStorage() {
+        setSpan(1000000, 1);
+        assertThat(mLookup.getRunCount(), is(2));
+        assertThat(mLookup.getSpan(999999), is(INVALID));
+        assertThat(mLookup.getSpan(1000000), is(1));
+        assertThat(mLookup.getSpan(1000001), is(INVALID));
+        mLookup.invalidateAfter(1000000);
+        assertThat(mLookup.getRunCount(), is(0));
+    }
+
+    @Test
+    public void invalidationStopsAtFullSpanItem() {
+        for (int i = 0; i < 30; i++) {
+            setSpan(i, i % SPAN_COUNT);
+        }
+        addFullSpanItem(20, 1);
+        assertThat(mLookup.invalidateAfter(10), is(21));
+        assertThat(mLookup.getSpan(15), is(INVALID));
+        assertThat(mLookup.getSpan(20), is(INVALID));
+        assertThat(mLookup.getSpan(21), is(21 % SPAN_COUNT));
+        assertThat(mLookup.getFullSpanItem(20), nullValue());
+    }
+
+    @Test
+    public void fullSpanItemsAreOffset() {
+        for (int i = 0; i < 30; i++) {
+            setSpan(i, i % SPAN_COUNT);
+        }
+        FullSpanItem first = addFullSpanItem(5, 1);
+        FullSpanItem second = addFullSpanItem(15, -1);
+        FullSpanItem third = addFullSpanItem(25, 1);
+        mLookup.offsetForAddition(10, 3);
+        assertThat(first.mPosition, is(5));
+        assertThat(second.mPosition, is(18));
+        assertThat(mLookup.getFullSpanItem(28), is(third));
+        mLookup.offsetForRemoval(16, 4);
+        assertThat(mLookup.getFullSpanItem(18), nullValue());
+        assertThat(third.mPosition, is(24));
+        assertThat(mLookup.getFirstFullSpanItemInRange(6, 30, 0, false), is(third));
+        assertThat(mLookup.getFirstFullSpanItemInRange(0, 30, -1, false), nullValue());
+    }
+
+    @Test
+    public void saveAndRestore() {
+        for (int i = 0; i < 40; i++) {
+            setSpan(i, (i / 4) % SPAN_COUNT);
+        }
+        FullSpanItem fsi = addFullSpanItem(12, -1);
+        fsi.mHasUnwantedGapAfter = true;
+        fsi.mGapPerSpan = new int[] {3, 0, 7};
+        addFullSpanItem(30, 1);
+        mLookup.invalidateAfter(32);
+        invalidateAfter(32);
+        int[] spans = mLookup.saveSpans();
+        // runs of 4 items each, the last 2 runs are invalidated
+        assertThat(spans.length, is(2 * 8 + 1));
+        restore();
+        assertSpans();
+        assertFullSpanItems();
+        FullSpanItem restoredFsi = mLookup.getFullSpanItem(12);
+        assertThat(restoredFsi.mHasUnwantedGapAfter, is(true));
+        assertThat(restoredFsi.mGapPerSpan, is(new int[] {3, 0, 7}));
+        assertThat(mLookup.getFullSpanItem(30).mGapPerSpan, nullValue());
+    }
+
+    @Test
+    public void randomOperations() {
+        for (int i = 0; i < 20000; i++) {
+            randomOperation();
+            assertSpans();
+            assertFullSpanItems();
+        }
+    }
+
+    private void randomOperation() {
+        final int position = mRandom.nextInt(MAX_POSITION);
+        final int count = 1 + mRandom.nextInt(20);
+        switch (mRandom.nextInt(8)) {
+            case 0:
+            case 1:
+                // spans are mostly assigned in order, as a layout does
+                for (int i = 0; i < count; i++) {
+                    setSpan(position + i, mRandom.nextInt(SPAN_COUNT));
+                }
+                break;
+            case 2:
+                if (!mFullSpanPositions.contains(position)) {
+                    setSpan(position, 0);
+                    addFullSpanItem(position, mRandom.nextBoolean() ? 1 : -1);
+                }
+                break;
+            case 3:
+                assertThat(mLookup.invalidateAfter(position) != RecyclerView.NO_POSITION,
+                        is(invalidateAfter(position)));
+                break;
+            case 4:
+                removeFullSpanItemsAfter(position);
+                invalidateAfter(position);
+                mLookup.forceInvalidateAfter(position);
+                break;
+            case 5:
+                mLookup.offsetForAddition(position, count);
+                for (int i = 0; i < count && position <= mSpans.size(); i++) {
+                    mSpans.add(position, INVALID);
+                }
+                offsetFullSpanItems(position, count);
+                break;
+            case 6:
+                mLookup.offsetForRemoval(position, count);
+                for (int i = 0; i < count && position < mSpans.size(); i++) {
+                    mSpans.remove(position);
+                }
+                for (int i = mFullSpanPositions.size() - 1; i >= 0; i--) {
+                    final int fsiPosition = mFullSpanPositions.get(i);
+                    if (fsiPosition >= position && fsiPosition < position + count) {
+                        removeFullSpanItem(i);
+                    }
+                }
+                offsetFullSpanItems(position + count, -count);
+                break;
+            case 7:
+                restore();
+                break;
+        }
+        trimSpans();
+    }
+
+    private void restore() {
+        final LazySpanLookup restored = new LazySpanLookup();
+        restored.restore(mLookup.saveSpans(), mLookup.saveFullSpanItems());
+        mLookup = restored;
+        // the full span items are restored as new objects
+        for (int i = 0; i < mFullSpanItems.size(); i++) {
+            final FullSpanItem fsi = mLookup.getFullSpanItem(mFullSpanPositions.get(i));
+            assertThat(fsi.mGapDir, is(mFullSpanItems.get(i).mGapDir));
+            mFullSpanItems.set(i, fsi);
+        }
+    }
+
+    private void setSpan(int position, int span) {
+        mLookup.setSpan(position, span);
+        while (mSpans.size() <= position) {
+            mSpans.add(INVALID);
+        }
+        mSpans.set(position, span);
+    }
+
+    private FullSpanItem addFullSpanItem(int position, int gapDir) {
+        FullSpanItem fsi = new FullSpanItem();
+        fsi.mPosition = position;
+        fsi.mGapDir = gapDir;
+        mLookup.addFullSpanItem(fsi);
+        int index = 0;
+        while (index < mFullSpanPositions.size() && mFullSpanPositions.get(index) < position) {
+            index++;
+        }
+        mFullSpanItems.add(index, fsi);
+        mFullSpanPositions.add(index, position);
+        return fsi;
+    }
+
+    /**
+     * Same as LazySpanLookup#invalidateAfter.
+     *
+     * @return True if any position was invalidated.
+     */
+    private boolean invalidateAfter(int position) {
+        if (position >= mSpans.size()) {
+            return false;
+        }
+        int end = mSpans.size() - 1;
+        int index = mFullSpanPositions.indexOf(position);
+        if (index != -1) {
+            removeFullSpanItem(index);
+        }
+        for (int i = 0; i < mFullSpanPositions.size(); i++) {
+            if (mFullSpanPositions.get(i) >= position) {
+                end = mFullSpanPositions.get(i);
+                removeFullSpanItem(i);
+                break;
+            }
+        }
+        for (int i = position; i <= end && i < mSpans.size(); i++) {
+            mSpans.set(i, INVALID);
+        }
+        return true;
+    }
+
+    private void removeFullSpanItemsAfter(int position) {
+        for (int i = mFullSpanPositions.size() - 1; i >= 0; i--) {
+            if (mFullSpanPositions.get(i) >= position) {
+                removeFullSpanItem(i);
+            }
+        }
+    }
+
+    private void removeFullSpanItem(int index) {
+        mFullSpanItems.remove(index);
+        mFullSpanPositions.remove(index);
+    }
+
+    private void offsetFullSpanItems(int positionStart, int offset) {
+        for (int i = 0; i < mFullSpanPositions.size(); i++) {
+            if (mFullSpanPositions.get(i) >= positionStart) {
+                mFullSpanPositions.set(i, mFullSpanPositions.get(i) + offset);
+            }
+        }
+    }
+
+    private void trimSpans() {
+        while (!mSpans.isEmpty() && mSpans.get(mSpans.size() - 1) == INVALID) {
+            mSpans.remove(mSpans.size() - 1);
+        }
+    }
+
+    private void assertSpans() {
+        for (int i = 0; i < MAX_POSITION * 2; i++) {
+            final int expected = i < mSpans.size() ? mSpans.get(i) : INVALID;
+            assertThat("span of " + i, mLookup.getSpan(i), is(expected));
+        }
+    }
+
+    private void assertFullSpanItems() {
+        for (int i = 0; i < mFullSpanItems.size(); i++) {
+            final int position = mFullSpanPositions.get(i);
+            assertThat("full span item at " + position, mLookup.getFullSpanItem(position),
+                    is(mFullSpanItems.get(i)));
+            assertThat(mFullSpanItems.get(i).mPosition, is(position));
+        }
+        for (int i = 0; i < MAX_POSITION * 2; i++) {
+            if (!mFullSpanPositions.contains(i)) {
+                assertThat("full span item at " + i, mLookup.getFullSpanItem(i), nullValue());
+            }
+        }
+        final int minPos = mRandom.nextInt(MAX_POSITION);
+        final int maxPos = minPos + mRandom.nextInt(MAX_POSITION);
+        final int gapDir = mRandom.nextInt(3) - 1;
+        FullSpanItem expected = null;
+        for (FullSpanItem fsi : mFullSpanItems) {
+            if (fsi.mPosition >= minPos && fsi.mPosition < maxPos
+                    && (gapDir == 0 || fsi.mGapDir == gapDir)) {
+                expected = fsi;
+                break;
+            }
+        }
+        assertThat(mLookup.getFirstFullSpanItemInRange(minPos, maxPos, gapDir, false),
+                is(expected));
+    }
+}
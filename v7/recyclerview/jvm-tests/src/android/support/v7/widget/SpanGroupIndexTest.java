@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.support.v7.widget;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import android.support.test.filters.SmallTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+@RunWith(JUnit4.class)
+@SmallTest
+public class SpanGroupIndexTest {
+    private static final int SPAN_COUNT = 5;
+
+    private final Random mRandom = new Random(42);
+    private final List<Integer> mSizes = new ArrayList<>();
+    private final GridLayoutManager.SpanSizeLookup mLookup =
+            new GridLayoutManager.SpanSizeLookup() {
+                @Override
+                public int getSpanSize(int position) {
+                    return mSizes.get(position);
+                }
+            };
+    private final SpanGroupIndex mIndex = new SpanGroupIndex(mLookup);
+
+    @Test
+    public void sameAsTraversal() {
+        addItems(0, 1000);
+        for (int i = 0; i < mSizes.size(); i++) {
+            assertIndex(i);
+        }
+        assertThat(mIndex.getCheckpointCount(), is(999 / SpanGroupIndex.CHECKPOINT_INTERVAL));
+    }
+
+    @Test
+    public void farPositionFirst() {
+        addItems(0, 1000);
+        assertIndex(999);
+        assertIndex(500);
+        assertIndex(3);
+    }
+
+    @Test
+    public void spanCountChange() {
+        addItems(0, 500);
+        assertIndex(400);
+        assertThat(mIndex.getSpanGroupIndex(400, 3), is(mLookup.getSpanGroupIndex(400, 3)));
+        assertThat(mIndex.getSpanIndex(250, 3), is(mLookup.getSpanIndex(250, 3)));
+    }
+
+    @Test
+    public void insert() {
+        addItems(0, 1000);
+        assertIndex(999);
+        addItems(10, 3);
+        mIndex.onItemsAdded(10, 3);
+        assertAll();
+    }
+
+    @Test
+    public void insertFullSpanKeepsLaterCheckpoints() {
+        for (int i = 0; i < 1000; i++) {
+            mSizes.add(i % 10 == 0 ? SPAN_COUNT : 1);
+        }
+        assertIndex(999);
+        mSizes.add(100, SPAN_COUNT);
+        mIndex.onItemsAdded(100, 1);
+        final int checkpoints = mIndex.getCheckpointCount();
+        assertAll();
+        assertThat(mIndex.getCheckpointCount(), is(checkpoints));
+    }
+
+    @Test
+    public void largeInsertGetsCheckpoints() {
+        addItems(0, 200);
+        assertIndex(199);
+        final int checkpoints = mIndex.getCheckpointCount();
+        addItems(100, 1000);
+        mIndex.onItemsAdded(100, 1000);
+        assertIndex(900);
+        assertThat(mIndex.getCheckpointCount() > checkpoints + 5, is(true));
+        assertAll();
+    }
+
+    @Test
+    public void remove() {
+        addItems(0, 1000);
+        assertIndex(999);
+        removeItems(300, 200);
+        mIndex.onItemsRemoved(300, 200);
+        assertAll();
+        removeItems(0, 64);
+        mIndex.onItemsRemoved(0, 64);
+        assertAll();
+    }
+
+    @Test
+    public void update() {
+        addItems(0, 1000);
+        assertIndex(999);
+        mSizes.set(5, SPAN_COUNT);
+        mSizes.set(700, SPAN_COUNT);
+        mIndex.onItemsUpdated(5, 1);
+        mIndex.onItemsUpdated(700, 1);
+        assertAll();
+    }
+
+    @Test
+    public void move() {
+        addItems(0, 1000);
+        assertIndex(999);
+        mSizes.add(800, mSizes.remove(20));
+        mIndex.onItemsMoved(20, 800, 1);
+        assertAll();
+        mSizes.add(3, mSizes.remove(990));
+        mIndex.onItemsMoved(990, 3, 1);
+        assertAll();
+    }
+
+    @Test
+    public void randomChanges() {
+        addItems(0, 2000);
+        for (int round = 0; round < 200; round++) {
+            // several changes without lookups in between, like a batch of adapter updates
+            final int changes = 1 + mRandom.nextInt(4);
+            for (int i = 0; i < changes; i++) {
+                randomChange();
+            }
+            for (int i = 0; i < 5 && !mSizes.isEmpty(); i++) {
+                assertIndex(mRandom.nextInt(mSizes.size()));
+            }
+        }
+        assertAll();
+    }
+
+    private void randomChange() {
+        final int size = mSizes.size();
+        switch (mRandom.nextInt(4)) {
+            case 0: {
+                final int start = mRandom.nextInt(size + 1);
+                final int count = 1 + mRandom.nextInt(100);
+                addItems(start, count);
+                mIndex.onItemsAdded(start, count);
+                break;
+            }
+            case 1: {
+                if (size == 0) {
+                    return;
+                }
+                final int start = mRandom.nextInt(size);
+                final int count = 1 + mRandom.nextInt(Math.min(100, size - start));
+                removeItems(start, count);
+                mIndex.onItemsRemoved(start, count);
+                break;
+            }
+            case 2: {
+                if (size == 0) {
+                    return;
+                }
+                final int start = mRandom.nextInt(size);
+                final int count = 1 + mRandom.nextInt(Math.min(10, size - start));
+                for (int i = start; i < start + count; i++) {
+                    mSizes.set(i, randomSpanSize());
+                }
+                mIndex.onItemsUpdated(start, count);
+                break;
+            }
+            case 3: {
+                if (size == 0) {
+                    return;
+                }
+                final int from = mRandom.nextInt(size);
+                final int to = mRandom.nextInt(size);
+                mSizes.add(to, mSizes.remove(from));
+                mIndex.onItemsMoved(from, to, 1);
+                break;
+            }
+        }
+    }
+
+    private void assertAll() {
+        for (int i = 0; i < mSizes.size(); i++) {
+            assertIndex(i);
+        }
+    }
+
+    private void assertIndex(int position) {
+        // the lookup traverses all items since its own index is not enabled
+        assertThat("span group index of " + position,
+                mIndex.getSpanGroupIndex(position, SPAN_COUNT),
+                is(mLookup.getSpanGroupIndex(position, SPAN_COUNT)));
+        assertThat("span index of " + position, mIndex.getSpanIndex(position, SPAN_COUNT),
+                is(mLookup.getSpanIndex(position, SPAN_COUNT)));
+    }
+
+    private void addItems(int start, int count) {
+        for (int i = 0; i < count; i++) {
+            mSizes.add(start + i, randomSpanSize());
+        }
+    }
+
+    private void removeItems(int start, int count) {
+        mSizes.subList(start, start + count).clear();
+    }
+
+    private int randomSpanSize() {
+        final int r = mRandom.nextInt(10);
+        return r == 0 ? SPAN_COUNT : r < 4 ? 2 : 1;
+    }
+}
@@ -105,6 +105,43 @@ public class ViewInfoStoreTest extends TestCase {
         assertNull(find(vh, FLAG_POST));
     }
 
+    @Test
+    public void addAndRemoveManyHolders() {
+        List<RecyclerView.ViewHolder> holders = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            RecyclerView.ViewHolder vh = new MockViewHolder();
+            holders.add(vh);
+            mStore.addToPreLayout(vh, new MockInfo());
+        }
+        for (int i = 0; i < 100; i += 2) {
+            mStore.removeViewHolder(holders.get(i));
+        }
+        assertEquals(50, mStore.mLayoutHolderMap.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i % 2 == 1, mStore.isInPreLayout(holders.get(i)));
+        }
+    }
+
+    @Test
+    public void recordsAreReusedAcrossLayouts() {
+        for (int i = 0; i < 20; i++) {
+            mStore.addToPreLayout(new MockViewHolder(), new MockInfo());
+        }
+        List<ViewInfoStore.InfoRecord> records = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            records.add(mStore.mLayoutHolderMap.valueAt(i));
+        }
+        mStore.clear();
+        for (int i = 0; i < 20; i++) {
+            RecyclerView.ViewHolder vh = new MockViewHolder();
+            MockInfo info = new MockInfo();
+            mStore.addToPostLayout(vh, info);
+            assertSame(records.get(i), mStore.mLayoutHolderMap.valueAt(i));
+            assertNull(find(vh, FLAG_PRE));
+            assertSame(info, find(vh, FLAG_POST));
+        }
+    }
+
     @Test
     public void popFromPreLayout() {
         assertEquals(0, sizeOf(FLAG_PRE));
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.support.v7.widget.helper;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import android.support.test.filters.SmallTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+@RunWith(JUnit4.class)
+@SmallTest
+public class ChildSpatialIndexTest {
+    private final Random mRandom = new Random(3);
+    private final ChildSpatialIndex mIndex = new ChildSpatialIndex();
+    private final List<int[]> mBounds = new ArrayList<>();
+
+    @Test
+    public void empty() {
+        mIndex.build();
+        assertThat(mIndex.query(0, 0, 100, 100), is(0));
+    }
+
+    @Test
+    public void grid() {
+        // 8 columns of 100x100 children
+        for (int i = 0; i < 64; i++) {
+            add((i % 8) * 100, (i / 8) * 100, (i % 8) * 100 + 100, (i / 8) * 100 + 100);
+        }
+        mIndex.build();
+        assertQuery(150, 150, 250, 250);
+        // touching edges overlap
+        assertThat(mIndex.query(100, 100, 100, 100), is(4));
+        assertQuery(-50, -50, 10, 10);
+        assertQuery(790, 790, 900, 900);
+        assertQuery(1000, 0, 1100, 100);
+        assertThat(mIndex.query(-300, -300, -200, -200), is(0));
+    }
+
+    @Test
+    public void mixedSizes() {
+        add(0, 0, 800, 50); // full span header
+        for (int i = 0; i < 40; i++) {
+            add((i % 4) * 200, 50 + (i / 4) * 80, (i % 4) * 200 + 200, 130 + (i / 4) * 80);
+        }
+        mIndex.build();
+        assertQuery(700, 0, 800, 60);
+        assertQuery(100, 100, 300, 300);
+    }
+
+    @Test
+    public void sparseItems() {
+        add(0, 0, 1, 1);
+        add(1000000, 1000000, 1000001, 1000001);
+        add(-500000, 20, -499999, 21);
+        mIndex.build();
+        assertQuery(-1, -1, 1, 1);
+        assertQuery(999999, 999999, 2000000, 2000000);
+        assertQuery(-600000, 0, 0, 100);
+    }
+
+    @Test
+    public void randomBounds() {
+        for (int round = 0; round < 200; round++) {
+            mIndex.clear();
+            mBounds.clear();
+            final int count = mRandom.nextInt(100);
+            final int cellSize = 10 + mRandom.nextInt(200);
+            for (int i = 0; i < count; i++) {
+                final int left = mRandom.nextInt(2000) - 200;
+                final int top = mRandom.nextInt(4000) - 200;
+                add(left, top, left + mRandom.nextInt(cellSize), top + mRandom.nextInt(cellSize));
+            }
+            mIndex.build();
+            for (int i = 0; i < 20; i++) {
+                final int left = mRandom.nextInt(2400) - 400;
+                final int top = mRandom.nextInt(4400) - 400;
+                assertQuery(left, top, left + mRandom.nextInt(300), top + mRandom.nextInt(300));
+            }
+        }
+    }
+
+    private void add(int left, int top, int right, int bottom) {
+        mIndex.add(left, top, right, bottom);
+        mBounds.add(new int[] {left, top, right, bottom});
+    }
+
+    private void assertQuery(int left, int top, int right, int bottom) {
+        final List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < mBounds.size(); i++) {
+            final int[] bounds = mBounds.get(i);
+            if (bounds[3] >= top && bounds[1] <= bottom
+                    && bounds[2] >= left && bounds[0] <= right) {
+                expected.add(i);
+            }
+        }
+        mIndex.query(left, top, right, bottom);
+        final List<Integer> result = new ArrayList<>();
+        for (int i = 0; i < mIndex.getResultCount(); i++) {
+            result.add(mIndex.getResult(i));
+        }
+        assertThat(result, is(expected));
+    }
+}
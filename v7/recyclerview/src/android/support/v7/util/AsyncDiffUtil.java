@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.UiThread;
+import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
+import android.support.v4.os.CancellationSignal;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A helper class that runs {@link DiffUtil} on a background {@link Executor} and dispatches the
+ * resulting updates to a {@link ListUpdateCallback} on the main thread.
+ * <p>
+ * Each call to {@link #calculateDiff(DiffUtil.Callback, boolean, OnDiffCalculatedListener)}
+ * starts a new generation. If a newer calculation is requested before the previous one
+ * completes, the previous one is cancelled and its result is dropped, so only the result of the
+ * latest request is ever dispatched. This makes it suitable for lists that are replaced frequently
+ * (e.g. on every server push) where intermediate states do not need to be displayed.
+ * <p>
+ * The k-line arrays used by the diff algorithm are kept between calculations so consecutive diffs
+ * of similarly sized lists do not re-allocate them.
+ * <p>
+ * Since the calculation runs on a background thread, the {@link DiffUtil.Callback} must not
+ * access data that may be modified while the diff is running. The usual approach is to diff
+ * immutable snapshots of the old and new lists and swap the new list into the adapter in
+ * {@link OnDiffCalculatedListener#onDiffCalculated(DiffUtil.DiffResult)}, right before the
+ * updates are dispatched.
+ * <pre>
+ *     mAsyncDiffUtil = new AsyncDiffUtil(backgroundExecutor, mListUpdateCallback);
+ *     ...
+ *     final List&lt;Item> newList = ...;
+ *     mAsyncDiffUtil.calculateDiff(new MyCallback(mAdapter.getData(), newList), true,
+ *             new AsyncDiffUtil.OnDiffCalculatedListener() {
+ *                 public void onDiffCalculated(DiffUtil.DiffResult result) {
+ *                     mAdapter.setData(newList);
+ *                 }
+ *             });
+ * </pre>
+ * This class is not thread safe and should only be accessed from the main thread.
+ */
+public class AsyncDiffUtil {
+
+    /**
+     * Listener that is notified on the main thread when a diff is calculated, right before its
+     * updates are dispatched to the {@link ListUpdateCallback}.
+     */
+    public interface OnDiffCalculatedListener {
+        /**
+         * Called on the main thread when the diff of the latest generation is ready. The backing
+         * data of the list should be replaced with the new list here.
+         *
+         * @param result The result that will be dispatched after this method returns.
+         */
+        @UiThread
+        void onDiffCalculated(DiffUtil.DiffResult result);
+    }
+
+    final Executor mBackgroundExecutor;
+    final Executor mMainThreadExecutor;
+    final ListUpdateCallback mUpdateCallback;
+
+    // Shared between background runs. A run takes the workspace for its duration and puts it back
+    // when done, overlapping runs fall back to allocating their own arrays.
+    final AtomicReference<DiffUtil.Workspace> mWorkspace =
+            new AtomicReference<>(new DiffUtil.Workspace());
+
+    // generation of the latest calculation request, only accessed on the main thread
+    int mMaxScheduledGeneration;
+
+    @Nullable
+    private CancellationSignal mRunningSignal;
+
+    /**
+     * Creates an AsyncDiffUtil that runs calculations on the given executor and dispatches
+     * results on the main thread.
+     *
+     * @param backgroundExecutor The executor to run diff calculations on.
+     * @param updateCallback The callback that receives the update operations.
+     */
+    public AsyncDiffUtil(@NonNull Executor backgroundExecutor,
+            @NonNull ListUpdateCallback updateCallback) {
+        this(backgroundExecutor, new MainThreadExecutor(), updateCallback);
+    }
+
+    @VisibleForTesting
+    AsyncDiffUtil(@NonNull Executor backgroundExecutor, @NonNull Executor mainThreadExecutor,
+            @NonNull ListUpdateCallback updateCallback) {
+        mBackgroundExecutor = backgroundExecutor;
+        mMainThreadExecutor = mainThreadExecutor;
+        mUpdateCallback = updateCallback;
+    }
+
+    /**
+     * Calculates the diff described by the given callback on the background executor and
+     * dispatches the updates to the {@link ListUpdateCallback} of this AsyncDiffUtil.
+     * <p>
+     * Any calculation that is still pending is cancelled and its result will not be dispatched.
+     *
+     * @param cb The callback that acts as a gateway to the backing list data. It is called on the
+     *           background thread.
+     * @param detectMoves True if DiffUtil should try to detect moved items, false otherwise.
+     * @param listener Optional listener that is called on the main thread before the updates of
+     *                 this calculation are dispatched.
+     *
+     * @return The generation of this calculation.
+     *
+     * @see DiffUtil#calculateDiff(DiffUtil.Callback, boolean)
+     */
+    @UiThread
+    public int calculateDiff(@NonNull final DiffUtil.Callback cb, final boolean detectMoves,
+            @Nullable final OnDiffCalculatedListener listener) {
+        cancelRunningCalculation();
+        final int runGeneration = ++mMaxScheduledGeneration;
+        final CancellationSignal signal = new CancellationSignal();
+        mRunningSignal = signal;
+        mBackgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final DiffUtil.DiffResult result = calculateInBackground(cb, detectMoves, signal);
+                if (result == null) {
+                    return;
+                }
+                mMainThreadExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mMaxScheduledGeneration == runGeneration && !signal.isCanceled()) {
+                            mRunningSignal = null;
+                            if (listener != null) {
+                                listener.onDiffCalculated(result);
+                            }
+                            result.dispatchUpdatesTo(mUpdateCallback);
+                        }
+                    }
+                });
+            }
+        });
+        return runGeneration;
+    }
+
+    /**
+     * Cancels the pending calculation, if any. Its updates will not be dispatched.
+     */
+    @UiThread
+    public void cancel() {
+        cancelRunningCalculation();
+        // bump the generation so that a result that is already posted is dropped as well
+        mMaxScheduledGeneration++;
+    }
+
+    /**
+     * Returns whether a calculation has been requested but its updates have not been dispatched
+     * yet.
+     *
+     * @return True if there is a pending calculation, false otherwise.
+     */
+    @UiThread
+    public boolean hasPendingCalculation() {
+        return mRunningSignal != null;
+    }
+
+    private void cancelRunningCalculation() {
+        if (mRunningSignal != null) {
+            mRunningSignal.cancel();
+            mRunningSignal = null;
+        }
+    }
+
+    @WorkerThread
+    @Nullable
+    DiffUtil.DiffResult calculateInBackground(DiffUtil.Callback cb, boolean detectMoves,
+            CancellationSignal signal) {
+        if (signal.isCanceled()) {
+            return null;
+        }
+        final DiffUtil.Workspace workspace = mWorkspace.getAndSet(null);
+        try {
+            return DiffUtil.calculateDiff(cb, detectMoves, workspace, signal);
+        } finally {
+            if (workspace != null) {
+                mWorkspace.set(workspace);
+            }
+        }
+    }
+
+    static class MainThreadExecutor implements Executor {
+        final Handler mHandler = new Handler(Looper.getMainLooper());
+
+        MainThreadExecutor() {
+        }
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            mHandler.post(command);
+        }
+    }
+}
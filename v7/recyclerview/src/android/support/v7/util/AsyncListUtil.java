@@ -16,12 +16,16 @@
 
 package android.support.v7.util;
 
+import android.support.annotation.Nullable;
 import android.support.annotation.UiThread;
 import android.support.annotation.WorkerThread;
 import android.util.Log;
 import android.util.SparseBooleanArray;
 import android.util.SparseIntArray;
 
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
 /**
  * A utility class that supports asynchronous content loading.
  * <p>
@@ -36,8 +40,11 @@ import android.util.SparseIntArray;
  * {@link ViewCallback} when the data is loaded. It may load some extra items for smoother
  * scrolling.
  * <p>
- * Note that this class uses a single thread to load the data, so it suitable to load data from
- * secondary storage such as disk, but not from network.
+ * Note that by default this class uses a single thread to load the data, so it suitable to load
+ * data from secondary storage such as disk, but not from network. An AsyncListUtil created with
+ * {@link #AsyncListUtil(Class, int, DataCallback, ViewCallback, Executor, int)} loads multiple
+ * tiles in parallel instead, which lets storage that handles concurrent reads well fill the list
+ * faster.
  * <p>
  * This class is designed to work with {@link android.support.v7.widget.RecyclerView}, but it does
  * not depend on it and can be used with other list views.
@@ -55,6 +62,10 @@ public class AsyncListUtil<T> {
 
     final TileList<T> mTileList;
 
+    // Set if tiles are loaded in parallel, null if they are loaded on the background thread.
+    final Executor mLoadExecutor;
+    final int mMaxParallelLoads;
+
     final ThreadUtil.MainThreadCallback<T> mMainThreadProxy;
     final ThreadUtil.BackgroundCallback<T> mBackgroundProxy;
 
@@ -86,10 +97,43 @@ public class AsyncListUtil<T> {
      */
     public AsyncListUtil(Class<T> klass, int tileSize, DataCallback<T> dataCallback,
                          ViewCallback viewCallback) {
+        this(klass, tileSize, dataCallback, viewCallback, null, 1);
+    }
+
+    /**
+     * Creates an AsyncListUtil that loads up to <code>maxParallelLoads</code> tiles at the same
+     * time on the given executor.
+     * <p>
+     * Tiles are loaded in the order of their distance from the visible range, and tiles in the
+     * direction of the scroll are loaded before the ones behind it. Tiles that have not been
+     * loaded yet when they leave the range returned by
+     * {@link ViewCallback#extendRangeInto(int[], int[], int)} are not loaded, and if they are being
+     * loaded, their data is discarded.
+     * <p>
+     * {@link DataCallback#fillData(Object[], int, int)} is called on the threads of the executor,
+     * so it may run concurrently with itself and with the other methods of the
+     * {@link DataCallback}. It may also still be running for the previous data set after
+     * {@link DataCallback#refreshData()} returns; the data it loads is discarded in that case.
+     *
+     * @param klass Class of the data item.
+     * @param tileSize Number of item per chunk loaded at once.
+     * @param dataCallback Data access callback.
+     * @param viewCallback Callback for querying visible item range and update notifications.
+     * @param loadExecutor The executor to load tiles on. It should have at least
+     *                     <code>maxParallelLoads</code> threads.
+     * @param maxParallelLoads The maximum number of tiles that are loaded at the same time.
+     */
+    public AsyncListUtil(Class<T> klass, int tileSize, DataCallback<T> dataCallback,
+            ViewCallback viewCallback, Executor loadExecutor, int maxParallelLoads) {
+        if (maxParallelLoads < 1) {
+            throw new IllegalArgumentException("maxParallelLoads must be at least 1");
+        }
         mTClass = klass;
         mTileSize = tileSize;
         mDataCallback = dataCallback;
         mViewCallback = viewCallback;
+        mLoadExecutor = loadExecutor;
+        mMaxParallelLoads = maxParallelLoads;
 
         mTileList = new TileList<T>(mTileSize);
 
@@ -296,13 +340,33 @@ public class AsyncListUtil<T> {
         private int mGeneration;
         private int mItemCount;
 
+        private OffHeapTileCache<T> mTileCache;
+
         private int mFirstRequiredTileStart;
         private int mLastRequiredTileStart;
 
+        // Only used when loading tiles on mLoadExecutor.
+        private int mFirstVisibleTileStart;
+        private int mLastVisibleTileStart;
+        private int mScrollHint;
+        final SparseBooleanArray mQueuedTiles = new SparseBooleanArray();
+        final ArrayList<TileLoadTask> mRunningLoads = new ArrayList<>();
+
         @Override
         public void refresh(int generation) {
             mGeneration = generation;
             mLoadedTiles.clear();
+            mTileCache = mDataCallback.getTileCache();
+            if (mTileCache != null) {
+                // the cached tiles belong to the previous data set
+                mTileCache.clear();
+            }
+            if (mLoadExecutor != null) {
+                mQueuedTiles.clear();
+                for (int i = 0; i < mRunningLoads.size(); i++) {
+                    mRunningLoads.get(i).mCancelled = true;
+                }
+            }
             mItemCount = mDataCallback.refreshData();
             mMainThreadProxy.updateItemCount(mGeneration, mItemCount);
         }
@@ -329,6 +393,14 @@ public class AsyncListUtil<T> {
                         mFirstRequiredTileStart, mLastRequiredTileStart);
             }
 
+            if (mLoadExecutor != null) {
+                mFirstVisibleTileStart = firstVisibleTileStart;
+                mLastVisibleTileStart = lastVisibleTileStart;
+                mScrollHint = scrollHint;
+                queueRequiredTiles();
+                return;
+            }
+
             // All pending tile requests are removed by ThreadUtil at this point.
             // Re-request all required tiles in the most optimal order.
             if (scrollHint == ViewCallback.HINT_SCROLL_DESC) {
@@ -368,11 +440,49 @@ public class AsyncListUtil<T> {
             TileList.Tile<T> tile = acquireTile();
             tile.mStartPosition = position;
             tile.mItemCount = Math.min(mTileSize, mItemCount - tile.mStartPosition);
-            mDataCallback.fillData(tile.mItems, tile.mStartPosition, tile.mItemCount);
+            if (!loadFromTileCache(tile)) {
+                mDataCallback.fillData(tile.mItems, tile.mStartPosition, tile.mItemCount);
+                storeInTileCache(tile);
+            }
             flushTileCache(scrollHint);
             addTile(tile);
         }
 
+        @Override
+        public void addLoadedTile(int generation, TileList.Tile<T> tile) {
+            TileLoadTask task = null;
+            for (int i = 0; i < mRunningLoads.size(); i++) {
+                if (mRunningLoads.get(i).mTile == tile) {
+                    task = mRunningLoads.remove(i);
+                    break;
+                }
+            }
+            final int position = tile.mStartPosition;
+            final boolean required = generation == mGeneration
+                    && position >= mFirstRequiredTileStart && position <= mLastRequiredTileStart
+                    && !isTileLoaded(position);
+            //noinspection ConstantConditions
+            if (!task.mFilled) {
+                // cancelled before it was filled, there is no data to recycle
+                tile.mNext = mRecycledRoot;
+                mRecycledRoot = tile;
+                if (required) {
+                    // the tile came back into range after it was cancelled
+                    mQueuedTiles.put(position, true);
+                }
+            } else if (required) {
+                storeInTileCache(tile);
+                flushTileCache(mScrollHint);
+                addTile(tile);
+            } else {
+                if (DEBUG) {
+                    log("discarding cancelled tile @%d", position);
+                }
+                recycleTile(tile);
+            }
+            startQueuedLoads();
+        }
+
         @Override
         public void recycleTile(TileList.Tile<T> tile) {
             if (DEBUG) {
@@ -384,6 +494,108 @@ public class AsyncListUtil<T> {
             mRecycledRoot = tile;
         }
 
+        /**
+         * Replaces the queued tiles with the tiles of the required range that are neither loaded
+         * nor being loaded, cancels the loads that are not required anymore and starts loading
+         * the queued tiles.
+         */
+        private void queueRequiredTiles() {
+            mQueuedTiles.clear();
+            for (int i = 0; i < mRunningLoads.size(); i++) {
+                final TileLoadTask task = mRunningLoads.get(i);
+                final int position = task.mTile.mStartPosition;
+                // Un-cancelling is best effort, if the task already skipped loading the tile it is
+                // queued again when the task returns it.
+                task.mCancelled = task.mGeneration != mGeneration
+                        || position < mFirstRequiredTileStart
+                        || position > mLastRequiredTileStart;
+            }
+            for (int position = mFirstRequiredTileStart; position <= mLastRequiredTileStart;
+                    position += mTileSize) {
+                if (!isTileLoaded(position) && !isTileLoading(position)) {
+                    mQueuedTiles.put(position, true);
+                }
+            }
+            startQueuedLoads();
+        }
+
+        private void startQueuedLoads() {
+            while (mRunningLoads.size() < mMaxParallelLoads && mQueuedTiles.size() > 0) {
+                int position = mQueuedTiles.keyAt(0);
+                int priority = getLoadPriority(position);
+                for (int i = 1; i < mQueuedTiles.size(); i++) {
+                    final int candidate = mQueuedTiles.keyAt(i);
+                    final int candidatePriority = getLoadPriority(candidate);
+                    if (candidatePriority < priority) {
+                        position = candidate;
+                        priority = candidatePriority;
+                    }
+                }
+                mQueuedTiles.delete(position);
+                if (DEBUG) {
+                    log("loading tile @%d in parallel, priority %d", position, priority);
+                }
+                TileList.Tile<T> tile = acquireTile();
+                tile.mStartPosition = position;
+                tile.mItemCount = Math.min(mTileSize, mItemCount - tile.mStartPosition);
+                if (loadFromTileCache(tile)) {
+                    flushTileCache(mScrollHint);
+                    addTile(tile);
+                    continue;
+                }
+                TileLoadTask task = new TileLoadTask(mGeneration, tile);
+                mRunningLoads.add(task);
+                mLoadExecutor.execute(task);
+            }
+        }
+
+        /**
+         * Returns the load priority of the tile at the given position, lower values are loaded
+         * first. Visible tiles come first, other tiles by their distance from the visible range.
+         * Tiles behind the scroll direction count as twice as far away.
+         */
+        private int getLoadPriority(int position) {
+            final int distance;
+            final boolean behind;
+            if (position < mFirstVisibleTileStart) {
+                distance = (mFirstVisibleTileStart - position) / mTileSize;
+                behind = mScrollHint == ViewCallback.HINT_SCROLL_ASC;
+            } else if (position > mLastVisibleTileStart) {
+                distance = (position - mLastVisibleTileStart) / mTileSize;
+                behind = mScrollHint == ViewCallback.HINT_SCROLL_DESC;
+            } else {
+                return 0;
+            }
+            return behind ? distance * 2 : distance;
+        }
+
+        private boolean loadFromTileCache(TileList.Tile<T> tile) {
+            if (mTileCache == null
+                    || !mTileCache.get(tile.mStartPosition, tile.mItems, tile.mItemCount)) {
+                return false;
+            }
+            if (DEBUG) {
+                log("loaded tile @%d from the tile cache", tile.mStartPosition);
+            }
+            return true;
+        }
+
+        private void storeInTileCache(TileList.Tile<T> tile) {
+            if (mTileCache != null) {
+                mTileCache.put(tile.mStartPosition, tile.mItems, tile.mItemCount);
+            }
+        }
+
+        private boolean isTileLoading(int position) {
+            for (int i = 0; i < mRunningLoads.size(); i++) {
+                final TileLoadTask task = mRunningLoads.get(i);
+                if (task.mGeneration == mGeneration && task.mTile.mStartPosition == position) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
         private TileList.Tile<T> acquireTile() {
             if (mRecycledRoot != null) {
                 TileList.Tile<T> result = mRecycledRoot;
@@ -438,11 +650,39 @@ public class AsyncListUtil<T> {
         }
     };
 
+    /**
+     * Loads a tile on {@link #mLoadExecutor} and hands it back to the background thread.
+     */
+    class TileLoadTask implements Runnable {
+        final int mGeneration;
+        final TileList.Tile<T> mTile;
+        // Set on the background thread when the tile is not required anymore.
+        volatile boolean mCancelled;
+        // Read on the background thread after the tile is handed back.
+        boolean mFilled;
+
+        TileLoadTask(int generation, TileList.Tile<T> tile) {
+            mGeneration = generation;
+            mTile = tile;
+        }
+
+        @Override
+        public void run() {
+            if (!mCancelled) {
+                mDataCallback.fillData(mTile.mItems, mTile.mStartPosition, mTile.mItemCount);
+                mFilled = true;
+            }
+            mBackgroundProxy.addLoadedTile(mGeneration, mTile);
+        }
+    }
+
     /**
      * The callback that provides data access for {@link AsyncListUtil}.
      *
      * <p>
-     * All methods are called on the background thread.
+     * All methods are called on the background thread, except for
+     * {@link #fillData(Object[], int, int)} of an AsyncListUtil that loads tiles in parallel,
+     * which is called on the threads of its executor.
      */
     public static abstract class DataCallback<T> {
 
@@ -506,6 +746,24 @@ public class AsyncListUtil<T> {
         public int getMaxCachedTiles() {
             return 10;
         }
+
+        /**
+         * Returns the cache to keep the tiles in after they are evicted from memory, or
+         * <code>null</code> to load evicted tiles again with {@link #fillData(Object[], int, int)}.
+         *
+         * <p>
+         * Loaded tiles are written to the cache, and tiles that are in the cache are read from it
+         * instead of being filled. This is called on every refresh, which also clears the cache.
+         * <p>
+         * The default implementation returns <code>null</code>.
+         *
+         * @return The tile cache or <code>null</code>.
+         */
+        @WorkerThread
+        @Nullable
+        public OffHeapTileCache<T> getTileCache() {
+            return null;
+        }
     }
 
     /**
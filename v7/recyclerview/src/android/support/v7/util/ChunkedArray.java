@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.util;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+
+/**
+ * An index addressable sequence of items, stored in fixed capacity chunks.
+ * <p>
+ * Unlike a single array, inserting or removing an item only shifts the items of one chunk. The
+ * number of items in each chunk is tracked in a Fenwick tree, so the chunk that holds a given
+ * index is found in O(log(chunk count)).
+ * <p>
+ * Used by {@link SortedList} for lists that are too large to be shifted on every change.
+ */
+@SuppressWarnings("unchecked")
+class ChunkedArray<T> {
+
+    static final int DEFAULT_CHUNK_CAPACITY = 512;
+
+    private final Class<T> mTClass;
+    private final int mChunkCapacity;
+
+    private Object[][] mChunks;
+    private int[] mChunkSizes;
+    private int mChunkCount;
+
+    // Fenwick tree over mChunkSizes, 1-based.
+    private int[] mTree;
+
+    private int mSize;
+
+    // The chunk that was last located by index and the index of its first item. Accessing
+    // neighbouring items, e.g. while iterating or binary searching within a chunk, does not need to
+    // walk the tree.
+    private int mLastChunk = -1;
+    private int mLastChunkStart;
+
+    ChunkedArray(Class<T> klass, int chunkCapacity) {
+        if (chunkCapacity < 2) {
+            throw new IllegalArgumentException("Chunk capacity must be at least 2");
+        }
+        mTClass = klass;
+        mChunkCapacity = chunkCapacity;
+        mChunks = new Object[4][];
+        mChunkSizes = new int[4];
+        mTree = new int[5];
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    T get(int index) {
+        final int chunk = locate(index);
+        return (T) mChunks[chunk][index - mLastChunkStart];
+    }
+
+    void set(int index, T item) {
+        final int chunk = locate(index);
+        mChunks[chunk][index - mLastChunkStart] = item;
+    }
+
+    void add(int index, T item) {
+        if (index < 0 || index > mSize) {
+            throw new IndexOutOfBoundsException(
+                    "cannot add item to " + index + " because size is " + mSize);
+        }
+        if (mChunkCount == 0) {
+            insertChunk(0, new Object[mChunkCapacity], 0);
+            rebuildTree();
+        }
+        int chunk;
+        int offset;
+        if (index == mSize) {
+            // append to the last chunk
+            chunk = mChunkCount - 1;
+            offset = mChunkSizes[chunk];
+        } else {
+            chunk = locate(index);
+            offset = index - mLastChunkStart;
+        }
+        if (mChunkSizes[chunk] == mChunkCapacity) {
+            // split the full chunk in half and insert into the half that holds the offset
+            final int half = mChunkCapacity / 2;
+            final Object[] upper = new Object[mChunkCapacity];
+            final Object[] lower = mChunks[chunk];
+            System.arraycopy(lower, half, upper, 0, mChunkCapacity - half);
+            Arrays.fill(lower, half, mChunkCapacity, null);
+            mChunkSizes[chunk] = half;
+            insertChunk(chunk + 1, upper, mChunkCapacity - half);
+            rebuildTree();
+            if (offset > half) {
+                chunk++;
+                offset -= half;
+            }
+        }
+        final Object[] data = mChunks[chunk];
+        System.arraycopy(data, offset, data, offset + 1, mChunkSizes[chunk] - offset);
+        data[offset] = item;
+        mChunkSizes[chunk]++;
+        updateTree(chunk, 1);
+        mSize++;
+        mLastChunk = -1;
+    }
+
+    T remove(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException(
+                    "cannot remove item at " + index + " because size is " + mSize);
+        }
+        final int chunk = locate(index);
+        final int offset = index - mLastChunkStart;
+        final Object[] data = mChunks[chunk];
+        final T item = (T) data[offset];
+        final int chunkSize = --mChunkSizes[chunk];
+        System.arraycopy(data, offset + 1, data, offset, chunkSize - offset);
+        data[chunkSize] = null;
+        mSize--;
+        mLastChunk = -1;
+        if (chunkSize == 0) {
+            removeChunk(chunk);
+            rebuildTree();
+        } else if (chunk + 1 < mChunkCount
+                && chunkSize + mChunkSizes[chunk + 1] <= mChunkCapacity / 2) {
+            // merge with the next chunk to keep the chunks from becoming sparse
+            System.arraycopy(mChunks[chunk + 1], 0, data, chunkSize, mChunkSizes[chunk + 1]);
+            mChunkSizes[chunk] += mChunkSizes[chunk + 1];
+            removeChunk(chunk + 1);
+            rebuildTree();
+        } else {
+            updateTree(chunk, -1);
+        }
+        return item;
+    }
+
+    void clear() {
+        Arrays.fill(mChunks, 0, mChunkCount, null);
+        Arrays.fill(mChunkSizes, 0, mChunkCount, 0);
+        mChunkCount = 0;
+        mSize = 0;
+        mLastChunk = -1;
+        rebuildTree();
+    }
+
+    /**
+     * Replaces the contents with the first {@code size} items of the given array. Chunks are
+     * filled to 3/4 of their capacity so that following insertions do not split them right away.
+     */
+    void setAll(T[] items, int size) {
+        clear();
+        final int fill = Math.max(1, mChunkCapacity * 3 / 4);
+        for (int start = 0; start < size; start += fill) {
+            final int count = Math.min(fill, size - start);
+            final Object[] chunk = new Object[mChunkCapacity];
+            System.arraycopy(items, start, chunk, 0, count);
+            insertChunk(mChunkCount, chunk, count);
+        }
+        mSize = size;
+        rebuildTree();
+    }
+
+    /**
+     * @return A new array holding all items, in order.
+     */
+    T[] toArray() {
+        final T[] result = (T[]) Array.newInstance(mTClass, mSize);
+        int position = 0;
+        for (int i = 0; i < mChunkCount; i++) {
+            System.arraycopy(mChunks[i], 0, result, position, mChunkSizes[i]);
+            position += mChunkSizes[i];
+        }
+        return result;
+    }
+
+    int getChunkCount() {
+        return mChunkCount;
+    }
+
+    int getChunkSize(int chunk) {
+        return mChunkSizes[chunk];
+    }
+
+    /**
+     * Finds the chunk that holds the given index and caches its start in mLastChunkStart.
+     */
+    private int locate(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Asked to get item at " + index
+                    + " but size is " + mSize);
+        }
+        if (mLastChunk >= 0 && index >= mLastChunkStart
+                && index < mLastChunkStart + mChunkSizes[mLastChunk]) {
+            return mLastChunk;
+        }
+        // Fenwick tree descent for the last chunk whose prefix sum is <= index
+        int position = 0;
+        int remaining = index;
+        for (int step = Integer.highestOneBit(mChunkCount); step > 0; step >>= 1) {
+            final int next = position + step;
+            if (next <= mChunkCount && mTree[next] <= remaining) {
+                position = next;
+                remaining -= mTree[next];
+            }
+        }
+        mLastChunk = position;
+        mLastChunkStart = index - remaining;
+        return position;
+    }
+
+    private void insertChunk(int chunk, Object[] data, int size) {
+        if (mChunkCount == mChunks.length) {
+            final int capacity = mChunkCount * 2;
+            mChunks = Arrays.copyOf(mChunks, capacity);
+            mChunkSizes = Arrays.copyOf(mChunkSizes, capacity);
+            mTree = new int[capacity + 1];
+        }
+        System.arraycopy(mChunks, chunk, mChunks, chunk + 1, mChunkCount - chunk);
+        System.arraycopy(mChunkSizes, chunk, mChunkSizes, chunk + 1, mChunkCount - chunk);
+        mChunks[chunk] = data;
+        mChunkSizes[chunk] = size;
+        mChunkCount++;
+    }
+
+    private void removeChunk(int chunk) {
+        mChunkCount--;
+        System.arraycopy(mChunks, chunk + 1, mChunks, chunk, mChunkCount - chunk);
+        System.arraycopy(mChunkSizes, chunk + 1, mChunkSizes, chunk, mChunkCount - chunk);
+        mChunks[mChunkCount] = null;
+        mChunkSizes[mChunkCount] = 0;
+    }
+
+    private void updateTree(int chunk, int delta) {
+        for (int i = chunk + 1; i <= mChunkCount; i += i & -i) {
+            mTree[i] += delta;
+        }
+    }
+
+    /**
+     * Rebuilds the Fenwick tree in O(chunk count), after chunks were inserted or removed.
+     */
+    private void rebuildTree() {
+        Arrays.fill(mTree, 0);
+        for (int i = 1; i <= mChunkCount; i++) {
+            mTree[i] += mChunkSizes[i - 1];
+            final int parent = i + (i & -i);
+            if (parent <= mChunkCount) {
+                mTree[parent] += mTree[i];
+            }
+        }
+        mLastChunk = -1;
+    }
+}
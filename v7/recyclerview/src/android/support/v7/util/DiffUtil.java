@@ -18,6 +18,7 @@ package android.support.v7.util;
 
 import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
+import android.support.v4.os.CancellationSignal;
 import android.support.v7.widget.RecyclerView;
 
 import java.util.ArrayList;
@@ -69,6 +70,8 @@ public class DiffUtil {
         // utility class, no instance.
     }
 
+    private static final int NO_POSITION = -1;
+
     private static final Comparator<Snake> SNAKE_COMPARATOR = new Comparator<Snake>() {
         @Override
         public int compare(Snake o1, Snake o2) {
@@ -106,6 +109,28 @@ public class DiffUtil {
      * old list into the new list.
      */
     public static DiffResult calculateDiff(Callback cb, boolean detectMoves) {
+        return calculateDiff(cb, detectMoves, null, null);
+    }
+
+    /**
+     * Calculates the diff, optionally re-using the k-line arrays of the given workspace and
+     * giving up as soon as the cancellation signal is triggered.
+     * <p>
+     * When a workspace is provided, its arrays are only used as scratch space during the
+     * calculation and the returned DiffResult allocates its own (smaller) status arrays, so the
+     * same workspace can be used for the next calculation.
+     *
+     * @param cb The callback that acts as a gateway to the backing list data
+     * @param detectMoves True if DiffUtil should try to detect moved items, false otherwise.
+     * @param workspace The scratch space to use or null to allocate new arrays
+     * @param cancellationSignal The signal to check while calculating or null if the calculation
+     *                           cannot be cancelled.
+     *
+     * @return A DiffResult or null if the calculation was cancelled.
+     */
+    @Nullable
+    static DiffResult calculateDiff(Callback cb, boolean detectMoves,
+            @Nullable Workspace workspace, @Nullable CancellationSignal cancellationSignal) {
         final int oldSize = cb.getOldListSize();
         final int newSize = cb.getNewListSize();
 
@@ -121,15 +146,28 @@ public class DiffUtil {
         // allocate forward and backward k-lines. K lines are diagonal lines in the matrix. (see the
         // paper for details)
         // These arrays lines keep the max reachable position for each k-line.
-        final int[] forward = new int[max * 2];
-        final int[] backward = new int[max * 2];
-
+        final int[] forward;
+        final int[] backward;
         // We pool the ranges to avoid allocations for each recursive call.
-        final List<Range> rangePool = new ArrayList<>();
+        final List<Range> rangePool;
+        if (workspace == null) {
+            forward = new int[max * 2];
+            backward = new int[max * 2];
+            rangePool = new ArrayList<>();
+        } else {
+            workspace.ensureCapacity(max * 2);
+            forward = workspace.mForward;
+            backward = workspace.mBackward;
+            rangePool = workspace.mRangePool;
+        }
         while (!stack.isEmpty()) {
+            if (cancellationSignal != null && cancellationSignal.isCanceled()) {
+                return null;
+            }
             final Range range = stack.remove(stack.size() - 1);
             final Snake snake = diffPartial(cb, range.oldListStart, range.oldListEnd,
-                    range.newListStart, range.newListEnd, forward, backward, max);
+                    range.newListStart, range.newListEnd, forward, backward, max,
+                    cancellationSignal);
             if (snake != null) {
                 if (snake.size > 0) {
                     snakes.add(snake);
@@ -173,6 +211,8 @@ public class DiffUtil {
                     right.newListStart = snake.y + snake.size;
                 }
                 stack.add(right);
+            } else if (cancellationSignal != null && cancellationSignal.isCanceled()) {
+                return null;
             } else {
                 rangePool.add(range);
             }
@@ -181,12 +221,132 @@ public class DiffUtil {
         // sort snakes
         Collections.sort(snakes, SNAKE_COMPARATOR);
 
-        return new DiffResult(cb, snakes, forward, backward, detectMoves);
+        final DiffResult result;
+        if (workspace == null) {
+            result = new DiffResult(cb, snakes, forward, backward, detectMoves, cancellationSignal);
+        } else {
+            // the workspace keeps its arrays for the next run, the result gets its own ones
+            result = new DiffResult(cb, snakes, new int[oldSize], new int[newSize], detectMoves,
+                    cancellationSignal);
+        }
+        if (cancellationSignal != null && cancellationSignal.isCanceled()) {
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * Calculates the list of update operations that can covert one list into the other one using
+     * the unique item ids provided by the given {@link ItemIdCallback}.
+     * <p>
+     * Instead of running Myers' algorithm, items are matched through their ids in O(N) time and
+     * the items that stay in place are found via the longest increasing subsequence of the
+     * matched positions in O(N log N) time. All other matched items are dispatched as moves. This
+     * makes the calculation fast even for very large lists with many moved items, as long as each
+     * item has a unique and stable id in both lists (e.g. an adapter that
+     * {@link RecyclerView.Adapter#hasStableIds() has stable ids}).
+     * <p>
+     * Note that the result may not be the minimal edit script Myers' algorithm would produce
+     * since moves are always detected.
+     *
+     * @param cb The callback that acts as a gateway to the backing list data and its item ids
+     *
+     * @return A DiffResult that contains the information about the edit sequence to convert the
+     * old list into the new list.
+     *
+     * @throws IllegalArgumentException If an id is used for more than one item in the same list.
+     */
+    public static DiffResult calculateDiffByItemIds(ItemIdCallback cb) {
+        final int oldSize = cb.getOldListSize();
+        final int newSize = cb.getNewListSize();
+
+        final IdIndexMap oldIds = new IdIndexMap(oldSize);
+        for (int i = 0; i < oldSize; i++) {
+            if (!oldIds.put(cb.getOldItemId(i), i)) {
+                throw new IllegalArgumentException("Duplicate item id " + cb.getOldItemId(i)
+                        + " at position " + i + " in the old list");
+            }
+        }
+
+        final int[] oldToNew = new int[oldSize];
+        final int[] newToOld = new int[newSize];
+        Arrays.fill(oldToNew, NO_POSITION);
+        for (int i = 0; i < newSize; i++) {
+            final int oldPos = oldIds.get(cb.getNewItemId(i));
+            if (oldPos != NO_POSITION && oldToNew[oldPos] != NO_POSITION) {
+                throw new IllegalArgumentException("Duplicate item id " + cb.getNewItemId(i)
+                        + " at position " + i + " in the new list");
+            }
+            newToOld[i] = oldPos;
+            if (oldPos != NO_POSITION) {
+                oldToNew[oldPos] = i;
+            }
+        }
+
+        final List<Snake> snakes = findStableSnakes(newToOld);
+        return new DiffResult(cb, snakes, oldToNew, newToOld);
+    }
+
+    /**
+     * Finds the longest increasing subsequence of the old positions of the matched new items and
+     * returns it as diagonal snakes. Items on these snakes are the ones that do not move.
+     */
+    private static List<Snake> findStableSnakes(int[] newToOld) {
+        final int newSize = newToOld.length;
+        // tails[k] is the new position of the smallest tail of an increasing subsequence of
+        // length k + 1, predecessors link each new position to the previous item in its sequence
+        final int[] tails = new int[newSize];
+        final int[] predecessors = new int[newSize];
+        int length = 0;
+        for (int i = 0; i < newSize; i++) {
+            final int oldPos = newToOld[i];
+            if (oldPos == NO_POSITION) {
+                continue;
+            }
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (newToOld[tails[mid]] < oldPos) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            predecessors[i] = low > 0 ? tails[low - 1] : NO_POSITION;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
 
+        final List<Snake> snakes = new ArrayList<>();
+        // walk the sequence backwards, merging consecutive diagonal items into a single snake
+        Snake current = null;
+        for (int i = length > 0 ? tails[length - 1] : NO_POSITION; i != NO_POSITION;
+                i = predecessors[i]) {
+            final int oldPos = newToOld[i];
+            if (current != null && current.x == oldPos + 1 && current.y == i + 1) {
+                current.x--;
+                current.y--;
+                current.size++;
+            } else {
+                current = new Snake();
+                current.x = oldPos;
+                current.y = i;
+                current.size = 1;
+                current.removal = false;
+                current.reverse = false;
+                snakes.add(current);
+            }
+        }
+        Collections.reverse(snakes);
+        return snakes;
     }
 
     private static Snake diffPartial(Callback cb, int startOld, int endOld,
-            int startNew, int endNew, int[] forward, int[] backward, int kOffset) {
+            int startNew, int endNew, int[] forward, int[] backward, int kOffset,
+            @Nullable CancellationSignal cancellationSignal) {
         final int oldSize = endOld - startOld;
         final int newSize = endNew - startNew;
 
@@ -200,6 +360,9 @@ public class DiffUtil {
         Arrays.fill(backward, kOffset - dLimit - 1 + delta, kOffset + dLimit + 1 + delta, oldSize);
         final boolean checkInFwd = delta % 2 != 0;
         for (int d = 0; d <= dLimit; d++) {
+            if (cancellationSignal != null && cancellationSignal.isCanceled()) {
+                return null;
+            }
             for (int k = -d; k <= d; k += 2) {
                 // find forward path
                 // we can reach k from k - 1 or k + 1. Check which one is further in the graph
@@ -347,6 +510,37 @@ public class DiffUtil {
         }
     }
 
+    /**
+     * A Callback that also provides a unique id for each item in both lists, used by
+     * {@link DiffUtil#calculateDiffByItemIds(ItemIdCallback)}.
+     * <p>
+     * Two items are considered the same item if they have the same id.
+     */
+    public abstract static class ItemIdCallback extends Callback {
+        /**
+         * Returns the id of the item at the given position in the old list. Each item in the old
+         * list must have a different id.
+         *
+         * @param oldItemPosition The position of the item in the old list
+         * @return The id of the item.
+         */
+        public abstract long getOldItemId(int oldItemPosition);
+
+        /**
+         * Returns the id of the item at the given position in the new list. Each item in the new
+         * list must have a different id.
+         *
+         * @param newItemPosition The position of the item in the new list
+         * @return The id of the item.
+         */
+        public abstract long getNewItemId(int newItemPosition);
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return getOldItemId(oldItemPosition) == getNewItemId(newItemPosition);
+        }
+    }
+
     /**
      * Snakes represent a match between two lists. It is optionally prefixed or postfixed with an
      * add or remove operation. See the Myers' paper for details.
@@ -402,6 +596,85 @@ public class DiffUtil {
         }
     }
 
+    /**
+     * Scratch space that can be shared between consecutive diff calculations to avoid allocating
+     * the k-line arrays and {@link Range}s on each run.
+     * <p>
+     * A Workspace must not be used by more than one calculation at a time.
+     */
+    static class Workspace {
+
+        int[] mForward = new int[0];
+
+        int[] mBackward = new int[0];
+
+        final List<Range> mRangePool = new ArrayList<>();
+
+        void ensureCapacity(int size) {
+            if (mForward.length < size) {
+                mForward = new int[size];
+                mBackward = new int[size];
+            }
+        }
+    }
+
+    /**
+     * An open addressing hash table from item ids to positions that does not box its keys.
+     */
+    static class IdIndexMap {
+
+        private final long[] mKeys;
+
+        // NO_POSITION marks an empty slot
+        private final int[] mValues;
+
+        private final int mMask;
+
+        IdIndexMap(int expectedSize) {
+            int capacity = 4;
+            // keep the load factor at or below 1/2
+            while (capacity < expectedSize * 2) {
+                capacity <<= 1;
+            }
+            mKeys = new long[capacity];
+            mValues = new int[capacity];
+            Arrays.fill(mValues, NO_POSITION);
+            mMask = capacity - 1;
+        }
+
+        private int slot(long id) {
+            final long hash = id * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mMask;
+        }
+
+        /**
+         * @return False if the id is already in the map, in which case the map is not modified.
+         */
+        boolean put(long id, int position) {
+            int slot = slot(id);
+            while (mValues[slot] != NO_POSITION) {
+                if (mKeys[slot] == id) {
+                    return false;
+                }
+                slot = (slot + 1) & mMask;
+            }
+            mKeys[slot] = id;
+            mValues[slot] = position;
+            return true;
+        }
+
+        int get(long id) {
+            int slot = slot(id);
+            while (mValues[slot] != NO_POSITION) {
+                if (mKeys[slot] == id) {
+                    return mValues[slot];
+                }
+                slot = (slot + 1) & mMask;
+            }
+            return NO_POSITION;
+        }
+    }
+
     /**
      * This class holds the information about the result of a
      * {@link DiffUtil#calculateDiff(Callback, boolean)} call.
@@ -468,9 +741,12 @@ public class DiffUtil {
          * @param oldItemStatuses An int[] that can be re-purposed to keep metadata
          * @param newItemStatuses An int[] that can be re-purposed to keep metadata
          * @param detectMoves True if this DiffResult will try to detect moved items
+         * @param cancellationSignal If not null, checked while matching items. A DiffResult that
+         *                           is constructed after the signal is cancelled is incomplete.
          */
         DiffResult(Callback callback, List<Snake> snakes, int[] oldItemStatuses,
-                int[] newItemStatuses, boolean detectMoves) {
+                int[] newItemStatuses, boolean detectMoves,
+                @Nullable CancellationSignal cancellationSignal) {
             mSnakes = snakes;
             mOldItemStatuses = oldItemStatuses;
             mNewItemStatuses = newItemStatuses;
@@ -481,7 +757,28 @@ public class DiffUtil {
             mNewListSize = callback.getNewListSize();
             mDetectMoves = detectMoves;
             addRootSnake();
-            findMatchingItems();
+            findMatchingItems(cancellationSignal);
+        }
+
+        /**
+         * Creates a DiffResult for items that were already matched by their ids. Moves are always
+         * detected.
+         *
+         * @param callback The callback that was used to calculate the diff
+         * @param snakes The list of snakes that contain the items that do not move
+         * @param oldToNew The new position of each old item or NO_POSITION if it was removed
+         * @param newToOld The old position of each new item or NO_POSITION if it was added
+         */
+        DiffResult(Callback callback, List<Snake> snakes, int[] oldToNew, int[] newToOld) {
+            mSnakes = snakes;
+            mOldListSize = oldToNew.length;
+            mNewListSize = newToOld.length;
+            mOldItemStatuses = new int[mOldListSize];
+            mNewItemStatuses = new int[mNewListSize];
+            mCallback = callback;
+            mDetectMoves = true;
+            addRootSnake();
+            findMatchingItems(oldToNew, newToOld);
         }
 
         /**
@@ -512,11 +809,14 @@ public class DiffUtil {
          * the statuses maps. DiffResult uses this pre-calculated information while dispatching
          * the updates (which is probably being called on the main thread).
          */
-        private void findMatchingItems() {
+        private void findMatchingItems(@Nullable CancellationSignal cancellationSignal) {
             int posOld = mOldListSize;
             int posNew = mNewListSize;
             // traverse the matrix from right bottom to 0,0.
             for (int i = mSnakes.size() - 1; i >= 0; i--) {
+                if (cancellationSignal != null && cancellationSignal.isCanceled()) {
+                    return;
+                }
                 final Snake snake = mSnakes.get(i);
                 final int endX = snake.x + snake.size;
                 final int endY = snake.y + snake.size;
@@ -548,6 +848,56 @@ public class DiffUtil {
             }
         }
 
+        /**
+         * Same as {@link #findMatchingItems(CancellationSignal)} but uses the positions matched by
+         * item ids instead of searching for the matching item.
+         * <p>
+         * The traversal order is the same, the item that is visited first is ignored and its move
+         * is dispatched when the matching item is visited.
+         */
+        private void findMatchingItems(int[] oldToNew, int[] newToOld) {
+            int posOld = mOldListSize;
+            int posNew = mNewListSize;
+            for (int i = mSnakes.size() - 1; i >= 0; i--) {
+                final Snake snake = mSnakes.get(i);
+                final int endX = snake.x + snake.size;
+                final int endY = snake.y + snake.size;
+                while (posOld > endX) {
+                    final int oldPos = posOld - 1;
+                    final int newPos = oldToNew[oldPos];
+                    if (newPos != NO_POSITION && mOldItemStatuses[oldPos] == 0) {
+                        final boolean theSame = mCallback.areContentsTheSame(oldPos, newPos);
+                        mOldItemStatuses[oldPos] = (newPos << FLAG_OFFSET) | FLAG_IGNORE;
+                        mNewItemStatuses[newPos] = (oldPos << FLAG_OFFSET)
+                                | (theSame ? FLAG_MOVED_NOT_CHANGED : FLAG_MOVED_CHANGED);
+                    }
+                    posOld--;
+                }
+                while (posNew > endY) {
+                    final int newPos = posNew - 1;
+                    final int oldPos = newToOld[newPos];
+                    if (oldPos != NO_POSITION && mNewItemStatuses[newPos] == 0) {
+                        final boolean theSame = mCallback.areContentsTheSame(oldPos, newPos);
+                        mNewItemStatuses[newPos] = (oldPos << FLAG_OFFSET) | FLAG_IGNORE;
+                        mOldItemStatuses[oldPos] = (newPos << FLAG_OFFSET)
+                                | (theSame ? FLAG_MOVED_NOT_CHANGED : FLAG_MOVED_CHANGED);
+                    }
+                    posNew--;
+                }
+                for (int j = 0; j < snake.size; j++) {
+                    final int oldItemPos = snake.x + j;
+                    final int newItemPos = snake.y + j;
+                    final boolean theSame = mCallback
+                            .areContentsTheSame(oldItemPos, newItemPos);
+                    final int changeFlag = theSame ? FLAG_NOT_CHANGED : FLAG_CHANGED;
+                    mOldItemStatuses[oldItemPos] = (newItemPos << FLAG_OFFSET) | changeFlag;
+                    mNewItemStatuses[newItemPos] = (oldItemPos << FLAG_OFFSET) | changeFlag;
+                }
+                posOld = snake.x;
+                posNew = snake.y;
+            }
+        }
+
         private void findAddition(int x, int y, int snakeIndex) {
             if (mOldItemStatuses[x - 1] != 0) {
                 return; // already set by a latter item
@@ -93,6 +93,7 @@ class MessageThreadUtil<T> implements ThreadUtil<T> {
             static final int UPDATE_RANGE = 2;
             static final int LOAD_TILE = 3;
             static final int RECYCLE_TILE = 4;
+            static final int ADD_LOADED_TILE = 5;
 
             @Override
             public void refresh(int generation) {
@@ -111,6 +112,11 @@ class MessageThreadUtil<T> implements ThreadUtil<T> {
                 sendMessage(SyncQueueItem.obtainMessage(LOAD_TILE, position, scrollHint));
             }
 
+            @Override
+            public void addLoadedTile(int generation, TileList.Tile<T> tile) {
+                sendMessage(SyncQueueItem.obtainMessage(ADD_LOADED_TILE, generation, tile));
+            }
+
             @Override
             public void recycleTile(TileList.Tile<T> tile) {
                 sendMessage(SyncQueueItem.obtainMessage(RECYCLE_TILE, 0, tile));
@@ -154,6 +160,10 @@ class MessageThreadUtil<T> implements ThreadUtil<T> {
                             case LOAD_TILE:
                                 callback.loadTile(msg.arg1, msg.arg2);
                                 break;
+                            case ADD_LOADED_TILE:
+                                //noinspection unchecked
+                                callback.addLoadedTile(msg.arg1, (TileList.Tile<T>) msg.data);
+                                break;
                             case RECYCLE_TILE:
                                 //noinspection unchecked
                                 callback.recycleTile((TileList.Tile<T>) msg.data);
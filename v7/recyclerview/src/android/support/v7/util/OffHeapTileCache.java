@@ -0,0 +1,358 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.util;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A second level cache for the tiles of an {@link AsyncListUtil}, which stores serialized tiles
+ * outside of the Java heap.
+ * <p>
+ * {@link AsyncListUtil} only keeps {@link AsyncListUtil.DataCallback#getMaxCachedTiles()} tiles
+ * in memory. When a tile that has been evicted is needed again, it is loaded from this cache
+ * instead of calling {@link AsyncListUtil.DataCallback#fillData(Object[], int, int)}, if it is
+ * still cached. Return the cache from {@link AsyncListUtil.DataCallback#getTileCache()} to use it.
+ * <p>
+ * Items are serialized with an {@link ItemCodec} into a direct {@link ByteBuffer} or a memory
+ * mapped file. The least recently used tiles are evicted when the serialized tiles do not fit into
+ * the maximum size. The cache is cleared when the {@link AsyncListUtil} is refreshed.
+ * <pre>
+ *     mTileCache = OffHeapTileCache.createDirect(new ItemCodec&lt;Contact>() {
+ *         public void write(Contact item, DataOutput out) throws IOException {
+ *             out.writeLong(item.id);
+ *             out.writeUTF(item.name);
+ *         }
+ *
+ *         public Contact read(DataInput in, Contact reuse) throws IOException {
+ *             Contact contact = reuse != null ? reuse : new Contact();
+ *             contact.id = in.readLong();
+ *             contact.name = in.readUTF();
+ *             return contact;
+ *         }
+ *     }, 8 * 1024 * 1024);
+ * </pre>
+ *
+ * @param <T> Type of the items.
+ */
+public class OffHeapTileCache<T> {
+    private static final String TAG = "OffHeapTileCache";
+
+    /**
+     * The unit of allocation in the buffer. Each tile takes up a whole number of blocks.
+     */
+    static final int BLOCK_SIZE = 1024;
+
+    private static final int NO_BLOCK = -1;
+
+    /**
+     * Serializes items for an {@link OffHeapTileCache}.
+     *
+     * @param <T> Type of the items.
+     */
+    public interface ItemCodec<T> {
+        /**
+         * Writes the given item.
+         *
+         * @param item The item to write.
+         * @param out The output to write the item to.
+         * @throws IOException If the item cannot be written. The tile of the item is not cached
+         *                     in that case.
+         */
+        void write(T item, DataOutput out) throws IOException;
+
+        /**
+         * Reads an item written by {@link #write(Object, DataOutput)}.
+         *
+         * @param in The input to read the item from.
+         * @param reuse An item that was previously in the same slot of the tile and may be reused,
+         *              or null.
+         * @return The item.
+         * @throws IOException If the item cannot be read. The tile is loaded from the data source
+         *                     in that case.
+         */
+        T read(DataInput in, @Nullable T reuse) throws IOException;
+    }
+
+    private final ItemCodec<T> mCodec;
+    private final ByteBuffer mBuffer;
+    private final int mBlockCount;
+
+    // Blocks of a tile and free blocks are chained through this array.
+    private final int[] mNextBlock;
+    private int mFreeBlock;
+    private int mFreeBlockCount;
+
+    // Tiles by start position, in the order of access.
+    private final LinkedHashMap<Integer, Entry> mEntries =
+            new LinkedHashMap<Integer, Entry>(0, 0.75f, true);
+
+    private final ExposedByteArrayOutputStream mBytesOut = new ExposedByteArrayOutputStream();
+    private final DataOutputStream mDataOut = new DataOutputStream(mBytesOut);
+    private byte[] mReadBuffer = new byte[BLOCK_SIZE];
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mEvictionCount;
+
+    /**
+     * Creates a cache that is stored in a direct {@link ByteBuffer}.
+     *
+     * @param codec The codec to serialize items with.
+     * @param maxSizeBytes The size of the buffer.
+     * @return A new cache.
+     */
+    public static <T> OffHeapTileCache<T> createDirect(@NonNull ItemCodec<T> codec,
+            int maxSizeBytes) {
+        return new OffHeapTileCache<>(codec, ByteBuffer.allocateDirect(maxSizeBytes));
+    }
+
+    /**
+     * Creates a cache that is stored in a memory mapped file. The pages of the file can be written
+     * back to storage and dropped by the system when memory is low, instead of counting against
+     * the memory of the application.
+     * <p>
+     * The contents of the file are not reused by another cache, the file can be deleted once the
+     * cache is not used anymore.
+     *
+     * @param codec The codec to serialize items with.
+     * @param file The file to map. It is created or resized if necessary.
+     * @param maxSizeBytes The size of the mapping.
+     * @return A new cache.
+     * @throws IOException If the file cannot be mapped.
+     */
+    public static <T> OffHeapTileCache<T> createMapped(@NonNull ItemCodec<T> codec,
+            @NonNull File file, int maxSizeBytes) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(maxSizeBytes);
+            // the mapping stays valid after the file is closed
+            return new OffHeapTileCache<>(codec, randomAccessFile.getChannel()
+                    .map(FileChannel.MapMode.READ_WRITE, 0, maxSizeBytes));
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    OffHeapTileCache(ItemCodec<T> codec, ByteBuffer buffer) {
+        mBlockCount = buffer.capacity() / BLOCK_SIZE;
+        if (mBlockCount == 0) {
+            throw new IllegalArgumentException("maxSizeBytes must be at least " + BLOCK_SIZE);
+        }
+        mCodec = codec;
+        mBuffer = buffer;
+        mNextBlock = new int[mBlockCount];
+        clear();
+    }
+
+    /**
+     * Removes all tiles from the cache.
+     */
+    public synchronized void clear() {
+        mEntries.clear();
+        for (int i = 0; i < mBlockCount; i++) {
+            mNextBlock[i] = i + 1;
+        }
+        mNextBlock[mBlockCount - 1] = NO_BLOCK;
+        mFreeBlock = 0;
+        mFreeBlockCount = mBlockCount;
+    }
+
+    /**
+     * Returns the number of bytes taken up by the cached tiles.
+     *
+     * @return The size of the cache in bytes.
+     */
+    public synchronized int size() {
+        return (mBlockCount - mFreeBlockCount) * BLOCK_SIZE;
+    }
+
+    /**
+     * Returns the maximum number of bytes the cached tiles can take up.
+     *
+     * @return The maximum size of the cache in bytes.
+     */
+    public synchronized int maxSize() {
+        return mBlockCount * BLOCK_SIZE;
+    }
+
+    /**
+     * Returns the number of tiles that were loaded from the cache.
+     *
+     * @return The number of hits.
+     */
+    public synchronized int hitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Returns the number of tiles that had to be loaded from the data source because they were
+     * not cached.
+     *
+     * @return The number of misses.
+     */
+    public synchronized int missCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Returns the number of tiles that were evicted to make room for other tiles.
+     *
+     * @return The number of evicted tiles.
+     */
+    public synchronized int evictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * Serializes the items of the tile at the given position into the cache, evicting the least
+     * recently used tiles if necessary.
+     */
+    synchronized void put(int startPosition, T[] items, int itemCount) {
+        remove(startPosition);
+        mBytesOut.reset();
+        try {
+            for (int i = 0; i < itemCount; i++) {
+                mCodec.write(items[i], mDataOut);
+            }
+            mDataOut.flush();
+        } catch (IOException e) {
+            Log.e(TAG, "cannot write tile @" + startPosition, e);
+            return;
+        }
+        final int byteCount = mBytesOut.size();
+        final int blockCount = (byteCount + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        if (blockCount > mBlockCount) {
+            return;
+        }
+        final Iterator<Entry> lru = mEntries.values().iterator();
+        while (mFreeBlockCount < blockCount) {
+            final Entry eldest = lru.next();
+            lru.remove();
+            freeBlocks(eldest);
+            mEvictionCount++;
+        }
+
+        final Entry entry = new Entry();
+        entry.mItemCount = itemCount;
+        entry.mByteCount = byteCount;
+        entry.mFirstBlock = blockCount == 0 ? NO_BLOCK : mFreeBlock;
+        entry.mBlockCount = blockCount;
+        final byte[] bytes = mBytesOut.getBuffer();
+        int block = mFreeBlock;
+        for (int offset = 0; offset < byteCount; offset += BLOCK_SIZE) {
+            mBuffer.position(block * BLOCK_SIZE);
+            mBuffer.put(bytes, offset, Math.min(BLOCK_SIZE, byteCount - offset));
+            final int next = mNextBlock[block];
+            if (offset + BLOCK_SIZE >= byteCount) {
+                mNextBlock[block] = NO_BLOCK;
+            }
+            block = next;
+        }
+        mFreeBlock = block;
+        mFreeBlockCount -= blockCount;
+        mEntries.put(startPosition, entry);
+    }
+
+    /**
+     * Deserializes the cached tile at the given position into the given items.
+     *
+     * @return True if the tile was cached, false otherwise.
+     */
+    synchronized boolean get(int startPosition, T[] items, int itemCount) {
+        final Entry entry = mEntries.get(startPosition);
+        if (entry == null || entry.mItemCount != itemCount) {
+            mMissCount++;
+            return false;
+        }
+        if (mReadBuffer.length < entry.mByteCount) {
+            mReadBuffer = new byte[entry.mBlockCount * BLOCK_SIZE];
+        }
+        int block = entry.mFirstBlock;
+        for (int offset = 0; offset < entry.mByteCount; offset += BLOCK_SIZE) {
+            mBuffer.position(block * BLOCK_SIZE);
+            mBuffer.get(mReadBuffer, offset, Math.min(BLOCK_SIZE, entry.mByteCount - offset));
+            block = mNextBlock[block];
+        }
+        final DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(mReadBuffer, 0, entry.mByteCount));
+        try {
+            for (int i = 0; i < itemCount; i++) {
+                items[i] = mCodec.read(in, items[i]);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "cannot read tile @" + startPosition, e);
+            remove(startPosition);
+            mMissCount++;
+            return false;
+        }
+        mHitCount++;
+        return true;
+    }
+
+    synchronized void remove(int startPosition) {
+        final Entry entry = mEntries.remove(startPosition);
+        if (entry != null) {
+            freeBlocks(entry);
+        }
+    }
+
+    private void freeBlocks(Entry entry) {
+        if (entry.mBlockCount == 0) {
+            return;
+        }
+        int last = entry.mFirstBlock;
+        while (mNextBlock[last] != NO_BLOCK) {
+            last = mNextBlock[last];
+        }
+        mNextBlock[last] = mFreeBlock;
+        mFreeBlock = entry.mFirstBlock;
+        mFreeBlockCount += entry.mBlockCount;
+    }
+
+    private static class Entry {
+        int mItemCount;
+        int mByteCount;
+        int mFirstBlock;
+        int mBlockCount;
+    }
+
+    private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+        ExposedByteArrayOutputStream() {
+            super(BLOCK_SIZE);
+        }
+
+        byte[] getBuffer() {
+            return buf;
+        }
+    }
+}
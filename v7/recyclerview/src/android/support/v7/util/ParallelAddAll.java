@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.util;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sorts, deduplicates and merges a batch of items into a snapshot of a {@link SortedList} on an
+ * {@link Executor}, for {@link SortedList#addAllAsync(Object[], boolean, Executor)}.
+ * <p>
+ * The input is split into slices that are sorted in parallel and then merged pairwise, level by
+ * level, until a single sorted run is left. No task ever waits for another one: the task that
+ * completes a level last schedules the next level, so this works on executors of any size,
+ * including single threaded ones. The sorted run is then deduplicated and merged with the
+ * snapshot exactly like {@link SortedList#addAll(Object[], boolean)} does, except that the
+ * update events are recorded as insert and change ranges instead of being dispatched.
+ * <p>
+ * The list applies the result on the main thread by swapping in {@link #mMergedData} and
+ * replaying the recorded ranges with {@link #dispatchUpdatesTo(ListUpdateCallback)}.
+ */
+@SuppressWarnings("unchecked")
+class ParallelAddAll<T> {
+
+    /**
+     * Slices smaller than this are not worth a task of their own.
+     */
+    static final int MIN_SLICE_SIZE = 2048;
+
+    private static final int OP_INSERT = 0;
+    private static final int OP_CHANGE = 1;
+    // each recorded op is stored as (type, position, count)
+    private static final int OP_SIZE = 3;
+
+    private final SortedList.Callback<T> mCallback;
+    private final Class<T> mTClass;
+    private final Executor mExecutor;
+    private final Runnable mOnCalculated;
+
+    /**
+     * The snapshot of the list that the items are merged into.
+     */
+    private final T[] mOldData;
+    private final int mOldDataSize;
+
+    /**
+     * The modification count of the list when the snapshot was taken. The result can only be
+     * swapped in if the list has not been modified since.
+     */
+    final int mModCount;
+
+    private final AtomicInteger mPendingTasks = new AtomicInteger();
+
+    // The sorted runs of the current level are in mSrc, split by mBounds. Merged runs of the next
+    // level are written to mDst.
+    private T[] mSrc;
+    private T[] mDst;
+    private int[] mBounds;
+
+    private volatile RuntimeException mFailure;
+
+    /**
+     * The items to add, sorted and deduplicated. Used to merge on the main thread if the snapshot
+     * is stale.
+     */
+    T[] mSortedItems;
+    int mSortedSize;
+
+    T[] mMergedData;
+    int mMergedSize;
+
+    private int[] mOps = new int[OP_SIZE * 8];
+    private int mOpsSize;
+
+    // Written last on the background thread, makes the fields above visible to the main thread.
+    private volatile boolean mCalculated;
+
+    ParallelAddAll(SortedList.Callback<T> callback, Class<T> klass, T[] items, T[] oldData,
+            int oldDataSize, int modCount, Executor executor, Runnable onCalculated) {
+        mCallback = callback;
+        mTClass = klass;
+        mSrc = items;
+        mOldData = oldData;
+        mOldDataSize = oldDataSize;
+        mModCount = modCount;
+        mExecutor = executor;
+        mOnCalculated = onCalculated;
+    }
+
+    /**
+     * Starts the calculation, using at most the given number of parallel sort tasks.
+     */
+    void start(int parallelism) {
+        final int size = mSrc.length;
+        final int slices = Math.max(1, Math.min(parallelism, size / MIN_SLICE_SIZE));
+        mBounds = new int[slices + 1];
+        for (int i = 1; i <= slices; i++) {
+            mBounds[i] = (int) ((long) size * i / slices);
+        }
+        final T[] items = mSrc;
+        mPendingTasks.set(slices);
+        for (int i = 0; i < slices; i++) {
+            final int from = mBounds[i];
+            final int to = mBounds[i + 1];
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (mFailure == null) {
+                        try {
+                            Arrays.sort(items, from, to, mCallback); // Arrays.sort is stable.
+                        } catch (RuntimeException e) {
+                            mFailure = e;
+                        }
+                    }
+                    onTaskDone();
+                }
+            });
+        }
+    }
+
+    boolean isCalculated() {
+        return mCalculated;
+    }
+
+    boolean isFailed() {
+        return mFailure != null;
+    }
+
+    /**
+     * Re-throws the exception thrown by the callback on the executor, if any.
+     */
+    void throwIfFailed() {
+        if (mFailure != null) {
+            throw mFailure;
+        }
+    }
+
+    /**
+     * Dispatches the recorded update events, in the same order as a synchronous addAll would.
+     */
+    void dispatchUpdatesTo(ListUpdateCallback callback) {
+        for (int i = 0; i < mOpsSize; i += OP_SIZE) {
+            if (mOps[i] == OP_INSERT) {
+                callback.onInserted(mOps[i + 1], mOps[i + 2]);
+            } else {
+                callback.onChanged(mOps[i + 1], mOps[i + 2], null);
+            }
+        }
+    }
+
+    private void onTaskDone() {
+        if (mPendingTasks.decrementAndGet() != 0) {
+            return;
+        }
+        final int runs = mBounds.length - 1;
+        if (runs == 1 || mFailure != null) {
+            finish();
+        } else {
+            mergeLevel(runs);
+        }
+    }
+
+    private void mergeLevel(int runs) {
+        if (mDst == null) {
+            mDst = (T[]) Array.newInstance(mTClass, mSrc.length);
+        }
+        final T[] src = mSrc;
+        final T[] dst = mDst;
+        final int[] bounds = mBounds;
+        final int nextRuns = (runs + 1) / 2;
+        final int[] nextBounds = new int[nextRuns + 1];
+        for (int i = 0; i < nextRuns; i++) {
+            nextBounds[i + 1] = bounds[Math.min(2 * i + 2, runs)];
+        }
+        // the next level reads from the array this level writes to
+        mSrc = dst;
+        mDst = src;
+        mBounds = nextBounds;
+        mPendingTasks.set(nextRuns);
+        for (int i = 0; i < nextRuns; i++) {
+            final int from = bounds[2 * i];
+            final int mid = bounds[Math.min(2 * i + 1, runs)];
+            final int to = bounds[Math.min(2 * i + 2, runs)];
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (mFailure == null) {
+                        try {
+                            mergeRuns(src, from, mid, to, dst);
+                        } catch (RuntimeException e) {
+                            mFailure = e;
+                        }
+                    }
+                    onTaskDone();
+                }
+            });
+        }
+    }
+
+    /**
+     * Stable merge of the sorted runs [from, mid) and [mid, to) of src into the same range of dst.
+     */
+    private void mergeRuns(T[] src, int from, int mid, int to, T[] dst) {
+        int left = from;
+        int right = mid;
+        int out = from;
+        while (left < mid && right < to) {
+            if (mCallback.compare(src[left], src[right]) <= 0) {
+                dst[out++] = src[left++];
+            } else {
+                dst[out++] = src[right++];
+            }
+        }
+        System.arraycopy(src, left, dst, out, mid - left);
+        System.arraycopy(src, right, dst, out + mid - left, to - right);
+    }
+
+    private void finish() {
+        if (mFailure == null) {
+            try {
+                mSortedItems = mSrc;
+                mSortedSize = SortedList.deduplicate(mSortedItems, mCallback);
+                mergeWithSnapshot();
+            } catch (RuntimeException e) {
+                mFailure = e;
+            }
+        }
+        mSrc = null;
+        mDst = null;
+        mCalculated = true;
+        mOnCalculated.run();
+    }
+
+    /**
+     * Same as SortedList#merge, except that the events are recorded.
+     */
+    private void mergeWithSnapshot() {
+        final T[] newData = mSortedItems;
+        final int newDataSize = mSortedSize;
+        if (mOldDataSize == 0) {
+            mMergedData = newData;
+            mMergedSize = newDataSize;
+            addOp(OP_INSERT, 0, newDataSize);
+            return;
+        }
+        mMergedData = (T[]) Array.newInstance(mTClass,
+                mOldDataSize + newDataSize + SortedList.CAPACITY_GROWTH);
+        final T[] merged = mMergedData;
+        int mergedSize = 0;
+        int oldDataStart = 0;
+        int newDataStart = 0;
+        while (oldDataStart < mOldDataSize || newDataStart < newDataSize) {
+            if (oldDataStart == mOldDataSize) {
+                int itemCount = newDataSize - newDataStart;
+                System.arraycopy(newData, newDataStart, merged, mergedSize, itemCount);
+                addOp(OP_INSERT, mergedSize, itemCount);
+                mergedSize += itemCount;
+                break;
+            }
+            if (newDataStart == newDataSize) {
+                int itemCount = mOldDataSize - oldDataStart;
+                System.arraycopy(mOldData, oldDataStart, merged, mergedSize, itemCount);
+                mergedSize += itemCount;
+                break;
+            }
+            T oldItem = mOldData[oldDataStart];
+            T newItem = newData[newDataStart];
+            int compare = mCallback.compare(oldItem, newItem);
+            if (compare > 0) {
+                merged[mergedSize] = newItem;
+                addOp(OP_INSERT, mergedSize++, 1);
+                newDataStart++;
+            } else if (compare == 0 && mCallback.areItemsTheSame(oldItem, newItem)) {
+                merged[mergedSize] = newItem;
+                if (!mCallback.areContentsTheSame(oldItem, newItem)) {
+                    addOp(OP_CHANGE, mergedSize, 1);
+                }
+                mergedSize++;
+                newDataStart++;
+                oldDataStart++;
+            } else {
+                merged[mergedSize++] = oldItem;
+                oldDataStart++;
+            }
+        }
+        mMergedSize = mergedSize;
+    }
+
+    private void addOp(int type, int position, int count) {
+        if (mOpsSize > 0) {
+            final int last = mOpsSize - OP_SIZE;
+            if (mOps[last] == type && mOps[last + 1] + mOps[last + 2] == position) {
+                mOps[last + 2] += count;
+                return;
+            }
+        }
+        if (mOpsSize == mOps.length) {
+            mOps = Arrays.copyOf(mOps, mOps.length * 2);
+        }
+        mOps[mOpsSize++] = type;
+        mOps[mOpsSize++] = position;
+        mOps[mOpsSize++] = count;
+    }
+}
@@ -17,9 +17,11 @@
 package android.support.v7.util;
 
 import java.lang.reflect.Array;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.concurrent.Executor;
 
 /**
  * A Sorted list implementation that can keep items in order and also notify for changes in the
@@ -42,12 +44,18 @@ public class SortedList<T> {
     public static final int INVALID_POSITION = -1;
 
     private static final int MIN_CAPACITY = 10;
-    private static final int CAPACITY_GROWTH = MIN_CAPACITY;
+    static final int CAPACITY_GROWTH = MIN_CAPACITY;
     private static final int INSERTION = 1;
     private static final int DELETION = 1 << 1;
     private static final int LOOKUP = 1 << 2;
     T[] mData;
 
+    /**
+     * Backing storage of a list created with {@link #createChunked(Class, Callback)}, null
+     * otherwise. When set, mData is only used during the merge phase of addAll.
+     */
+    ChunkedArray<T> mChunkedData;
+
     /**
      * A copy of the previous list contents used during the merge phase of addAll.
      */
@@ -72,6 +80,27 @@ public class SortedList<T> {
     private int mSize;
     private final Class<T> mTClass;
 
+    /**
+     * Incremented on every change of the list contents. Used to detect whether the snapshot that
+     * an {@link #addAllAsync(Object[], boolean, Executor)} call merged into is still current.
+     */
+    private int mModCount;
+
+    /**
+     * Calls to {@link #addAllAsync(Object[], boolean, Executor)} whose results have not been
+     * applied yet, in call order.
+     */
+    private ArrayDeque<ParallelAddAll<T>> mPendingAddAlls;
+
+    /**
+     * True while the events of an {@link #addAllAsync(Object[], boolean, Executor)} call are
+     * dispatched.
+     */
+    private boolean mDispatchingAddAll;
+
+    Executor mMainThreadExecutor;
+    private Runnable mApplyPendingAddAlls;
+
     /**
      * Creates a new SortedList of type T.
      *
@@ -96,6 +125,36 @@ public class SortedList<T> {
         mSize = 0;
     }
 
+    SortedList(Class<T> klass, Callback<T> callback, ChunkedArray<T> chunkedData) {
+        mTClass = klass;
+        mChunkedData = chunkedData;
+        mCallback = callback;
+        mSize = 0;
+    }
+
+    /**
+     * Creates a new SortedList of type T that stores its items in fixed size chunks instead of a
+     * single array.
+     * <p>
+     * A SortedList created by the constructors shifts the items after the changed index on every
+     * {@link #add(Object)} and {@link #remove(Object)}, which makes these O(n). A chunked
+     * SortedList only shifts the items of one chunk, so adding, removing, retrieving and finding
+     * items take O(log n) time regardless of the list size. Retrieving an item by index is slightly
+     * slower than with a single array, so this is only worth it for large lists that change often
+     * (e.g. many thousands of items).
+     * <p>
+     * The callback events are exactly the same as those of a SortedList created by the
+     * constructors.
+     *
+     * @param klass    The class of the contents of the SortedList.
+     * @param callback The callback that controls the behavior of SortedList.
+     * @return A new, empty SortedList.
+     */
+    public static <T> SortedList<T> createChunked(Class<T> klass, Callback<T> callback) {
+        return new SortedList<>(klass, callback,
+                new ChunkedArray<>(klass, ChunkedArray.DEFAULT_CHUNK_CAPACITY));
+    }
+
     /**
      * The number of items in the list.
      *
@@ -185,19 +244,135 @@ public class SortedList<T> {
         addAll(items.toArray(copy), true);
     }
 
+    /**
+     * Adds the given items to the list, like {@link #addAll(Object[], boolean)}, but sorts,
+     * deduplicates and merges them on the given executor. Only swapping in the merged data and
+     * dispatching the {@link Callback} events happen on the main thread, after the calculation
+     * completes.
+     * <p>
+     * The items are sorted in parallel slices, so this is worth it for large batches (e.g. tens
+     * of thousands of items) given an executor with multiple threads. For small batches it is
+     * slower than {@link #addAll(Object[], boolean)} because of the thread hops.
+     * <p>
+     * The items are merged into a snapshot of the list taken when this method is called. If the
+     * list is modified before the result is applied, the sorted items are merged into the current
+     * contents on the main thread instead, which still saves the sort. Results of multiple calls
+     * are applied in the order of the calls.
+     * <p>
+     * The events are the same as those of {@link #addAll(Object[], boolean)}, but the list already
+     * holds all the new items when they are dispatched.
+     * <p>
+     * {@link Callback#compare(Object, Object)}, {@link Callback#areItemsTheSame(Object, Object)}
+     * and {@link Callback#areContentsTheSame(Object, Object)} are called on the executor's threads,
+     * concurrently, so they must be thread safe and must not access the SortedList. If one of them
+     * throws, the exception is re-thrown on the main thread and the items are not added.
+     *
+     * @param items Array of items to be added into the list.
+     * @param mayModifyInput If true, SortedList is allowed to modify the input.
+     * @param executor The executor to sort and merge the items on.
+     * @see #addAll(Object[], boolean)
+     */
+    public void addAllAsync(T[] items, boolean mayModifyInput, Executor executor) {
+        addAllAsync(items, mayModifyInput, executor, Runtime.getRuntime().availableProcessors());
+    }
+
+    void addAllAsync(T[] items, boolean mayModifyInput, Executor executor, int parallelism) {
+        throwIfMerging();
+        if (items.length == 0) {
+            return;
+        }
+        if (!mayModifyInput) {
+            T[] copy = (T[]) Array.newInstance(mTClass, items.length);
+            System.arraycopy(items, 0, copy, 0, items.length);
+            items = copy;
+        }
+        final T[] snapshot;
+        if (mChunkedData != null) {
+            snapshot = mChunkedData.toArray();
+        } else {
+            snapshot = (T[]) Array.newInstance(mTClass, mSize);
+            System.arraycopy(mData, 0, snapshot, 0, mSize);
+        }
+        if (mMainThreadExecutor == null) {
+            mMainThreadExecutor = new AsyncDiffUtil.MainThreadExecutor();
+        }
+        if (mPendingAddAlls == null) {
+            mPendingAddAlls = new ArrayDeque<>();
+            mApplyPendingAddAlls = new Runnable() {
+                @Override
+                public void run() {
+                    applyPendingAddAlls();
+                }
+            };
+        }
+        final ParallelAddAll<T> addAll = new ParallelAddAll<>(mCallback, mTClass, items,
+                snapshot, mSize, mModCount, executor, new Runnable() {
+                    @Override
+                    public void run() {
+                        mMainThreadExecutor.execute(mApplyPendingAddAlls);
+                    }
+                });
+        mPendingAddAlls.add(addAll);
+        addAll.start(parallelism);
+    }
+
+    void applyPendingAddAlls() {
+        while (!mPendingAddAlls.isEmpty() && mPendingAddAlls.peek().isCalculated()) {
+            final ParallelAddAll<T> addAll = mPendingAddAlls.poll();
+            if (addAll.isFailed()) {
+                if (!mPendingAddAlls.isEmpty()) {
+                    // the calls after this one may already be calculated, apply them later
+                    mMainThreadExecutor.execute(mApplyPendingAddAlls);
+                }
+                addAll.throwIfFailed();
+            }
+            if (addAll.mModCount != mModCount) {
+                // the list changed after the snapshot was taken, merge the sorted items here
+                addAllSorted(addAll.mSortedItems, addAll.mSortedSize);
+                continue;
+            }
+            final boolean forceBatchedUpdates = !(mCallback instanceof BatchedCallback);
+            if (forceBatchedUpdates) {
+                beginBatchedUpdates();
+            }
+            if (mChunkedData != null) {
+                mChunkedData.setAll(addAll.mMergedData, addAll.mMergedSize);
+            } else {
+                mData = addAll.mMergedData;
+            }
+            mSize = addAll.mMergedSize;
+            mModCount++;
+            mDispatchingAddAll = true;
+            try {
+                addAll.dispatchUpdatesTo(mCallback);
+            } finally {
+                mDispatchingAddAll = false;
+            }
+            if (forceBatchedUpdates) {
+                endBatchedUpdates();
+            }
+        }
+    }
+
     private void addAllInternal(T[] newItems) {
+        Arrays.sort(newItems, mCallback);  // Arrays.sort is stable.
+        addAllSorted(newItems, deduplicate(newItems, mCallback));
+    }
+
+    /**
+     * Merges the first newSize items of the sorted and deduplicated newItems into the list.
+     */
+    private void addAllSorted(T[] newItems, int newSize) {
         final boolean forceBatchedUpdates = !(mCallback instanceof BatchedCallback);
         if (forceBatchedUpdates) {
             beginBatchedUpdates();
         }
 
-        mOldData = mData;
+        mOldData = mChunkedData != null ? mChunkedData.toArray() : mData;
         mOldDataStart = 0;
         mOldDataSize = mSize;
+        mModCount++;
 
-        Arrays.sort(newItems, mCallback);  // Arrays.sort is stable.
-
-        final int newSize = deduplicate(newItems);
         if (mSize == 0) {
             mData = newItems;
             mSize = newSize;
@@ -208,6 +383,11 @@ public class SortedList<T> {
         }
 
         mOldData = null;
+        if (mChunkedData != null) {
+            // the merge ran on arrays, move the result back into the chunks
+            mChunkedData.setAll(mData, mSize);
+            mData = null;
+        }
 
         if (forceBatchedUpdates) {
             endBatchedUpdates();
@@ -220,7 +400,7 @@ public class SortedList<T> {
      *
      * @return Number of deduplicated items at the beginning of the array.
      */
-    private int deduplicate(T[] items) {
+    static <T> int deduplicate(T[] items, Callback<T> callback) {
         if (items.length == 0) {
             throw new IllegalArgumentException("Input array must be non-empty");
         }
@@ -233,14 +413,15 @@ public class SortedList<T> {
         for (int i = 1; i < items.length; ++i) {
             T currentItem = items[i];
 
-            int compare = mCallback.compare(items[rangeStart], currentItem);
+            int compare = callback.compare(items[rangeStart], currentItem);
             if (compare > 0) {
                 throw new IllegalArgumentException("Input must be sorted in ascending order.");
             }
 
             if (compare == 0) {
                 // The range of equal items continues, update it.
-                final int sameItemPos = findSameItem(currentItem, items, rangeStart, rangeEnd);
+                final int sameItemPos = findSameItem(currentItem, items, rangeStart, rangeEnd,
+                        callback);
                 if (sameItemPos != INVALID_POSITION) {
                     // Replace the duplicate item.
                     items[sameItemPos] = currentItem;
@@ -263,9 +444,10 @@ public class SortedList<T> {
     }
 
 
-    private int findSameItem(T item, T[] items, int from, int to) {
+    private static <T> int findSameItem(T item, T[] items, int from, int to,
+            Callback<T> callback) {
         for (int pos = from; pos < to; pos++) {
-            if (mCallback.areItemsTheSame(items[pos], item)) {
+            if (callback.areItemsTheSame(items[pos], item)) {
                 return pos;
             }
         }
@@ -327,7 +509,7 @@ public class SortedList<T> {
     }
 
     private void throwIfMerging() {
-        if (mOldData != null) {
+        if (mOldData != null || mDispatchingAddAll) {
             throw new IllegalStateException("Cannot call this method from within addAll");
         }
     }
@@ -393,14 +575,14 @@ public class SortedList<T> {
         if (index == INVALID_POSITION) {
             index = 0;
         } else if (index < mSize) {
-            T existing = mData[index];
+            T existing = itemAt(mData, index);
             if (mCallback.areItemsTheSame(existing, item)) {
                 if (mCallback.areContentsTheSame(existing, item)) {
                     //no change but still replace the item
-                    mData[index] = item;
+                    setItemAt(index, item);
                     return index;
                 } else {
-                    mData[index] = item;
+                    setItemAt(index, item);
                     mCallback.onChanged(index, 1);
                     return index;
                 }
@@ -449,9 +631,15 @@ public class SortedList<T> {
     }
 
     private void removeItemAtIndex(int index, boolean notify) {
-        System.arraycopy(mData, index + 1, mData, index, mSize - index - 1);
-        mSize--;
-        mData[mSize] = null;
+        mModCount++;
+        if (mChunkedData != null) {
+            mChunkedData.remove(index);
+            mSize--;
+        } else {
+            System.arraycopy(mData, index + 1, mData, index, mSize - index - 1);
+            mSize--;
+            mData[mSize] = null;
+        }
         if (notify) {
             mCallback.onRemoved(index, 1);
         }
@@ -486,7 +674,7 @@ public class SortedList<T> {
             // different items, we can use comparison and may avoid lookup
             final int cmp = mCallback.compare(existing, item);
             if (cmp == 0) {
-                mData[index] = item;
+                setItemAt(index, item);
                 if (contentsChanged) {
                     mCallback.onChanged(index, 1);
                 }
@@ -562,8 +750,9 @@ public class SortedList<T> {
             if (index >= mMergedSize) {
                 return mOldData[index - mMergedSize + mOldDataStart];
             }
+            return mData[index];
         }
-        return mData[index];
+        return itemAt(mData, index);
     }
 
     /**
@@ -589,10 +778,27 @@ public class SortedList<T> {
         return findIndexOf(item, mData, 0, mSize, LOOKUP);
     }
 
-    private int findIndexOf(T item, T[] mData, int left, int right, int reason) {
+    /**
+     * Returns the item at the given index of the data array or of the chunked storage if the data
+     * array is null.
+     */
+    private T itemAt(T[] data, int index) {
+        return data == null ? mChunkedData.get(index) : data[index];
+    }
+
+    private void setItemAt(int index, T item) {
+        mModCount++;
+        if (mChunkedData != null) {
+            mChunkedData.set(index, item);
+        } else {
+            mData[index] = item;
+        }
+    }
+
+    private int findIndexOf(T item, T[] data, int left, int right, int reason) {
         while (left < right) {
             final int middle = (left + right) / 2;
-            T myItem = mData[middle];
+            T myItem = itemAt(data, middle);
             final int cmp = mCallback.compare(myItem, item);
             if (cmp < 0) {
                 left = middle + 1;
@@ -600,7 +806,7 @@ public class SortedList<T> {
                 if (mCallback.areItemsTheSame(myItem, item)) {
                     return middle;
                 } else {
-                    int exact = linearEqualitySearch(item, middle, left, right);
+                    int exact = linearEqualitySearch(item, data, middle, left, right);
                     if (reason == INSERTION) {
                         return exact == INVALID_POSITION ? middle : exact;
                     } else {
@@ -614,10 +820,10 @@ public class SortedList<T> {
         return reason == INSERTION ? left : INVALID_POSITION;
     }
 
-    private int linearEqualitySearch(T item, int middle, int left, int right) {
+    private int linearEqualitySearch(T item, T[] data, int middle, int left, int right) {
         // go left
         for (int next = middle - 1; next >= left; next--) {
-            T nextItem = mData[next];
+            T nextItem = itemAt(data, next);
             int cmp = mCallback.compare(nextItem, item);
             if (cmp != 0) {
                 break;
@@ -627,7 +833,7 @@ public class SortedList<T> {
             }
         }
         for (int next = middle + 1; next < right; next++) {
-            T nextItem = mData[next];
+            T nextItem = itemAt(data, next);
             int cmp = mCallback.compare(nextItem, item);
             if (cmp != 0) {
                 break;
@@ -644,7 +850,10 @@ public class SortedList<T> {
             throw new IndexOutOfBoundsException(
                     "cannot add item to " + index + " because size is " + mSize);
         }
-        if (mSize == mData.length) {
+        mModCount++;
+        if (mChunkedData != null) {
+            mChunkedData.add(index, item);
+        } else if (mSize == mData.length) {
             // we are at the limit enlarge
             T[] newData = (T[]) Array.newInstance(mTClass, mData.length + CAPACITY_GROWTH);
             System.arraycopy(mData, 0, newData, 0, index);
@@ -668,7 +877,12 @@ public class SortedList<T> {
             return;
         }
         final int prevSize = mSize;
-        Arrays.fill(mData, 0, prevSize, null);
+        mModCount++;
+        if (mChunkedData != null) {
+            mChunkedData.clear();
+        } else {
+            Arrays.fill(mData, 0, prevSize, null);
+        }
         mSize = 0;
         mCallback.onRemoved(0, prevSize);
     }
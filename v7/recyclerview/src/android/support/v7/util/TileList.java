@@ -16,7 +16,7 @@
 
 package android.support.v7.util;
 
-import android.util.SparseArray;
+import android.support.v4.util.SparseArrayCompat;
 
 import java.lang.reflect.Array;
 
@@ -28,7 +28,7 @@ class TileList<T> {
     final int mTileSize;
 
     // Keyed by start position.
-    private final SparseArray<Tile<T>> mTiles = new SparseArray<Tile<T>>(10);
+    private final SparseArrayCompat<Tile<T>> mTiles = new SparseArrayCompat<Tile<T>>(10);
 
     Tile<T> mLastAccessedTile;
 
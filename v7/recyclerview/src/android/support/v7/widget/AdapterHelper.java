@@ -20,7 +20,7 @@ import android.support.v4.util.Pools;
 import android.util.Log;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -31,7 +31,8 @@ import java.util.List;
  * not laid out, in which case, RecyclerView has no way of providing that item's view for
  * animations.
  * <p>
- * AdapterHelper creates an UpdateOp for each adapter data change then pre-processes them. During
+ * AdapterHelper records each adapter data change in an {@link UpdateOpBuffer}, merging it into the
+ * previous change when they can be dispatched as one, then pre-processes them. During
  * pre processing, AdapterHelper finds out which UpdateOps can be deferred to second layout pass
  * and which cannot. For the UpdateOps that cannot be deferred, AdapterHelper will change them
  * according to previously deferred operation and dispatch them before the first layout pass. It
@@ -53,7 +54,10 @@ class AdapterHelper implements OpReorderer.Callback {
 
     private Pools.Pool<UpdateOp> mUpdateOpPool = new Pools.SimplePool<UpdateOp>(UpdateOp.POOL_SIZE);
 
-    final ArrayList<UpdateOp> mPendingUpdates = new ArrayList<UpdateOp>();
+    final UpdateOpBuffer mPendingUpdates = new UpdateOpBuffer();
+
+    // Reused to reorder pending updates when there are MOVE ops.
+    private final ArrayList<UpdateOp> mReorderedUpdates = new ArrayList<UpdateOp>();
 
     final ArrayList<UpdateOp> mPostponedList = new ArrayList<UpdateOp>();
 
@@ -78,40 +82,66 @@ class AdapterHelper implements OpReorderer.Callback {
     }
 
     AdapterHelper addUpdateOp(UpdateOp... ops) {
-        Collections.addAll(mPendingUpdates, ops);
+        for (UpdateOp op : ops) {
+            mPendingUpdates.add(op.cmd, op.positionStart, op.itemCount, op.payload);
+        }
         return this;
     }
 
     void reset() {
-        recycleUpdateOpsAndClearList(mPendingUpdates);
+        mPendingUpdates.clear();
         recycleUpdateOpsAndClearList(mPostponedList);
         mExistingUpdateTypes = 0;
     }
 
     void preProcess() {
-        mOpReorderer.reorderOps(mPendingUpdates);
-        final int count = mPendingUpdates.size();
-        for (int i = 0; i < count; i++) {
-            UpdateOp op = mPendingUpdates.get(i);
-            switch (op.cmd) {
-                case UpdateOp.ADD:
-                    applyAdd(op);
-                    break;
-                case UpdateOp.REMOVE:
-                    applyRemove(op);
-                    break;
-                case UpdateOp.UPDATE:
-                    applyUpdate(op);
-                    break;
-                case UpdateOp.MOVE:
-                    applyMove(op);
-                    break;
+        final UpdateOpBuffer pending = mPendingUpdates;
+        final int count = pending.size();
+        if (pending.hasMoves()) {
+            // MOVE ops are pushed to the end of the list, which is done on UpdateOp objects.
+            final ArrayList<UpdateOp> ops = mReorderedUpdates;
+            for (int i = 0; i < count; i++) {
+                ops.add(obtainPendingUpdateOp(i));
             }
-            if (mOnItemProcessedCallback != null) {
-                mOnItemProcessedCallback.run();
+            pending.clear();
+            mOpReorderer.reorderOps(ops);
+            final int reorderedCount = ops.size();
+            for (int i = 0; i < reorderedCount; i++) {
+                applyPendingUpdateOp(ops.get(i));
             }
+            ops.clear();
+        } else {
+            for (int i = 0; i < count; i++) {
+                applyPendingUpdateOp(obtainPendingUpdateOp(i));
+            }
+            pending.clear();
         }
-        mPendingUpdates.clear();
+    }
+
+    private void applyPendingUpdateOp(UpdateOp op) {
+        switch (op.cmd) {
+            case UpdateOp.ADD:
+                applyAdd(op);
+                break;
+            case UpdateOp.REMOVE:
+                applyRemove(op);
+                break;
+            case UpdateOp.UPDATE:
+                applyUpdate(op);
+                break;
+            case UpdateOp.MOVE:
+                applyMove(op);
+                break;
+        }
+        if (mOnItemProcessedCallback != null) {
+            mOnItemProcessedCallback.run();
+        }
+    }
+
+    private UpdateOp obtainPendingUpdateOp(int index) {
+        final UpdateOpBuffer pending = mPendingUpdates;
+        return obtainUpdateOp(pending.mCmds[index], pending.mPositionStarts[index],
+                pending.mItemCounts[index], pending.mPayloads[index]);
     }
 
     void consumePostponedUpdates() {
@@ -456,7 +486,7 @@ class AdapterHelper implements OpReorderer.Callback {
     }
 
     boolean hasPendingUpdates() {
-        return mPendingUpdates.size() > 0;
+        return !mPendingUpdates.isEmpty();
     }
 
     boolean hasAnyUpdateTypes(int updateTypes) {
@@ -503,9 +533,10 @@ class AdapterHelper implements OpReorderer.Callback {
         if (itemCount < 1) {
             return false;
         }
-        mPendingUpdates.add(obtainUpdateOp(UpdateOp.UPDATE, positionStart, itemCount, payload));
+        final boolean added = mPendingUpdates.add(UpdateOp.UPDATE, positionStart, itemCount,
+                payload);
         mExistingUpdateTypes |= UpdateOp.UPDATE;
-        return mPendingUpdates.size() == 1;
+        return added && mPendingUpdates.size() == 1;
     }
 
     /**
@@ -515,9 +546,9 @@ class AdapterHelper implements OpReorderer.Callback {
         if (itemCount < 1) {
             return false;
         }
-        mPendingUpdates.add(obtainUpdateOp(UpdateOp.ADD, positionStart, itemCount, null));
+        final boolean added = mPendingUpdates.add(UpdateOp.ADD, positionStart, itemCount, null);
         mExistingUpdateTypes |= UpdateOp.ADD;
-        return mPendingUpdates.size() == 1;
+        return added && mPendingUpdates.size() == 1;
     }
 
     /**
@@ -527,9 +558,10 @@ class AdapterHelper implements OpReorderer.Callback {
         if (itemCount < 1) {
             return false;
         }
-        mPendingUpdates.add(obtainUpdateOp(UpdateOp.REMOVE, positionStart, itemCount, null));
+        final boolean added = mPendingUpdates.add(UpdateOp.REMOVE, positionStart, itemCount,
+                null);
         mExistingUpdateTypes |= UpdateOp.REMOVE;
-        return mPendingUpdates.size() == 1;
+        return added && mPendingUpdates.size() == 1;
     }
 
     /**
@@ -542,9 +574,9 @@ class AdapterHelper implements OpReorderer.Callback {
         if (itemCount != 1) {
             throw new IllegalArgumentException("Moving more than 1 item is not supported yet");
         }
-        mPendingUpdates.add(obtainUpdateOp(UpdateOp.MOVE, from, to, null));
+        final boolean added = mPendingUpdates.add(UpdateOp.MOVE, from, to, null);
         mExistingUpdateTypes |= UpdateOp.MOVE;
-        return mPendingUpdates.size() == 1;
+        return added && mPendingUpdates.size() == 1;
     }
 
     /**
@@ -556,7 +588,7 @@ class AdapterHelper implements OpReorderer.Callback {
         consumePostponedUpdates();
         final int count = mPendingUpdates.size();
         for (int i = 0; i < count; i++) {
-            UpdateOp op = mPendingUpdates.get(i);
+            UpdateOp op = obtainPendingUpdateOp(i);
             switch (op.cmd) {
                 case UpdateOp.ADD:
                     mCallback.onDispatchSecondPass(op);
@@ -578,38 +610,41 @@ class AdapterHelper implements OpReorderer.Callback {
             if (mOnItemProcessedCallback != null) {
                 mOnItemProcessedCallback.run();
             }
+            recycleUpdateOp(op);
         }
-        recycleUpdateOpsAndClearList(mPendingUpdates);
+        mPendingUpdates.clear();
         mExistingUpdateTypes = 0;
     }
 
     public int applyPendingUpdatesToPosition(int position) {
-        final int size = mPendingUpdates.size();
+        final UpdateOpBuffer pending = mPendingUpdates;
+        final int size = pending.size();
         for (int i = 0; i < size; i ++) {
-            UpdateOp op = mPendingUpdates.get(i);
-            switch (op.cmd) {
+            final int positionStart = pending.mPositionStarts[i];
+            final int itemCount = pending.mItemCounts[i];
+            switch (pending.mCmds[i]) {
                 case UpdateOp.ADD:
-                    if (op.positionStart <= position) {
-                        position += op.itemCount;
+                    if (positionStart <= position) {
+                        position += itemCount;
                     }
                     break;
                 case UpdateOp.REMOVE:
-                    if (op.positionStart <= position) {
-                        final int end = op.positionStart + op.itemCount;
+                    if (positionStart <= position) {
+                        final int end = positionStart + itemCount;
                         if (end > position) {
                             return RecyclerView.NO_POSITION;
                         }
-                        position -= op.itemCount;
+                        position -= itemCount;
                     }
                     break;
                 case UpdateOp.MOVE:
-                    if (op.positionStart == position) {
-                        position = op.itemCount;//position end
+                    if (positionStart == position) {
+                        position = itemCount;//position end
                     } else {
-                        if (op.positionStart < position) {
+                        if (positionStart < position) {
                             position -= 1;
                         }
-                        if (op.itemCount <= position) {
+                        if (itemCount <= position) {
                             position += 1;
                         }
                     }
@@ -721,6 +756,117 @@ class AdapterHelper implements OpReorderer.Callback {
         }
     }
 
+    /**
+     * Queue of update operations that are stored in parallel arrays, so that adding an operation
+     * does not allocate.
+     * <p>
+     * An operation that continues the last one in the queue is merged into it instead of being
+     * added, e.g. inserting items right after the items that were just inserted or changing the
+     * items next to the ones that were just changed with the same payload.
+     */
+    static class UpdateOpBuffer {
+
+        private static final int INITIAL_CAPACITY = 8;
+
+        int[] mCmds = new int[INITIAL_CAPACITY];
+
+        int[] mPositionStarts = new int[INITIAL_CAPACITY];
+
+        // holds the target position if this is a MOVE
+        int[] mItemCounts = new int[INITIAL_CAPACITY];
+
+        Object[] mPayloads = new Object[INITIAL_CAPACITY];
+
+        private int mSize;
+
+        private int mMoveCount;
+
+        int size() {
+            return mSize;
+        }
+
+        boolean isEmpty() {
+            return mSize == 0;
+        }
+
+        boolean hasMoves() {
+            return mMoveCount > 0;
+        }
+
+        /**
+         * @return True if the operation was added, false if it was merged into the last one.
+         */
+        boolean add(int cmd, int positionStart, int itemCount, Object payload) {
+            if (mSize > 0 && mergeWithLast(cmd, positionStart, itemCount, payload)) {
+                return false;
+            }
+            if (mSize == mCmds.length) {
+                final int capacity = mSize * 2;
+                mCmds = Arrays.copyOf(mCmds, capacity);
+                mPositionStarts = Arrays.copyOf(mPositionStarts, capacity);
+                mItemCounts = Arrays.copyOf(mItemCounts, capacity);
+                mPayloads = Arrays.copyOf(mPayloads, capacity);
+            }
+            mCmds[mSize] = cmd;
+            mPositionStarts[mSize] = positionStart;
+            mItemCounts[mSize] = itemCount;
+            mPayloads[mSize] = payload;
+            mSize++;
+            if (cmd == UpdateOp.MOVE) {
+                mMoveCount++;
+            }
+            return true;
+        }
+
+        private boolean mergeWithLast(int cmd, int positionStart, int itemCount, Object payload) {
+            final int last = mSize - 1;
+            if (mCmds[last] != cmd) {
+                return false;
+            }
+            final int lastStart = mPositionStarts[last];
+            final int lastCount = mItemCounts[last];
+            switch (cmd) {
+                case UpdateOp.ADD:
+                    // only appending keeps the order in which the items were inserted
+                    if (positionStart == lastStart + lastCount) {
+                        mItemCounts[last] = lastCount + itemCount;
+                        return true;
+                    }
+                    break;
+                case UpdateOp.REMOVE:
+                    // the removed range contains the position the last range was removed from
+                    if (positionStart <= lastStart && lastStart <= positionStart + itemCount) {
+                        mPositionStarts[last] = positionStart;
+                        mItemCounts[last] = lastCount + itemCount;
+                        return true;
+                    }
+                    break;
+                case UpdateOp.UPDATE:
+                    // overlapping ranges are not merged, each change needs its own payload
+                    if (payload != mPayloads[last]) {
+                        break;
+                    }
+                    if (positionStart == lastStart + lastCount) {
+                        mItemCounts[last] = lastCount + itemCount;
+                        return true;
+                    }
+                    if (positionStart + itemCount == lastStart) {
+                        mPositionStarts[last] = positionStart;
+                        mItemCounts[last] = lastCount + itemCount;
+                        return true;
+                    }
+                    break;
+            }
+            return false;
+        }
+
+        void clear() {
+            Arrays.fill(mPayloads, 0, mSize, null);
+            mSize = 0;
+            mMoveCount = 0;
+        }
+    }
+
     @Override
     public UpdateOp obtainUpdateOp(int cmd, int positionStart, int itemCount, Object payload) {
         UpdateOp op = mUpdateOpPool.acquire();
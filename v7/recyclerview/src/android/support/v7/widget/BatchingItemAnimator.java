@@ -0,0 +1,595 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.widget;
+
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.v4.animation.AnimatorCompatHelper;
+import android.support.v4.animation.AnimatorListenerCompat;
+import android.support.v4.animation.AnimatorUpdateListenerCompat;
+import android.support.v4.animation.ValueAnimatorCompat;
+import android.support.v4.view.ViewCompat;
+import android.support.v7.widget.RecyclerView.ViewHolder;
+import android.view.View;
+
+import java.util.List;
+
+/**
+ * An {@link RecyclerView.ItemAnimator} that runs the same remove, move, change and add animations
+ * as {@link DefaultItemAnimator}, but drives all of them from a single animator.
+ * <p>
+ * DefaultItemAnimator starts a separate view property animation for every animating View. When a
+ * large number of items move at once, e.g. after dispatching a {@link
+ * android.support.v7.util.DiffUtil.DiffResult DiffResult} that reorders the list, the animation
+ * objects and their callbacks can take up a significant part of each frame. This class keeps the
+ * start and end values of all animations in primitive arrays and updates the translation and
+ * alpha of every View in one loop on each animation frame.
+ * <p>
+ * Removals run first, then moves and changes, followed by additions, using the durations of this
+ * ItemAnimator. The single animator spans the whole batch, so the animations follow the animator
+ * duration scale of the system like those of DefaultItemAnimator.
+ *
+ * @see RecyclerView#setItemAnimator(RecyclerView.ItemAnimator)
+ */
+public class BatchingItemAnimator extends SimpleItemAnimator {
+    private static final int REMOVE = 0;
+    private static final int MOVE = 1;
+    private static final int CHANGE_OLD = 2;
+    private static final int CHANGE_NEW = 3;
+    private static final int ADD = 4;
+
+    private static final long NOT_SCHEDULED = -1;
+
+    // Animated properties. The start values of an animation are followed by its end values.
+    private static final int TRANSLATION_X = 0;
+    private static final int TRANSLATION_Y = 1;
+    private static final int ALPHA = 2;
+    private static final int PROPERTY_COUNT = 3;
+    private static final int VALUE_STRIDE = 2 * PROPERTY_COUNT;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Pending and running animations, one entry per animated View.
+    private ViewHolder[] mHolders = new ViewHolder[INITIAL_CAPACITY];
+    private int[] mKinds = new int[INITIAL_CAPACITY];
+    private long[] mStartTimes = new long[INITIAL_CAPACITY];
+    private long[] mDurations = new long[INITIAL_CAPACITY];
+    private boolean[] mStarted = new boolean[INITIAL_CAPACITY];
+    private float[] mValues = new float[INITIAL_CAPACITY * VALUE_STRIDE];
+    private int mSize;
+
+    // Callbacks are collected while the entries are updated and dispatched afterwards, so that
+    // they can safely call back into the animator.
+    private final HolderStack mStarting = new HolderStack();
+    private final HolderStack mFinished = new HolderStack();
+
+    ValueAnimatorCompat mAnimator;
+
+    // The start and end times of the entries are in batch time, the unscaled milliseconds since
+    // the first batch. The animator runs from mAnimatorStartTime to mEndTime.
+    private long mTime;
+    private long mAnimatorStartTime;
+    private long mEndTime;
+
+    private final AnimatorUpdateListenerCompat mUpdateListener =
+            new AnimatorUpdateListenerCompat() {
+                @Override
+                public void onAnimationUpdate(ValueAnimatorCompat animation) {
+                    if (animation == mAnimator) {
+                        final float fraction = linearFraction(animation.getAnimatedFraction());
+                        onFrame(mAnimatorStartTime
+                                + (long) (fraction * (mEndTime - mAnimatorStartTime)), false);
+                    }
+                }
+            };
+
+    private final AnimatorListenerCompat mAnimatorListener = new AnimatorListenerCompat() {
+        @Override
+        public void onAnimationStart(ValueAnimatorCompat animation) {
+        }
+
+        @Override
+        public void onAnimationEnd(ValueAnimatorCompat animation) {
+            if (animation == mAnimator) {
+                // The animator spans the batch, so all remaining entries end with it, also when
+                // the duration scale is 0.
+                mAnimator = null;
+                onFrame(mEndTime, true);
+            }
+        }
+
+        @Override
+        public void onAnimationCancel(ValueAnimatorCompat animation) {
+        }
+
+        @Override
+        public void onAnimationRepeat(ValueAnimatorCompat animation) {
+        }
+    };
+
+    @Override
+    public boolean animateRemove(ViewHolder holder) {
+        endAnimation(holder);
+        final View view = holder.itemView;
+        addEntry(holder, REMOVE, ViewCompat.getTranslationX(view),
+                ViewCompat.getTranslationY(view), 0);
+        return true;
+    }
+
+    @Override
+    public boolean animateAdd(ViewHolder holder) {
+        endAnimation(holder);
+        final View view = holder.itemView;
+        ViewCompat.setAlpha(view, 0);
+        addEntry(holder, ADD, ViewCompat.getTranslationX(view),
+                ViewCompat.getTranslationY(view), 1);
+        return true;
+    }
+
+    @Override
+    public boolean animateMove(ViewHolder holder, int fromX, int fromY, int toX, int toY) {
+        final View view = holder.itemView;
+        fromX += ViewCompat.getTranslationX(view);
+        fromY += ViewCompat.getTranslationY(view);
+        endAnimation(holder);
+        final int deltaX = toX - fromX;
+        final int deltaY = toY - fromY;
+        if (deltaX == 0 && deltaY == 0) {
+            dispatchMoveFinished(holder);
+            return false;
+        }
+        ViewCompat.setTranslationX(view, -deltaX);
+        ViewCompat.setTranslationY(view, -deltaY);
+        addEntry(holder, MOVE, 0, 0, ViewCompat.getAlpha(view));
+        return true;
+    }
+
+    @Override
+    public boolean animateChange(ViewHolder oldHolder, ViewHolder newHolder, int fromX, int fromY,
+            int toX, int toY) {
+        if (oldHolder == newHolder) {
+            // Don't know how to run change animations when the same view holder is re-used.
+            // run a move animation to handle position changes.
+            return animateMove(oldHolder, fromX, fromY, toX, toY);
+        }
+        final View oldView = oldHolder.itemView;
+        final float prevTranslationX = ViewCompat.getTranslationX(oldView);
+        final float prevTranslationY = ViewCompat.getTranslationY(oldView);
+        final float prevAlpha = ViewCompat.getAlpha(oldView);
+        endAnimation(oldHolder);
+        final int deltaX = (int) (toX - fromX - prevTranslationX);
+        final int deltaY = (int) (toY - fromY - prevTranslationY);
+        // recover prev translation state after ending animation
+        ViewCompat.setTranslationX(oldView, prevTranslationX);
+        ViewCompat.setTranslationY(oldView, prevTranslationY);
+        ViewCompat.setAlpha(oldView, prevAlpha);
+        addEntry(oldHolder, CHANGE_OLD, toX - fromX, toY - fromY, 0);
+        if (newHolder != null) {
+            // carry over translation values
+            endAnimation(newHolder);
+            final View newView = newHolder.itemView;
+            ViewCompat.setTranslationX(newView, -deltaX);
+            ViewCompat.setTranslationY(newView, -deltaY);
+            ViewCompat.setAlpha(newView, 0);
+            addEntry(newHolder, CHANGE_NEW, 0, 0, 1);
+        }
+        return true;
+    }
+
+    /**
+     * Adds a pending animation from the current translation and alpha of the View to the given
+     * values.
+     */
+    private void addEntry(ViewHolder holder, int kind, float toTranslationX, float toTranslationY,
+            float toAlpha) {
+        if (mSize == mHolders.length) {
+            grow();
+        }
+        final int index = mSize++;
+        final View view = holder.itemView;
+        mHolders[index] = holder;
+        mKinds[index] = kind;
+        mStartTimes[index] = NOT_SCHEDULED;
+        mDurations[index] = 0;
+        mStarted[index] = false;
+        final int offset = index * VALUE_STRIDE;
+        mValues[offset + TRANSLATION_X] = ViewCompat.getTranslationX(view);
+        mValues[offset + TRANSLATION_Y] = ViewCompat.getTranslationY(view);
+        mValues[offset + ALPHA] = ViewCompat.getAlpha(view);
+        mValues[offset + PROPERTY_COUNT + TRANSLATION_X] = toTranslationX;
+        mValues[offset + PROPERTY_COUNT + TRANSLATION_Y] = toTranslationY;
+        mValues[offset + PROPERTY_COUNT + ALPHA] = toAlpha;
+    }
+
+    private void grow() {
+        final int capacity = mHolders.length * 2;
+        final ViewHolder[] holders = new ViewHolder[capacity];
+        System.arraycopy(mHolders, 0, holders, 0, mSize);
+        mHolders = holders;
+        final int[] kinds = new int[capacity];
+        System.arraycopy(mKinds, 0, kinds, 0, mSize);
+        mKinds = kinds;
+        final long[] startTimes = new long[capacity];
+        System.arraycopy(mStartTimes, 0, startTimes, 0, mSize);
+        mStartTimes = startTimes;
+        final long[] durations = new long[capacity];
+        System.arraycopy(mDurations, 0, durations, 0, mSize);
+        mDurations = durations;
+        final boolean[] started = new boolean[capacity];
+        System.arraycopy(mStarted, 0, started, 0, mSize);
+        mStarted = started;
+        final float[] values = new float[capacity * VALUE_STRIDE];
+        System.arraycopy(mValues, 0, values, 0, mSize * VALUE_STRIDE);
+        mValues = values;
+    }
+
+    private void moveEntry(int from, int to) {
+        mHolders[to] = mHolders[from];
+        mKinds[to] = mKinds[from];
+        mStartTimes[to] = mStartTimes[from];
+        mDurations[to] = mDurations[from];
+        mStarted[to] = mStarted[from];
+        System.arraycopy(mValues, from * VALUE_STRIDE, mValues, to * VALUE_STRIDE, VALUE_STRIDE);
+    }
+
+    @Override
+    public void runPendingAnimations() {
+        boolean removalsPending = false;
+        boolean movesPending = false;
+        boolean changesPending = false;
+        boolean additionsPending = false;
+        for (int i = 0; i < mSize; i++) {
+            if (mStartTimes[i] != NOT_SCHEDULED) {
+                continue;
+            }
+            switch (mKinds[i]) {
+                case REMOVE:
+                    removalsPending = true;
+                    break;
+                case MOVE:
+                    movesPending = true;
+                    break;
+                case CHANGE_OLD:
+                case CHANGE_NEW:
+                    changesPending = true;
+                    break;
+                case ADD:
+                    additionsPending = true;
+                    break;
+            }
+        }
+        if (!removalsPending && !movesPending && !additionsPending && !changesPending) {
+            // nothing to animate
+            return;
+        }
+        final long now = mTime;
+        // moves and changes run in parallel after the removals, additions run last
+        final long moveDelay = removalsPending ? getRemoveDuration() : 0;
+        final long addDelay = moveDelay + Math.max(movesPending ? getMoveDuration() : 0,
+                changesPending ? getChangeDuration() : 0);
+        mEndTime = now;
+        for (int i = 0; i < mSize; i++) {
+            if (mStartTimes[i] != NOT_SCHEDULED) {
+                mEndTime = Math.max(mEndTime, mStartTimes[i] + mDurations[i]);
+                continue;
+            }
+            final long delay;
+            final long duration;
+            switch (mKinds[i]) {
+                case REMOVE:
+                    delay = 0;
+                    duration = getRemoveDuration();
+                    break;
+                case MOVE:
+                    delay = moveDelay;
+                    duration = getMoveDuration();
+                    break;
+                case ADD:
+                    delay = addDelay;
+                    duration = getAddDuration();
+                    break;
+                default:
+                    delay = moveDelay;
+                    duration = getChangeDuration();
+                    break;
+            }
+            mStartTimes[i] = now + delay;
+            mDurations[i] = duration;
+            mEndTime = Math.max(mEndTime, now + delay + duration);
+        }
+        startAnimator(now);
+    }
+
+    /**
+     * Starts an animator that runs from the given batch time to the end of the batch, replacing
+     * the running one.
+     */
+    private void startAnimator(long now) {
+        cancelAnimator();
+        View target = null;
+        for (int i = 0; i < mSize && target == null; i++) {
+            if (mStartTimes[i] != NOT_SCHEDULED) {
+                final ViewHolder holder = mHolders[i];
+                target = holder.mOwnerRecyclerView != null
+                        ? holder.mOwnerRecyclerView : holder.itemView;
+            }
+        }
+        if (target == null) {
+            return;
+        }
+        final ValueAnimatorCompat animator = AnimatorCompatHelper.emptyValueAnimator();
+        animator.setTarget(target);
+        mAnimatorStartTime = now;
+        animator.setDuration(Math.max(mEndTime - now, 0));
+        animator.addUpdateListener(mUpdateListener);
+        animator.addListener(mAnimatorListener);
+        mAnimator = animator;
+        animator.start();
+    }
+
+    /**
+     * Returns the linear time fraction of the animator. The animators of
+     * {@link AnimatorCompatHelper} interpolate their fraction with the default accelerate
+     * decelerate interpolator of the platform, except before HONEYCOMB_MR1.
+     */
+    private static float linearFraction(float animatedFraction) {
+        if (Build.VERSION.SDK_INT < 12) {
+            return animatedFraction;
+        }
+        // inverse of (cos((t + 1) * PI) / 2) + 0.5
+        final float clamped = Math.max(0f, Math.min(1f, animatedFraction));
+        return (float) (1.0 - Math.acos(2.0 * clamped - 1.0) / Math.PI);
+    }
+
+    private void cancelAnimator() {
+        final ValueAnimatorCompat animator = mAnimator;
+        if (animator != null) {
+            // clear it first so that the callbacks of the cancelled animator are ignored
+            mAnimator = null;
+            animator.cancel();
+        }
+    }
+
+    /**
+     * Updates the Views of all scheduled animations to the given time and removes the finished
+     * ones.
+     *
+     * @param now The current batch time.
+     * @param end True to move all scheduled animations to their end state.
+     */
+    void onFrame(long now, boolean end) {
+        mTime = Math.max(mTime, now);
+        boolean scheduled = false;
+        int size = 0;
+        for (int i = 0; i < mSize; i++) {
+            final long startTime = mStartTimes[i];
+            if (startTime == NOT_SCHEDULED || (!end && now < startTime)) {
+                scheduled |= startTime != NOT_SCHEDULED;
+                if (size != i) {
+                    moveEntry(i, size);
+                }
+                size++;
+                continue;
+            }
+            if (!mStarted[i]) {
+                mStarted[i] = true;
+                mStarting.push(mHolders[i], mKinds[i]);
+            }
+            final long duration = mDurations[i];
+            float fraction = end || duration <= 0 ? 1f : (now - startTime) / (float) duration;
+            if (fraction >= 1f) {
+                finishEntry(i);
+                continue;
+            }
+            // accelerate decelerate, like the default interpolator of a view property animation
+            fraction = (float) (Math.cos((fraction + 1) * Math.PI) / 2.0) + 0.5f;
+            final View view = mHolders[i].itemView;
+            final float[] values = mValues;
+            final int offset = i * VALUE_STRIDE;
+            for (int property = 0; property < PROPERTY_COUNT; property++) {
+                final float from = values[offset + property];
+                final float to = values[offset + PROPERTY_COUNT + property];
+                if (from != to) {
+                    setProperty(view, property, from + (to - from) * fraction);
+                }
+            }
+            scheduled = true;
+            if (size != i) {
+                moveEntry(i, size);
+            }
+            size++;
+        }
+        clearEntries(size);
+        if (!scheduled) {
+            cancelAnimator();
+        }
+        dispatchCallbacks();
+    }
+
+    private static void setProperty(View view, int property, float value) {
+        switch (property) {
+            case TRANSLATION_X:
+                ViewCompat.setTranslationX(view, value);
+                break;
+            case TRANSLATION_Y:
+                ViewCompat.setTranslationY(view, value);
+                break;
+            case ALPHA:
+                ViewCompat.setAlpha(view, value);
+                break;
+        }
+    }
+
+    /**
+     * Resets the View of the entry at the given index and queues its finish callback.
+     */
+    private void finishEntry(int index) {
+        final View view = mHolders[index].itemView;
+        final int kind = mKinds[index];
+        switch (kind) {
+            case REMOVE:
+            case ADD:
+                ViewCompat.setAlpha(view, 1);
+                break;
+            case MOVE:
+                ViewCompat.setTranslationX(view, 0);
+                ViewCompat.setTranslationY(view, 0);
+                break;
+            default:
+                ViewCompat.setAlpha(view, 1);
+                ViewCompat.setTranslationX(view, 0);
+                ViewCompat.setTranslationY(view, 0);
+                break;
+        }
+        mFinished.push(mHolders[index], kind);
+    }
+
+    private void clearEntries(int newSize) {
+        for (int i = newSize; i < mSize; i++) {
+            mHolders[i] = null;
+        }
+        mSize = newSize;
+    }
+
+    private void dispatchCallbacks() {
+        // pop the holders, the callbacks may end other animations and push more
+        while (mStarting.mSize > 0) {
+            final int index = --mStarting.mSize;
+            final ViewHolder holder = mStarting.mHolders[index];
+            mStarting.mHolders[index] = null;
+            switch (mStarting.mKinds[index]) {
+                case REMOVE:
+                    dispatchRemoveStarting(holder);
+                    break;
+                case MOVE:
+                    dispatchMoveStarting(holder);
+                    break;
+                case CHANGE_OLD:
+                    dispatchChangeStarting(holder, true);
+                    break;
+                case CHANGE_NEW:
+                    dispatchChangeStarting(holder, false);
+                    break;
+                case ADD:
+                    dispatchAddStarting(holder);
+                    break;
+            }
+        }
+        final boolean finishedAny = mFinished.mSize > 0;
+        while (mFinished.mSize > 0) {
+            final int index = --mFinished.mSize;
+            final ViewHolder holder = mFinished.mHolders[index];
+            mFinished.mHolders[index] = null;
+            switch (mFinished.mKinds[index]) {
+                case REMOVE:
+                    dispatchRemoveFinished(holder);
+                    break;
+                case MOVE:
+                    dispatchMoveFinished(holder);
+                    break;
+                case CHANGE_OLD:
+                    dispatchChangeFinished(holder, true);
+                    break;
+                case CHANGE_NEW:
+                    dispatchChangeFinished(holder, false);
+                    break;
+                case ADD:
+                    dispatchAddFinished(holder);
+                    break;
+            }
+        }
+        if (finishedAny && !isRunning()) {
+            dispatchAnimationsFinished();
+        }
+    }
+
+    @Override
+    public void endAnimation(ViewHolder item) {
+        int size = 0;
+        for (int i = 0; i < mSize; i++) {
+            if (mHolders[i] == item) {
+                finishEntry(i);
+                continue;
+            }
+            if (size != i) {
+                moveEntry(i, size);
+            }
+            size++;
+        }
+        if (size == mSize) {
+            return;
+        }
+        clearEntries(size);
+        if (mSize == 0) {
+            cancelAnimator();
+        }
+        dispatchCallbacks();
+    }
+
+    @Override
+    public void endAnimations() {
+        if (mSize == 0) {
+            return;
+        }
+        cancelAnimator();
+        for (int i = 0; i < mSize; i++) {
+            finishEntry(i);
+        }
+        clearEntries(0);
+        dispatchCallbacks();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return mSize > 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Like {@link DefaultItemAnimator}, this returns <code>true</code> if the payload list is not
+     * empty and runs a move animation for the reused ViewHolder.
+     */
+    @Override
+    public boolean canReuseUpdatedViewHolder(@NonNull ViewHolder viewHolder,
+            @NonNull List<Object> payloads) {
+        return !payloads.isEmpty() || super.canReuseUpdatedViewHolder(viewHolder, payloads);
+    }
+
+    /**
+     * A growable stack of ViewHolders and the kinds of their animations.
+     */
+    private static class HolderStack {
+        ViewHolder[] mHolders = new ViewHolder[INITIAL_CAPACITY];
+        int[] mKinds = new int[INITIAL_CAPACITY];
+        int mSize;
+
+        void push(ViewHolder holder, int kind) {
+            if (mSize == mHolders.length) {
+                final ViewHolder[] holders = new ViewHolder[mSize * 2];
+                System.arraycopy(mHolders, 0, holders, 0, mSize);
+                mHolders = holders;
+                final int[] kinds = new int[mSize * 2];
+                System.arraycopy(mKinds, 0, kinds, 0, mSize);
+                mKinds = kinds;
+            }
+            mHolders[mSize] = holder;
+            mKinds[mSize] = kind;
+            mSize++;
+        }
+    }
+}
@@ -20,8 +20,10 @@ import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 /**
  * Helper class to manage children.
@@ -43,12 +45,13 @@ class ChildHelper {
 
     final Bucket mBucket;
 
-    final List<View> mHiddenViews;
+    // Hidden views in the order they were hidden, with constant time lookup and removal.
+    final Set<View> mHiddenViews;
 
     ChildHelper(Callback callback) {
         mCallback = callback;
         mBucket = new Bucket();
-        mHiddenViews = new ArrayList<View>();
+        mHiddenViews = new LinkedHashSet<View>();
     }
 
     /**
@@ -115,20 +118,14 @@ class ChildHelper {
             return -1; //anything below 0 won't work as diff will be undefined.
         }
         final int limit = mCallback.getChildCount();
-        int offset = index;
-        while (offset < limit) {
-            final int removedBefore = mBucket.countOnesBefore(offset);
-            final int diff = index - (offset - removedBefore);
-            if (diff == 0) {
-                while (mBucket.get(offset)) { // ensure this offset is not hidden
-                    offset ++;
-                }
-                return offset;
-            } else {
-                offset += diff;
-            }
-        }
-        return -1;
+        final int offset = mBucket.findZero(index);
+        if (offset < limit) {
+            return offset;
+        }
+        // Past the last visible child, this is only valid if the children in between are hidden,
+        // e.g. to add a view after the hidden views at the end.
+        final int firstCandidate = index == 0 ? 0 : mBucket.findZero(index - 1) + 1;
+        return firstCandidate < limit ? offset : -1;
     }
 
     /**
@@ -186,9 +183,11 @@ class ChildHelper {
      */
     void removeAllViewsUnfiltered() {
         mBucket.reset();
-        for (int i = mHiddenViews.size() - 1; i >= 0; i--) {
-            mCallback.onLeftHiddenState(mHiddenViews.get(i));
-            mHiddenViews.remove(i);
+        final Iterator<View> hiddenViews = mHiddenViews.iterator();
+        while (hiddenViews.hasNext()) {
+            final View view = hiddenViews.next();
+            hiddenViews.remove();
+            mCallback.onLeftHiddenState(view);
         }
         mCallback.removeAllViews();
         if (DEBUG) {
@@ -203,9 +202,9 @@ class ChildHelper {
      * @return         A hidden view with a valid ViewHolder that matches the position.
      */
     View findHiddenNonRemovedView(int position) {
-        final int count = mHiddenViews.size();
-        for (int i = 0; i < count; i++) {
-            final View view = mHiddenViews.get(i);
+        // positions are offset by RecyclerView without going through this class, so they cannot
+        // be indexed here
+        for (View view : mHiddenViews) {
             RecyclerView.ViewHolder holder = mCallback.getChildViewHolder(view);
             if (holder.getLayoutPosition() == position
                     && !holder.isInvalid()
@@ -391,6 +390,10 @@ class ChildHelper {
 
     /**
      * Bitset implementation that provides methods to offset indices.
+     * <p>
+     * The bits are kept in an array of words, along with a Fenwick tree of the number of set bits
+     * in each word, so that ranks and positions of bits are found in O(log n) time. Inserting and
+     * removing bits shifts the words after the index, like the children array of a ViewGroup.
      */
     static class Bucket {
 
@@ -398,115 +401,172 @@ class ChildHelper {
 
         final static long LAST_BIT = 1L << (Long.SIZE - 1);
 
-        long mData = 0;
+        private static final int WORD_SHIFT = 6;
 
-        Bucket next;
+        long[] mWords = new long[1];
 
-        void set(int index) {
-            if (index >= BITS_PER_WORD) {
-                ensureNext();
-                next.set(index - BITS_PER_WORD);
-            } else {
-                mData |= 1L << index;
-            }
-        }
+        // 1-based Fenwick tree of the bit counts of mWords
+        private int[] mTree = new int[2];
 
-        private void ensureNext() {
-            if (next == null) {
-                next = new Bucket();
+        void set(int index) {
+            final int word = index >>> WORD_SHIFT;
+            ensureWords(word + 1);
+            final long mask = 1L << index;
+            if ((mWords[word] & mask) == 0) {
+                mWords[word] |= mask;
+                addToTree(word, 1);
             }
         }
 
         void clear(int index) {
-            if (index >= BITS_PER_WORD) {
-                if (next != null) {
-                    next.clear(index - BITS_PER_WORD);
-                }
-            } else {
-                mData &= ~(1L << index);
+            final int word = index >>> WORD_SHIFT;
+            if (word >= mWords.length) {
+                return;
+            }
+            final long mask = 1L << index;
+            if ((mWords[word] & mask) != 0) {
+                mWords[word] &= ~mask;
+                addToTree(word, -1);
             }
-
         }
 
         boolean get(int index) {
-            if (index >= BITS_PER_WORD) {
-                ensureNext();
-                return next.get(index - BITS_PER_WORD);
-            } else {
-                return (mData & (1L << index)) != 0;
-            }
+            final int word = index >>> WORD_SHIFT;
+            return word < mWords.length && (mWords[word] & (1L << index)) != 0;
         }
 
         void reset() {
-            mData = 0;
-            if (next != null) {
-                next.reset();
-            }
+            Arrays.fill(mWords, 0);
+            Arrays.fill(mTree, 0);
         }
 
         void insert(int index, boolean value) {
-            if (index >= BITS_PER_WORD) {
-                ensureNext();
-                next.insert(index - BITS_PER_WORD, value);
-            } else {
-                final boolean lastBit = (mData & LAST_BIT) != 0;
-                long mask = (1L << index) - 1;
-                final long before = mData & mask;
-                final long after = ((mData & ~mask)) << 1;
-                mData = before | after;
-                if (value) {
-                    set(index);
-                } else {
-                    clear(index);
-                }
-                if (lastBit || next != null) {
-                    ensureNext();
-                    next.insert(0, lastBit);
-                }
+            final int word = index >>> WORD_SHIFT;
+            ensureWords(word + 1);
+            if ((mWords[mWords.length - 1] & LAST_BIT) != 0) {
+                ensureWords(mWords.length + 1);
+            }
+            final long[] words = mWords;
+            for (int i = words.length - 1; i > word; i--) {
+                words[i] = (words[i] << 1) | (words[i - 1] >>> (BITS_PER_WORD - 1));
             }
+            final long mask = (1L << index) - 1;
+            final long before = words[word] & mask;
+            final long after = (words[word] & ~mask) << 1;
+            words[word] = before | after | (value ? 1L << index : 0);
+            buildTree();
         }
 
         boolean remove(int index) {
-            if (index >= BITS_PER_WORD) {
-                ensureNext();
-                return next.remove(index - BITS_PER_WORD);
-            } else {
-                long mask = (1L << index);
-                final boolean value = (mData & mask) != 0;
-                mData &= ~mask;
-                mask = mask - 1;
-                final long before = mData & mask;
-                // cannot use >> because it adds one.
-                final long after = Long.rotateRight(mData & ~mask, 1);
-                mData = before | after;
-                if (next != null) {
-                    if (next.get(0)) {
-                        set(BITS_PER_WORD - 1);
-                    }
-                    next.remove(0);
+            final int word = index >>> WORD_SHIFT;
+            final long[] words = mWords;
+            if (word >= words.length) {
+                return false;
+            }
+            final long mask = 1L << index;
+            final boolean value = (words[word] & mask) != 0;
+            final long before = words[word] & (mask - 1);
+            // cannot use >> because it adds one.
+            final long after = (words[word] >>> 1) & -mask;
+            words[word] = before | after;
+            for (int i = word; i < words.length - 1; i++) {
+                if (i > word) {
+                    words[i] >>>= 1;
                 }
-                return value;
+                words[i] |= words[i + 1] << (BITS_PER_WORD - 1);
+            }
+            if (word < words.length - 1) {
+                words[words.length - 1] >>>= 1;
             }
+            buildTree();
+            return value;
         }
 
         int countOnesBefore(int index) {
-            if (next == null) {
-                if (index >= BITS_PER_WORD) {
-                    return Long.bitCount(mData);
+            final int word = index >>> WORD_SHIFT;
+            if (word >= mWords.length) {
+                return sumTree(mWords.length);
+            }
+            return sumTree(word) + Long.bitCount(mWords[word] & ((1L << index) - 1));
+        }
+
+        /**
+         * Returns the index of the clear bit that has the given number of clear bits before it.
+         */
+        int findZero(int rank) {
+            // find the last word that has at most rank clear bits before it
+            final int[] tree = mTree;
+            final int wordCount = mWords.length;
+            int word = 0;
+            int remaining = rank;
+            for (int step = Integer.highestOneBit(wordCount); step > 0; step >>= 1) {
+                final int next = word + step;
+                if (next <= wordCount) {
+                    final int zeros = step * BITS_PER_WORD - tree[next];
+                    if (zeros <= remaining) {
+                        word = next;
+                        remaining -= zeros;
+                    }
                 }
-                return Long.bitCount(mData & ((1L << index) - 1));
             }
-            if (index < BITS_PER_WORD) {
-                return Long.bitCount(mData & ((1L << index) - 1));
-            } else {
-                return next.countOnesBefore(index - BITS_PER_WORD) + Long.bitCount(mData);
+            if (word == wordCount) {
+                // every bit after the words is clear
+                return word * BITS_PER_WORD + remaining;
+            }
+            long zeros = ~mWords[word];
+            for (int i = 0; i < remaining; i++) {
+                zeros &= zeros - 1;
+            }
+            return word * BITS_PER_WORD + Long.numberOfTrailingZeros(zeros);
+        }
+
+        private void ensureWords(int count) {
+            if (count > mWords.length) {
+                mWords = Arrays.copyOf(mWords, Math.max(count, mWords.length * 2));
+                mTree = new int[mWords.length + 1];
+                buildTree();
+            }
+        }
+
+        private void buildTree() {
+            final int[] tree = mTree;
+            final int size = mWords.length;
+            for (int i = 1; i <= size; i++) {
+                tree[i] = Long.bitCount(mWords[i - 1]);
+            }
+            for (int i = 1; i <= size; i++) {
+                final int parent = i + (i & -i);
+                if (parent <= size) {
+                    tree[parent] += tree[i];
+                }
+            }
+        }
+
+        private void addToTree(int word, int delta) {
+            for (int i = word + 1; i < mTree.length; i += i & -i) {
+                mTree[i] += delta;
             }
         }
 
+        // number of set bits in the first wordCount words
+        private int sumTree(int wordCount) {
+            int sum = 0;
+            for (int i = wordCount; i > 0; i -= i & -i) {
+                sum += mTree[i];
+            }
+            return sum;
+        }
+
         @Override
         public String toString() {
-            return next == null ? Long.toBinaryString(mData)
-                    : next.toString() + "xx" + Long.toBinaryString(mData);
+            final StringBuilder sb = new StringBuilder();
+            for (int i = mWords.length - 1; i >= 0; i--) {
+                if (i < mWords.length - 1) {
+                    sb.append("xx");
+                }
+                sb.append(Long.toBinaryString(mWords[i]));
+            }
+            return sb.toString();
         }
     }
 
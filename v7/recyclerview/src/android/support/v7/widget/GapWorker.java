@@ -15,23 +15,43 @@
  */
 package android.support.v7.widget;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.support.annotation.Nullable;
 import android.support.v4.os.TraceCompat;
+import android.util.SparseIntArray;
 import android.view.View;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 final class GapWorker implements Runnable {
 
     static final ThreadLocal<GapWorker> sGapWorker = new ThreadLocal<>();
 
+    /**
+     * Number of positions after each prefetched position whose view types are taken into account
+     * when pre-creating ViewHolders.
+     */
+    static final int PRE_CREATION_LOOKAHEAD = 4;
+
+    static final int PRE_CREATION_DONE = 0;
+    static final int PRE_CREATION_CREATED = 1;
+    static final int PRE_CREATION_DEFERRED = 2;
+
     ArrayList<RecyclerView> mRecyclerViews = new ArrayList<>();
     long mPostTimeNs;
     long mFrameIntervalNs;
+    // vsync time of the latest frame prefetch ran for, used to estimate frame deadlines while idle
+    long mLastFrameVsyncNs;
+
+    private PreCreationIdleHandler mPreCreationIdleHandler;
 
     static class Task {
         public boolean immediate;
@@ -56,6 +76,14 @@ final class GapWorker implements Runnable {
      */
     private ArrayList<Task> mTasks = new ArrayList<>();
 
+    /**
+     * Nested RecyclerViews waiting to be prefetched after the outer tasks, for outer RecyclerViews
+     * that have a {@link RecyclerView.NestedPrefetchPolicy}, and their outer RecyclerViews. They
+     * are added in the priority order of the tasks of their items and cleared after each prefetch.
+     */
+    private final ArrayList<RecyclerView> mNestedViews = new ArrayList<>();
+    private final ArrayList<RecyclerView> mNestedOuterViews = new ArrayList<>();
+
     /**
      * Prefetch information associated with a specific RecyclerView.
      */
@@ -67,6 +95,11 @@ final class GapWorker implements Runnable {
 
         int mCount;
 
+        // number of children after the last layout, used to size nested prefetch
+        int mLaidOutChildCount;
+        // running average of the time it takes to prefetch an item while nested, 0 if unknown
+        long mNestedItemPrefetchNs;
+
         void setPrefetchVector(int dx, int dy) {
             mPrefetchDx = dx;
             mPrefetchDy = dy;
@@ -96,12 +129,53 @@ final class GapWorker implements Runnable {
                     }
                 }
 
-                if (mCount > layout.mPrefetchMaxCountObserved) {
-                    layout.mPrefetchMaxCountObserved = mCount;
-                    layout.mPrefetchMaxObservedInInitialPrefetch = nested;
-                    view.mRecycler.updateViewCacheSize();
-                }
+                updatePrefetchMaxCountObserved(view, nested);
+            }
+        }
+
+        private void updatePrefetchMaxCountObserved(RecyclerView view, boolean nested) {
+            final RecyclerView.LayoutManager layout = view.mLayout;
+            if (mCount > layout.mPrefetchMaxCountObserved) {
+                layout.mPrefetchMaxCountObserved = mCount;
+                layout.mPrefetchMaxObservedInInitialPrefetch = nested;
+                view.mRecycler.updateViewCacheSize();
+            }
+        }
+
+        /**
+         * Trims or extends the positions collected for a nested prefetch to the given count.
+         * Additional positions continue in the direction of the collected ones.
+         */
+        void resizeNestedPrefetchPositions(RecyclerView view, int count) {
+            if (count <= mCount) {
+                mCount = Math.max(0, count);
+                return;
             }
+            if (mCount == 0) {
+                return;
+            }
+            final int itemCount = view.mAdapter.getItemCount();
+            final int last = mPrefetchArray[(mCount - 1) * 2];
+            final int direction;
+            if (mCount > 1) {
+                direction = Integer.signum(last - mPrefetchArray[(mCount - 2) * 2]);
+            } else {
+                direction = last > 0 && last == itemCount - 1 ? -1 : 1;
+            }
+            if (direction == 0) {
+                return;
+            }
+            for (int position = last + direction;
+                    mCount < count && position >= 0 && position < itemCount;
+                    position += direction) {
+                addPosition(position, 0);
+            }
+            updatePrefetchMaxCountObserved(view, true);
+        }
+
+        void factorInNestedItemPrefetchTime(long timeNs) {
+            mNestedItemPrefetchNs = mNestedItemPrefetchNs == 0
+                    ? timeNs : (mNestedItemPrefetchNs / 4 * 3) + (timeNs / 4);
         }
 
         @Override
@@ -153,6 +227,49 @@ final class GapWorker implements Runnable {
         }
     }
 
+    /**
+     * ViewHolder pre-creation information associated with a specific RecyclerView.
+     */
+    static class PreCreationRegistry {
+        // view types predicted by the latest prefetch pass and how many of each we expect to need
+        int[] mDemandTypes = new int[4];
+        int[] mDemandCounts = new int[4];
+        int mDemandSize;
+
+        // number of ViewHolders being created in the background, per view type
+        final SparseIntArray mInFlight = new SparseIntArray();
+
+        void clearDemand() {
+            mDemandSize = 0;
+        }
+
+        void addDemand(int viewType) {
+            for (int i = 0; i < mDemandSize; i++) {
+                if (mDemandTypes[i] == viewType) {
+                    mDemandCounts[i]++;
+                    return;
+                }
+            }
+            if (mDemandSize == mDemandTypes.length) {
+                mDemandTypes = Arrays.copyOf(mDemandTypes, mDemandSize * 2);
+                mDemandCounts = Arrays.copyOf(mDemandCounts, mDemandSize * 2);
+            }
+            mDemandTypes[mDemandSize] = viewType;
+            mDemandCounts[mDemandSize] = 1;
+            mDemandSize++;
+        }
+
+        /**
+         * Returns how many more ViewHolders of the demanded type at the given index should be
+         * created, given what the pool already holds and what is being created.
+         */
+        int getDeficit(int index, RecyclerView.RecycledViewPool pool) {
+            final int viewType = mDemandTypes[index];
+            final int target = Math.min(mDemandCounts[index], pool.getMaxRecycledViews(viewType));
+            return target - pool.getRecycledViewCount(viewType) - mInFlight.get(viewType);
+        }
+    }
+
     public void add(RecyclerView recyclerView) {
         if (RecyclerView.DEBUG && mRecyclerViews.contains(recyclerView)) {
             throw new IllegalStateException("RecyclerView already present in worker list!");
@@ -284,6 +401,10 @@ final class GapWorker implements Runnable {
             view.onEnterLayoutOrScroll();
             holder = recycler.tryGetViewHolderForPositionByDeadline(
                     position, false, deadlineNs);
+            if (view.mPipelineMetrics != null) {
+                view.mPipelineMetrics.recordPrefetch(
+                        holder != null && holder.isBound() && !holder.isInvalid());
+            }
 
             if (holder != null) {
                 if (holder.isBound() && !holder.isInvalid()) {
@@ -310,16 +431,9 @@ final class GapWorker implements Runnable {
             return;
         }
 
-        if (innerView.mDataSetHasChangedAfterLayout
-                && innerView.mChildHelper.getUnfilteredChildCount() != 0) {
-            // RecyclerView has new data, but old attached views. Clear everything, so that
-            // we can prefetch without partially stale data.
-            innerView.removeAndRecycleViews();
-        }
-
         // do nested prefetch!
         final LayoutPrefetchRegistryImpl innerPrefetchRegistry = innerView.mPrefetchRegistry;
-        innerPrefetchRegistry.collectPrefetchPositionsFromView(innerView, true);
+        collectInnerPrefetchPositions(innerView);
 
         if (innerPrefetchRegistry.mCount != 0) {
             try {
@@ -337,7 +451,66 @@ final class GapWorker implements Runnable {
         }
     }
 
-    private void flushTaskWithDeadline(Task task, long deadlineNs) {
+    private void collectInnerPrefetchPositions(RecyclerView innerView) {
+        if (innerView.mDataSetHasChangedAfterLayout
+                && innerView.mChildHelper.getUnfilteredChildCount() != 0) {
+            // RecyclerView has new data, but old attached views. Clear everything, so that
+            // we can prefetch without partially stale data.
+            innerView.removeAndRecycleViews();
+        }
+        innerView.mPrefetchRegistry.collectPrefetchPositionsFromView(innerView, true);
+    }
+
+    /**
+     * Prefetches the items of a nested RecyclerView as long as the learned time per item fits
+     * before the deadline. Time is measured with the clock of the outer RecyclerView, which the
+     * deadline is based on.
+     */
+    private void prefetchInnerRecyclerViewByPolicy(RecyclerView outerView,
+            RecyclerView innerView, long deadlineNs) {
+        final LayoutPrefetchRegistryImpl innerPrefetchRegistry = innerView.mPrefetchRegistry;
+        if (!fitsBeforeDeadline(innerView, outerView.getNanoTime(), deadlineNs)) {
+            // not even one item fits
+            return;
+        }
+        collectInnerPrefetchPositions(innerView);
+        if (innerPrefetchRegistry.mCount == 0) {
+            return;
+        }
+        innerPrefetchRegistry.resizeNestedPrefetchPositions(innerView,
+                outerView.mNestedPrefetchPolicy.getNestedPrefetchItemCount(innerView,
+                        innerPrefetchRegistry.mLaidOutChildCount, innerPrefetchRegistry.mCount));
+        if (innerPrefetchRegistry.mCount == 0) {
+            return;
+        }
+        try {
+            TraceCompat.beginSection(RecyclerView.TRACE_NESTED_PREFETCH_TAG);
+            innerView.mState.prepareForNestedPrefetch(innerView.mAdapter);
+            for (int i = 0; i < innerPrefetchRegistry.mCount * 2; i += 2) {
+                final long startNs = outerView.getNanoTime();
+                if (!fitsBeforeDeadline(innerView, startNs, deadlineNs)) {
+                    break;
+                }
+                final int innerPosition = innerPrefetchRegistry.mPrefetchArray[i];
+                final RecyclerView.ViewHolder holder = prefetchPositionWithDeadline(innerView,
+                        innerPosition, deadlineNs);
+                if (holder != null && holder.isBound() && !holder.isInvalid()) {
+                    innerPrefetchRegistry.factorInNestedItemPrefetchTime(
+                            outerView.getNanoTime() - startNs);
+                }
+            }
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    private static boolean fitsBeforeDeadline(RecyclerView innerView, long nowNs,
+            long deadlineNs) {
+        final long expectedNs = innerView.mPrefetchRegistry.mNestedItemPrefetchNs;
+        return expectedNs == 0 || expectedNs <= deadlineNs - nowNs;
+    }
+
+    private void flushTaskWithDeadline(Task task, long deadlineNs, long innerDeadlineNs) {
         long taskDeadlineNs = task.immediate ? RecyclerView.FOREVER_NS : deadlineNs;
         RecyclerView.ViewHolder holder = prefetchPositionWithDeadline(task.view,
                 task.position, taskDeadlineNs);
@@ -345,19 +518,267 @@ final class GapWorker implements Runnable {
                 && holder.mNestedRecyclerView != null
                 && holder.isBound()
                 && !holder.isInvalid()) {
-            prefetchInnerRecyclerViewWithDeadline(holder.mNestedRecyclerView.get(), deadlineNs);
+            final RecyclerView innerView = holder.mNestedRecyclerView.get();
+            if (task.view.mNestedPrefetchPolicy == null) {
+                prefetchInnerRecyclerViewWithDeadline(innerView, innerDeadlineNs);
+            } else if (innerView != null && !mNestedViews.contains(innerView)) {
+                mNestedViews.add(innerView);
+                mNestedOuterViews.add(task.view);
+            }
         }
     }
 
     private void flushTasksWithDeadline(long deadlineNs) {
+        boolean started = false;
+        long startNs = 0;
         for (int i = 0; i < mTasks.size(); i++) {
             final Task task = mTasks.get(i);
             if (task.view == null) {
                 break; // done with populated tasks
             }
-            flushTaskWithDeadline(task, deadlineNs);
+            final RecyclerView.NestedPrefetchPolicy policy = task.view.mNestedPrefetchPolicy;
+            long taskDeadlineNs = deadlineNs;
+            if (policy != null) {
+                if (!started) {
+                    started = true;
+                    startNs = task.view.getNanoTime();
+                }
+                // leave the rest of the budget to the nested RecyclerViews
+                final long budgetNs = Math.max(0, deadlineNs - startNs);
+                taskDeadlineNs = startNs + Math.min(budgetNs,
+                        Math.max(0, policy.getOuterBudgetNs(budgetNs)));
+            }
+            flushTaskWithDeadline(task, taskDeadlineNs, deadlineNs);
             task.clear();
         }
+        flushNestedViewsWithDeadline(deadlineNs);
+    }
+
+    /**
+     * Prefetches the nested RecyclerViews queued by the outer tasks, in priority order, within
+     * the time left before the deadline.
+     */
+    private void flushNestedViewsWithDeadline(long deadlineNs) {
+        try {
+            for (int i = 0; i < mNestedViews.size(); i++) {
+                final RecyclerView outerView = mNestedOuterViews.get(i);
+                if (outerView.mNestedPrefetchPolicy != null) {
+                    prefetchInnerRecyclerViewByPolicy(outerView, mNestedViews.get(i), deadlineNs);
+                }
+            }
+        } finally {
+            mNestedViews.clear();
+            mNestedOuterViews.clear();
+        }
+    }
+
+    /**
+     * Predicts the view types needed after the positions of the latest prefetch pass, for each
+     * RecyclerView that has ViewHolder pre-creation enabled.
+     *
+     * @return True if any RecyclerView has pre-creation demand.
+     */
+    boolean collectPreCreationDemand() {
+        boolean hasDemand = false;
+        final int viewCount = mRecyclerViews.size();
+        for (int i = 0; i < viewCount; i++) {
+            final RecyclerView view = mRecyclerViews.get(i);
+            final PreCreationRegistry registry = view.mPreCreationRegistry;
+            if (registry == null) {
+                continue;
+            }
+            registry.clearDemand();
+            final LayoutPrefetchRegistryImpl prefetchRegistry = view.mPrefetchRegistry;
+            if (view.mAdapter == null || prefetchRegistry.mCount == 0
+                    || view.hasPendingAdapterUpdates()
+                    || view.getWindowVisibility() != View.VISIBLE) {
+                continue;
+            }
+            int minAttached = Integer.MAX_VALUE;
+            int maxAttached = Integer.MIN_VALUE;
+            final int childCount = view.mChildHelper.getUnfilteredChildCount();
+            for (int j = 0; j < childCount; j++) {
+                final RecyclerView.ViewHolder holder = RecyclerView.getChildViewHolderInt(
+                        view.mChildHelper.getUnfilteredChildAt(j));
+                // Note: can use mPosition here because adapter doesn't have pending updates
+                minAttached = Math.min(minAttached, holder.mPosition);
+                maxAttached = Math.max(maxAttached, holder.mPosition);
+            }
+            final int itemCount = view.mAdapter.getItemCount();
+            for (int j = 0; j < prefetchRegistry.mCount * 2; j += 2) {
+                final int position = prefetchRegistry.mPrefetchArray[j];
+                // continue in the direction the prefetched position is in, relative to the
+                // attached children
+                final int step;
+                if (position > maxAttached) {
+                    step = 1;
+                } else if (position < minAttached) {
+                    step = -1;
+                } else {
+                    continue;
+                }
+                for (int k = 1; k <= PRE_CREATION_LOOKAHEAD; k++) {
+                    final int predicted = position + step * k;
+                    if (predicted < 0 || predicted >= itemCount) {
+                        break;
+                    }
+                    registry.addDemand(view.mAdapter.getItemViewType(predicted));
+                    hasDemand = true;
+                }
+            }
+        }
+        return hasDemand;
+    }
+
+    /**
+     * Creates the next ViewHolder needed by a RecyclerView with pre-creation enabled, or hands
+     * all needed ViewHolders to the creation executor of the RecyclerView.
+     *
+     * @return {@link #PRE_CREATION_CREATED} if a ViewHolder was created on this thread,
+     * {@link #PRE_CREATION_DEFERRED} if a ViewHolder is needed but could not be created before the
+     * next frame and {@link #PRE_CREATION_DONE} otherwise.
+     */
+    int preCreateNext() {
+        int result = PRE_CREATION_DONE;
+        final int viewCount = mRecyclerViews.size();
+        for (int i = 0; i < viewCount; i++) {
+            final RecyclerView view = mRecyclerViews.get(i);
+            final PreCreationRegistry registry = view.mPreCreationRegistry;
+            if (registry == null || view.mAdapter == null) {
+                continue;
+            }
+            final RecyclerView.RecycledViewPool pool = view.getRecycledViewPool();
+            final Executor executor = view.mViewHolderCreationExecutor;
+            final boolean background = executor != null
+                    && view.mAdapter.isCreateViewHolderThreadSafe();
+            for (int j = 0; j < registry.mDemandSize; j++) {
+                final int deficit = registry.getDeficit(j, pool);
+                if (deficit <= 0) {
+                    continue;
+                }
+                final int viewType = registry.mDemandTypes[j];
+                if (background) {
+                    for (int k = 0; k < deficit; k++) {
+                        createInBackground(executor, view, viewType);
+                    }
+                    continue;
+                }
+                final long nowNs = view.getNanoTime();
+                if (view.getScrollState() != RecyclerView.SCROLL_STATE_IDLE
+                        && !pool.willCreateInTime(viewType, nowNs, getNextFrameDeadline(nowNs))) {
+                    result = PRE_CREATION_DEFERRED;
+                    continue;
+                }
+                TraceCompat.beginSection(RecyclerView.TRACE_PRE_CREATE_TAG);
+                try {
+                    pool.putRecycledView(view.mRecycler.createViewHolderForPool(viewType));
+                } finally {
+                    TraceCompat.endSection();
+                }
+                return PRE_CREATION_CREATED;
+            }
+        }
+        return result;
+    }
+
+    private long getNextFrameDeadline(long nowNs) {
+        if (mLastFrameVsyncNs == 0 || mFrameIntervalNs == 0 || nowNs < mLastFrameVsyncNs) {
+            return nowNs;
+        }
+        final long frames = (nowNs - mLastFrameVsyncNs) / mFrameIntervalNs + 1;
+        return mLastFrameVsyncNs + frames * mFrameIntervalNs;
+    }
+
+    private void createInBackground(Executor executor, RecyclerView view, final int viewType) {
+        final PreCreationRegistry registry = view.mPreCreationRegistry;
+        registry.mInFlight.put(viewType, registry.mInFlight.get(viewType) + 1);
+        final RecyclerView.Adapter adapter = view.mAdapter;
+        final RecyclerView.RecycledViewPool pool = view.getRecycledViewPool();
+        final WeakReference<RecyclerView> viewRef = new WeakReference<>(view);
+        final Handler mainHandler = getMainHandler();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final RecyclerView parent = viewRef.get();
+                if (parent == null) {
+                    return;
+                }
+                final long startNs = System.nanoTime();
+                final RecyclerView.ViewHolder holder = adapter.createViewHolder(parent, viewType);
+                final long createTimeNs = System.nanoTime() - startNs;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        registry.mInFlight.put(viewType, registry.mInFlight.get(viewType) - 1);
+                        final RecyclerView parent = viewRef.get();
+                        if (parent == null || parent.mAdapter != adapter) {
+                            return;
+                        }
+                        final RecyclerView innerView =
+                                RecyclerView.findNestedRecyclerView(holder.itemView);
+                        if (innerView != null) {
+                            holder.mNestedRecyclerView = new WeakReference<>(innerView);
+                        }
+                        pool.factorInCreateTime(viewType, createTimeNs);
+                        pool.putRecycledView(holder);
+                    }
+                });
+            }
+        });
+    }
+
+    private Handler getMainHandler() {
+        if (mPreCreationIdleHandler == null) {
+            mPreCreationIdleHandler = new PreCreationIdleHandler();
+        }
+        return mPreCreationIdleHandler.mHandler;
+    }
+
+    private void schedulePreCreation() {
+        if (!collectPreCreationDemand()) {
+            return;
+        }
+        if (mPreCreationIdleHandler == null) {
+            mPreCreationIdleHandler = new PreCreationIdleHandler();
+        }
+        if (!mPreCreationIdleHandler.mScheduled) {
+            mPreCreationIdleHandler.mScheduled = true;
+            mPreCreationIdleHandler.run();
+        }
+    }
+
+    /**
+     * Runs {@link #preCreateNext()} once per idle period of the main thread's message queue. A
+     * queue only runs its idle handlers once until a new message arrives, so after each created
+     * ViewHolder the handler re-registers itself through a message, which also lets pending frames
+     * run in between.
+     */
+    private class PreCreationIdleHandler implements MessageQueue.IdleHandler, Runnable {
+        final Handler mHandler = new Handler(Looper.getMainLooper());
+        boolean mScheduled;
+
+        PreCreationIdleHandler() {
+        }
+
+        @Override
+        public void run() {
+            Looper.myQueue().addIdleHandler(this);
+        }
+
+        @Override
+        public boolean queueIdle() {
+            switch (preCreateNext()) {
+                case PRE_CREATION_CREATED:
+                    mHandler.post(this);
+                    break;
+                case PRE_CREATION_DEFERRED:
+                    mHandler.postDelayed(this, TimeUnit.NANOSECONDS.toMillis(mFrameIntervalNs));
+                    break;
+                default:
+                    mScheduled = false;
+            }
+            return false;
+        }
     }
 
     void prefetch(long deadlineNs) {
@@ -391,11 +812,14 @@ final class GapWorker implements Runnable {
                 return;
             }
 
-            long nextFrameNs = TimeUnit.MILLISECONDS.toNanos(latestFrameVsyncMs) + mFrameIntervalNs;
+            mLastFrameVsyncNs = TimeUnit.MILLISECONDS.toNanos(latestFrameVsyncMs);
+            long nextFrameNs = mLastFrameVsyncNs + mFrameIntervalNs;
 
             prefetch(nextFrameNs);
 
             // TODO: consider rescheduling self, if there's more work to do
+
+            schedulePreCreation();
         } finally {
             mPostTimeNs = 0;
             TraceCompat.endSection();
@@ -111,6 +111,21 @@ public class GridLayoutManager extends LinearLayoutManager {
         super.setStackFromEnd(false);
     }
 
+    /**
+     * The item extent cache is not supported by GridLayoutManager. Consider enabling the span
+     * group index via {@link SpanSizeLookup#setSpanGroupIndexCacheEnabled(boolean)}, which makes
+     * the scrollbar count span groups instead of items.
+     */
+    @Override
+    public void setItemExtentCacheEnabled(boolean enabled) {
+        if (enabled) {
+            throw new UnsupportedOperationException(
+                    "GridLayoutManager does not support the item extent cache."
+                            + " Consider using the span group index of the SpanSizeLookup");
+        }
+        super.setItemExtentCacheEnabled(false);
+    }
+
     @Override
     public int getRowCountForAccessibility(RecyclerView.Recycler recycler,
             RecyclerView.State state) {
@@ -122,6 +137,7 @@ public class GridLayoutManager extends LinearLayoutManager {
         }
 
         // Row count is one more than the last item's row index.
+        checkSpanGroupIndex();
         return getSpanGroupIndex(recycler, state, state.getItemCount() - 1) + 1;
     }
 
@@ -136,9 +152,152 @@ public class GridLayoutManager extends LinearLayoutManager {
         }
 
         // Column count is one more than the last item's column index.
+        checkSpanGroupIndex();
         return getSpanGroupIndex(recycler, state, state.getItemCount() - 1) + 1;
     }
 
+    /**
+     * Pauses the span group index if the adapter has changes which have not been dispatched to
+     * it yet. It is resumed when the next layout completes.
+     *
+     * @return True if the span group index can be used.
+     */
+    private boolean checkSpanGroupIndex() {
+        if (mRecyclerView == null || mRecyclerView.hasPendingAdapterUpdates()) {
+            mSpanSizeLookup.mSpanGroupIndexPaused = true;
+        }
+        return mSpanSizeLookup.canUseSpanGroupIndex();
+    }
+
+    @Override
+    public int computeHorizontalScrollOffset(RecyclerView.State state) {
+        if (checkSpanGroupIndex()) {
+            return computeScrollOffsetWithSpanInfo(state);
+        }
+        return super.computeHorizontalScrollOffset(state);
+    }
+
+    @Override
+    public int computeVerticalScrollOffset(RecyclerView.State state) {
+        if (checkSpanGroupIndex()) {
+            return computeScrollOffsetWithSpanInfo(state);
+        }
+        return super.computeVerticalScrollOffset(state);
+    }
+
+    @Override
+    public int computeHorizontalScrollExtent(RecyclerView.State state) {
+        if (checkSpanGroupIndex()) {
+            return computeScrollExtentWithSpanInfo(state);
+        }
+        return super.computeHorizontalScrollExtent(state);
+    }
+
+    @Override
+    public int computeVerticalScrollExtent(RecyclerView.State state) {
+        if (checkSpanGroupIndex()) {
+            return computeScrollExtentWithSpanInfo(state);
+        }
+        return super.computeVerticalScrollExtent(state);
+    }
+
+    @Override
+    public int computeHorizontalScrollRange(RecyclerView.State state) {
+        if (checkSpanGroupIndex()) {
+            return computeScrollRangeWithSpanInfo(state);
+        }
+        return super.computeHorizontalScrollRange(state);
+    }
+
+    @Override
+    public int computeVerticalScrollRange(RecyclerView.State state) {
+        if (checkSpanGroupIndex()) {
+            return computeScrollRangeWithSpanInfo(state);
+        }
+        return super.computeVerticalScrollRange(state);
+    }
+
+    /*
+     * Same as the ScrollbarHelper calculations, except that they count span groups instead of
+     * items, which the span group index makes cheap. This keeps the scrollbar size stable when
+     * span sizes vary.
+     */
+
+    private int computeScrollOffsetWithSpanInfo(RecyclerView.State state) {
+        if (getChildCount() == 0 || state.getItemCount() == 0) {
+            return 0;
+        }
+        ensureLayoutState();
+        final boolean smoothScrollbarEnabled = isSmoothScrollbarEnabled();
+        final View startChild = findFirstVisibleChildClosestToStart(!smoothScrollbarEnabled, true);
+        final View endChild = findFirstVisibleChildClosestToEnd(!smoothScrollbarEnabled, true);
+        if (startChild == null || endChild == null) {
+            return 0;
+        }
+        final int startGroup = mSpanSizeLookup.getSpanGroupIndex(getPosition(startChild),
+                mSpanCount);
+        final int endGroup = mSpanSizeLookup.getSpanGroupIndex(getPosition(endChild), mSpanCount);
+        final int lastGroup = mSpanSizeLookup.getSpanGroupIndex(state.getItemCount() - 1,
+                mSpanCount);
+        final int groupsBefore = mShouldReverseLayout
+                ? Math.max(0, lastGroup - Math.max(startGroup, endGroup))
+                : Math.max(0, Math.min(startGroup, endGroup));
+        if (!smoothScrollbarEnabled) {
+            return groupsBefore;
+        }
+        final int laidOutArea = Math.abs(mOrientationHelper.getDecoratedEnd(endChild)
+                - mOrientationHelper.getDecoratedStart(startChild));
+        final int groupRange = Math.abs(startGroup - endGroup) + 1;
+        final float avgSizePerGroup = (float) laidOutArea / groupRange;
+        return Math.round(groupsBefore * avgSizePerGroup + (mOrientationHelper.getStartAfterPadding()
+                - mOrientationHelper.getDecoratedStart(startChild)));
+    }
+
+    private int computeScrollExtentWithSpanInfo(RecyclerView.State state) {
+        if (getChildCount() == 0 || state.getItemCount() == 0) {
+            return 0;
+        }
+        ensureLayoutState();
+        final boolean smoothScrollbarEnabled = isSmoothScrollbarEnabled();
+        final View startChild = findFirstVisibleChildClosestToStart(!smoothScrollbarEnabled, true);
+        final View endChild = findFirstVisibleChildClosestToEnd(!smoothScrollbarEnabled, true);
+        if (startChild == null || endChild == null) {
+            return 0;
+        }
+        if (!smoothScrollbarEnabled) {
+            return Math.abs(mSpanSizeLookup.getSpanGroupIndex(getPosition(startChild), mSpanCount)
+                    - mSpanSizeLookup.getSpanGroupIndex(getPosition(endChild), mSpanCount)) + 1;
+        }
+        final int extent = mOrientationHelper.getDecoratedEnd(endChild)
+                - mOrientationHelper.getDecoratedStart(startChild);
+        return Math.min(mOrientationHelper.getTotalSpace(), extent);
+    }
+
+    private int computeScrollRangeWithSpanInfo(RecyclerView.State state) {
+        if (getChildCount() == 0 || state.getItemCount() == 0) {
+            return 0;
+        }
+        ensureLayoutState();
+        final boolean smoothScrollbarEnabled = isSmoothScrollbarEnabled();
+        final View startChild = findFirstVisibleChildClosestToStart(!smoothScrollbarEnabled, true);
+        final View endChild = findFirstVisibleChildClosestToEnd(!smoothScrollbarEnabled, true);
+        if (startChild == null || endChild == null) {
+            return 0;
+        }
+        final int groupCount = mSpanSizeLookup.getSpanGroupIndex(state.getItemCount() - 1,
+                mSpanCount) + 1;
+        if (!smoothScrollbarEnabled) {
+            return groupCount;
+        }
+        final int laidOutArea = mOrientationHelper.getDecoratedEnd(endChild)
+                - mOrientationHelper.getDecoratedStart(startChild);
+        final int groupRange = Math.abs(
+                mSpanSizeLookup.getSpanGroupIndex(getPosition(startChild), mSpanCount)
+                - mSpanSizeLookup.getSpanGroupIndex(getPosition(endChild), mSpanCount)) + 1;
+        // estimate a size for full list.
+        return (int) ((float) laidOutArea / groupRange * groupCount);
+    }
+
     @Override
     public void onInitializeAccessibilityNodeInfoForItem(RecyclerView.Recycler recycler,
             RecyclerView.State state, View host, AccessibilityNodeInfoCompat info) {
@@ -148,6 +307,7 @@ public class GridLayoutManager extends LinearLayoutManager {
             return;
         }
         LayoutParams glp = (LayoutParams) lp;
+        checkSpanGroupIndex();
         int spanGroupIndex = getSpanGroupIndex(recycler, state, glp.getViewLayoutPosition());
         if (mOrientation == HORIZONTAL) {
             info.setCollectionItemInfo(AccessibilityNodeInfoCompat.CollectionItemInfoCompat.obtain(
@@ -164,6 +324,9 @@ public class GridLayoutManager extends LinearLayoutManager {
 
     @Override
     public void onLayoutChildren(RecyclerView.Recycler recycler, RecyclerView.State state) {
+        // In pre-layout, the adapter has changes which are not dispatched to the span group index
+        // yet.
+        mSpanSizeLookup.mSpanGroupIndexPaused = state.isPreLayout();
         if (state.isPreLayout()) {
             cachePreLayoutSpanMapping();
         }
@@ -178,6 +341,7 @@ public class GridLayoutManager extends LinearLayoutManager {
     public void onLayoutCompleted(RecyclerView.State state) {
         super.onLayoutCompleted(state);
         mPendingSpanCountChange = false;
+        mSpanSizeLookup.mSpanGroupIndexPaused = false;
     }
 
     private void clearPreLayoutSpanMappingCache() {
@@ -198,27 +362,40 @@ public class GridLayoutManager extends LinearLayoutManager {
     @Override
     public void onItemsAdded(RecyclerView recyclerView, int positionStart, int itemCount) {
         mSpanSizeLookup.invalidateSpanIndexCache();
+        if (mSpanSizeLookup.mSpanGroupIndex != null) {
+            mSpanSizeLookup.mSpanGroupIndex.onItemsAdded(positionStart, itemCount);
+        }
     }
 
     @Override
     public void onItemsChanged(RecyclerView recyclerView) {
         mSpanSizeLookup.invalidateSpanIndexCache();
+        mSpanSizeLookup.invalidateSpanGroupIndexCache();
     }
 
     @Override
     public void onItemsRemoved(RecyclerView recyclerView, int positionStart, int itemCount) {
         mSpanSizeLookup.invalidateSpanIndexCache();
+        if (mSpanSizeLookup.mSpanGroupIndex != null) {
+            mSpanSizeLookup.mSpanGroupIndex.onItemsRemoved(positionStart, itemCount);
+        }
     }
 
     @Override
     public void onItemsUpdated(RecyclerView recyclerView, int positionStart, int itemCount,
             Object payload) {
         mSpanSizeLookup.invalidateSpanIndexCache();
+        if (mSpanSizeLookup.mSpanGroupIndex != null) {
+            mSpanSizeLookup.mSpanGroupIndex.onItemsUpdated(positionStart, itemCount);
+        }
     }
 
     @Override
     public void onItemsMoved(RecyclerView recyclerView, int from, int to, int itemCount) {
         mSpanSizeLookup.invalidateSpanIndexCache();
+        if (mSpanSizeLookup.mSpanGroupIndex != null) {
+            mSpanSizeLookup.mSpanGroupIndex.onItemsMoved(from, to, itemCount);
+        }
     }
 
     @Override
@@ -832,6 +1009,14 @@ public class GridLayoutManager extends LinearLayoutManager {
 
         private boolean mCacheSpanIndices = false;
 
+        SpanGroupIndex mSpanGroupIndex;
+
+        /**
+         * Set by GridLayoutManager while the adapter may contain changes that have not been
+         * dispatched to {@link #mSpanGroupIndex} yet, e.g. during pre-layout.
+         */
+        boolean mSpanGroupIndexPaused = true;
+
         /**
          * Returns the number of span occupied by the item at <code>position</code>.
          *
@@ -868,6 +1053,53 @@ public class GridLayoutManager extends LinearLayoutManager {
             return mCacheSpanIndices;
         }
 
+        /**
+         * Sets whether the default implementations of {@link #getSpanIndex(int, int)} and
+         * {@link #getSpanGroupIndex(int, int)} should keep an index of checkpoints, so that they
+         * do not need to traverse all items from 0 to the position. By default the index is not
+         * kept. If you are not overriding {@link #getSpanGroupIndex(int, int)}, you should set this
+         * to true for better performance with large adapters.
+         * <p>
+         * When the index is enabled, GridLayoutManager also uses it to report the scrollbar
+         * position and size in span groups instead of items.
+         * <p>
+         * GridLayoutManager updates the index when adapter changes occur. If the span sizes change
+         * without an adapter change, you need to call {@link #invalidateSpanGroupIndexCache()}.
+         *
+         * @param cacheSpanGroupIndices Whether the index should be kept or not.
+         */
+        public void setSpanGroupIndexCacheEnabled(boolean cacheSpanGroupIndices) {
+            if (!cacheSpanGroupIndices) {
+                mSpanGroupIndex = null;
+            } else if (mSpanGroupIndex == null) {
+                mSpanGroupIndex = new SpanGroupIndex(this);
+            }
+        }
+
+        /**
+         * Clears the span group index. GridLayoutManager automatically updates the index when
+         * adapter changes occur.
+         */
+        public void invalidateSpanGroupIndexCache() {
+            if (mSpanGroupIndex != null) {
+                mSpanGroupIndex.clear();
+            }
+        }
+
+        /**
+         * Returns whether the span group index is kept or not.
+         *
+         * @return True if the span group index is kept.
+         * @see #setSpanGroupIndexCacheEnabled(boolean)
+         */
+        public boolean isSpanGroupIndexCacheEnabled() {
+            return mSpanGroupIndex != null;
+        }
+
+        boolean canUseSpanGroupIndex() {
+            return mSpanGroupIndex != null && !mSpanGroupIndexPaused;
+        }
+
         int getCachedSpanIndex(int position, int spanCount) {
             if (!mCacheSpanIndices) {
                 return getSpanIndex(position, spanCount);
@@ -886,7 +1118,8 @@ public class GridLayoutManager extends LinearLayoutManager {
          * <p>
          * If you have a faster way to calculate span index for your items, you should override
          * this method. Otherwise, you should enable span index cache
-         * ({@link #setSpanIndexCacheEnabled(boolean)}) for better performance. When caching is
+         * ({@link #setSpanIndexCacheEnabled(boolean)}) or the span group index
+         * ({@link #setSpanGroupIndexCacheEnabled(boolean)}) for better performance. When caching is
          * disabled, default implementation traverses all items from 0 to
          * <code>position</code>. When caching is enabled, it calculates from the closest cached
          * value before the <code>position</code>.
@@ -909,6 +1142,9 @@ public class GridLayoutManager extends LinearLayoutManager {
             if (positionSpanSize == spanCount) {
                 return 0; // quick return for full-span items
             }
+            if (canUseSpanGroupIndex()) {
+                return mSpanGroupIndex.getSpanIndex(position, spanCount);
+            }
             int span = 0;
             int startPos = 0;
             // If caching is enabled, try to jump
@@ -960,12 +1196,19 @@ public class GridLayoutManager extends LinearLayoutManager {
          * <p>
          * For example, if grid has 3 columns and each item occupies 1 span, span group index
          * for item 1 will be 0, item 5 will be 1.
+         * <p>
+         * Default implementation traverses all items from 0 to <code>adapterPosition</code>,
+         * unless the span group index is enabled
+         * ({@link #setSpanGroupIndexCacheEnabled(boolean)}).
          *
          * @param adapterPosition The position in adapter
          * @param spanCount The total number of spans in the grid
          * @return The index of the span group including the item at the given adapter position
          */
         public int getSpanGroupIndex(int adapterPosition, int spanCount) {
+            if (canUseSpanGroupIndex()) {
+                return mSpanGroupIndex.getSpanGroupIndex(adapterPosition, spanCount);
+            }
             int span = 0;
             int group = 0;
             int positionSpanSize = getSpanSize(adapterPosition);
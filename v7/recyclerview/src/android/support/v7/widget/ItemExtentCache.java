@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.support.v7.widget;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the extents of the items of a {@link LinearLayoutManager} along its orientation, so that
+ * the scroll offset and range can be computed from the actual item sizes instead of assuming that
+ * all items are as large as the visible ones.
+ * <p>
+ * Extents are recorded as items are laid out. Items which have not been laid out yet are assumed
+ * to be as large as the average of the measured ones. Two Fenwick trees keep the prefix sums of
+ * the measured extents and the prefix counts of the measured items, so that the offset of a
+ * position and the position at an offset are found in O(log n), no matter how the average
+ * changes.
+ * <p>
+ * Adapter changes move the recorded extents along with the items. Since a Fenwick tree cannot be
+ * shifted, the trees are rebuilt in O(n) by the next query after items are added, removed or
+ * moved. Changed items stay in place and only update the trees.
+ */
+class ItemExtentCache {
+
+    private static final int UNKNOWN = -1;
+
+    // The extent of each item, or UNKNOWN.
+    private int[] mExtents = new int[0];
+    private int mItemCount;
+
+    private long mMeasuredSum;
+    private int mMeasuredCount;
+
+    // 1-based Fenwick trees over mExtents. Only valid if mTreesValid is true.
+    private long[] mSumTree = new long[1];
+    private int[] mCountTree = new int[1];
+    private boolean mTreesValid = true;
+
+    int getItemCount() {
+        return mItemCount;
+    }
+
+    /**
+     * Resizes the cache to the given number of items, e.g. after a layout found a different item
+     * count than the adapter changes suggested. New items are not measured.
+     */
+    void setItemCount(int itemCount) {
+        if (itemCount == mItemCount) {
+            return;
+        }
+        if (itemCount < mItemCount) {
+            for (int i = itemCount; i < mItemCount; i++) {
+                forget(i);
+            }
+        } else {
+            ensureCapacity(itemCount);
+            Arrays.fill(mExtents, mItemCount, itemCount, UNKNOWN);
+        }
+        mItemCount = itemCount;
+        mTreesValid = false;
+    }
+
+    void clear() {
+        Arrays.fill(mExtents, 0, mItemCount, UNKNOWN);
+        mMeasuredSum = 0;
+        mMeasuredCount = 0;
+        mTreesValid = false;
+    }
+
+    /**
+     * Records the extent of the item at the given position.
+     */
+    void setExtent(int position, int extent) {
+        if (position < 0 || position >= mItemCount) {
+            return;
+        }
+        final int old = mExtents[position];
+        if (old == extent) {
+            return;
+        }
+        mExtents[position] = extent;
+        final long sumDelta;
+        final int countDelta;
+        if (old == UNKNOWN) {
+            sumDelta = extent;
+            countDelta = 1;
+        } else {
+            sumDelta = extent - old;
+            countDelta = 0;
+        }
+        mMeasuredSum += sumDelta;
+        mMeasuredCount += countDelta;
+        if (mTreesValid) {
+            for (int i = position + 1; i <= mItemCount; i += i & -i) {
+                mSumTree[i] += sumDelta;
+                mCountTree[i] += countDelta;
+            }
+        }
+    }
+
+    int getExtent(int position) {
+        return mExtents[position];
+    }
+
+    boolean hasMeasuredItems() {
+        return mMeasuredCount > 0;
+    }
+
+    /**
+     * Returns the extent assumed for items which have not been measured.
+     */
+    double getEstimatedExtent() {
+        return mMeasuredCount == 0 ? 0 : (double) mMeasuredSum / mMeasuredCount;
+    }
+
+    /**
+     * Returns the total extent of the items before the given position.
+     */
+    double getOffsetOf(int position) {
+        ensureTrees();
+        position = Math.min(position, mItemCount);
+        long sum = 0;
+        int count = 0;
+        for (int i = position; i > 0; i -= i & -i) {
+            sum += mSumTree[i];
+            count += mCountTree[i];
+        }
+        return sum + (position - count) * getEstimatedExtent();
+    }
+
+    /**
+     * Returns the total extent of all items.
+     */
+    double getTotalExtent() {
+        return mMeasuredSum + (mItemCount - mMeasuredCount) * getEstimatedExtent();
+    }
+
+    /**
+     * Returns the position of the item which contains the given offset, clamped to the valid
+     * positions.
+     */
+    int findPositionAt(double offset) {
+        ensureTrees();
+        if (mItemCount == 0) {
+            return RecyclerView.NO_POSITION;
+        }
+        final double estimate = getEstimatedExtent();
+        int position = 0;
+        double remaining = offset;
+        for (int step = Integer.highestOneBit(mItemCount); step > 0; step >>= 1) {
+            final int next = position + step;
+            if (next <= mItemCount) {
+                // node next covers the step items after position
+                final double extent = mSumTree[next] + (step - mCountTree[next]) * estimate;
+                if (extent <= remaining) {
+                    position = next;
+                    remaining -= extent;
+                }
+            }
+        }
+        return Math.min(position, mItemCount - 1);
+    }
+
+    void onItemsAdded(int positionStart, int itemCount) {
+        if (positionStart > mItemCount) {
+            return;
+        }
+        ensureCapacity(mItemCount + itemCount);
+        System.arraycopy(mExtents, positionStart, mExtents, positionStart + itemCount,
+                mItemCount - positionStart);
+        Arrays.fill(mExtents, positionStart, positionStart + itemCount, UNKNOWN);
+        mItemCount += itemCount;
+        mTreesValid = false;
+    }
+
+    void onItemsRemoved(int positionStart, int itemCount) {
+        final int end = Math.min(positionStart + itemCount, mItemCount);
+        if (positionStart >= end) {
+            return;
+        }
+        for (int i = positionStart; i < end; i++) {
+            forget(i);
+        }
+        System.arraycopy(mExtents, end, mExtents, positionStart, mItemCount - end);
+        mItemCount -= end - positionStart;
+        mTreesValid = false;
+    }
+
+    void onItemsMoved(int from, int to, int itemCount) {
+        if (from >= mItemCount || to >= mItemCount || from == to) {
+            return;
+        }
+        // RecyclerView only moves single items
+        final int extent = mExtents[from];
+        if (from < to) {
+            System.arraycopy(mExtents, from + 1, mExtents, from, to - from);
+        } else {
+            System.arraycopy(mExtents, to, mExtents, to + 1, from - to);
+        }
+        mExtents[to] = extent;
+        mTreesValid = false;
+    }
+
+    /**
+     * Forgets the extents of the given items, since their contents changed. They are measured
+     * again the next time they are laid out.
+     */
+    void onItemsUpdated(int positionStart, int itemCount) {
+        final int end = Math.min(positionStart + itemCount, mItemCount);
+        for (int i = positionStart; i < end; i++) {
+            final int extent = mExtents[i];
+            if (extent != UNKNOWN) {
+                forget(i);
+                mExtents[i] = UNKNOWN;
+                if (mTreesValid) {
+                    // the items stay in place, so the trees can be updated in O(log n)
+                    for (int j = i + 1; j <= mItemCount; j += j & -j) {
+                        mSumTree[j] -= extent;
+                        mCountTree[j]--;
+                    }
+                }
+            }
+        }
+    }
+
+    private void forget(int position) {
+        if (mExtents[position] != UNKNOWN) {
+            mMeasuredSum -= mExtents[position];
+            mMeasuredCount--;
+        }
+    }
+
+    private void ensureCapacity(int itemCount) {
+        if (mExtents.length < itemCount) {
+            mExtents = Arrays.copyOf(mExtents, Math.max(itemCount, mExtents.length * 2));
+        }
+    }
+
+    private void ensureTrees() {
+        if (mTreesValid) {
+            return;
+        }
+        if (mSumTree.length < mItemCount + 1) {
+            mSumTree = new long[mExtents.length + 1];
+            mCountTree = new int[mExtents.length + 1];
+        }
+        // linear time construction, each node adds itself to its parent
+        for (int i = 1; i <= mItemCount; i++) {
+            final int extent = mExtents[i - 1];
+            if (extent == UNKNOWN) {
+                mSumTree[i] = 0;
+                mCountTree[i] = 0;
+            } else {
+                mSumTree[i] = extent;
+                mCountTree[i] = 1;
+            }
+        }
+        for (int i = 1; i <= mItemCount; i++) {
+            final int parent = i + (i & -i);
+            if (parent <= mItemCount) {
+                mSumTree[parent] += mSumTree[i];
+                mCountTree[parent] += mCountTree[i];
+            }
+        }
+        mTreesValid = true;
+    }
+}
@@ -118,6 +118,17 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager implements
      */
     private boolean mSmoothScrollbarEnabled = true;
 
+    /**
+     * The extents of the items, if enabled via {@link #setItemExtentCacheEnabled(boolean)}.
+     */
+    ItemExtentCache mItemExtentCache;
+
+    /**
+     * The size of the RecyclerView in the other orientation when the cached extents were
+     * measured. Items are likely to have different extents if it changes.
+     */
+    private int mItemExtentCacheOtherSize;
+
     /**
      * When LayoutManager needs to scroll to a position, it sets this variable and requests a
      * layout which will check this variable and re-layout accordingly.
@@ -343,6 +354,9 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager implements
         }
         mOrientation = orientation;
         mOrientationHelper = null;
+        if (mItemExtentCache != null) {
+            mItemExtentCache.clear();
+        }
         requestLayout();
     }
 
@@ -494,6 +508,9 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager implements
         mLayoutState.mRecycle = false;
         // resolve layout direction
         resolveShouldLayoutReverse();
+        if (mItemExtentCache != null && !state.isPreLayout()) {
+            syncItemExtentCache(state);
+        }
 
         if (!mAnchorInfo.mValid || mPendingScrollPosition != NO_POSITION ||
                 mPendingSavedState != null) {
@@ -1096,6 +1113,15 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager implements
             return 0;
         }
         ensureLayoutState();
+        if (canUseItemExtentCache(state)) {
+            final View child = getChildClosestToStart();
+            final int position = getPosition(child);
+            final double extentBefore = mShouldReverseLayout
+                    ? mItemExtentCache.getTotalExtent() - mItemExtentCache.getOffsetOf(position + 1)
+                    : mItemExtentCache.getOffsetOf(position);
+            return (int) Math.round(extentBefore + mOrientationHelper.getStartAfterPadding()
+                    - mOrientationHelper.getDecoratedStart(child));
+        }
         return ScrollbarHelper.computeScrollOffset(state, mOrientationHelper,
                 findFirstVisibleChildClosestToStart(!mSmoothScrollbarEnabled, true),
                 findFirstVisibleChildClosestToEnd(!mSmoothScrollbarEnabled, true),
@@ -1107,6 +1133,10 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager implements
             return 0;
         }
         ensureLayoutState();
+        if (canUseItemExtentCache(state)) {
+            return (int) Math.min(mOrientationHelper.getTotalSpace(),
+                    Math.round(mItemExtentCache.getTotalExtent()));
+        }
         return ScrollbarHelper.computeScrollExtent(state, mOrientationHelper,
                 findFirstVisibleChildClosestToStart(!mSmoothScrollbarEnabled, true),
                 findFirstVisibleChildClosestToEnd(!mSmoothScrollbarEnabled, true),
@@ -1118,6 +1148,9 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager implements
             return 0;
         }
         ensureLayoutState();
+        if (canUseItemExtentCache(state)) {
+            return (int) Math.round(mItemExtentCache.getTotalExtent());
+        }
         return ScrollbarHelper.computeScrollRange(state, mOrientationHelper,
                 findFirstVisibleChildClosestToStart(!mSmoothScrollbarEnabled, true),
                 findFirstVisibleChildClosestToEnd(!mSmoothScrollbarEnabled, true),
@@ -1156,6 +1189,134 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager implements
         return mSmoothScrollbarEnabled;
     }
 
+    /**
+     * When enabled, LinearLayoutManager records the size of each item as it is laid out, and
+     * computes the smooth scrollbar from the recorded sizes instead of assuming that all items
+     * are as large as the visible ones. Items which have not been laid out yet are assumed to be
+     * as large as the average of the recorded ones. This keeps the scrollbar accurate and stable
+     * in large lists with items of varying sizes, at the cost of about 16 bytes per item and an
+     * O(log n) lookup per scrollbar update.
+     * <p>
+     * The recorded sizes are moved along with the items on adapter changes, and forgotten for
+     * changed items.
+     * <p>
+     * It is disabled by default.
+     *
+     * @param enabled Whether or not to record item sizes.
+     *
+     * @see #setSmoothScrollbarEnabled(boolean)
+     * @see #scrollToFraction(float)
+     */
+    public void setItemExtentCacheEnabled(boolean enabled) {
+        if (!enabled) {
+            mItemExtentCache = null;
+        } else if (mItemExtentCache == null) {
+            mItemExtentCache = new ItemExtentCache();
+        }
+    }
+
+    /**
+     * Returns whether item sizes are recorded to compute the scrollbar.
+     *
+     * @return True if the item extent cache is enabled, false otherwise.
+     *
+     * @see #setItemExtentCacheEnabled(boolean)
+     */
+    public boolean isItemExtentCacheEnabled() {
+        return mItemExtentCache != null;
+    }
+
+    /**
+     * Scrolls to the given fraction of the scroll range without laying out the items in between,
+     * e.g. when the user drags a fast scroll thumb. 0 scrolls to the start of the list, 1 scrolls
+     * to the end.
+     * <p>
+     * If the item extent cache is enabled, the target is found from the recorded item sizes in
+     * O(log n), consistently with the scrollbar. Otherwise, all items are assumed to be of the
+     * same size.
+     * <p>
+     * Note that scroll position change will not be reflected until the next layout call.
+     *
+     * @param fraction The fraction of the scroll range to scroll to, between 0 and 1.
+     *
+     * @see #setItemExtentCacheEnabled(boolean)
+     * @see #scrollToPositionWithOffset(int, int)
+     */
+    public void scrollToFraction(float fraction) {
+        final int itemCount = getItemCount();
+        if (itemCount == 0) {
+            return;
+        }
+        fraction = Math.max(0f, Math.min(1f, fraction));
+        ensureLayoutState();
+        if (mItemExtentCache == null || !mItemExtentCache.hasMeasuredItems()
+                || mItemExtentCache.getItemCount() != itemCount) {
+            scrollToPositionWithOffset(Math.round(fraction * (itemCount - 1)), 0);
+            return;
+        }
+        final double total = mItemExtentCache.getTotalExtent();
+        final int space = mOrientationHelper.getTotalSpace();
+        final double scrollOffset = fraction * Math.max(0, total - space);
+        // The offset of the anchor edge of the visible area from the start of item 0. In reverse
+        // layout, item 0 is at the end and items are anchored to the end edge.
+        final double anchor = mShouldReverseLayout
+                ? Math.max(0, total - scrollOffset - space)
+                : scrollOffset;
+        final int position = mItemExtentCache.findPositionAt(anchor);
+        scrollToPositionWithOffset(position,
+                (int) Math.round(mItemExtentCache.getOffsetOf(position) - anchor));
+    }
+
+    private void syncItemExtentCache(RecyclerView.State state) {
+        final int otherSize = mOrientation == VERTICAL ? getWidth() : getHeight();
+        if (otherSize != mItemExtentCacheOtherSize) {
+            mItemExtentCache.clear();
+            mItemExtentCacheOtherSize = otherSize;
+        }
+        mItemExtentCache.setItemCount(state.getItemCount());
+    }
+
+    private boolean canUseItemExtentCache(RecyclerView.State state) {
+        return mSmoothScrollbarEnabled && mItemExtentCache != null
+                && mItemExtentCache.hasMeasuredItems()
+                && mItemExtentCache.getItemCount() == state.getItemCount();
+    }
+
+    @Override
+    public void onItemsAdded(RecyclerView recyclerView, int positionStart, int itemCount) {
+        if (mItemExtentCache != null) {
+            mItemExtentCache.onItemsAdded(positionStart, itemCount);
+        }
+    }
+
+    @Override
+    public void onItemsRemoved(RecyclerView recyclerView, int positionStart, int itemCount) {
+        if (mItemExtentCache != null) {
+            mItemExtentCache.onItemsRemoved(positionStart, itemCount);
+        }
+    }
+
+    @Override
+    public void onItemsUpdated(RecyclerView recyclerView, int positionStart, int itemCount) {
+        if (mItemExtentCache != null) {
+            mItemExtentCache.onItemsUpdated(positionStart, itemCount);
+        }
+    }
+
+    @Override
+    public void onItemsMoved(RecyclerView recyclerView, int from, int to, int itemCount) {
+        if (mItemExtentCache != null) {
+            mItemExtentCache.onItemsMoved(from, to, itemCount);
+        }
+    }
+
+    @Override
+    public void onItemsChanged(RecyclerView recyclerView) {
+        if (mItemExtentCache != null) {
+            mItemExtentCache.clear();
+        }
+    }
+
     private void updateLayoutState(int layoutDirection, int requiredSpace,
             boolean canUseExistingSpace, RecyclerView.State state) {
         // If parent provides a hint, don't measure unlimited.
@@ -1576,6 +1737,9 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager implements
         }
         measureChildWithMargins(view, 0, 0);
         result.mConsumed = mOrientationHelper.getDecoratedMeasurement(view);
+        if (mItemExtentCache != null && layoutState.mScrapList == null && !state.isPreLayout()) {
+            mItemExtentCache.setExtent(getPosition(view), result.mConsumed);
+        }
         int left, top, right, bottom;
         if (mOrientation == VERTICAL) {
             if (isLayoutRTL()) {
@@ -1702,7 +1866,7 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager implements
      * @param completelyVisible Whether child should be completely visible or not
      * @return The first visible child closest to start of the layout from user's perspective.
      */
-    private View findFirstVisibleChildClosestToStart(boolean completelyVisible,
+    View findFirstVisibleChildClosestToStart(boolean completelyVisible,
             boolean acceptPartiallyVisible) {
         if (mShouldReverseLayout) {
             return findOneVisibleChild(getChildCount() - 1, -1, completelyVisible,
@@ -1720,7 +1884,7 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager implements
      * @param completelyVisible Whether child should be completely visible or not
      * @return The first visible child closest to end of the layout from user's perspective.
      */
-    private View findFirstVisibleChildClosestToEnd(boolean completelyVisible,
+    View findFirstVisibleChildClosestToEnd(boolean completelyVisible,
             boolean acceptPartiallyVisible) {
         if (mShouldReverseLayout) {
             return findOneVisibleChild(0, getChildCount(), completelyVisible,
@@ -29,6 +29,9 @@ import android.graphics.Rect;
 import android.graphics.RectF;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.os.SystemClock;
@@ -78,8 +81,11 @@ import java.lang.ref.WeakReference;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A flexible view for providing a limited window into a large data set.
@@ -256,6 +262,14 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
      */
     private static final String TRACE_HANDLE_ADAPTER_UPDATES_TAG = "RV PartialInvalidate";
 
+    /**
+     * RecyclerView is rebinding Views for payload changes of items that have a stable size,
+     * without running a layout.
+     * If this is taking a long time, the rebound Views may be laying out their contents again. Try
+     * to keep the size of the children of the item View fixed as well.
+     */
+    private static final String TRACE_REBIND_PAYLOAD_CHANGES_TAG = "RV RebindPayloadChanges";
+
     /**
      * RecyclerView is rebinding a View.
      * If this is taking a lot of time, consider optimizing your layout or make sure you are not
@@ -274,6 +288,11 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
      */
     static final String TRACE_NESTED_PREFETCH_TAG = "RV Nested Prefetch";
 
+    /**
+     * RecyclerView is creating ViewHolders ahead of time, while the main thread is idle.
+     */
+    static final String TRACE_PRE_CREATE_TAG = "RV PreCreate";
+
     /**
      * RecyclerView is creating a new View.
      * If too many of these present in Systrace:
@@ -344,12 +363,29 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
         }
     };
 
+    /**
+     * Payload changes of size stable items that are rebound in place, without a layout pass.
+     * Only used while the AdapterHelper has no pending updates, so the positions of the changes
+     * match the positions of the ViewHolders.
+     */
+    final AdapterHelper.UpdateOpBuffer mPendingPayloadChanges = new AdapterHelper.UpdateOpBuffer();
+
+    final Runnable mRebindPayloadChangesRunnable = new Runnable() {
+        @Override
+        public void run() {
+            rebindPendingPayloadChanges();
+        }
+    };
+
     final Rect mTempRect = new Rect();
     private final Rect mTempRect2 = new Rect();
     final RectF mTempRectF = new RectF();
     Adapter mAdapter;
     @VisibleForTesting LayoutManager mLayout;
     RecyclerListener mRecyclerListener;
+    PipelineMetricsListener mPipelineMetricsListener;
+    // null unless a PipelineMetricsListener is set
+    PipelineMetrics mPipelineMetrics;
     final ArrayList<ItemDecoration> mItemDecorations = new ArrayList<>();
     private final ArrayList<OnItemTouchListener> mOnItemTouchListeners =
             new ArrayList<>();
@@ -454,6 +490,11 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
     GapWorker mGapWorker;
     GapWorker.LayoutPrefetchRegistryImpl mPrefetchRegistry =
             ALLOW_THREAD_GAP_WORK ? new GapWorker.LayoutPrefetchRegistryImpl() : null;
+    // null unless ViewHolder pre-creation is enabled
+    GapWorker.PreCreationRegistry mPreCreationRegistry;
+    Executor mViewHolderCreationExecutor;
+    // null unless nested RecyclerViews are prefetched by a policy
+    NestedPrefetchPolicy mNestedPrefetchPolicy;
 
     final State mState = new State();
 
@@ -490,7 +531,12 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
         @Override
         public void run() {
             if (mItemAnimator != null) {
+                final PipelineMetrics metrics = mPipelineMetrics;
+                final long startNs = metrics != null ? System.nanoTime() : 0;
                 mItemAnimator.runPendingAnimations();
+                if (metrics != null) {
+                    metrics.recordItemAnimator(System.nanoTime() - startNs);
+                }
             }
             mPostedAnimatorRunner = false;
         }
@@ -1054,6 +1100,7 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
             removeAndRecycleViews();
         }
         mAdapterHelper.reset();
+        mPendingPayloadChanges.clear();
         final Adapter oldAdapter = mAdapter;
         mAdapter = adapter;
         if (adapter != null) {
@@ -1092,6 +1139,25 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
         mRecyclerListener = listener;
     }
 
+    /**
+     * Register a listener that will be notified once per frame with the time RecyclerView spent
+     * in each stage of its pipeline and how often it could reuse views.
+     * <p>
+     * Metrics are only collected while a listener is set. Collecting them does not allocate,
+     * except when a view type is seen for the first time.
+     *
+     * @param listener Listener to register, or null to clear
+     * @see PipelineMetrics
+     */
+    public void setPipelineMetricsListener(@Nullable PipelineMetricsListener listener) {
+        mPipelineMetricsListener = listener;
+        if (listener == null) {
+            mPipelineMetrics = null;
+        } else if (mPipelineMetrics == null) {
+            mPipelineMetrics = new PipelineMetrics(this);
+        }
+    }
+
     /**
      * <p>Return the offset of the RecyclerView's text baseline from the its top
      * boundary. If the LayoutManager of this RecyclerView does not support baseline alignment,
@@ -1372,6 +1438,91 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
         mRecycler.setViewCacheSize(size);
     }
 
+    /**
+     * Enables or disables pre-creation of ViewHolders while the main thread is idle.
+     * <p>
+     * When enabled, RecyclerView predicts the view types of the items that will be needed after
+     * the ones it prefetches, and creates ViewHolders of those types into the
+     * {@link #getRecycledViewPool() recycled view pool} while the main thread's message queue is
+     * idle. While scrolling, a ViewHolder is only created if its average creation time fits
+     * before the next frame. If the adapter
+     * {@link Adapter#isCreateViewHolderThreadSafe() can create ViewHolders on any thread} and an
+     * executor is set via {@link #setViewHolderCreationExecutor(Executor)}, ViewHolders are
+     * created on that executor instead.
+     * <p>
+     * Like prefetching, pre-creation is only available on
+     * {@link android.os.Build.VERSION_CODES#LOLLIPOP Lollipop} and newer.
+     *
+     * @param enabled True to pre-create ViewHolders, false otherwise.
+     * @see #isViewHolderPreCreationEnabled()
+     */
+    public void setViewHolderPreCreationEnabled(boolean enabled) {
+        if (!ALLOW_THREAD_GAP_WORK) {
+            return;
+        }
+        if (enabled && mPreCreationRegistry == null) {
+            mPreCreationRegistry = new GapWorker.PreCreationRegistry();
+        } else if (!enabled) {
+            mPreCreationRegistry = null;
+        }
+    }
+
+    /**
+     * Returns whether ViewHolders are pre-created while the main thread is idle.
+     *
+     * @return True if ViewHolder pre-creation is enabled.
+     * @see #setViewHolderPreCreationEnabled(boolean)
+     */
+    public boolean isViewHolderPreCreationEnabled() {
+        return mPreCreationRegistry != null;
+    }
+
+    /**
+     * Sets the executor that pre-creates ViewHolders if the adapter
+     * {@link Adapter#isCreateViewHolderThreadSafe() can create ViewHolders on any thread}.
+     * Created ViewHolders are added to the {@link #getRecycledViewPool() recycled view pool} on
+     * the main thread.
+     *
+     * @param executor The executor to create ViewHolders on or null to create them on the main
+     *                 thread.
+     * @see #setViewHolderPreCreationEnabled(boolean)
+     */
+    public void setViewHolderCreationExecutor(@Nullable Executor executor) {
+        mViewHolderCreationExecutor = executor;
+    }
+
+    /**
+     * Sets the policy that schedules the prefetch of RecyclerViews nested in the items of this
+     * RecyclerView.
+     * <p>
+     * By default, the nested RecyclerView of each prefetched item is prefetched right after the
+     * item, with the positions its LayoutManager collects in
+     * {@link LayoutManager#collectInitialPrefetchPositions(int,
+     * LayoutManager.LayoutPrefetchRegistry)}.
+     * With a policy, nested RecyclerViews are prefetched after the items of the outer
+     * RecyclerViews, in the order their items are going to be needed in the scroll direction,
+     * within the time that is left before the next frame. Each nested RecyclerView learns how long
+     * prefetching one of its items takes and how many items it showed when it was last laid out,
+     * so that a nested RecyclerView is only prefetched if its items fit in the remaining time.
+     *
+     * @param policy The policy or null to prefetch nested RecyclerViews right after their items.
+     * @see NestedPrefetchPolicy
+     */
+    public void setNestedPrefetchPolicy(@Nullable NestedPrefetchPolicy policy) {
+        mNestedPrefetchPolicy = policy;
+    }
+
+    /**
+     * Returns the policy that schedules the prefetch of nested RecyclerViews.
+     *
+     * @return The policy or null if nested RecyclerViews are prefetched right after their items.
+     * @see #setNestedPrefetchPolicy(NestedPrefetchPolicy)
+     */
+    @Nullable
+    public NestedPrefetchPolicy getNestedPrefetchPolicy() {
+        return mNestedPrefetchPolicy;
+    }
+
     /**
      * Return the current scrolling state of the RecyclerView.
      *
@@ -1630,6 +1781,7 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
             TraceCompat.endSection();
             return;
         }
+        rebindPendingPayloadChanges();
         if (!mAdapterHelper.hasPendingUpdates()) {
             return;
         }
@@ -1642,7 +1794,13 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
             TraceCompat.beginSection(TRACE_HANDLE_ADAPTER_UPDATES_TAG);
             eatRequestLayout();
             onEnterLayoutOrScroll();
+            final PipelineMetrics metrics = mPipelineMetrics;
+            final long startNs = metrics != null ? System.nanoTime() : 0;
+            final int updateCount = mAdapterHelper.mPendingUpdates.size();
             mAdapterHelper.preProcess();
+            if (metrics != null) {
+                metrics.recordAdapterUpdates(updateCount, System.nanoTime() - startNs);
+            }
             if (!mLayoutRequestEaten) {
                 if (hasUpdatedView()) {
                     dispatchLayout();
@@ -1661,6 +1819,51 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
         }
     }
 
+    /**
+     * Rebinds the Views of the pending payload changes of size stable items in place. The Views
+     * keep their bounds, only their contents are laid out again if necessary.
+     */
+    void rebindPendingPayloadChanges() {
+        final AdapterHelper.UpdateOpBuffer changes = mPendingPayloadChanges;
+        if (changes.isEmpty()) {
+            return;
+        }
+        TraceCompat.beginSection(TRACE_REBIND_PAYLOAD_CHANGES_TAG);
+        eatRequestLayout();
+        onEnterLayoutOrScroll();
+        final int size = changes.size();
+        for (int i = 0; i < size; i++) {
+            viewRangeUpdate(changes.mPositionStarts[i], changes.mItemCounts[i],
+                    changes.mPayloads[i]);
+        }
+        changes.clear();
+        final int childCount = mChildHelper.getUnfilteredChildCount();
+        for (int i = 0; i < childCount; i++) {
+            final View child = mChildHelper.getUnfilteredChildAt(i);
+            final ViewHolder holder = getChildViewHolderInt(child);
+            if (holder == null || holder.shouldIgnore() || !holder.isUpdated()) {
+                continue;
+            }
+            if (holder.isInvalid() || holder.isRemoved()) {
+                // will be handled by the next layout
+                continue;
+            }
+            mRecycler.tryBindViewHolderByDeadline(holder, holder.mPosition, holder.mPosition,
+                    FOREVER_NS);
+            if (child.isLayoutRequested()) {
+                child.measure(
+                        MeasureSpec.makeMeasureSpec(child.getWidth(), MeasureSpec.EXACTLY),
+                        MeasureSpec.makeMeasureSpec(child.getHeight(), MeasureSpec.EXACTLY));
+                child.layout(child.getLeft(), child.getTop(), child.getRight(),
+                        child.getBottom());
+            }
+        }
+        // the Views requested layouts while binding, but they have been laid out already
+        resumeRequestLayout(false);
+        onExitLayoutOrScroll();
+        TraceCompat.endSection();
+    }
+
     /**
      * @return True if an existing view holder needs to be updated
      */
@@ -3258,6 +3461,10 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
      * This method may process only the pre-layout state of updates or all of them.
      */
     private void processAdapterUpdatesAndSetAnimationFlags() {
+        rebindPendingPayloadChanges();
+        final PipelineMetrics metrics = mPipelineMetrics;
+        final long startNs = metrics != null ? System.nanoTime() : 0;
+        final int updateCount = mAdapterHelper.mPendingUpdates.size();
         if (mDataSetHasChangedAfterLayout) {
             // Processing these items have no value since data set changed unexpectedly.
             // Instead, we just reset it.
@@ -3272,6 +3479,9 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
         } else {
             mAdapterHelper.consumeUpdatesInOnePass();
         }
+        if (metrics != null) {
+            metrics.recordAdapterUpdates(updateCount, System.nanoTime() - startNs);
+        }
         boolean animationTypeSupported = mItemsAddedOrRemoved || mItemsChanged;
         mState.mRunSimpleAnimations = mFirstLayoutComplete
                 && mItemAnimator != null
@@ -3497,6 +3707,7 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
      * - If necessary, run predictive layout and save its information
      */
     private void dispatchLayoutStep1() {
+        final long startNs = mPipelineMetrics != null ? System.nanoTime() : 0;
         mState.assertLayoutStep(State.STEP_START);
         mState.mIsMeasuring = false;
         eatRequestLayout();
@@ -3513,6 +3724,7 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
         if (mState.mRunSimpleAnimations) {
             // Step 0: Find out where all non-removed items are, pre-layout
             int count = mChildHelper.getChildCount();
+            mViewInfoStore.ensureCapacity(count);
             for (int i = 0; i < count; ++i) {
                 final ViewHolder holder = getChildViewHolderInt(mChildHelper.getChildAt(i));
                 if (holder.shouldIgnore() || (holder.isInvalid() && !mAdapter.hasStableIds())) {
@@ -3581,6 +3793,9 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
         onExitLayoutOrScroll();
         resumeRequestLayout(false);
         mState.mLayoutStep = State.STEP_LAYOUT;
+        if (mPipelineMetrics != null) {
+            mPipelineMetrics.recordLayoutStep(false, System.nanoTime() - startNs);
+        }
     }
 
     /**
@@ -3588,6 +3803,7 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
      * This step might be run multiple times if necessary (e.g. measure).
      */
     private void dispatchLayoutStep2() {
+        final long startNs = mPipelineMetrics != null ? System.nanoTime() : 0;
         eatRequestLayout();
         onEnterLayoutOrScroll();
         mState.assertLayoutStep(State.STEP_LAYOUT | State.STEP_ANIMATIONS);
@@ -3607,6 +3823,9 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
         mState.mLayoutStep = State.STEP_ANIMATIONS;
         onExitLayoutOrScroll();
         resumeRequestLayout(false);
+        if (mPipelineMetrics != null) {
+            mPipelineMetrics.recordLayoutStep(true, System.nanoTime() - startNs);
+        }
     }
 
     /**
@@ -3614,6 +3833,7 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
      * trigger animations and do any necessary cleanup.
      */
     private void dispatchLayoutStep3() {
+        final long startNs = mPipelineMetrics != null ? System.nanoTime() : 0;
         mState.assertLayoutStep(State.STEP_ANIMATIONS);
         eatRequestLayout();
         onEnterLayoutOrScroll();
@@ -3689,6 +3909,9 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
         }
 
         mLayout.onLayoutCompleted(mState);
+        if (mPrefetchRegistry != null) {
+            mPrefetchRegistry.mLaidOutChildCount = mChildHelper.getChildCount();
+        }
         onExitLayoutOrScroll();
         resumeRequestLayout(false);
         mViewInfoStore.clear();
@@ -3697,6 +3920,9 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
         }
         recoverFocusFromState();
         resetFocusInfo();
+        if (mPipelineMetrics != null) {
+            mPipelineMetrics.recordLayoutStep(false, System.nanoTime() - startNs);
+        }
     }
 
     /**
@@ -4941,6 +5167,8 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
             mState.mStructureChanged = true;
 
             setDataSetChangedAfterLayout();
+            // all Views are rebound anyways
+            mPendingPayloadChanges.clear();
             if (!mAdapterHelper.hasPendingUpdates()) {
                 requestLayout();
             }
@@ -4949,6 +5177,14 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
         @Override
         public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
             assertNotInLayoutOrScroll(null);
+            if (payload != null && canRebindInPlace(positionStart, itemCount)) {
+                if (mPendingPayloadChanges.add(AdapterHelper.UpdateOp.UPDATE, positionStart,
+                        itemCount, payload) && mPendingPayloadChanges.size() == 1) {
+                    ViewCompat.postOnAnimation(RecyclerView.this, mRebindPayloadChangesRunnable);
+                }
+                return;
+            }
+            flushPendingPayloadChanges();
             if (mAdapterHelper.onItemRangeChanged(positionStart, itemCount, payload)) {
                 triggerUpdateProcessor();
             }
@@ -4957,6 +5193,7 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
         @Override
         public void onItemRangeInserted(int positionStart, int itemCount) {
             assertNotInLayoutOrScroll(null);
+            flushPendingPayloadChanges();
             if (mAdapterHelper.onItemRangeInserted(positionStart, itemCount)) {
                 triggerUpdateProcessor();
             }
@@ -4965,6 +5202,7 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
         @Override
         public void onItemRangeRemoved(int positionStart, int itemCount) {
             assertNotInLayoutOrScroll(null);
+            flushPendingPayloadChanges();
             if (mAdapterHelper.onItemRangeRemoved(positionStart, itemCount)) {
                 triggerUpdateProcessor();
             }
@@ -4973,11 +5211,63 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
         @Override
         public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
             assertNotInLayoutOrScroll(null);
+            flushPendingPayloadChanges();
             if (mAdapterHelper.onItemRangeMoved(fromPosition, toPosition, itemCount)) {
                 triggerUpdateProcessor();
             }
         }
 
+        /**
+         * Returns true if a payload change of the given items can be rebound in place, because
+         * there is no pending layout that could move them and all of their Views have a stable
+         * size.
+         */
+        private boolean canRebindInPlace(int positionStart, int itemCount) {
+            if (!mFirstLayoutComplete || !mIsAttached || mDataSetHasChangedAfterLayout
+                    || mAdapterHelper.hasPendingUpdates()) {
+                return false;
+            }
+            final int positionEnd = positionStart + itemCount;
+            boolean found = false;
+            final int childCount = mChildHelper.getChildCount();
+            for (int i = 0; i < childCount; i++) {
+                final ViewHolder holder = getChildViewHolderInt(mChildHelper.getChildAt(i));
+                if (holder == null || holder.shouldIgnore() || holder.mPosition < positionStart
+                        || holder.mPosition >= positionEnd) {
+                    continue;
+                }
+                if (holder.isInvalid() || holder.isRemoved()
+                        || !mAdapter.hasStableItemSize(holder.getItemViewType())) {
+                    return false;
+                }
+                found = true;
+            }
+            // changes of items that are not laid out are cheap either way, let the LayoutManager
+            // know about them
+            return found;
+        }
+
+        /**
+         * Moves the payload changes that have not been rebound yet to the AdapterHelper, before
+         * an update that may change the positions of the items.
+         */
+        private void flushPendingPayloadChanges() {
+            final AdapterHelper.UpdateOpBuffer changes = mPendingPayloadChanges;
+            if (changes.isEmpty()) {
+                return;
+            }
+            boolean trigger = false;
+            final int size = changes.size();
+            for (int i = 0; i < size; i++) {
+                trigger |= mAdapterHelper.onItemRangeChanged(changes.mPositionStarts[i],
+                        changes.mItemCounts[i], changes.mPayloads[i]);
+            }
+            changes.clear();
+            if (trigger) {
+                triggerUpdateProcessor();
+            }
+        }
+
         void triggerUpdateProcessor() {
             if (POST_UPDATES_ON_ANIMATION && mHasFixedSize && mIsAttached) {
                 ViewCompat.postOnAnimation(RecyclerView.this, mUpdateChildViewsRunnable);
@@ -5000,6 +5290,20 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
     public static class RecycledViewPool {
         private static final int DEFAULT_MAX_SCRAP = 5;
 
+        /**
+         * With adaptive sizing, the heap of a view type can grow up to this many views if its
+         * ViewHolders are cheap to create.
+         */
+        private static final int MAX_ADAPTIVE_SCRAP = DEFAULT_MAX_SCRAP * 2;
+
+        /**
+         * With adaptive sizing, the heap of a view type can grow up to this many views if its
+         * ViewHolders take more than {@link #EXPENSIVE_CREATE_NS} to create.
+         */
+        private static final int MAX_ADAPTIVE_SCRAP_EXPENSIVE = DEFAULT_MAX_SCRAP * 4;
+
+        private static final long EXPENSIVE_CREATE_NS = TimeUnit.MILLISECONDS.toNanos(1);
+
         /**
          * Tracks both pooled holders, as well as create/bind timing metadata for the given type.
          *
@@ -5019,21 +5323,35 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
             int mMaxScrap = DEFAULT_MAX_SCRAP;
             long mCreateRunningAverageNs = 0;
             long mBindRunningAverageNs = 0;
+            // true if mMaxScrap was set by the developer, adaptive sizing won't change it then
+            boolean mMaxScrapFixed = false;
+            // number of holders requested by prewarm, adaptive sizing only grows mMaxScrap from it
+            // and the heap is not evicted below it to make room for other types
+            int mMinScrap = 0;
+            // number of holders that did not fit into the heap since the last pool miss
+            int mDroppedSinceLastMiss = 0;
         }
         SparseArray<ScrapData> mScrap = new SparseArray<>();
 
         private int mAttachCount = 0;
 
+        private boolean mAdaptiveSizingEnabled = false;
+
+        private int mMaxTotalRecycledViews = Integer.MAX_VALUE;
+
         public void clear() {
             for (int i = 0; i < mScrap.size(); i++) {
                 ScrapData data = mScrap.valueAt(i);
                 data.mScrapHeap.clear();
+                data.mDroppedSinceLastMiss = 0;
             }
         }
 
         public void setMaxRecycledViews(int viewType, int max) {
             ScrapData scrapData = getScrapDataForType(viewType);
             scrapData.mMaxScrap = max;
+            scrapData.mMaxScrapFixed = true;
+            scrapData.mMinScrap = Math.min(scrapData.mMinScrap, max);
             final ArrayList<ViewHolder> scrapHeap = scrapData.mScrapHeap;
             if (scrapHeap != null) {
                 while (scrapHeap.size() > max) {
@@ -5042,6 +5360,67 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
             }
         }
 
+        int getMaxRecycledViews(int viewType) {
+            return getScrapDataForType(viewType).mMaxScrap;
+        }
+
+        /**
+         * Enables or disables adaptive sizing of the pool.
+         * <p>
+         * When enabled, the maximum number of recycled views of a view type grows each time a
+         * ViewHolder of that type has to be created after the pool had to drop a recycled
+         * ViewHolder of the same type because it was full. How far a view type can grow depends
+         * on how long its ViewHolders take to create. View types whose maximum is set via
+         * {@link #setMaxRecycledViews(int, int)} are not affected.
+         * <p>
+         * This is useful for pools that are shared between many RecyclerViews (e.g. nested
+         * horizontal lists in a vertical list) where the default heap size is too small and views
+         * are re-created during scrolling. Use {@link #setMaxTotalRecycledViews(int)} to put an
+         * upper bound on the total size of the pool.
+         *
+         * @param enabled True to let the pool grow its heaps based on usage, false otherwise.
+         */
+        public void setAdaptiveSizingEnabled(boolean enabled) {
+            mAdaptiveSizingEnabled = enabled;
+        }
+
+        /**
+         * Returns whether adaptive sizing is enabled for this pool.
+         *
+         * @return True if the pool grows its heaps based on usage.
+         * @see #setAdaptiveSizingEnabled(boolean)
+         */
+        public boolean isAdaptiveSizingEnabled() {
+            return mAdaptiveSizingEnabled;
+        }
+
+        /**
+         * Sets the maximum number of recycled views this pool holds across all view types.
+         * <p>
+         * When the pool is full, a new recycled view replaces a view of the view type that is
+         * cheapest to create, if that one is cheaper to create than the new view. Otherwise the
+         * new view is dropped.
+         * <p>
+         * If the pool holds more views than the new maximum, views of the cheapest view types are
+         * evicted right away, including views created by
+         * {@link #prewarm(RecyclerView, int, int)}.
+         *
+         * @param max The maximum number of views in the pool.
+         * @throws IllegalArgumentException If {@code max} is negative.
+         */
+        public void setMaxTotalRecycledViews(int max) {
+            if (max < 0) {
+                throw new IllegalArgumentException("max < 0");
+            }
+            mMaxTotalRecycledViews = max;
+            int size = size();
+            while (size > max) {
+                final ScrapData victim = findCheapestNonEmptyScrapData(false);
+                victim.mScrapHeap.remove(victim.mScrapHeap.size() - 1);
+                size--;
+            }
+        }
+
         /**
          * Returns the current number of Views held by the RecycledViewPool of the given view type.
          */
@@ -5055,9 +5434,28 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
                 final ArrayList<ViewHolder> scrapHeap = scrapData.mScrapHeap;
                 return scrapHeap.remove(scrapHeap.size() - 1);
             }
+            if (scrapData != null && mAdaptiveSizingEnabled) {
+                onPoolMiss(scrapData);
+            }
             return null;
         }
 
+        /**
+         * A ViewHolder of this type is about to be created. If we dropped one before, the heap is
+         * too small for how this type is used so we let it grow.
+         */
+        private void onPoolMiss(ScrapData scrapData) {
+            if (scrapData.mMaxScrapFixed || scrapData.mDroppedSinceLastMiss == 0) {
+                return;
+            }
+            scrapData.mDroppedSinceLastMiss = 0;
+            final int limit = scrapData.mCreateRunningAverageNs > EXPENSIVE_CREATE_NS
+                    ? MAX_ADAPTIVE_SCRAP_EXPENSIVE : MAX_ADAPTIVE_SCRAP;
+            if (scrapData.mMaxScrap < limit) {
+                scrapData.mMaxScrap++;
+            }
+        }
+
         int size() {
             int count = 0;
             for (int i = 0; i < mScrap.size(); i ++) {
@@ -5071,17 +5469,144 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
 
         public void putRecycledView(ViewHolder scrap) {
             final int viewType = scrap.getItemViewType();
-            final ArrayList scrapHeap = getScrapDataForType(viewType).mScrapHeap;
-            if (mScrap.get(viewType).mMaxScrap <= scrapHeap.size()) {
+            final ScrapData scrapData = getScrapDataForType(viewType);
+            final ArrayList scrapHeap = scrapData.mScrapHeap;
+            if (scrapData.mMaxScrap <= scrapHeap.size()) {
+                scrapData.mDroppedSinceLastMiss++;
                 return;
             }
             if (DEBUG && scrapHeap.contains(scrap)) {
                 throw new IllegalArgumentException("this scrap item already exists");
             }
+            if (mMaxTotalRecycledViews != Integer.MAX_VALUE && !makeRoomFor(scrapData)) {
+                return;
+            }
             scrap.resetInternal();
             scrapHeap.add(scrap);
         }
 
+        /**
+         * Makes room in the pool for a ViewHolder of the given type by evicting a ViewHolder that
+         * is cheaper to create, if the pool is full.
+         *
+         * @return False if the pool is full and the ViewHolder should be dropped.
+         */
+        private boolean makeRoomFor(ScrapData scrapData) {
+            if (size() < mMaxTotalRecycledViews) {
+                return true;
+            }
+            final ScrapData victim = findCheapestNonEmptyScrapData(true);
+            if (victim == null || victim == scrapData
+                    || victim.mCreateRunningAverageNs >= scrapData.mCreateRunningAverageNs) {
+                return false;
+            }
+            victim.mScrapHeap.remove(victim.mScrapHeap.size() - 1);
+            return true;
+        }
+
+        /**
+         * @param keepPrewarmed True to skip the types that hold no more ViewHolders than were
+         *                      requested by {@link #prewarm(RecyclerView, int, int)}.
+         */
+        private ScrapData findCheapestNonEmptyScrapData(boolean keepPrewarmed) {
+            ScrapData cheapest = null;
+            for (int i = 0; i < mScrap.size(); i++) {
+                final ScrapData scrapData = mScrap.valueAt(i);
+                final int keep = keepPrewarmed ? scrapData.mMinScrap : 0;
+                if (scrapData.mScrapHeap.size() > keep && (cheapest == null
+                        || scrapData.mCreateRunningAverageNs < cheapest.mCreateRunningAverageNs)) {
+                    cheapest = scrapData;
+                }
+            }
+            return cheapest;
+        }
+
+        /**
+         * Creates ViewHolders of the given type with the adapter of the given RecyclerView and
+         * puts them into this pool until the pool holds {@code count} ViewHolders of that type.
+         * <p>
+         * ViewHolders are created one at a time while the main thread's message queue is idle and
+         * the RecyclerView is not scrolling, so that their creation does not delay a frame. This
+         * can be used to prepare the views of a screen (e.g. the items of nested lists) before
+         * the user starts scrolling. If needed, the maximum number of recycled views for the type
+         * is raised to {@code count}. Adaptive sizing keeps the maximum at least that large, and
+         * the pool does not evict these ViewHolders to make room for other view types when it
+         * reaches the limit set via {@link #setMaxTotalRecycledViews(int)}. Lowering either limit
+         * afterwards can still evict them.
+         * <p>
+         * Pre-warming stops early if the adapter of the RecyclerView changes or the pool is full.
+         * This method must be called on the main thread.
+         *
+         * @param recyclerView The RecyclerView whose adapter creates the ViewHolders. It should
+         *                     use this pool.
+         * @param viewType The view type of the ViewHolders to create.
+         * @param count The number of ViewHolders of this type the pool should hold.
+         */
+        public void prewarm(@NonNull RecyclerView recyclerView, int viewType, int count) {
+            final Adapter adapter = recyclerView.getAdapter();
+            if (adapter == null || count <= 0) {
+                return;
+            }
+            final ScrapData scrapData = getScrapDataForType(viewType);
+            if (scrapData.mMaxScrap < count) {
+                scrapData.mMaxScrap = count;
+            }
+            if (scrapData.mMinScrap < count) {
+                scrapData.mMinScrap = count;
+            }
+            new PrewarmIdleHandler(recyclerView, adapter, viewType, count).run();
+        }
+
+        /**
+         * Creates one ViewHolder each time the message queue becomes idle. A queue only runs its
+         * idle handlers once until a new message arrives, so after each ViewHolder the handler
+         * re-registers itself through a message, which also gives pending frames a chance to run
+         * in between.
+         */
+        private class PrewarmIdleHandler implements MessageQueue.IdleHandler, Runnable {
+            private static final long SCROLLING_RETRY_DELAY_MS = 100;
+
+            private final Handler mHandler = new Handler(Looper.myLooper());
+            private final RecyclerView mRecyclerView;
+            private final Adapter mAdapter;
+            private final int mViewType;
+            private final int mCount;
+
+            PrewarmIdleHandler(RecyclerView recyclerView, Adapter adapter, int viewType,
+                    int count) {
+                mRecyclerView = recyclerView;
+                mAdapter = adapter;
+                mViewType = viewType;
+                mCount = count;
+            }
+
+            @Override
+            public void run() {
+                Looper.myQueue().addIdleHandler(this);
+            }
+
+            @Override
+            public boolean queueIdle() {
+                final ScrapData scrapData = getScrapDataForType(mViewType);
+                final int count = scrapData.mScrapHeap.size();
+                if (mRecyclerView.getAdapter() != mAdapter
+                        || count >= Math.min(mCount, scrapData.mMaxScrap)
+                        || size() >= mMaxTotalRecycledViews) {
+                    return false;
+                }
+                if (mRecyclerView.getScrollState() == SCROLL_STATE_IDLE) {
+                    putRecycledView(mRecyclerView.mRecycler.createViewHolderForPool(mViewType));
+                    // stop if the pool dropped the ViewHolder instead of creating more to drop
+                    if (scrapData.mScrapHeap.size() > count) {
+                        mHandler.post(this);
+                    }
+                } else {
+                    mHandler.postDelayed(this, SCROLLING_RETRY_DELAY_MS);
+                }
+                return false;
+            }
+        }
+
         long runningAverage(long oldAverage, long newValue) {
             if (oldAverage == 0) {
                 return newValue;
@@ -5330,7 +5855,7 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
          *                   bind the holder.
          * @return
          */
-        private boolean tryBindViewHolderByDeadline(ViewHolder holder, int offsetPosition,
+        boolean tryBindViewHolderByDeadline(ViewHolder holder, int offsetPosition,
                 int position, long deadlineNs) {
             holder.mOwnerRecyclerView = RecyclerView.this;
             final int viewType = holder.getItemViewType();
@@ -5340,9 +5865,14 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
                 // abort - we have a deadline we can't meet
                 return false;
             }
+            final PipelineMetrics metrics = mPipelineMetrics;
+            final long metricsStartNs = metrics != null ? System.nanoTime() : 0;
             mAdapter.bindViewHolder(holder, offsetPosition);
             long endBindNs = getNanoTime();
             mRecyclerPool.factorInBindTime(holder.getItemViewType(), endBindNs - startBindNs);
+            if (metrics != null) {
+                metrics.recordBind(viewType, System.nanoTime() - metricsStartNs);
+            }
             attachAccessibilityDelegate(holder.itemView);
             if (mState.isPreLayout()) {
                 holder.mPreLayoutPosition = position;
@@ -5552,6 +6082,9 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
                             invalidateDisplayListInt(holder);
                         }
                     }
+                    if (mPipelineMetrics != null) {
+                        mPipelineMetrics.recordPoolLookup(type, holder != null);
+                    }
                 }
                 if (holder == null) {
                     long start = getNanoTime();
@@ -5560,17 +6093,7 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
                         // abort - we have a deadline we can't meet
                         return null;
                     }
-                    holder = mAdapter.createViewHolder(RecyclerView.this, type);
-                    if (ALLOW_THREAD_GAP_WORK) {
-                        // only bother finding nested RV if prefetching
-                        RecyclerView innerView = findNestedRecyclerView(holder.itemView);
-                        if (innerView != null) {
-                            holder.mNestedRecyclerView = new WeakReference<>(innerView);
-                        }
-                    }
-
-                    long end = getNanoTime();
-                    mRecyclerPool.factorInCreateTime(type, end - start);
+                    holder = createViewHolder(type, start);
                     if (DEBUG) {
                         Log.d(TAG, "tryGetViewHolderForPositionByDeadline created new ViewHolder");
                     }
@@ -5820,6 +6343,37 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
             }
         }
 
+        /**
+         * Creates a new ViewHolder of the given type and factors its creation time into the pool.
+         */
+        private ViewHolder createViewHolder(int type, long startNs) {
+            final PipelineMetrics metrics = mPipelineMetrics;
+            final long metricsStartNs = metrics != null ? System.nanoTime() : 0;
+            final ViewHolder holder = mAdapter.createViewHolder(RecyclerView.this, type);
+            if (ALLOW_THREAD_GAP_WORK) {
+                // only bother finding nested RV if prefetching
+                RecyclerView innerView = findNestedRecyclerView(holder.itemView);
+                if (innerView != null) {
+                    holder.mNestedRecyclerView = new WeakReference<>(innerView);
+                }
+            }
+
+            long end = getNanoTime();
+            getRecycledViewPool().factorInCreateTime(type, end - startNs);
+            if (metrics != null) {
+                metrics.recordCreate(type, System.nanoTime() - metricsStartNs);
+            }
+            return holder;
+        }
+
+        /**
+         * Creates an unbound ViewHolder of the given type that will be put into the
+         * RecycledViewPool ahead of time.
+         */
+        ViewHolder createViewHolderForPool(int type) {
+            return createViewHolder(type, getNanoTime());
+        }
+
         /**
          * Prepares the ViewHolder to be removed/recycled, and inserts it into the RecycledViewPool.
          *
@@ -5992,6 +6546,9 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
                 if (!holder.isInvalid() && holder.getLayoutPosition() == position) {
                     if (!dryRun) {
                         mCachedViews.remove(i);
+                        if (mPipelineMetrics != null) {
+                            mPipelineMetrics.recordCachedViewHit();
+                        }
                     }
                     if (DEBUG) {
                         Log.d(TAG, "getScrapOrHiddenOrCachedHolderForPosition(" + position
@@ -6045,6 +6602,9 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
                     if (type == holder.getItemViewType()) {
                         if (!dryRun) {
                             mCachedViews.remove(i);
+                            if (mPipelineMetrics != null) {
+                                mPipelineMetrics.recordCachedViewHit();
+                            }
                         }
                         return holder;
                     } else if (!dryRun) {
@@ -6275,6 +6835,7 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
     public static abstract class Adapter<VH extends ViewHolder> {
         private final AdapterDataObservable mObservable = new AdapterDataObservable();
         private boolean mHasStableIds = false;
+        private boolean mHasStableItemSizes = false;
 
         /**
          * Called when RecyclerView needs a new {@link ViewHolder} of the given type to represent
@@ -6455,6 +7016,57 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
             return mHasStableIds;
         }
 
+        /**
+         * Indicates whether the size of an item View stays the same when the item is rebound
+         * for a payload change.
+         * <p>
+         * When the items are size stable, a change notified with
+         * {@link #notifyItemChanged(int, Object)} or
+         * {@link #notifyItemRangeChanged(int, int, Object)} is rebound in place on the next
+         * animation frame instead of running a layout. The item Views keep their bounds, so the
+         * LayoutManager is not notified about the change and the ItemAnimator does not animate it.
+         * A change without a payload, or a change while other adapter updates are pending, still
+         * runs a layout.
+         *
+         * @param hasStableItemSizes Whether payload changes keep the size of the item Views.
+         * @see #hasStableItemSize(int)
+         */
+        public void setHasStableItemSizes(boolean hasStableItemSizes) {
+            mHasStableItemSizes = hasStableItemSizes;
+        }
+
+        /**
+         * Returns true if the size of item Views of the given type stays the same when they are
+         * rebound for a payload change. Override this method to enable or disable the in place
+         * rebinding of {@link #setHasStableItemSizes(boolean)} per view type.
+         *
+         * @param viewType The view type of the item.
+         * @return True if payload changes of items of this type can be rebound without a layout.
+         * Default implementation returns the value set via
+         * {@link #setHasStableItemSizes(boolean)}.
+         */
+        public boolean hasStableItemSize(int viewType) {
+            return mHasStableItemSizes;
+        }
+
+        /**
+         * Returns true if {@link #onCreateViewHolder(ViewGroup, int)} can be called on a
+         * background thread, while the main thread keeps using the adapter.
+         * <p>
+         * RecyclerView uses this to pre-create ViewHolders on the executor set via
+         * {@link RecyclerView#setViewHolderCreationExecutor(Executor)}. An adapter that returns
+         * true must not touch views attached to a window or any other main thread state while
+         * creating a ViewHolder. ViewHolders created this way are never bound on the background
+         * thread.
+         *
+         * @return True if ViewHolders can be created on any thread. Default implementation
+         * returns false.
+         * @see RecyclerView#setViewHolderPreCreationEnabled(boolean)
+         */
+        public boolean isCreateViewHolderThreadSafe() {
+            return false;
+        }
+
         /**
          * Called when a view created by this adapter has been recycled.
          *
@@ -10137,6 +10749,368 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
         public void onViewRecycled(ViewHolder holder);
     }
 
+    /**
+     * A PipelineMetricsListener can be set on a RecyclerView to receive, once per frame, the time
+     * RecyclerView spent in each stage of its pipeline.
+     *
+     * @see RecyclerView#setPipelineMetricsListener(PipelineMetricsListener)
+     */
+    public interface PipelineMetricsListener {
+
+        /**
+         * Called at the start of a frame with the metrics collected since the previous call.
+         * It is not called for frames in which RecyclerView did no recorded work.
+         * <p>
+         * The metrics object is reused and is only valid during this call. Its values must be
+         * copied if they are needed later.
+         *
+         * @param recyclerView The RecyclerView the metrics were collected for
+         * @param metrics The metrics collected since the previous call
+         */
+        void onPipelineMetrics(RecyclerView recyclerView, PipelineMetrics metrics);
+    }
+
+    /**
+     * Durations and counts of the work RecyclerView did during a frame, reported to a
+     * {@link PipelineMetricsListener}. All durations are in nanoseconds.
+     * <p>
+     * Values for the view types seen during the frame are accessed by index, from 0 to
+     * {@link #getViewTypeCount()} - 1.
+     * <p>
+     * The time spent in layout includes the time spent processing adapter updates, creating and
+     * binding ViewHolders and setting up item animations during the layout.
+     */
+    public static class PipelineMetrics {
+        private final RecyclerView mRecyclerView;
+        private final Runnable mDispatchRunnable = new Runnable() {
+            @Override
+            public void run() {
+                mDispatchPosted = false;
+                if (mRecyclerView.mPipelineMetrics == PipelineMetrics.this) {
+                    dispatch();
+                }
+            }
+        };
+        boolean mDispatchPosted;
+        boolean mHasData;
+
+        int mAdapterUpdateCount;
+        long mAdapterUpdateNs;
+        int mLayoutCount;
+        long mLayoutNs;
+        long mItemAnimatorNs;
+        int mCachedViewHitCount;
+        int mPrefetchCount;
+        int mPrefetchDeadlineMissCount;
+
+        // per view type values, indexed in the order the view types were first seen in a frame
+        int mViewTypeCount;
+        int[] mViewTypes = new int[4];
+        int[] mCreateCounts = new int[4];
+        long[] mCreateNs = new long[4];
+        int[] mBindCounts = new int[4];
+        long[] mBindNs = new long[4];
+        int[] mPoolHitCounts = new int[4];
+        int[] mPoolMissCounts = new int[4];
+
+        PipelineMetrics(RecyclerView recyclerView) {
+            mRecyclerView = recyclerView;
+        }
+
+        /**
+         * @return The number of adapter update operations that were processed.
+         */
+        public int getAdapterUpdateCount() {
+            return mAdapterUpdateCount;
+        }
+
+        /**
+         * @return The time spent processing adapter update operations.
+         */
+        public long getAdapterUpdateDurationNs() {
+            return mAdapterUpdateNs;
+        }
+
+        /**
+         * @return The number of times the LayoutManager laid out children.
+         */
+        public int getLayoutCount() {
+            return mLayoutCount;
+        }
+
+        /**
+         * @return The time spent in layout.
+         */
+        public long getLayoutDurationNs() {
+            return mLayoutNs;
+        }
+
+        /**
+         * @return The time spent in {@link ItemAnimator#runPendingAnimations()}.
+         */
+        public long getItemAnimatorDurationNs() {
+            return mItemAnimatorNs;
+        }
+
+        /**
+         * @return The number of ViewHolders that were taken from the cache of detached views.
+         * @see RecyclerView#setItemViewCacheSize(int)
+         */
+        public int getCachedViewHitCount() {
+            return mCachedViewHitCount;
+        }
+
+        /**
+         * @return The number of items that were successfully prefetched.
+         */
+        public int getPrefetchCount() {
+            return mPrefetchCount;
+        }
+
+        /**
+         * @return The number of items that could not be prefetched because creating or binding
+         * them would not have completed before the next frame.
+         */
+        public int getPrefetchDeadlineMissCount() {
+            return mPrefetchDeadlineMissCount;
+        }
+
+        /**
+         * @return The number of view types that were created, bound or looked up in the
+         * {@link RecycledViewPool}.
+         */
+        public int getViewTypeCount() {
+            return mViewTypeCount;
+        }
+
+        /**
+         * @param index The index of the view type, from 0 to {@link #getViewTypeCount()} - 1.
+         * @return The view type at the given index.
+         */
+        public int getViewType(int index) {
+            return mViewTypes[index];
+        }
+
+        /**
+         * @param index The index of the view type, from 0 to {@link #getViewTypeCount()} - 1.
+         * @return The number of ViewHolders of the view type that were created.
+         */
+        public int getCreateCount(int index) {
+            return mCreateCounts[index];
+        }
+
+        /**
+         * @param index The index of the view type, from 0 to {@link #getViewTypeCount()} - 1.
+         * @return The time spent creating ViewHolders of the view type.
+         */
+        public long getCreateDurationNs(int index) {
+            return mCreateNs[index];
+        }
+
+        /**
+         * @param index The index of the view type, from 0 to {@link #getViewTypeCount()} - 1.
+         * @return The number of ViewHolders of the view type that were bound.
+         */
+        public int getBindCount(int index) {
+            return mBindCounts[index];
+        }
+
+        /**
+         * @param index The index of the view type, from 0 to {@link #getViewTypeCount()} - 1.
+         * @return The time spent binding ViewHolders of the view type.
+         */
+        public long getBindDurationNs(int index) {
+            return mBindNs[index];
+        }
+
+        /**
+         * @param index The index of the view type, from 0 to {@link #getViewTypeCount()} - 1.
+         * @return The number of ViewHolders of the view type that were taken from the
+         * {@link RecycledViewPool}.
+         */
+        public int getPoolHitCount(int index) {
+            return mPoolHitCounts[index];
+        }
+
+        /**
+         * @param index The index of the view type, from 0 to {@link #getViewTypeCount()} - 1.
+         * @return The number of times the {@link RecycledViewPool} had no ViewHolder of the view
+         * type.
+         */
+        public int getPoolMissCount(int index) {
+            return mPoolMissCounts[index];
+        }
+
+        void recordAdapterUpdates(int count, long durationNs) {
+            mAdapterUpdateCount += count;
+            mAdapterUpdateNs += durationNs;
+            onRecorded();
+        }
+
+        void recordLayoutStep(boolean laidOutChildren, long durationNs) {
+            if (laidOutChildren) {
+                mLayoutCount++;
+            }
+            mLayoutNs += durationNs;
+            onRecorded();
+        }
+
+        void recordItemAnimator(long durationNs) {
+            mItemAnimatorNs += durationNs;
+            onRecorded();
+        }
+
+        void recordCachedViewHit() {
+            mCachedViewHitCount++;
+            onRecorded();
+        }
+
+        void recordPrefetch(boolean success) {
+            if (success) {
+                mPrefetchCount++;
+            } else {
+                mPrefetchDeadlineMissCount++;
+            }
+            onRecorded();
+        }
+
+        void recordCreate(int viewType, long durationNs) {
+            final int index = indexOfViewType(viewType);
+            mCreateCounts[index]++;
+            mCreateNs[index] += durationNs;
+            onRecorded();
+        }
+
+        void recordBind(int viewType, long durationNs) {
+            final int index = indexOfViewType(viewType);
+            mBindCounts[index]++;
+            mBindNs[index] += durationNs;
+            onRecorded();
+        }
+
+        void recordPoolLookup(int viewType, boolean hit) {
+            final int index = indexOfViewType(viewType);
+            if (hit) {
+                mPoolHitCounts[index]++;
+            } else {
+                mPoolMissCounts[index]++;
+            }
+            onRecorded();
+        }
+
+        private int indexOfViewType(int viewType) {
+            for (int i = 0; i < mViewTypeCount; i++) {
+                if (mViewTypes[i] == viewType) {
+                    return i;
+                }
+            }
+            if (mViewTypeCount == mViewTypes.length) {
+                final int size = mViewTypeCount * 2;
+                mViewTypes = Arrays.copyOf(mViewTypes, size);
+                mCreateCounts = Arrays.copyOf(mCreateCounts, size);
+                mCreateNs = Arrays.copyOf(mCreateNs, size);
+                mBindCounts = Arrays.copyOf(mBindCounts, size);
+                mBindNs = Arrays.copyOf(mBindNs, size);
+                mPoolHitCounts = Arrays.copyOf(mPoolHitCounts, size);
+                mPoolMissCounts = Arrays.copyOf(mPoolMissCounts, size);
+            }
+            final int index = mViewTypeCount++;
+            mViewTypes[index] = viewType;
+            mCreateCounts[index] = 0;
+            mCreateNs[index] = 0;
+            mBindCounts[index] = 0;
+            mBindNs[index] = 0;
+            mPoolHitCounts[index] = 0;
+            mPoolMissCounts[index] = 0;
+            return index;
+        }
+
+        private void onRecorded() {
+            mHasData = true;
+            if (!mDispatchPosted) {
+                mDispatchPosted = true;
+                ViewCompat.postOnAnimation(mRecyclerView, mDispatchRunnable);
+            }
+        }
+
+        /**
+         * Reports the collected metrics to the listener and starts collecting the next frame.
+         */
+        void dispatch() {
+            if (!mHasData) {
+                return;
+            }
+            final PipelineMetricsListener listener = mRecyclerView.mPipelineMetricsListener;
+            if (listener != null) {
+                listener.onPipelineMetrics(mRecyclerView, this);
+            }
+            reset();
+        }
+
+        void reset() {
+            mHasData = false;
+            mAdapterUpdateCount = 0;
+            mAdapterUpdateNs = 0;
+            mLayoutCount = 0;
+            mLayoutNs = 0;
+            mItemAnimatorNs = 0;
+            mCachedViewHitCount = 0;
+            mPrefetchCount = 0;
+            mPrefetchDeadlineMissCount = 0;
+            // per view type values are cleared when the view type is seen again
+            mViewTypeCount = 0;
+        }
+    }
+
+    /**
+     * Schedules the prefetch of RecyclerViews nested in the items of a RecyclerView, see
+     * {@link RecyclerView#setNestedPrefetchPolicy(NestedPrefetchPolicy)}.
+     * <p>
+     * Prefetch shares the time before the next frame between the items of the outer RecyclerViews
+     * and the items of the nested RecyclerViews. Override {@link #getOuterBudgetNs(long)} to change
+     * how that time is split and
+     * {@link #getNestedPrefetchItemCount(RecyclerView, int, int)} to change how many items of a
+     * nested RecyclerView are prefetched.
+     */
+    public static class NestedPrefetchPolicy {
+
+        /**
+         * Returns how much of the time before the next frame the prefetch of the items of the
+         * outer RecyclerViews may use. Nested RecyclerViews are prefetched in the remaining time,
+         * including the time the outer items did not use. Items that are needed for the next frame
+         * are always prefetched, regardless of the budget.
+         * <p>
+         * The default implementation returns half of the frame budget.
+         *
+         * @param frameBudgetNs The time left before the next frame, in nanoseconds.
+         * @return The time the outer items may use, in nanoseconds.
+         */
+        public long getOuterBudgetNs(long frameBudgetNs) {
+            return frameBudgetNs / 2;
+        }
+
+        /**
+         * Returns how many items of a nested RecyclerView should be prefetched.
+         * <p>
+         * The default implementation returns the number of children the nested RecyclerView had
+         * after its last layout, or the number of positions collected by its LayoutManager if it
+         * has not been laid out yet.
+         *
+         * @param nestedView The nested RecyclerView.
+         * @param laidOutChildCount The number of children the nested RecyclerView had after its
+         *                          last layout, 0 if it has not been laid out.
+         * @param initialPrefetchItemCount The number of positions collected by
+         *        {@link LayoutManager#collectInitialPrefetchPositions(int,
+         *        LayoutManager.LayoutPrefetchRegistry)}.
+         * @return The number of items to prefetch. Additional items continue in the direction of
+         *         the positions collected by the LayoutManager.
+         */
+        public int getNestedPrefetchItemCount(RecyclerView nestedView, int laidOutChildCount,
+                int initialPrefetchItemCount) {
+            return laidOutChildCount > 0 ? laidOutChildCount : initialPrefetchItemCount;
+        }
+    }
+
     /**
      * A Listener interface that can be attached to a RecylcerView to get notified
      * whenever a ViewHolder is attached to or detached from RecyclerView.
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.support.v7.widget;
+
+import java.util.Arrays;
+
+/**
+ * Checkpoints of the span walk done by the default {@link GridLayoutManager.SpanSizeLookup}
+ * implementations of {@code getSpanIndex} and {@code getSpanGroupIndex}, so that a lookup only
+ * walks from the closest checkpoint before the position instead of from position 0.
+ * <p>
+ * A checkpoint at a position stores the state of the walk right before the item at that position:
+ * the span the item starts at if it fits into the current group, and the index of that group.
+ * Lookups add a checkpoint every {@link #CHECKPOINT_INTERVAL} positions they walk past.
+ * <p>
+ * Adapter changes do not clear the checkpoints. They are moved along with the items and the
+ * checkpoints that follow a changed range are marked dirty. Dirty checkpoints are repaired by the
+ * next lookup that needs them, by walking the range before them again. A checkpoint that is not
+ * dirty only depends on the checkpoint before it, so if a repaired checkpoint ends up with the
+ * same span as before, the checkpoints after it just need their group index shifted.
+ */
+class SpanGroupIndex {
+
+    static final int CHECKPOINT_INTERVAL = 64;
+
+    private final GridLayoutManager.SpanSizeLookup mLookup;
+
+    private int mSpanCount;
+
+    // Checkpoints sorted by position. The walk state at position 0 is implicit (0, 0).
+    private int[] mPositions = new int[16];
+    private int[] mSpans = new int[16];
+    private int[] mGroups = new int[16];
+    private boolean[] mDirty = new boolean[16];
+    private int mSize;
+
+    // Checkpoints before this index are known to be correct. Checkpoints from this index on may
+    // be stale relative to the checkpoint before them if they are dirty, or relative to the last
+    // correct checkpoint otherwise.
+    private int mFirstSuspect;
+
+    // The result of the last walk.
+    private int mWalkSpan;
+    private int mWalkGroup;
+
+    SpanGroupIndex(GridLayoutManager.SpanSizeLookup lookup) {
+        mLookup = lookup;
+    }
+
+    int getSpanIndex(int position, int spanCount) {
+        walkTo(position, spanCount);
+        if (mWalkSpan + mLookup.getSpanSize(position) <= spanCount) {
+            return mWalkSpan;
+        }
+        return 0;
+    }
+
+    int getSpanGroupIndex(int position, int spanCount) {
+        walkTo(position, spanCount);
+        if (mWalkSpan + mLookup.getSpanSize(position) > spanCount) {
+            return mWalkGroup + 1;
+        }
+        return mWalkGroup;
+    }
+
+    void clear() {
+        mSize = 0;
+        mFirstSuspect = 0;
+    }
+
+    int getCheckpointCount() {
+        return mSize;
+    }
+
+    void onItemsAdded(int positionStart, int itemCount) {
+        // the walk state before positionStart does not change
+        final int first = findFirstAfter(positionStart);
+        for (int i = first; i < mSize; i++) {
+            mPositions[i] += itemCount;
+        }
+        markDirty(first);
+    }
+
+    void onItemsRemoved(int positionStart, int itemCount) {
+        final int first = findFirstAfter(positionStart);
+        int kept = findFirstAfter(positionStart + itemCount - 1);
+        if (kept < mSize && mPositions[kept] == positionStart + itemCount && first > 0
+                && mPositions[first - 1] == positionStart) {
+            // it would end up at the same position as the checkpoint before it
+            kept++;
+        }
+        final int removed = kept - first;
+        if (removed > 0) {
+            System.arraycopy(mPositions, kept, mPositions, first, mSize - kept);
+            System.arraycopy(mSpans, kept, mSpans, first, mSize - kept);
+            System.arraycopy(mGroups, kept, mGroups, first, mSize - kept);
+            System.arraycopy(mDirty, kept, mDirty, first, mSize - kept);
+            mSize -= removed;
+            if (mFirstSuspect > first) {
+                mFirstSuspect = Math.max(first, mFirstSuspect - removed);
+            }
+        }
+        for (int i = first; i < mSize; i++) {
+            mPositions[i] -= itemCount;
+        }
+        markDirty(first);
+    }
+
+    void onItemsUpdated(int positionStart, int itemCount) {
+        // every checkpoint whose preceding range overlaps the updated items
+        final int first = findFirstAfter(positionStart);
+        final int end = findFirstAfter(positionStart + itemCount - 1);
+        for (int i = first; i <= end && i < mSize; i++) {
+            markDirty(i);
+        }
+    }
+
+    void onItemsMoved(int from, int to, int itemCount) {
+        final int start = Math.min(from, to);
+        final int end = Math.max(from, to) + itemCount - 1;
+        onItemsUpdated(start, end - start + 1);
+    }
+
+    private void markDirty(int index) {
+        if (index < mSize) {
+            mDirty[index] = true;
+            mFirstSuspect = Math.min(mFirstSuspect, index);
+        }
+    }
+
+    /**
+     * Returns the index of the first checkpoint after the given position, or the number of
+     * checkpoints if there is none.
+     */
+    private int findFirstAfter(int position) {
+        int lo = 0;
+        int hi = mSize - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (mPositions[mid] <= position) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Computes the walk state right before the given position into {@link #mWalkSpan} and
+     * {@link #mWalkGroup}.
+     */
+    private void walkTo(int position, int spanCount) {
+        if (spanCount != mSpanCount) {
+            clear();
+            mSpanCount = spanCount;
+        }
+        int index = findFirstAfter(position) - 1;
+        if (index >= mFirstSuspect) {
+            repair(index);
+        }
+        int pos = 0;
+        int span = 0;
+        int group = 0;
+        if (index >= 0) {
+            pos = mPositions[index];
+            span = mSpans[index];
+            group = mGroups[index];
+        }
+        int lastCheckpoint = pos;
+        while (pos < position) {
+            final int size = mLookup.getSpanSize(pos);
+            span += size;
+            if (span == spanCount) {
+                span = 0;
+                group++;
+            } else if (span > spanCount) {
+                // did not fit, moving to next row / column
+                span = size;
+                group++;
+            }
+            pos++;
+            if (pos - lastCheckpoint >= CHECKPOINT_INTERVAL) {
+                final int next = index + 1 < mSize ? mPositions[index + 1] : Integer.MAX_VALUE;
+                if (next - pos >= CHECKPOINT_INTERVAL) {
+                    index++;
+                    insertCheckpoint(index, pos, span, group);
+                    lastCheckpoint = pos;
+                }
+            }
+        }
+        mWalkSpan = span;
+        mWalkGroup = group;
+    }
+
+    /**
+     * Repairs the suspect checkpoints up to and including the given index.
+     */
+    private void repair(int target) {
+        int pos = 0;
+        int span = 0;
+        int group = 0;
+        if (mFirstSuspect > 0) {
+            pos = mPositions[mFirstSuspect - 1];
+            span = mSpans[mFirstSuspect - 1];
+            group = mGroups[mFirstSuspect - 1];
+        }
+        // how the correct state of the previous checkpoint relates to its stored state
+        boolean sameSpan = true;
+        int groupDelta = 0;
+        for (int i = mFirstSuspect; i <= target; i++) {
+            if (!mDirty[i] && sameSpan) {
+                span = mSpans[i];
+                group = mGroups[i] + groupDelta;
+                pos = mPositions[i];
+            } else {
+                final int spanCount = mSpanCount;
+                final int end = mPositions[i];
+                for (; pos < end; pos++) {
+                    final int size = mLookup.getSpanSize(pos);
+                    span += size;
+                    if (span == spanCount) {
+                        span = 0;
+                        group++;
+                    } else if (span > spanCount) {
+                        span = size;
+                        group++;
+                    }
+                }
+            }
+            sameSpan = span == mSpans[i];
+            groupDelta = group - mGroups[i];
+            mSpans[i] = span;
+            mGroups[i] = group;
+            mDirty[i] = false;
+        }
+        mFirstSuspect = target + 1;
+        if (mFirstSuspect < mSize) {
+            if (!sameSpan || groupDelta != 0) {
+                // the next checkpoint is stale relative to the one we just fixed
+                mDirty[mFirstSuspect] = true;
+            } else {
+                while (mFirstSuspect < mSize && !mDirty[mFirstSuspect]) {
+                    mFirstSuspect++;
+                }
+            }
+        }
+    }
+
+    private void insertCheckpoint(int index, int position, int span, int group) {
+        if (mSize == mPositions.length) {
+            final int capacity = mSize * 2;
+            mPositions = Arrays.copyOf(mPositions, capacity);
+            mSpans = Arrays.copyOf(mSpans, capacity);
+            mGroups = Arrays.copyOf(mGroups, capacity);
+            mDirty = Arrays.copyOf(mDirty, capacity);
+        }
+        final int moved = mSize - index;
+        System.arraycopy(mPositions, index, mPositions, index + 1, moved);
+        System.arraycopy(mSpans, index, mSpans, index + 1, moved);
+        System.arraycopy(mGroups, index, mGroups, index + 1, moved);
+        System.arraycopy(mDirty, index, mDirty, index + 1, moved);
+        mPositions[index] = position;
+        mSpans[index] = span;
+        mGroups[index] = group;
+        mDirty[index] = false;
+        mSize++;
+        if (mFirstSuspect >= index) {
+            mFirstSuspect++;
+        }
+    }
+}
@@ -44,7 +44,6 @@ import android.view.accessibility.AccessibilityEvent;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
-import java.util.List;
 
 /**
  * A LayoutManager that lays out children in a staggered grid formation.
@@ -814,8 +813,8 @@ public class StaggeredGridLayoutManager extends RecyclerView.LayoutManager imple
             anchorInfo.mLayoutFromEnd = mShouldReverseLayout;
         }
         if (mPendingSavedState.mSpanLookupSize > 1) {
-            mLazySpanLookup.mData = mPendingSavedState.mSpanLookup;
-            mLazySpanLookup.mFullSpanItems = mPendingSavedState.mFullSpanItems;
+            mLazySpanLookup.restore(mPendingSavedState.mSpanLookup,
+                    mPendingSavedState.mFullSpanItems);
         }
     }
 
@@ -1200,10 +1199,12 @@ public class StaggeredGridLayoutManager extends RecyclerView.LayoutManager imple
         state.mAnchorLayoutFromEnd = mLastLayoutFromEnd;
         state.mLastLayoutRTL = mLastLayoutRTL;
 
-        if (mLazySpanLookup != null && mLazySpanLookup.mData != null) {
-            state.mSpanLookup = mLazySpanLookup.mData;
+        if (mLazySpanLookup != null && mLazySpanLookup.getRunCount() > 0) {
+            state.mSpanLookup = mLazySpanLookup.saveSpans();
             state.mSpanLookupSize = state.mSpanLookup.length;
-            state.mFullSpanItems = mLazySpanLookup.mFullSpanItems;
+            state.mFullSpanItems = mLazySpanLookup.saveFullSpanItems();
+            state.mFullSpanItemsSize = state.mFullSpanItems == null
+                    ? 0 : state.mFullSpanItems.length;
         } else {
             state.mSpanLookupSize = 0;
         }
@@ -2797,27 +2798,39 @@ public class StaggeredGridLayoutManager extends RecyclerView.LayoutManager imple
     }
 
     /**
-     * An array of mappings from adapter position to span.
-     * This only grows when a write happens and it grows up to the size of the adapter.
+     * A mapping from adapter position to span.
+     * <p>
+     * Spans are stored as runs of positions with the same span, so memory grows with the number of
+     * span changes rather than with the largest position that has been laid out, and unassigned
+     * ranges (e.g. after scrolling to a far position) are free. Full span items are kept sorted by
+     * position in a primitive index, so that lookups by position and range are O(log n).
      */
     static class LazySpanLookup {
 
         private static final int MIN_SIZE = 10;
-        int[] mData;
-        List<FullSpanItem> mFullSpanItems;
 
+        // Runs of positions with the same span, sorted by start. They cover [0, mEnd) and
+        // positions after mEnd do not have a span. Neighbouring runs have different spans and the
+        // last run never has an invalid span.
+        private int[] mRunStarts;
+        private int[] mRunSpans;
+        private int mRunCount;
+        private int mEnd;
+
+        // Full span items sorted by position, with their positions duplicated in a primitive array
+        // for binary search.
+        private int[] mFullSpanPositions;
+        private FullSpanItem[] mFullSpanItems;
+        private int mFullSpanItemCount;
 
         /**
          * Invalidates everything after this position, including full span information
          */
         int forceInvalidateAfter(int position) {
-            if (mFullSpanItems != null) {
-                for (int i = mFullSpanItems.size() - 1; i >= 0; i--) {
-                    FullSpanItem fsi = mFullSpanItems.get(i);
-                    if (fsi.mPosition >= position) {
-                        mFullSpanItems.remove(i);
-                    }
-                }
+            if (mFullSpanItemCount > 0) {
+                final int count = findFullSpanItemIndex(position);
+                Arrays.fill(mFullSpanItems, count, mFullSpanItemCount, null);
+                mFullSpanItemCount = count;
             }
             return invalidateAfter(position);
         }
@@ -2826,115 +2839,130 @@ public class StaggeredGridLayoutManager extends RecyclerView.LayoutManager imple
          * returns end position for invalidation.
          */
         int invalidateAfter(int position) {
-            if (mData == null) {
-                return RecyclerView.NO_POSITION;
-            }
-            if (position >= mData.length) {
+            if (position >= mEnd) {
                 return RecyclerView.NO_POSITION;
             }
             int endPosition = invalidateFullSpansAfter(position);
             if (endPosition == RecyclerView.NO_POSITION) {
-                Arrays.fill(mData, position, mData.length, LayoutParams.INVALID_SPAN_ID);
-                return mData.length;
+                final int end = mEnd;
+                fill(position, end, LayoutParams.INVALID_SPAN_ID);
+                return end;
             } else {
                 // just invalidate items in between
-                Arrays.fill(mData, position, endPosition + 1, LayoutParams.INVALID_SPAN_ID);
+                fill(position, endPosition + 1, LayoutParams.INVALID_SPAN_ID);
                 return endPosition + 1;
             }
         }
 
         int getSpan(int position) {
-            if (mData == null || position >= mData.length) {
+            if (position >= mEnd) {
                 return LayoutParams.INVALID_SPAN_ID;
-            } else {
-                return mData[position];
             }
+            return mRunSpans[findRun(position)];
         }
 
         void setSpan(int position, Span span) {
-            ensureSize(position);
-            mData[position] = span.mIndex;
+            setSpan(position, span.mIndex);
         }
 
-        int sizeForPosition(int position) {
-            int len = mData.length;
-            while (len <= position) {
-                len *= 2;
-            }
-            return len;
+        void setSpan(int position, int spanIndex) {
+            fill(position, position + 1, spanIndex);
         }
 
-        void ensureSize(int position) {
-            if (mData == null) {
-                mData = new int[Math.max(position, MIN_SIZE) + 1];
-                Arrays.fill(mData, LayoutParams.INVALID_SPAN_ID);
-            } else if (position >= mData.length) {
-                int[] old = mData;
-                mData = new int[sizeForPosition(position)];
-                System.arraycopy(old, 0, mData, 0, old.length);
-                Arrays.fill(mData, old.length, mData.length, LayoutParams.INVALID_SPAN_ID);
+        void clear() {
+            mRunCount = 0;
+            mEnd = 0;
+            if (mFullSpanItemCount > 0) {
+                Arrays.fill(mFullSpanItems, 0, mFullSpanItemCount, null);
+                mFullSpanItemCount = 0;
             }
         }
 
-        void clear() {
-            if (mData != null) {
-                Arrays.fill(mData, LayoutParams.INVALID_SPAN_ID);
-            }
-            mFullSpanItems = null;
+        /**
+         * Returns the number of runs of positions with the same span.
+         */
+        int getRunCount() {
+            return mRunCount;
         }
 
         void offsetForRemoval(int positionStart, int itemCount) {
-            if (mData == null || positionStart >= mData.length) {
+            offsetFullSpansForRemoval(positionStart, itemCount);
+            if (positionStart >= mEnd) {
                 return;
             }
-            ensureSize(positionStart + itemCount);
-            System.arraycopy(mData, positionStart + itemCount, mData, positionStart,
-                    mData.length - positionStart - itemCount);
-            Arrays.fill(mData, mData.length - itemCount, mData.length,
-                    LayoutParams.INVALID_SPAN_ID);
-            offsetFullSpansForRemoval(positionStart, itemCount);
+            final int end = positionStart + itemCount;
+            final int first = findRun(positionStart);
+            // runs before keep are not affected
+            final int keep = mRunStarts[first] < positionStart ? first + 1 : first;
+            if (end >= mEnd) {
+                mRunCount = keep;
+                mEnd = positionStart;
+                trimEnd();
+                return;
+            }
+            final int last = findRun(end);
+            int removed = 0;
+            if (last >= keep) {
+                // the run that contains the first item after the removed ones continues from
+                // positionStart
+                mRunStarts[last] = positionStart;
+                removed = last - keep;
+                removeRuns(keep, removed);
+            }
+            for (int i = last - removed + 1; i < mRunCount; i++) {
+                mRunStarts[i] -= itemCount;
+            }
+            mEnd -= itemCount;
+            mergeWithPrevious(keep);
         }
 
         private void offsetFullSpansForRemoval(int positionStart, int itemCount) {
-            if (mFullSpanItems == null) {
+            if (mFullSpanItemCount == 0) {
                 return;
             }
             final int end = positionStart + itemCount;
-            for (int i = mFullSpanItems.size() - 1; i >= 0; i--) {
-                FullSpanItem fsi = mFullSpanItems.get(i);
-                if (fsi.mPosition < positionStart) {
-                    continue;
-                }
-                if (fsi.mPosition < end) {
-                    mFullSpanItems.remove(i);
-                } else {
-                    fsi.mPosition -= itemCount;
-                }
-            }
+            final int first = findFullSpanItemIndex(positionStart);
+            final int last = findFullSpanItemIndex(end);
+            final int moved = mFullSpanItemCount - last;
+            System.arraycopy(mFullSpanPositions, last, mFullSpanPositions, first, moved);
+            System.arraycopy(mFullSpanItems, last, mFullSpanItems, first, moved);
+            mFullSpanItemCount -= last - first;
+            Arrays.fill(mFullSpanItems, mFullSpanItemCount, mFullSpanItemCount + last - first,
+                    null);
+            offsetFullSpanPositions(first, -itemCount);
         }
 
         void offsetForAddition(int positionStart, int itemCount) {
-            if (mData == null || positionStart >= mData.length) {
+            offsetFullSpansForAddition(positionStart, itemCount);
+            if (positionStart >= mEnd) {
                 return;
             }
-            ensureSize(positionStart + itemCount);
-            System.arraycopy(mData, positionStart, mData, positionStart + itemCount,
-                    mData.length - positionStart - itemCount);
-            Arrays.fill(mData, positionStart, positionStart + itemCount,
-                    LayoutParams.INVALID_SPAN_ID);
-            offsetFullSpansForAddition(positionStart, itemCount);
+            int index = findRun(positionStart);
+            if (mRunStarts[index] < positionStart) {
+                // split the run, the added items go in between
+                insertRun(index + 1, positionStart, mRunSpans[index]);
+                index++;
+            }
+            for (int i = index; i < mRunCount; i++) {
+                mRunStarts[i] += itemCount;
+            }
+            mEnd += itemCount;
+            insertRun(index, positionStart, LayoutParams.INVALID_SPAN_ID);
+            mergeWithPrevious(index + 1);
+            mergeWithPrevious(index);
         }
 
         private void offsetFullSpansForAddition(int positionStart, int itemCount) {
-            if (mFullSpanItems == null) {
+            if (mFullSpanItemCount == 0) {
                 return;
             }
-            for (int i = mFullSpanItems.size() - 1; i >= 0; i--) {
-                FullSpanItem fsi = mFullSpanItems.get(i);
-                if (fsi.mPosition < positionStart) {
-                    continue;
-                }
-                fsi.mPosition += itemCount;
+            offsetFullSpanPositions(findFullSpanItemIndex(positionStart), itemCount);
+        }
+
+        private void offsetFullSpanPositions(int from, int offset) {
+            for (int i = from; i < mFullSpanItemCount; i++) {
+                mFullSpanPositions[i] += offset;
+                mFullSpanItems[i].mPosition += offset;
             }
         }
 
@@ -2943,63 +2971,52 @@ public class StaggeredGridLayoutManager extends RecyclerView.LayoutManager imple
          * Returned position SHOULD BE invalidated.
          */
         private int invalidateFullSpansAfter(int position) {
-            if (mFullSpanItems == null) {
+            if (mFullSpanItemCount == 0) {
                 return RecyclerView.NO_POSITION;
             }
-            final FullSpanItem item = getFullSpanItem(position);
+            final int index = findFullSpanItemIndex(position);
             // if there is an fsi at this position, get rid of it.
-            if (item != null) {
-                mFullSpanItems.remove(item);
-            }
-            int nextFsiIndex = -1;
-            final int count = mFullSpanItems.size();
-            for (int i = 0; i < count; i++) {
-                FullSpanItem fsi = mFullSpanItems.get(i);
-                if (fsi.mPosition >= position) {
-                    nextFsiIndex = i;
-                    break;
-                }
+            if (index < mFullSpanItemCount && mFullSpanPositions[index] == position) {
+                removeFullSpanItem(index);
             }
-            if (nextFsiIndex != -1) {
-                FullSpanItem fsi = mFullSpanItems.get(nextFsiIndex);
-                mFullSpanItems.remove(nextFsiIndex);
-                return fsi.mPosition;
+            if (index < mFullSpanItemCount) {
+                final int nextPosition = mFullSpanPositions[index];
+                removeFullSpanItem(index);
+                return nextPosition;
             }
             return RecyclerView.NO_POSITION;
         }
 
         public void addFullSpanItem(FullSpanItem fullSpanItem) {
             if (mFullSpanItems == null) {
-                mFullSpanItems = new ArrayList<>();
-            }
-            final int size = mFullSpanItems.size();
-            for (int i = 0; i < size; i++) {
-                FullSpanItem other = mFullSpanItems.get(i);
-                if (other.mPosition == fullSpanItem.mPosition) {
-                    if (DEBUG) {
-                        throw new IllegalStateException("two fsis for same position");
-                    } else {
-                        mFullSpanItems.remove(i);
-                    }
-                }
-                if (other.mPosition >= fullSpanItem.mPosition) {
-                    mFullSpanItems.add(i, fullSpanItem);
-                    return;
+                mFullSpanPositions = new int[MIN_SIZE];
+                mFullSpanItems = new FullSpanItem[MIN_SIZE];
+            }
+            final int position = fullSpanItem.mPosition;
+            final int index = findFullSpanItemIndex(position);
+            if (index < mFullSpanItemCount && mFullSpanPositions[index] == position) {
+                if (DEBUG) {
+                    throw new IllegalStateException("two fsis for same position");
                 }
+                mFullSpanItems[index] = fullSpanItem;
+                return;
             }
-            // if it is not added to a position.
-            mFullSpanItems.add(fullSpanItem);
+            if (mFullSpanItemCount == mFullSpanItems.length) {
+                mFullSpanPositions = Arrays.copyOf(mFullSpanPositions, mFullSpanItemCount * 2);
+                mFullSpanItems = Arrays.copyOf(mFullSpanItems, mFullSpanItemCount * 2);
+            }
+            final int moved = mFullSpanItemCount - index;
+            System.arraycopy(mFullSpanPositions, index, mFullSpanPositions, index + 1, moved);
+            System.arraycopy(mFullSpanItems, index, mFullSpanItems, index + 1, moved);
+            mFullSpanPositions[index] = position;
+            mFullSpanItems[index] = fullSpanItem;
+            mFullSpanItemCount++;
         }
 
         public FullSpanItem getFullSpanItem(int position) {
-            if (mFullSpanItems == null) {
-                return null;
-            }
-            for (int i = mFullSpanItems.size() - 1; i >= 0; i--) {
-                final FullSpanItem fsi = mFullSpanItems.get(i);
-                if (fsi.mPosition == position) {
-                    return fsi;
-                }
+            final int index = findFullSpanItemIndex(position);
+            if (index < mFullSpanItemCount && mFullSpanPositions[index] == position) {
+                return mFullSpanItems[index];
             }
             return null;
         }
@@ -3013,28 +3030,252 @@ public class StaggeredGridLayoutManager extends RecyclerView.LayoutManager imple
          */
         public FullSpanItem getFirstFullSpanItemInRange(int minPos, int maxPos, int gapDir,
                 boolean hasUnwantedGapAfter) {
-            if (mFullSpanItems == null) {
-                return null;
-            }
-            final int limit = mFullSpanItems.size();
-            for (int i = 0; i < limit; i++) {
-                FullSpanItem fsi = mFullSpanItems.get(i);
-                if (fsi.mPosition >= maxPos) {
+            for (int i = findFullSpanItemIndex(minPos); i < mFullSpanItemCount; i++) {
+                if (mFullSpanPositions[i] >= maxPos) {
                     return null;
                 }
-                if (fsi.mPosition >= minPos
-                        && (gapDir == 0 || fsi.mGapDir == gapDir ||
-                        (hasUnwantedGapAfter && fsi.mHasUnwantedGapAfter))) {
+                final FullSpanItem fsi = mFullSpanItems[i];
+                if (gapDir == 0 || fsi.mGapDir == gapDir
+                        || (hasUnwantedGapAfter && fsi.mHasUnwantedGapAfter)) {
                     return fsi;
                 }
             }
             return null;
         }
 
+        /**
+         * Returns the spans in a compact form for {@link SavedState}: the start and span of each
+         * run, followed by the end of the last run. Returns null if no span is assigned.
+         */
+        int[] saveSpans() {
+            if (mRunCount == 0) {
+                return null;
+            }
+            final int[] data = new int[mRunCount * 2 + 1];
+            for (int i = 0; i < mRunCount; i++) {
+                data[i * 2] = mRunStarts[i];
+                data[i * 2 + 1] = mRunSpans[i];
+            }
+            data[mRunCount * 2] = mEnd;
+            return data;
+        }
+
+        /**
+         * Returns the full span items in a compact form for {@link SavedState}: the position, gap
+         * direction, unwanted gap flag and number of gaps of each item, followed by its gaps.
+         * Returns null if there are no full span items.
+         */
+        int[] saveFullSpanItems() {
+            if (mFullSpanItemCount == 0) {
+                return null;
+            }
+            int size = 0;
+            for (int i = 0; i < mFullSpanItemCount; i++) {
+                final int[] gaps = mFullSpanItems[i].mGapPerSpan;
+                size += 4 + (gaps == null ? 0 : gaps.length);
+            }
+            final int[] data = new int[size];
+            int offset = 0;
+            for (int i = 0; i < mFullSpanItemCount; i++) {
+                final FullSpanItem fsi = mFullSpanItems[i];
+                final int gapCount = fsi.mGapPerSpan == null ? 0 : fsi.mGapPerSpan.length;
+                data[offset++] = fsi.mPosition;
+                data[offset++] = fsi.mGapDir;
+                data[offset++] = fsi.mHasUnwantedGapAfter ? 1 : 0;
+                data[offset++] = gapCount;
+                if (gapCount > 0) {
+                    System.arraycopy(fsi.mGapPerSpan, 0, data, offset, gapCount);
+                    offset += gapCount;
+                }
+            }
+            return data;
+        }
+
+        /**
+         * Restores the state returned by {@link #saveSpans()} and {@link #saveFullSpanItems()}.
+         */
+        void restore(@Nullable int[] spans, @Nullable int[] fullSpanItems) {
+            clear();
+            if (spans != null && spans.length > 1) {
+                mRunCount = spans.length / 2;
+                mRunStarts = new int[Math.max(MIN_SIZE, mRunCount)];
+                mRunSpans = new int[mRunStarts.length];
+                for (int i = 0; i < mRunCount; i++) {
+                    mRunStarts[i] = spans[i * 2];
+                    mRunSpans[i] = spans[i * 2 + 1];
+                }
+                mEnd = spans[mRunCount * 2];
+            }
+            if (fullSpanItems != null) {
+                int offset = 0;
+                while (offset < fullSpanItems.length) {
+                    final FullSpanItem fsi = new FullSpanItem();
+                    fsi.mPosition = fullSpanItems[offset++];
+                    fsi.mGapDir = fullSpanItems[offset++];
+                    fsi.mHasUnwantedGapAfter = fullSpanItems[offset++] == 1;
+                    final int gapCount = fullSpanItems[offset++];
+                    if (gapCount > 0) {
+                        fsi.mGapPerSpan = Arrays.copyOfRange(fullSpanItems, offset,
+                                offset + gapCount);
+                        offset += gapCount;
+                    }
+                    addFullSpanItem(fsi);
+                }
+            }
+        }
+
+        /**
+         * Sets the span of the positions in [from, to).
+         */
+        private void fill(int from, int to, int span) {
+            if (span == LayoutParams.INVALID_SPAN_ID) {
+                to = Math.min(to, mEnd);
+            }
+            if (from >= to) {
+                return;
+            }
+            if (from >= mEnd) {
+                // append after the last run
+                if (from > mEnd) {
+                    appendRun(mEnd, LayoutParams.INVALID_SPAN_ID);
+                }
+                appendRun(from, span);
+                mEnd = to;
+                return;
+            }
+            final int first = findRun(from);
+            final int firstStart = mRunStarts[first];
+            final int firstSpan = mRunSpans[first];
+            // the runs [first, replaceEnd) are replaced
+            int replaceEnd;
+            if (to >= mEnd) {
+                replaceEnd = mRunCount;
+                mEnd = to;
+            } else {
+                replaceEnd = findRun(to);
+                // the run that contains to is kept, from to on
+                mRunStarts[replaceEnd] = to;
+            }
+            // the part of the first run before from is kept as well
+            final int newRuns = firstStart < from ? 2 : 1;
+            final int tail = mRunCount - replaceEnd;
+            ensureRunCapacity(first + newRuns + tail);
+            System.arraycopy(mRunStarts, replaceEnd, mRunStarts, first + newRuns, tail);
+            System.arraycopy(mRunSpans, replaceEnd, mRunSpans, first + newRuns, tail);
+            mRunCount = first + newRuns + tail;
+            if (newRuns == 2) {
+                mRunStarts[first] = firstStart;
+                mRunSpans[first] = firstSpan;
+            }
+            mRunStarts[first + newRuns - 1] = from;
+            mRunSpans[first + newRuns - 1] = span;
+            for (int i = first + newRuns; i >= first; i--) {
+                mergeWithPrevious(i);
+            }
+            trimEnd();
+        }
+
+        private void appendRun(int start, int span) {
+            if (mRunCount > 0 && mRunSpans[mRunCount - 1] == span) {
+                return;
+            }
+            insertRun(mRunCount, start, span);
+        }
+
+        private void insertRun(int index, int start, int span) {
+            ensureRunCapacity(mRunCount + 1);
+            System.arraycopy(mRunStarts, index, mRunStarts, index + 1, mRunCount - index);
+            System.arraycopy(mRunSpans, index, mRunSpans, index + 1, mRunCount - index);
+            mRunStarts[index] = start;
+            mRunSpans[index] = span;
+            mRunCount++;
+        }
+
+        private void ensureRunCapacity(int runCount) {
+            if (mRunStarts == null) {
+                mRunStarts = new int[Math.max(MIN_SIZE, runCount)];
+                mRunSpans = new int[mRunStarts.length];
+            } else if (runCount > mRunStarts.length) {
+                final int size = Math.max(runCount, mRunStarts.length * 2);
+                mRunStarts = Arrays.copyOf(mRunStarts, size);
+                mRunSpans = Arrays.copyOf(mRunSpans, size);
+            }
+        }
+
+        private void removeRuns(int index, int count) {
+            if (count <= 0) {
+                return;
+            }
+            System.arraycopy(mRunStarts, index + count, mRunStarts, index,
+                    mRunCount - index - count);
+            System.arraycopy(mRunSpans, index + count, mRunSpans, index,
+                    mRunCount - index - count);
+            mRunCount -= count;
+        }
+
+        /**
+         * Merges the run at index into the previous run if they have the same span.
+         */
+        private void mergeWithPrevious(int index) {
+            if (index > 0 && index < mRunCount && mRunSpans[index] == mRunSpans[index - 1]) {
+                removeRuns(index, 1);
+            }
+        }
+
+        private void trimEnd() {
+            while (mRunCount > 0 && mRunSpans[mRunCount - 1] == LayoutParams.INVALID_SPAN_ID) {
+                mRunCount--;
+                mEnd = mRunStarts[mRunCount];
+            }
+        }
+
+        /**
+         * Returns the index of the run that contains the given position, which must be before
+         * {@link #mEnd}.
+         */
+        private int findRun(int position) {
+            int lo = 0;
+            int hi = mRunCount - 1;
+            while (lo < hi) {
+                final int mid = (lo + hi + 1) >>> 1;
+                if (mRunStarts[mid] <= position) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * Returns the index of the first full span item at or after the given position.
+         */
+        private int findFullSpanItemIndex(int position) {
+            int lo = 0;
+            int hi = mFullSpanItemCount;
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (mFullSpanPositions[mid] < position) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        private void removeFullSpanItem(int index) {
+            final int moved = mFullSpanItemCount - index - 1;
+            System.arraycopy(mFullSpanPositions, index + 1, mFullSpanPositions, index, moved);
+            System.arraycopy(mFullSpanItems, index + 1, mFullSpanItems, index, moved);
+            mFullSpanItemCount--;
+            mFullSpanItems[mFullSpanItemCount] = null;
+        }
+
         /**
          * We keep information about full span items because they may create gaps in the UI.
          */
-        static class FullSpanItem implements Parcelable {
+        static class FullSpanItem {
 
             int mPosition;
             int mGapDir;
@@ -3044,17 +3285,6 @@ public class StaggeredGridLayoutManager extends RecyclerView.LayoutManager imple
             // view is still on the screen after scroll stops, we have to recalculate layout
             boolean mHasUnwantedGapAfter;
 
-            public FullSpanItem(Parcel in) {
-                mPosition = in.readInt();
-                mGapDir = in.readInt();
-                mHasUnwantedGapAfter = in.readInt() == 1;
-                int spanCount = in.readInt();
-                if (spanCount > 0) {
-                    mGapPerSpan = new int[spanCount];
-                    in.readIntArray(mGapPerSpan);
-                }
-            }
-
             public FullSpanItem() {
             }
 
@@ -3062,24 +3292,6 @@ public class StaggeredGridLayoutManager extends RecyclerView.LayoutManager imple
                 return mGapPerSpan == null ? 0 : mGapPerSpan[spanIndex];
             }
 
-            @Override
-            public int describeContents() {
-                return 0;
-            }
-
-            @Override
-            public void writeToParcel(Parcel dest, int flags) {
-                dest.writeInt(mPosition);
-                dest.writeInt(mGapDir);
-                dest.writeInt(mHasUnwantedGapAfter ? 1 : 0);
-                if (mGapPerSpan != null && mGapPerSpan.length > 0) {
-                    dest.writeInt(mGapPerSpan.length);
-                    dest.writeIntArray(mGapPerSpan);
-                } else {
-                    dest.writeInt(0);
-                }
-            }
-
             @Override
             public String toString() {
                 return "FullSpanItem{" +
@@ -3089,19 +3301,6 @@ public class StaggeredGridLayoutManager extends RecyclerView.LayoutManager imple
                         ", mGapPerSpan=" + Arrays.toString(mGapPerSpan) +
                         '}';
             }
-
-            public static final Parcelable.Creator<FullSpanItem> CREATOR
-                    = new Parcelable.Creator<FullSpanItem>() {
-                @Override
-                public FullSpanItem createFromParcel(Parcel in) {
-                    return new FullSpanItem(in);
-                }
-
-                @Override
-                public FullSpanItem[] newArray(int size) {
-                    return new FullSpanItem[size];
-                }
-            };
         }
     }
 
@@ -3116,8 +3315,9 @@ public class StaggeredGridLayoutManager extends RecyclerView.LayoutManager imple
         int mSpanOffsetsSize;
         int[] mSpanOffsets;
         int mSpanLookupSize;
-        int[] mSpanLookup;
-        List<LazySpanLookup.FullSpanItem> mFullSpanItems;
+        int[] mSpanLookup; // see LazySpanLookup#saveSpans
+        int mFullSpanItemsSize;
+        int[] mFullSpanItems; // see LazySpanLookup#saveFullSpanItems
         boolean mReverseLayout;
         boolean mAnchorLayoutFromEnd;
         boolean mLastLayoutRTL;
@@ -3142,9 +3342,11 @@ public class StaggeredGridLayoutManager extends RecyclerView.LayoutManager imple
             mReverseLayout = in.readInt() == 1;
             mAnchorLayoutFromEnd = in.readInt() == 1;
             mLastLayoutRTL = in.readInt() == 1;
-            //noinspection unchecked
-            mFullSpanItems = in.readArrayList(
-                    LazySpanLookup.FullSpanItem.class.getClassLoader());
+            mFullSpanItemsSize = in.readInt();
+            if (mFullSpanItemsSize > 0) {
+                mFullSpanItems = new int[mFullSpanItemsSize];
+                in.readIntArray(mFullSpanItems);
+            }
         }
 
         public SavedState(SavedState other) {
@@ -3157,6 +3359,7 @@ public class StaggeredGridLayoutManager extends RecyclerView.LayoutManager imple
             mReverseLayout = other.mReverseLayout;
             mAnchorLayoutFromEnd = other.mAnchorLayoutFromEnd;
             mLastLayoutRTL = other.mLastLayoutRTL;
+            mFullSpanItemsSize = other.mFullSpanItemsSize;
             mFullSpanItems = other.mFullSpanItems;
         }
 
@@ -3165,6 +3368,7 @@ public class StaggeredGridLayoutManager extends RecyclerView.LayoutManager imple
             mSpanOffsetsSize = 0;
             mSpanLookupSize = 0;
             mSpanLookup = null;
+            mFullSpanItemsSize = 0;
             mFullSpanItems = null;
         }
 
@@ -3195,7 +3399,10 @@ public class StaggeredGridLayoutManager extends RecyclerView.LayoutManager imple
             dest.writeInt(mReverseLayout ? 1 : 0);
             dest.writeInt(mAnchorLayoutFromEnd ? 1 : 0);
             dest.writeInt(mLastLayoutRTL ? 1 : 0);
-            dest.writeList(mFullSpanItems);
+            dest.writeInt(mFullSpanItemsSize);
+            if (mFullSpanItemsSize > 0) {
+                dest.writeIntArray(mFullSpanItems);
+            }
         }
 
         public static final Parcelable.Creator<SavedState> CREATOR
@@ -18,10 +18,9 @@ package android.support.v7.widget;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
-import android.support.v4.util.ArrayMap;
-import android.support.v4.util.LongSparseArray;
-import android.support.v4.util.Pools;
-import android.view.View;
+import android.support.v4.util.LongObjectHashMap;
+
+import java.util.Arrays;
 
 import static android.support.v7.widget.RecyclerView.ViewHolder;
 import static android.support.v7.widget.RecyclerView.ItemAnimator.ItemHolderInfo;
@@ -44,10 +43,12 @@ class ViewInfoStore {
      * View data records for pre-layout
      */
     @VisibleForTesting
-    final ArrayMap<ViewHolder, InfoRecord> mLayoutHolderMap = new ArrayMap<>();
+    final InfoRecordTable mLayoutHolderMap = new InfoRecordTable();
 
     @VisibleForTesting
-    final LongSparseArray<ViewHolder> mOldChangedHolders = new LongSparseArray<>();
+    final LongObjectHashMap<ViewHolder> mOldChangedHolders = new LongObjectHashMap<>();
+
+    private final InfoRecord mProcessedRecord = new InfoRecord();
 
     /**
      * Clears the state and all existing tracking data
@@ -57,17 +58,22 @@ class ViewInfoStore {
         mOldChangedHolders.clear();
     }
 
+    /**
+     * Makes room for tracking the given number of ViewHolders without growing during a layout.
+     *
+     * @param holderCount The number of ViewHolders that are expected to be tracked
+     */
+    void ensureCapacity(int holderCount) {
+        mLayoutHolderMap.ensureCapacity(holderCount);
+    }
+
     /**
      * Adds the item information to the prelayout tracking
      * @param holder The ViewHolder whose information is being saved
      * @param info The information to save
      */
     void addToPreLayout(ViewHolder holder, ItemHolderInfo info) {
-        InfoRecord record = mLayoutHolderMap.get(holder);
-        if (record == null) {
-            record = InfoRecord.obtain();
-            mLayoutHolderMap.put(holder, record);
-        }
+        final InfoRecord record = mLayoutHolderMap.getOrAdd(holder);
         record.preInfo = info;
         record.flags |= FLAG_PRE;
     }
@@ -118,7 +124,6 @@ class ViewInfoStore {
             // if not pre-post flag is left, clear.
             if ((record.flags & (FLAG_PRE | FLAG_POST)) == 0) {
                 mLayoutHolderMap.removeAt(index);
-                InfoRecord.recycle(record);
             }
             return info;
         }
@@ -144,11 +149,7 @@ class ViewInfoStore {
      * @param info The information to save
      */
     void addToAppearedInPreLayoutHolders(ViewHolder holder, ItemHolderInfo info) {
-        InfoRecord record = mLayoutHolderMap.get(holder);
-        if (record == null) {
-            record = InfoRecord.obtain();
-            mLayoutHolderMap.put(holder, record);
-        }
+        final InfoRecord record = mLayoutHolderMap.getOrAdd(holder);
         record.flags |= FLAG_APPEAR;
         record.preInfo = info;
     }
@@ -181,11 +182,7 @@ class ViewInfoStore {
      * @param info The information to save
      */
     void addToPostLayout(ViewHolder holder, ItemHolderInfo info) {
-        InfoRecord record = mLayoutHolderMap.get(holder);
-        if (record == null) {
-            record = InfoRecord.obtain();
-            mLayoutHolderMap.put(holder, record);
-        }
+        final InfoRecord record = mLayoutHolderMap.getOrAdd(holder);
         record.postInfo = info;
         record.flags |= FLAG_POST;
     }
@@ -197,11 +194,7 @@ class ViewInfoStore {
      * @param holder The ViewHolder which disappeared during a layout.
      */
     void addToDisappearedInLayout(ViewHolder holder) {
-        InfoRecord record = mLayoutHolderMap.get(holder);
-        if (record == null) {
-            record = InfoRecord.obtain();
-            mLayoutHolderMap.put(holder, record);
-        }
+        final InfoRecord record = mLayoutHolderMap.getOrAdd(holder);
         record.flags |= FLAG_DISAPPEARED;
     }
 
@@ -220,7 +213,10 @@ class ViewInfoStore {
     void process(ProcessCallback callback) {
         for (int index = mLayoutHolderMap.size() - 1; index >= 0; index --) {
             final ViewHolder viewHolder = mLayoutHolderMap.keyAt(index);
-            final InfoRecord record = mLayoutHolderMap.removeAt(index);
+            // the record is reused by the table once it is removed, copy it before the callbacks
+            final InfoRecord record = mProcessedRecord;
+            record.set(mLayoutHolderMap.valueAt(index));
+            mLayoutHolderMap.removeAt(index);
             if ((record.flags & FLAG_APPEAR_AND_DISAPPEAR) == FLAG_APPEAR_AND_DISAPPEAR) {
                 // Appeared then disappeared. Not useful for animations.
                 callback.unused(viewHolder);
@@ -250,7 +246,7 @@ class ViewInfoStore {
             } else if (DEBUG) {
                 throw new IllegalStateException("record without any reasonable flag combination:/");
             }
-            InfoRecord.recycle(record);
+            record.reset();
         }
     }
 
@@ -265,14 +261,11 @@ class ViewInfoStore {
                 break;
             }
         }
-        final InfoRecord info = mLayoutHolderMap.remove(holder);
-        if (info != null) {
-            InfoRecord.recycle(info);
-        }
+        mLayoutHolderMap.remove(holder);
     }
 
     void onDetach() {
-        InfoRecord.drainCache();
+        mLayoutHolderMap.trim();
     }
 
     public void onViewDetached(ViewHolder viewHolder) {
@@ -304,26 +297,195 @@ class ViewInfoStore {
         int flags;
         @Nullable ItemHolderInfo preInfo;
         @Nullable ItemHolderInfo postInfo;
-        static Pools.Pool<InfoRecord> sPool = new Pools.SimplePool<>(20);
 
         private InfoRecord() {
         }
 
-        static InfoRecord obtain() {
-            InfoRecord record = sPool.acquire();
-            return record == null ? new InfoRecord() : record;
+        void set(InfoRecord other) {
+            flags = other.flags;
+            preInfo = other.preInfo;
+            postInfo = other.postInfo;
+        }
+
+        void reset() {
+            flags = 0;
+            preInfo = null;
+            postInfo = null;
+        }
+    }
+
+    /**
+     * Open addressed identity map from ViewHolders to their InfoRecords.
+     * <p>
+     * The entries are kept in dense arrays that can be iterated by index like an ArrayMap, and the
+     * hash table only holds their indices. The table owns the InfoRecords and reuses them for new
+     * entries, and its arrays are kept when it is cleared, so that tracking does not allocate once
+     * the table has grown to the number of ViewHolders in a layout.
+     */
+    static class InfoRecordTable {
+
+        private static final int MIN_CAPACITY = 8;
+
+        ViewHolder[] mHolders;
+
+        InfoRecord[] mRecords;
+
+        // index of the entry in the arrays above plus one, 0 for empty slots. The length is a power
+        // of two and at least twice the capacity of the entries so that probe sequences are short.
+        int[] mSlots;
+
+        private int mSize;
+
+        InfoRecordTable() {
+            allocate(MIN_CAPACITY);
+        }
+
+        int size() {
+            return mSize;
+        }
+
+        ViewHolder keyAt(int index) {
+            return mHolders[index];
+        }
+
+        InfoRecord valueAt(int index) {
+            return mRecords[index];
+        }
+
+        int indexOfKey(ViewHolder holder) {
+            final int slot = findSlot(holder);
+            return slot < 0 ? -1 : mSlots[slot] - 1;
+        }
+
+        @Nullable
+        InfoRecord get(ViewHolder holder) {
+            final int index = indexOfKey(holder);
+            return index < 0 ? null : mRecords[index];
+        }
+
+        /**
+         * Returns the record of the given ViewHolder, adding an empty one if there is none.
+         */
+        InfoRecord getOrAdd(ViewHolder holder) {
+            final int existing = indexOfKey(holder);
+            if (existing >= 0) {
+                return mRecords[existing];
+            }
+            if (mSize == mHolders.length) {
+                ensureCapacity(mSize * 2);
+            }
+            final int index = mSize++;
+            mHolders[index] = holder;
+            if (mRecords[index] == null) {
+                mRecords[index] = new InfoRecord();
+            } else {
+                mRecords[index].reset();
+            }
+            insertSlot(holder, index);
+            return mRecords[index];
+        }
+
+        void remove(ViewHolder holder) {
+            final int index = indexOfKey(holder);
+            if (index >= 0) {
+                removeAt(index);
+            }
+        }
+
+        /**
+         * Removes the entry at the given index, moving the last entry into its place.
+         */
+        void removeAt(int index) {
+            deleteSlot(findSlot(mHolders[index]));
+            final int last = mSize - 1;
+            if (index != last) {
+                final InfoRecord removed = mRecords[index];
+                mSlots[findSlot(mHolders[last])] = index + 1;
+                mHolders[index] = mHolders[last];
+                mRecords[index] = mRecords[last];
+                mRecords[last] = removed;
+            }
+            mHolders[last] = null;
+            mSize = last;
+        }
+
+        void clear() {
+            for (int i = 0; i < mSize; i++) {
+                mHolders[i] = null;
+                mRecords[i].reset();
+            }
+            Arrays.fill(mSlots, 0);
+            mSize = 0;
+        }
+
+        void ensureCapacity(int capacity) {
+            if (capacity <= mHolders.length) {
+                return;
+            }
+            final ViewHolder[] holders = mHolders;
+            final InfoRecord[] records = mRecords;
+            allocate(capacity);
+            System.arraycopy(holders, 0, mHolders, 0, mSize);
+            System.arraycopy(records, 0, mRecords, 0, records.length);
+            for (int i = 0; i < mSize; i++) {
+                insertSlot(mHolders[i], i);
+            }
+        }
+
+        /**
+         * Releases the arrays if they have grown and the table is empty.
+         */
+        void trim() {
+            if (mSize == 0 && mHolders.length > MIN_CAPACITY) {
+                allocate(MIN_CAPACITY);
+            }
+        }
+
+        private void allocate(int capacity) {
+            mHolders = new ViewHolder[capacity];
+            mRecords = new InfoRecord[capacity];
+            mSlots = new int[Integer.highestOneBit(capacity * 2 - 1) * 2];
         }
 
-        static void recycle(InfoRecord record) {
-            record.flags = 0;
-            record.preInfo = null;
-            record.postInfo = null;
-            sPool.release(record);
+        private int findSlot(ViewHolder holder) {
+            final int[] slots = mSlots;
+            final int mask = slots.length - 1;
+            for (int slot = hash(holder) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+                if (mHolders[slots[slot] - 1] == holder) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private void insertSlot(ViewHolder holder, int index) {
+            final int[] slots = mSlots;
+            final int mask = slots.length - 1;
+            int slot = hash(holder) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = index + 1;
+        }
+
+        // Shifts back the entries after the slot that would not be found anymore otherwise.
+        private void deleteSlot(int slot) {
+            final int[] slots = mSlots;
+            final int mask = slots.length - 1;
+            int hole = slot;
+            for (int next = (slot + 1) & mask; slots[next] != 0; next = (next + 1) & mask) {
+                final int home = hash(mHolders[slots[next] - 1]) & mask;
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    slots[hole] = slots[next];
+                    hole = next;
+                }
+            }
+            slots[hole] = 0;
         }
 
-        static void drainCache() {
-            //noinspection StatementWithEmptyBody
-            while (sPool.acquire() != null);
+        private static int hash(ViewHolder holder) {
+            final int h = System.identityHashCode(holder) * 0x9E3779B9;
+            return h ^ (h >>> 16);
         }
     }
 }
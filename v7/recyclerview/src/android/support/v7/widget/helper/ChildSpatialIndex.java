@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.support.v7.widget.helper;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid of child bounds, used by {@link ItemTouchHelper} to find the children that
+ * overlap the dragged View without visiting every child on each move event.
+ * <p>
+ * Bounds are added with {@link #add(int, int, int, int)} and bucketed by their top left corner
+ * once {@link #build()} is called. Cells are at least as large as the largest child, so a query
+ * only has to look at the cells around the query rectangle. The index does not allocate once its
+ * arrays are large enough for the number of children.
+ */
+final class ChildSpatialIndex {
+
+    private static final int MIN_SIZE = 16;
+
+    // The grid has at most this many cells per item, cells grow when the items are sparse.
+    private static final int MAX_CELLS_PER_ITEM = 4;
+
+    private int[] mLeft = new int[MIN_SIZE];
+    private int[] mTop = new int[MIN_SIZE];
+    private int[] mRight = new int[MIN_SIZE];
+    private int[] mBottom = new int[MIN_SIZE];
+    private int mCount;
+
+    private int mOriginX;
+    private int mOriginY;
+    private int mCellWidth;
+    private int mCellHeight;
+    private int mColumns;
+    private int mRows;
+    private int mMaxWidth;
+    private int mMaxHeight;
+
+    // Items of cell i are mCellItems[mCellStart[i]] to mCellItems[mCellStart[i + 1] - 1].
+    private int[] mCellStart = new int[MIN_SIZE + 1];
+    private int[] mCellItems = new int[MIN_SIZE];
+
+    private int[] mResult = new int[MIN_SIZE];
+    private int mResultCount;
+
+    /**
+     * Removes all items.
+     */
+    void clear() {
+        mCount = 0;
+        mColumns = 0;
+        mRows = 0;
+        mResultCount = 0;
+    }
+
+    /**
+     * Returns the number of items in the index.
+     */
+    int size() {
+        return mCount;
+    }
+
+    /**
+     * Adds the bounds of an item. Items are identified by the order in which they are added.
+     * {@link #build()} must be called before the index is queried.
+     */
+    void add(int left, int top, int right, int bottom) {
+        if (mCount == mLeft.length) {
+            final int size = mCount * 2;
+            mLeft = Arrays.copyOf(mLeft, size);
+            mTop = Arrays.copyOf(mTop, size);
+            mRight = Arrays.copyOf(mRight, size);
+            mBottom = Arrays.copyOf(mBottom, size);
+        }
+        mLeft[mCount] = left;
+        mTop[mCount] = top;
+        mRight[mCount] = right;
+        mBottom[mCount] = bottom;
+        mCount++;
+    }
+
+    /**
+     * Buckets the items that have been added into the grid.
+     */
+    void build() {
+        mResultCount = 0;
+        if (mCount == 0) {
+            mColumns = 0;
+            mRows = 0;
+            return;
+        }
+        int minLeft = Integer.MAX_VALUE;
+        int minTop = Integer.MAX_VALUE;
+        int maxLeft = Integer.MIN_VALUE;
+        int maxTop = Integer.MIN_VALUE;
+        int maxWidth = 0;
+        int maxHeight = 0;
+        for (int i = 0; i < mCount; i++) {
+            minLeft = Math.min(minLeft, mLeft[i]);
+            minTop = Math.min(minTop, mTop[i]);
+            maxLeft = Math.max(maxLeft, mLeft[i]);
+            maxTop = Math.max(maxTop, mTop[i]);
+            maxWidth = Math.max(maxWidth, mRight[i] - mLeft[i]);
+            maxHeight = Math.max(maxHeight, mBottom[i] - mTop[i]);
+        }
+        mOriginX = minLeft;
+        mOriginY = minTop;
+        mMaxWidth = maxWidth;
+        mMaxHeight = maxHeight;
+        mCellWidth = Math.max(1, maxWidth);
+        mCellHeight = Math.max(1, maxHeight);
+        final long maxCells = Math.max(MIN_SIZE, (long) mCount * MAX_CELLS_PER_ITEM);
+        while (true) {
+            final long columns = ((long) maxLeft - minLeft) / mCellWidth + 1;
+            final long rows = ((long) maxTop - minTop) / mCellHeight + 1;
+            if (columns * rows <= maxCells) {
+                mColumns = (int) columns;
+                mRows = (int) rows;
+                break;
+            }
+            mCellWidth = (int) Math.min(Integer.MAX_VALUE, mCellWidth * 2L);
+            mCellHeight = (int) Math.min(Integer.MAX_VALUE, mCellHeight * 2L);
+        }
+
+        final int cellCount = mColumns * mRows;
+        if (mCellStart.length < cellCount + 1) {
+            mCellStart = new int[Math.max(cellCount + 1, mCellStart.length * 2)];
+        }
+        if (mCellItems.length < mCount) {
+            mCellItems = new int[mLeft.length];
+        }
+        Arrays.fill(mCellStart, 0, cellCount + 1, 0);
+        // count the items of each cell, shifted by one so that the prefix sum gives the starts
+        for (int i = 0; i < mCount; i++) {
+            mCellStart[cellOf(i) + 1]++;
+        }
+        for (int i = 0; i < cellCount; i++) {
+            mCellStart[i + 1] += mCellStart[i];
+        }
+        // place the items, using the starts as insertion points and restoring them afterwards
+        for (int i = 0; i < mCount; i++) {
+            mCellItems[mCellStart[cellOf(i)]++] = i;
+        }
+        for (int i = cellCount; i > 0; i--) {
+            mCellStart[i] = mCellStart[i - 1];
+        }
+        mCellStart[0] = 0;
+    }
+
+    /**
+     * Finds the items whose bounds overlap the given rectangle. Touching edges count as
+     * overlapping. The result is available through {@link #getResultCount()} and
+     * {@link #getResult(int)}, in the order in which the items were added.
+     *
+     * @return The number of items found.
+     */
+    int query(int left, int top, int right, int bottom) {
+        mResultCount = 0;
+        if (mCount == 0) {
+            return 0;
+        }
+        // an item whose top left corner is in these ranges may overlap
+        final int firstColumn = clampFirst(
+                floorDiv((long) left - mMaxWidth - mOriginX, mCellWidth), mColumns);
+        final int lastColumn = clampLast(floorDiv((long) right - mOriginX, mCellWidth), mColumns);
+        final int firstRow = clampFirst(
+                floorDiv((long) top - mMaxHeight - mOriginY, mCellHeight), mRows);
+        final int lastRow = clampLast(floorDiv((long) bottom - mOriginY, mCellHeight), mRows);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                final int cell = row * mColumns + column;
+                for (int j = mCellStart[cell]; j < mCellStart[cell + 1]; j++) {
+                    final int item = mCellItems[j];
+                    if (mBottom[item] < top || mTop[item] > bottom
+                            || mRight[item] < left || mLeft[item] > right) {
+                        continue;
+                    }
+                    addResult(item);
+                }
+            }
+        }
+        return mResultCount;
+    }
+
+    int getResultCount() {
+        return mResultCount;
+    }
+
+    int getResult(int index) {
+        return mResult[index];
+    }
+
+    private void addResult(int item) {
+        if (mResultCount == mResult.length) {
+            mResult = Arrays.copyOf(mResult, mResultCount * 2);
+        }
+        // keep the results sorted, there are only a few of them
+        int index = mResultCount;
+        while (index > 0 && mResult[index - 1] > item) {
+            mResult[index] = mResult[index - 1];
+            index--;
+        }
+        mResult[index] = item;
+        mResultCount++;
+    }
+
+    private int cellOf(int item) {
+        final int column = (int) (((long) mLeft[item] - mOriginX) / mCellWidth);
+        final int row = (int) (((long) mTop[item] - mOriginY) / mCellHeight);
+        return row * mColumns + column;
+    }
+
+    // Ranges that are outside of the grid become empty.
+    private static int clampFirst(long value, int count) {
+        return (int) Math.max(0, Math.min(count, value));
+    }
+
+    private static int clampLast(long value, int count) {
+        return (int) Math.min(count - 1, Math.max(-1, value));
+    }
+
+    private static long floorDiv(long value, int divisor) {
+        final long result = value / divisor;
+        return value < 0 && result * divisor != value ? result - 1 : result;
+    }
+}
@@ -45,6 +45,7 @@ import android.view.ViewParent;
 import android.view.animation.Interpolator;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -273,7 +274,19 @@ public class ItemTouchHelper extends RecyclerView.ItemDecoration
     private List<ViewHolder> mSwapTargets;
 
     //re used for for sorting swap targets
-    private List<Integer> mDistances;
+    private int[] mDistances;
+
+    /**
+     * Spatial index of the children of the LayoutManager, used to find swap targets. It is built
+     * on demand and invalidated on each frame, when the RecyclerView scrolls and when children are
+     * attached or detached.
+     */
+    private ChildSpatialIndex mChildIndex;
+
+    // The children in the order they were added to mChildIndex.
+    private View[] mIndexedChildren;
+
+    private boolean mChildIndexValid;
 
     /**
      * If drag & drop is supported, we use child drawing order to bring them to front.
@@ -492,6 +505,8 @@ public class ItemTouchHelper extends RecyclerView.ItemDecoration
         mRecoverAnimations.clear();
         mOverdrawChild = null;
         mOverdrawChildPosition = -1;
+        mIndexedChildren = null;
+        mChildIndexValid = false;
         releaseVelocityTracker();
     }
 
@@ -532,6 +547,7 @@ public class ItemTouchHelper extends RecyclerView.ItemDecoration
     public void onDraw(Canvas c, RecyclerView parent, RecyclerView.State state) {
         // we don't know if RV changed something so we should invalidate this index.
         mOverdrawChildPosition = -1;
+        mChildIndexValid = false;
         float dx = 0, dy = 0;
         if (mSelected != null) {
             getSelectedDxDy(mTmpPosition);
@@ -554,6 +570,11 @@ public class ItemTouchHelper extends RecyclerView.ItemDecoration
             return;
         }
         mDragScrollStartTimeInMs = Long.MIN_VALUE;
+        mChildIndexValid = false;
+        if (mIndexedChildren != null) {
+            // do not keep references to the children until the next drag
+            Arrays.fill(mIndexedChildren, null);
+        }
         final int prevActionState = mActionState;
         // prevent duplicate animations
         endRecoverAnimation(selected, true);
@@ -762,6 +783,7 @@ public class ItemTouchHelper extends RecyclerView.ItemDecoration
                 mDragScrollStartTimeInMs = now;
             }
             mRecyclerView.scrollBy(scrollX, scrollY);
+            mChildIndexValid = false;
             return true;
         }
         mDragScrollStartTimeInMs = Long.MIN_VALUE;
@@ -771,10 +793,9 @@ public class ItemTouchHelper extends RecyclerView.ItemDecoration
     private List<ViewHolder> findSwapTargets(ViewHolder viewHolder) {
         if (mSwapTargets == null) {
             mSwapTargets = new ArrayList<ViewHolder>();
-            mDistances = new ArrayList<Integer>();
+            mDistances = new int[10];
         } else {
             mSwapTargets.clear();
-            mDistances.clear();
         }
         final int margin = mCallback.getBoundingBoxMargin();
         final int left = Math.round(mSelectedStartX + mDx) - margin;
@@ -783,17 +804,13 @@ public class ItemTouchHelper extends RecyclerView.ItemDecoration
         final int bottom = top + viewHolder.itemView.getHeight() + 2 * margin;
         final int centerX = (left + right) / 2;
         final int centerY = (top + bottom) / 2;
-        final RecyclerView.LayoutManager lm = mRecyclerView.getLayoutManager();
-        final int childCount = lm.getChildCount();
-        for (int i = 0; i < childCount; i++) {
-            View other = lm.getChildAt(i);
+        final ChildSpatialIndex index = getChildIndex();
+        final int count = index.query(left, top, right, bottom);
+        for (int i = 0; i < count; i++) {
+            View other = mIndexedChildren[index.getResult(i)];
             if (other == viewHolder.itemView) {
                 continue;//myself!
             }
-            if (other.getBottom() < top || other.getTop() > bottom
-                    || other.getRight() < left || other.getLeft() > right) {
-                continue;
-            }
             final ViewHolder otherVh = mRecyclerView.getChildViewHolder(other);
             if (mCallback.canDropOver(mRecyclerView, mSelected, otherVh)) {
                 // find the index to add
@@ -804,19 +821,51 @@ public class ItemTouchHelper extends RecyclerView.ItemDecoration
                 int pos = 0;
                 final int cnt = mSwapTargets.size();
                 for (int j = 0; j < cnt; j++) {
-                    if (dist > mDistances.get(j)) {
+                    if (dist > mDistances[j]) {
                         pos++;
                     } else {
                         break;
                     }
                 }
+                if (cnt == mDistances.length) {
+                    mDistances = Arrays.copyOf(mDistances, cnt * 2);
+                }
+                System.arraycopy(mDistances, pos, mDistances, pos + 1, cnt - pos);
                 mSwapTargets.add(pos, otherVh);
-                mDistances.add(pos, dist);
+                mDistances[pos] = dist;
             }
         }
         return mSwapTargets;
     }
 
+    /**
+     * Returns the spatial index of the children of the LayoutManager, rebuilding it if the
+     * children may have moved since it was built.
+     */
+    private ChildSpatialIndex getChildIndex() {
+        final RecyclerView.LayoutManager lm = mRecyclerView.getLayoutManager();
+        final int childCount = lm.getChildCount();
+        if (mChildIndex == null) {
+            mChildIndex = new ChildSpatialIndex();
+        } else if (mChildIndexValid && mChildIndex.size() == childCount) {
+            return mChildIndex;
+        }
+        if (mIndexedChildren == null || mIndexedChildren.length < childCount) {
+            mIndexedChildren = new View[Math.max(childCount, 16)];
+        }
+        mChildIndex.clear();
+        for (int i = 0; i < childCount; i++) {
+            final View child = lm.getChildAt(i);
+            mIndexedChildren[i] = child;
+            mChildIndex.add(child.getLeft(), child.getTop(), child.getRight(),
+                    child.getBottom());
+        }
+        Arrays.fill(mIndexedChildren, childCount, mIndexedChildren.length, null);
+        mChildIndex.build();
+        mChildIndexValid = true;
+        return mChildIndex;
+    }
+
     /**
      * Checks if we should swap w/ another view holder.
      */
@@ -844,7 +893,6 @@ public class ItemTouchHelper extends RecyclerView.ItemDecoration
         ViewHolder target = mCallback.chooseDropTarget(viewHolder, swapTargets, x, y);
         if (target == null) {
             mSwapTargets.clear();
-            mDistances.clear();
             return;
         }
         final int toPosition = target.getAdapterPosition();
@@ -858,10 +906,12 @@ public class ItemTouchHelper extends RecyclerView.ItemDecoration
 
     @Override
     public void onChildViewAttachedToWindow(View view) {
+        mChildIndexValid = false;
     }
 
     @Override
     public void onChildViewDetachedFromWindow(View view) {
+        mChildIndexValid = false;
         removeChildDrawingOrderCallbackIfNecessary(view);
         final ViewHolder holder = mRecyclerView.getChildViewHolder(view);
         if (holder == null) {
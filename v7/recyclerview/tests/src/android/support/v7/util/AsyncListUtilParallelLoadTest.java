@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.support.test.filters.MediumTest;
+import android.support.test.rule.ActivityTestRule;
+import android.support.v7.widget.TestActivity;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@MediumTest
+@RunWith(JUnit4.class)
+public class AsyncListUtilParallelLoadTest {
+    @Rule
+    public ActivityTestRule<TestActivity> mActivityRule =
+            new ActivityTestRule<>(TestActivity.class);
+
+    private static final int TILE_SIZE = 10;
+    private static final int ITEM_COUNT = 100;
+
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(4);
+    private final TestDataCallback mDataCallback = new TestDataCallback();
+    private final TestViewCallback mViewCallback = new TestViewCallback();
+    AsyncListUtil<String> mAsyncListUtil;
+
+    @After
+    public void tearDown() {
+        mDataCallback.mGate.countDown();
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void parallelLoadsAreCapped() throws Throwable {
+        mViewCallback.setRange(0, 59, 0);
+        mDataCallback.expectLoads(6);
+        create(2);
+        mDataCallback.waitForStarted(2);
+        // the remaining tiles must wait for one of the two running loads
+        Thread.sleep(100);
+        assertEquals(2, mDataCallback.mStarted.get());
+
+        mDataCallback.mGate.countDown();
+        mDataCallback.waitForLoads();
+        assertEquals(2, mDataCallback.mMaxRunning.get());
+        assertEquals(Arrays.asList(0, 10, 20, 30, 40, 50), sorted(mDataCallback.mLoaded));
+    }
+
+    @Test
+    public void closestTilesAreLoadedFirst() throws Throwable {
+        mDataCallback.mGate.countDown();
+        mViewCallback.setRange(40, 64, 20);
+        mDataCallback.expectLoads(7);
+        create(1);
+        mDataCallback.waitForLoads();
+        // visible tiles first, then outwards
+        assertEquals(Arrays.asList(40, 50, 60, 30, 70, 20, 80), mDataCallback.mLoaded);
+    }
+
+    @Test
+    public void tilesLeavingTheRangeAreCancelled() throws Throwable {
+        mViewCallback.setRange(0, 29, 0);
+        mDataCallback.expectLoads(1);
+        create(1);
+        mDataCallback.waitForStarted(1);
+
+        mDataCallback.expectLoads(3);
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                mViewCallback.setRange(80, 99, 0);
+                mAsyncListUtil.onRangeChanged();
+            }
+        });
+        mDataCallback.mGate.countDown();
+        mDataCallback.waitForLoads();
+        Thread.sleep(100);
+        // tile 0 was already loading, 10 and 20 were never started
+        assertEquals(Arrays.asList(0, 80, 90), sorted(mDataCallback.mLoaded));
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                assertTrue(mAsyncListUtil.getItem(80) != null);
+                assertTrue(mAsyncListUtil.getItem(0) == null);
+            }
+        });
+    }
+
+    private void create(final int maxParallelLoads) throws Throwable {
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                mAsyncListUtil = new AsyncListUtil<>(String.class, TILE_SIZE, mDataCallback,
+                        mViewCallback, mExecutor, maxParallelLoads);
+            }
+        });
+    }
+
+    private static List<Integer> sorted(List<Integer> list) {
+        synchronized (list) {
+            List<Integer> copy = new ArrayList<>(list);
+            Collections.sort(copy);
+            return copy;
+        }
+    }
+
+    private static class TestDataCallback extends AsyncListUtil.DataCallback<String> {
+        final CountDownLatch mGate = new CountDownLatch(1);
+        final AtomicInteger mStarted = new AtomicInteger();
+        final AtomicInteger mRunning = new AtomicInteger();
+        final AtomicInteger mMaxRunning = new AtomicInteger();
+        final List<Integer> mLoaded = Collections.synchronizedList(
+                new ArrayList<Integer>());
+        volatile CountDownLatch mLoadsLatch;
+
+        @Override
+        public int refreshData() {
+            return ITEM_COUNT;
+        }
+
+        @Override
+        public void fillData(String[] data, int startPosition, int itemCount) {
+            mStarted.incrementAndGet();
+            final int running = mRunning.incrementAndGet();
+            while (true) {
+                final int max = mMaxRunning.get();
+                if (running <= max || mMaxRunning.compareAndSet(max, running)) {
+                    break;
+                }
+            }
+            try {
+                mGate.await(2, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (int i = 0; i < itemCount; i++) {
+                data[i] = "item #" + (startPosition + i);
+            }
+            mRunning.decrementAndGet();
+            mLoaded.add(startPosition);
+            mLoadsLatch.countDown();
+        }
+
+        @Override
+        public int getMaxCachedTiles() {
+            return ITEM_COUNT / TILE_SIZE;
+        }
+
+        void expectLoads(int count) {
+            mLoadsLatch = new CountDownLatch(count);
+        }
+
+        void waitForLoads() throws InterruptedException {
+            assertTrue("timed out waiting for tile loads", mLoadsLatch.await(2, TimeUnit.SECONDS));
+        }
+
+        void waitForStarted(int count) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + 2000;
+            while (mStarted.get() < count) {
+                assertTrue("timed out waiting for " + count + " loads to start",
+                        System.currentTimeMillis() < deadline);
+                Thread.sleep(5);
+            }
+        }
+    }
+
+    private static class TestViewCallback extends AsyncListUtil.ViewCallback {
+        int mFirstVisible;
+        int mLastVisible;
+        int mPreload;
+
+        void setRange(int firstVisible, int lastVisible, int preload) {
+            mFirstVisible = firstVisible;
+            mLastVisible = lastVisible;
+            mPreload = preload;
+        }
+
+        @Override
+        public void getItemRangeInto(int[] outRange) {
+            outRange[0] = mFirstVisible;
+            outRange[1] = mLastVisible;
+        }
+
+        @Override
+        public void extendRangeInto(int[] range, int[] outRange, int scrollHint) {
+            outRange[0] = range[0] - mPreload;
+            outRange[1] = range[1] + mPreload;
+        }
+
+        @Override
+        public void onDataRefresh() {
+        }
+
+        @Override
+        public void onItemLoaded(int position) {
+        }
+    }
+}
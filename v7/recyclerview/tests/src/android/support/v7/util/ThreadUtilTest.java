@@ -100,6 +100,13 @@ public class ThreadUtilTest {
                                 setResultData("loadTile", position, scrollHint);
                             }
 
+                            @Override
+                            public void addLoadedTile(int generation,
+                                    TileList.Tile<Integer> data) {
+                                assertBackgroundThread();
+                                setResultData("addLoadedTile", generation, data);
+                            }
+
                             @Override
                             public void recycleTile(TileList.Tile<Integer> data) {
                                 assertBackgroundThread();
@@ -163,6 +170,15 @@ public class ThreadUtilTest {
         assertThat(data, is(new Object[]{2, 1}));
     }
 
+    @Test
+    public void addLoadedTile() throws InterruptedException {
+        initWait("addLoadedTile");
+        TileList.Tile<Integer> tile = new TileList.Tile<Integer>(Integer.class, 10);
+        mBackgroundProxy.addLoadedTile(4, tile);
+        Object[] data = waitFor("addLoadedTile");
+        assertThat(data, is(new Object[]{4, tile}));
+    }
+
     @Test
     public void recycleTile() throws InterruptedException {
         initWait("recycleTile");
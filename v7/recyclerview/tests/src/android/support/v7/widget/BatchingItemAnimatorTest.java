@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.widget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.support.test.filters.MediumTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.view.ViewCompat;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class BatchingItemAnimatorTest extends BaseRecyclerViewInstrumentationTest {
+    BatchingItemAnimator mAnimator;
+    ViewGroup mDummyParent;
+
+    final List<String> mEvents = new ArrayList<>();
+    CountDownLatch mFinishedLatch;
+
+    @Before
+    public void setUp() throws Exception {
+        mAnimator = new BatchingItemAnimator() {
+            @Override
+            public void onRemoveStarting(RecyclerView.ViewHolder item) {
+                mEvents.add("removeStarting " + item.getItemId());
+            }
+
+            @Override
+            public void onRemoveFinished(RecyclerView.ViewHolder item) {
+                onFinished("remove", item);
+            }
+
+            @Override
+            public void onAddFinished(RecyclerView.ViewHolder item) {
+                onFinished("add", item);
+            }
+
+            @Override
+            public void onMoveFinished(RecyclerView.ViewHolder item) {
+                onFinished("move", item);
+            }
+
+            @Override
+            public void onChangeFinished(RecyclerView.ViewHolder item, boolean oldItem) {
+                onFinished(oldItem ? "changeOld" : "changeNew", item);
+            }
+
+            private void onFinished(String kind, RecyclerView.ViewHolder item) {
+                mEvents.add(kind + " " + item.getItemId());
+                mFinishedLatch.countDown();
+            }
+        };
+        mDummyParent = getActivity().getContainer();
+    }
+
+    @Test
+    public void animateManyMoves() throws Throwable {
+        final int count = 300;
+        final RecyclerView.ViewHolder[] holders = new RecyclerView.ViewHolder[count];
+        for (int i = 0; i < count; i++) {
+            holders[i] = createViewHolder(i);
+        }
+        mFinishedLatch = new CountDownLatch(count);
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    assertTrue(mAnimator.animateMove(holders[i], 0, i * 10, 0, i * 10 + 1000));
+                    assertEquals(-1000f, ViewCompat.getTranslationY(holders[i].itemView), 0f);
+                }
+                assertTrue(mAnimator.isRunning());
+                mAnimator.runPendingAnimations();
+            }
+        });
+        assertTrue(mFinishedLatch.await(2, TimeUnit.SECONDS));
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                assertFalse(mAnimator.isRunning());
+                for (RecyclerView.ViewHolder holder : holders) {
+                    assertEquals(0f, ViewCompat.getTranslationY(holder.itemView), 0f);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void runsRemovalsBeforeMovesAndAdditions() throws Throwable {
+        final RecyclerView.ViewHolder removed = createViewHolder(0);
+        final RecyclerView.ViewHolder moved = createViewHolder(1);
+        final RecyclerView.ViewHolder added = createViewHolder(2);
+        mFinishedLatch = new CountDownLatch(3);
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                assertTrue(mAnimator.animateAdd(added));
+                assertEquals(0f, ViewCompat.getAlpha(added.itemView), 0f);
+                assertTrue(mAnimator.animateMove(moved, 0, 100, 0, 0));
+                assertTrue(mAnimator.animateRemove(removed));
+                mAnimator.runPendingAnimations();
+            }
+        });
+        assertTrue(mFinishedLatch.await(2, TimeUnit.SECONDS));
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                assertEquals(4, mEvents.size());
+                assertEquals("removeStarting 0", mEvents.get(0));
+                assertEquals("remove 0", mEvents.get(1));
+                assertEquals("move 1", mEvents.get(2));
+                assertEquals("add 2", mEvents.get(3));
+                assertEquals(1f, ViewCompat.getAlpha(removed.itemView), 0f);
+                assertEquals(1f, ViewCompat.getAlpha(added.itemView), 0f);
+            }
+        });
+    }
+
+    @Test
+    public void endAnimationResetsView() throws Throwable {
+        final RecyclerView.ViewHolder oldHolder = createViewHolder(0);
+        final RecyclerView.ViewHolder newHolder = createViewHolder(1);
+        mFinishedLatch = new CountDownLatch(2);
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                assertTrue(mAnimator.animateChange(oldHolder, newHolder, 20, 20, 100, 100));
+                mAnimator.runPendingAnimations();
+                mAnimator.endAnimation(newHolder);
+                assertEquals(1, mEvents.size());
+                assertEquals("changeNew 1", mEvents.get(0));
+                assertEquals(0f, ViewCompat.getTranslationX(newHolder.itemView), 0f);
+                assertEquals(1f, ViewCompat.getAlpha(newHolder.itemView), 0f);
+                assertTrue(mAnimator.isRunning());
+                mAnimator.endAnimations();
+                assertFalse(mAnimator.isRunning());
+                assertEquals("changeOld 0", mEvents.get(1));
+            }
+        });
+        assertTrue(mFinishedLatch.await(2, TimeUnit.SECONDS));
+        // a cancelled animator must not finish the items again
+        Thread.sleep(500);
+        assertEquals(2, mEvents.size());
+    }
+
+    @Test
+    public void animationsAddedWhileRunningFinish() throws Throwable {
+        final RecyclerView.ViewHolder first = createViewHolder(0);
+        final RecyclerView.ViewHolder second = createViewHolder(1);
+        mFinishedLatch = new CountDownLatch(2);
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                assertTrue(mAnimator.animateMove(first, 0, 0, 0, 100));
+                mAnimator.runPendingAnimations();
+            }
+        });
+        Thread.sleep(mAnimator.getMoveDuration() / 2);
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                assertTrue(mAnimator.animateMove(second, 0, 0, 0, 100));
+                mAnimator.runPendingAnimations();
+            }
+        });
+        assertTrue(mFinishedLatch.await(2, TimeUnit.SECONDS));
+        assertEquals("move 0", mEvents.get(0));
+        assertEquals("move 1", mEvents.get(1));
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                assertFalse(mAnimator.isRunning());
+                assertEquals(0f, ViewCompat.getTranslationY(second.itemView), 0f);
+            }
+        });
+    }
+
+    private RecyclerView.ViewHolder createViewHolder(final long id) throws Throwable {
+        final RecyclerView.ViewHolder vh = new RecyclerView.ViewHolder(
+                new TextView(getActivity())) {
+        };
+        vh.mItemId = id;
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                mDummyParent.addView(vh.itemView);
+            }
+        });
+        return vh;
+    }
+}
@@ -154,4 +154,19 @@ public class BucketTest {
             assertEquals(count, mBucket.countOnesBefore(i));
         }
     }
+
+    @Test
+    public void findZero() {
+        for (int i : mArr) {
+            mBucket.set(i);
+            max = Math.max(i, max);
+        }
+        int rank = 0;
+        for (int i = 0; i < max + 200; i++) {
+            if (!mSet.contains(i)) {
+                assertEquals(i, mBucket.findZero(rank));
+                rank++;
+            }
+        }
+    }
 }
@@ -1165,4 +1165,60 @@ public class GridLayoutManagerTest extends BaseGridLayoutManagerTest {
         assertEquals("item index 5 should be in span 2", 0,
                 getLp(mGlm.findViewByPosition(5)).getSpanIndex());
     }
+
+    @Test
+    public void spanGroupIndexCache() throws Throwable {
+        final RecyclerView rv = setupBasic(new Config(3, 1000));
+        final GridLayoutManager.SpanSizeLookup ssl = new GridLayoutManager.SpanSizeLookup() {
+            @Override
+            public int getSpanSize(int position) {
+                return mAdapter.getItemAt(position).mId % 7 == 0 ? 3 : 1;
+            }
+        };
+        ssl.setSpanGroupIndexCacheEnabled(true);
+        mGlm.setSpanSizeLookup(ssl);
+        waitForFirstLayout(rv);
+        assertSpanGroupIndex(rv, ssl);
+
+        mGlm.expectLayout(2);
+        mAdapter.addAndNotify(5, 20);
+        mGlm.waitForLayout(2);
+        assertSpanGroupIndex(rv, ssl);
+
+        mGlm.expectLayout(2);
+        mAdapter.deleteAndNotify(new int[]{500, 30}, new int[]{2, 1});
+        mGlm.waitForLayout(2);
+        assertSpanGroupIndex(rv, ssl);
+
+        mGlm.expectLayout(2);
+        mAdapter.moveAndNotify(900, 1);
+        mGlm.waitForLayout(2);
+        assertSpanGroupIndex(rv, ssl);
+    }
+
+    private void assertSpanGroupIndex(final RecyclerView rv,
+            final GridLayoutManager.SpanSizeLookup ssl) throws Throwable {
+        final GridLayoutManager.SpanSizeLookup reference = new GridLayoutManager.SpanSizeLookup() {
+            @Override
+            public int getSpanSize(int position) {
+                return ssl.getSpanSize(position);
+            }
+        };
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                assertFalse(ssl.mSpanGroupIndexPaused);
+                final int itemCount = mAdapter.getItemCount();
+                assertEquals(reference.getSpanGroupIndex(itemCount - 1, 3) + 1,
+                        mGlm.getRowCountForAccessibility(rv.mRecycler, rv.mState));
+                assertTrue(ssl.mSpanGroupIndex.getCheckpointCount() > 0);
+                for (int i = 0; i < itemCount; i++) {
+                    assertEquals("span group index of " + i, reference.getSpanGroupIndex(i, 3),
+                            ssl.getSpanGroupIndex(i, 3));
+                    assertEquals("span index of " + i, reference.getSpanIndex(i, 3),
+                            ssl.getSpanIndex(i, 3));
+                }
+            }
+        });
+    }
 }
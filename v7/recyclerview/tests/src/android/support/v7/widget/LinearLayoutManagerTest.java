@@ -960,4 +960,82 @@ public class LinearLayoutManagerTest extends BaseLinearLayoutManagerTest {
                 record.getToIndex(),
                 mLayoutManager.findLastVisibleItemPosition());
     }
+
+    @Test
+    public void itemExtentCache() throws Throwable {
+        final TestAdapter adapter = new TestAdapter(200) {
+            @Override
+            public void onBindViewHolder(TestViewHolder holder, int position) {
+                super.onBindViewHolder(holder, position);
+                holder.itemView.setLayoutParams(new RecyclerView.LayoutParams(
+                        ViewGroup.LayoutParams.MATCH_PARENT, getItemHeight(this, position)));
+            }
+        };
+        setupByConfig(new Config(VERTICAL, false, false).itemCount(200).adapter(adapter), false);
+        mLayoutManager.setItemExtentCacheEnabled(true);
+        waitForFirstLayout();
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                // lay out every item once
+                while (mRecyclerView.canScrollVertically(1)) {
+                    mRecyclerView.scrollBy(0, 500);
+                }
+                assertEquals(getTotalHeight(adapter), mRecyclerView.computeVerticalScrollRange());
+                assertEquals(mRecyclerView.computeVerticalScrollRange()
+                                - mRecyclerView.computeVerticalScrollExtent(),
+                        mRecyclerView.computeVerticalScrollOffset());
+            }
+        });
+
+        mLayoutManager.expectLayouts(2);
+        adapter.deleteAndNotify(10, 20);
+        mLayoutManager.waitForLayout(2);
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                assertEquals(getTotalHeight(adapter), mRecyclerView.computeVerticalScrollRange());
+            }
+        });
+
+        mLayoutManager.expectLayouts(1);
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                mLayoutManager.scrollToFraction(.5f);
+            }
+        });
+        mLayoutManager.waitForLayout(2);
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                final int scrollable = mRecyclerView.computeVerticalScrollRange()
+                        - mRecyclerView.computeVerticalScrollExtent();
+                assertEquals(scrollable / 2f, mRecyclerView.computeVerticalScrollOffset(), 1f);
+            }
+        });
+
+        mLayoutManager.expectLayouts(1);
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                mLayoutManager.scrollToFraction(0f);
+            }
+        });
+        mLayoutManager.waitForLayout(2);
+        assertEquals(0, mLayoutManager.findFirstCompletelyVisibleItemPosition());
+        checkForMainThreadException();
+    }
+
+    private static int getItemHeight(TestAdapter adapter, int position) {
+        return 20 + (adapter.getItemAt(position).mId % 7) * 15;
+    }
+
+    private static int getTotalHeight(TestAdapter adapter) {
+        int total = 0;
+        for (int i = 0; i < adapter.getItemCount(); i++) {
+            total += getItemHeight(adapter, i);
+        }
+        return total;
+    }
 }
@@ -20,6 +20,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
@@ -54,8 +55,11 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @SmallTest
 @SdkSuppress(minSdkVersion = Build.VERSION_CODES.LOLLIPOP)
@@ -943,6 +947,66 @@ public class RecyclerViewCacheTest {
         CacheUtils.verifyCacheContainsPrefetchedPositions(inner, 5, 6, 7, 8);
     }
 
+    @Test
+    public void nestedPrefetchPolicyItemCount() {
+        mRecyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
+        mRecyclerView.setAdapter(new OuterAdapter());
+        final int[] counts = new int[2];
+        mRecyclerView.setNestedPrefetchPolicy(new RecyclerView.NestedPrefetchPolicy() {
+            @Override
+            public int getNestedPrefetchItemCount(RecyclerView nestedView, int laidOutChildCount,
+                    int initialPrefetchItemCount) {
+                counts[0] = laidOutChildCount;
+                counts[1] = initialPrefetchItemCount;
+                return 4;
+            }
+        });
+
+        layout(200, 200);
+        // visible rows show 2 items
+        RecyclerView inner = (RecyclerView) mRecyclerView.getChildAt(0);
+        assertEquals(2, inner.mPrefetchRegistry.mLaidOutChildCount);
+
+        mRecyclerView.mPrefetchRegistry.setPrefetchVector(0, 1);
+        mRecyclerView.mGapWorker.prefetch(RecyclerView.FOREVER_NS);
+
+        // the prefetched row has not been laid out, positions are extended after 0 and 1
+        assertEquals(0, counts[0]);
+        assertEquals(2, counts[1]);
+        RecyclerView.ViewHolder holder = CacheUtils.peekAtCachedViewForPosition(mRecyclerView, 2);
+        CacheUtils.verifyCacheContainsPrefetchedPositions(holder.mNestedRecyclerView.get(),
+                0, 1, 2, 3);
+    }
+
+    @Test
+    public void nestedPrefetchPolicyLearnsItemTime() {
+        mRecyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
+        mRecyclerView.setAdapter(new OuterAdapter());
+        mRecyclerView.setNestedPrefetchPolicy(new RecyclerView.NestedPrefetchPolicy());
+
+        layout(200, 200);
+        mRecyclerView.mPrefetchRegistry.setPrefetchVector(0, 1);
+        mRecyclerView.mGapWorker.prefetch(RecyclerView.FOREVER_NS);
+
+        RecyclerView.ViewHolder holder = CacheUtils.peekAtCachedViewForPosition(mRecyclerView, 2);
+        RecyclerView innerView = holder.mNestedRecyclerView.get();
+        CacheUtils.verifyCacheContainsPrefetchedPositions(innerView, 0, 1);
+        // inner items take 5ms to create and 5ms to bind
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(10),
+                innerView.mPrefetchRegistry.mNestedItemPrefetchNs);
+
+        // an inner item does not fit in 5ms, so the inner RecyclerView is skipped
+        innerView.mRecycler.recycleAndClearCachedViews();
+        mRecyclerView.mGapWorker.prefetch(
+                mRecyclerView.getNanoTime() + TimeUnit.MILLISECONDS.toNanos(5));
+        assertNotNull(CacheUtils.peekAtCachedViewForPosition(mRecyclerView, 2));
+        assertEquals(0, innerView.mRecycler.mCachedViews.size());
+
+        mRecyclerView.mGapWorker.prefetch(
+                mRecyclerView.getNanoTime() + TimeUnit.MILLISECONDS.toNanos(20));
+        CacheUtils.verifyCacheContainsPrefetchedPositions(innerView, 0, 1);
+    }
+
     @Test
     public void nestedPrefetchNotReset() {
         mRecyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
@@ -1260,4 +1324,269 @@ public class RecyclerViewCacheTest {
         // ... but there should be two new binds
         assertEquals(4, ((InnerAdapter) innerRecyclerView.getAdapter()).mItemsBound);
     }
+
+    private RecyclerView.ViewHolder createPoolHolder(int viewType) {
+        RecyclerView.ViewHolder holder = new RecyclerView.ViewHolder(new View(getContext())) {};
+        holder.mItemViewType = viewType;
+        return holder;
+    }
+
+    @Test
+    public void poolAdaptiveSizingGrowsAfterDrop() {
+        RecyclerView.RecycledViewPool pool = new RecyclerView.RecycledViewPool();
+        pool.setAdaptiveSizingEnabled(true);
+        for (int i = 0; i < 6; i++) {
+            pool.putRecycledView(createPoolHolder(0));
+        }
+        // default max is 5, so one was dropped
+        assertEquals(5, pool.getRecycledViewCount(0));
+        for (int i = 0; i < 5; i++) {
+            assertNotNull(pool.getRecycledView(0));
+        }
+        // miss after a drop, heap grows by one
+        assertEquals(null, pool.getRecycledView(0));
+        for (int i = 0; i < 7; i++) {
+            pool.putRecycledView(createPoolHolder(0));
+        }
+        assertEquals(6, pool.getRecycledViewCount(0));
+    }
+
+    @Test
+    public void poolAdaptiveSizingRespectsFixedMax() {
+        RecyclerView.RecycledViewPool pool = new RecyclerView.RecycledViewPool();
+        pool.setAdaptiveSizingEnabled(true);
+        pool.setMaxRecycledViews(0, 2);
+        for (int i = 0; i < 3; i++) {
+            pool.putRecycledView(createPoolHolder(0));
+        }
+        pool.getRecycledView(0);
+        pool.getRecycledView(0);
+        assertEquals(null, pool.getRecycledView(0));
+        for (int i = 0; i < 3; i++) {
+            pool.putRecycledView(createPoolHolder(0));
+        }
+        assertEquals(2, pool.getRecycledViewCount(0));
+    }
+
+    @Test
+    public void poolMaxTotalEvictsCheapestType() {
+        RecyclerView.RecycledViewPool pool = new RecyclerView.RecycledViewPool();
+        pool.factorInCreateTime(0, TimeUnit.MILLISECONDS.toNanos(1));
+        pool.factorInCreateTime(1, TimeUnit.MILLISECONDS.toNanos(10));
+        for (int i = 0; i < 3; i++) {
+            pool.putRecycledView(createPoolHolder(0));
+        }
+        pool.setMaxTotalRecycledViews(3);
+        assertEquals(3, pool.getRecycledViewCount(0));
+
+        // more expensive type replaces a cheap one
+        pool.putRecycledView(createPoolHolder(1));
+        assertEquals(2, pool.getRecycledViewCount(0));
+        assertEquals(1, pool.getRecycledViewCount(1));
+
+        // cheap type is dropped since the pool is full
+        pool.putRecycledView(createPoolHolder(0));
+        assertEquals(2, pool.getRecycledViewCount(0));
+        assertEquals(1, pool.getRecycledViewCount(1));
+
+        // shrinking the budget evicts the cheapest first
+        pool.setMaxTotalRecycledViews(1);
+        assertEquals(0, pool.getRecycledViewCount(0));
+        assertEquals(1, pool.getRecycledViewCount(1));
+    }
+
+    @Test
+    public void poolPrewarm() {
+        final InnerAdapter adapter = new InnerAdapter();
+        final RecyclerView.RecycledViewPool pool = new RecyclerView.RecycledViewPool();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mRecyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
+                mRecyclerView.setRecycledViewPool(pool);
+                mRecyclerView.setAdapter(adapter);
+                pool.prewarm(mRecyclerView, 0, 8);
+            }
+        });
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        assertEquals(8, pool.getRecycledViewCount(0));
+        assertEquals(0, adapter.mItemsBound);
+    }
+
+    @Test
+    public void poolPrewarmStopsAtLoweredMax() throws InterruptedException {
+        final AtomicInteger created = new AtomicInteger();
+        final InnerAdapter adapter = new InnerAdapter() {
+            @Override
+            public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+                created.incrementAndGet();
+                return super.onCreateViewHolder(parent, viewType);
+            }
+        };
+        final RecyclerView.RecycledViewPool pool = new RecyclerView.RecycledViewPool();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mRecyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
+                mRecyclerView.setRecycledViewPool(pool);
+                mRecyclerView.setAdapter(adapter);
+                pool.prewarm(mRecyclerView, 0, 5);
+                pool.setMaxRecycledViews(0, 2);
+            }
+        });
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        Thread.sleep(100);
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        assertEquals(2, pool.getRecycledViewCount(0));
+        assertEquals(2, created.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void poolMaxTotalMustNotBeNegative() {
+        new RecyclerView.RecycledViewPool().setMaxTotalRecycledViews(-1);
+    }
+
+    @Test
+    public void poolPrewarmedViewsAreNotEvicted() {
+        final InnerAdapter adapter = new InnerAdapter();
+        final RecyclerView.RecycledViewPool pool = new RecyclerView.RecycledViewPool();
+        pool.setAdaptiveSizingEnabled(true);
+        pool.setMaxTotalRecycledViews(8);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mRecyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
+                mRecyclerView.setRecycledViewPool(pool);
+                mRecyclerView.setAdapter(adapter);
+                pool.prewarm(mRecyclerView, 0, 8);
+            }
+        });
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        assertEquals(8, pool.getRecycledViewCount(0));
+
+        // a more expensive type does not replace the prewarmed views
+        pool.factorInCreateTime(1, TimeUnit.SECONDS.toNanos(10));
+        pool.putRecycledView(createPoolHolder(1));
+        assertEquals(8, pool.getRecycledViewCount(0));
+        assertEquals(0, pool.getRecycledViewCount(1));
+        assertEquals(8, pool.getMaxRecycledViews(0));
+    }
+
+    private void setupPreCreation(RecyclerView.Adapter adapter) {
+        mRecyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
+        mRecyclerView.setAdapter(adapter);
+        mRecyclerView.setViewHolderPreCreationEnabled(true);
+        layout(100, 300);
+
+        mRecyclerView.mPrefetchRegistry.setPrefetchVector(0, 1);
+        mRecyclerView.mGapWorker.prefetch(RecyclerView.FOREVER_NS);
+        CacheUtils.verifyCacheContainsPrefetchedPositions(mRecyclerView, 3);
+        assertTrue(mRecyclerView.mGapWorker.collectPreCreationDemand());
+    }
+
+    @Test
+    public void preCreateFillsPool() {
+        InnerAdapter adapter = new InnerAdapter();
+        setupPreCreation(adapter);
+
+        // positions 4 to 7 follow the prefetched one, all of view type 0
+        GapWorker.PreCreationRegistry registry = mRecyclerView.mPreCreationRegistry;
+        assertEquals(1, registry.mDemandSize);
+        assertEquals(GapWorker.PRE_CREATION_LOOKAHEAD, registry.mDemandCounts[0]);
+
+        int created = 0;
+        while (mRecyclerView.mGapWorker.preCreateNext() == GapWorker.PRE_CREATION_CREATED) {
+            created++;
+        }
+        assertEquals(GapWorker.PRE_CREATION_LOOKAHEAD, created);
+        assertEquals(GapWorker.PRE_CREATION_LOOKAHEAD,
+                mRecyclerView.getRecycledViewPool().getRecycledViewCount(0));
+        assertEquals(4, adapter.mItemsBound);
+    }
+
+    @Test
+    public void preCreateOnExecutor() {
+        InnerAdapter adapter = new InnerAdapter() {
+            @Override
+            public boolean isCreateViewHolderThreadSafe() {
+                return true;
+            }
+        };
+        final List<Runnable> tasks = new ArrayList<>();
+        mRecyclerView.setViewHolderCreationExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        });
+        setupPreCreation(adapter);
+
+        assertEquals(GapWorker.PRE_CREATION_DONE, mRecyclerView.mGapWorker.preCreateNext());
+        assertEquals(GapWorker.PRE_CREATION_LOOKAHEAD, tasks.size());
+        // in flight creations count against the demand
+        assertEquals(GapWorker.PRE_CREATION_DONE, mRecyclerView.mGapWorker.preCreateNext());
+        assertEquals(GapWorker.PRE_CREATION_LOOKAHEAD, tasks.size());
+
+        for (Runnable task : tasks) {
+            task.run();
+        }
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        assertEquals(GapWorker.PRE_CREATION_LOOKAHEAD,
+                mRecyclerView.getRecycledViewPool().getRecycledViewCount(0));
+        assertEquals(0, mRecyclerView.mPreCreationRegistry.mInFlight.get(0));
+    }
+
+    @Test
+    public void pipelineMetrics() {
+        final List<RecyclerView.PipelineMetrics> reported = new ArrayList<>();
+        final int[] counts = new int[6];
+        mRecyclerView.setPipelineMetricsListener(new RecyclerView.PipelineMetricsListener() {
+            @Override
+            public void onPipelineMetrics(RecyclerView recyclerView,
+                    RecyclerView.PipelineMetrics metrics) {
+                reported.add(metrics);
+                Arrays.fill(counts, 0);
+                if (metrics.getViewTypeCount() > 0) {
+                    assertEquals(1, metrics.getViewTypeCount());
+                    assertEquals(0, metrics.getViewType(0));
+                    counts[0] = metrics.getCreateCount(0);
+                    counts[1] = metrics.getBindCount(0);
+                    counts[2] = metrics.getPoolMissCount(0);
+                }
+                counts[3] = metrics.getLayoutCount();
+                counts[4] = metrics.getPrefetchCount();
+                counts[5] = metrics.getCachedViewHitCount();
+            }
+        });
+        mRecyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
+        mRecyclerView.setAdapter(new InnerAdapter());
+        layout(100, 300);
+        mRecyclerView.mPrefetchRegistry.setPrefetchVector(0, 1);
+        mRecyclerView.mGapWorker.prefetch(RecyclerView.FOREVER_NS);
+
+        mRecyclerView.mPipelineMetrics.dispatch();
+        assertEquals(1, reported.size());
+        // 3 attached and 1 prefetched
+        assertEquals(4, counts[0]);
+        assertEquals(4, counts[1]);
+        assertEquals(4, counts[2]);
+        assertEquals(1, counts[3]);
+        assertEquals(1, counts[4]);
+        assertEquals(0, counts[5]);
+
+        // nothing recorded since
+        mRecyclerView.mPipelineMetrics.dispatch();
+        assertEquals(1, reported.size());
+
+        mRecyclerView.scrollBy(0, 100);
+        mRecyclerView.mPipelineMetrics.dispatch();
+        assertEquals(2, reported.size());
+        // the prefetched item is taken from the cache, without being created or bound
+        assertEquals(0, counts[0]);
+        assertEquals(0, counts[1]);
+        assertEquals(1, counts[5]);
+
+        mRecyclerView.setPipelineMetricsListener(null);
+        assertNull(mRecyclerView.mPipelineMetrics);
+    }
 }
@@ -25,6 +25,7 @@ import static android.support.v7.widget.RecyclerView.getChildViewHolderInt;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -2795,6 +2796,113 @@ public class RecyclerViewLayoutTest extends BaseRecyclerViewInstrumentationTest
         checkForMainThreadException();
     }
 
+    @Test
+    public void stableSizePayloadChangeIsReboundWithoutLayout() throws Throwable {
+        final LayoutAllLayoutManager lm = new LayoutAllLayoutManager(true);
+        final Object changePayload = new Object();
+        final TestAdapter adapter = createPayloadAdapter();
+        adapter.setHasStableItemSizes(true);
+        final RecyclerView rv = new RecyclerView(getActivity());
+        rv.setAdapter(adapter);
+        rv.setLayoutManager(lm);
+        lm.expectLayouts(1);
+        setRecyclerView(rv);
+        lm.waitForLayout(2);
+
+        lm.expectLayouts(1);
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                adapter.notifyItemChanged(3, changePayload);
+                adapter.notifyItemChanged(4, changePayload);
+                assertThat(rv.hasPendingAdapterUpdates(), is(false));
+            }
+        });
+        lm.assertNoLayout("payload changes of stable size items should not run a layout", 1);
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                assertThat(((TestViewHolder) rv.findViewHolderForAdapterPosition(3)).getData(),
+                        is(changePayload));
+                assertThat(((TestViewHolder) rv.findViewHolderForAdapterPosition(4)).getData(),
+                        is(changePayload));
+                assertThat(((TestViewHolder) rv.findViewHolderForAdapterPosition(2)).getData(),
+                        is(nullValue()));
+            }
+        });
+        checkForMainThreadException();
+    }
+
+    @Test
+    public void stableSizePayloadChangeBeforeInsert() throws Throwable {
+        final LayoutAllLayoutManager lm = new LayoutAllLayoutManager(true);
+        final Object changePayload = new Object();
+        final TestAdapter adapter = createPayloadAdapter();
+        adapter.setHasStableItemSizes(true);
+        final RecyclerView rv = new RecyclerView(getActivity());
+        rv.setAdapter(adapter);
+        rv.setLayoutManager(lm);
+        lm.expectLayouts(1);
+        setRecyclerView(rv);
+        lm.waitForLayout(2);
+
+        lm.expectLayouts(1);
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                adapter.notifyItemChanged(3, changePayload);
+                adapter.mItems.add(0, new Item(0, "new"));
+                adapter.notifyItemInserted(0);
+            }
+        });
+        lm.waitForLayout(2);
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                // the change has to follow the item to its new position
+                assertThat(((TestViewHolder) rv.findViewHolderForAdapterPosition(4)).getData(),
+                        is(changePayload));
+                assertThat(((TestViewHolder) rv.findViewHolderForAdapterPosition(3)).getData(),
+                        is(nullValue()));
+            }
+        });
+        checkForMainThreadException();
+    }
+
+    @Test
+    public void payloadChangeOfUnstableViewTypeRunsLayout() throws Throwable {
+        final LayoutAllLayoutManager lm = new LayoutAllLayoutManager(true);
+        final TestAdapter adapter = new TestAdapter(10) {
+            @Override
+            public boolean hasStableItemSize(int viewType) {
+                return false;
+            }
+        };
+        adapter.setHasStableItemSizes(true);
+        final RecyclerView rv = new RecyclerView(getActivity());
+        rv.setAdapter(adapter);
+        rv.setLayoutManager(lm);
+        lm.expectLayouts(1);
+        setRecyclerView(rv);
+        lm.waitForLayout(2);
+
+        lm.expectLayouts(1);
+        adapter.changeAndNotifyWithPayload(3, 1, new Object());
+        lm.waitForLayout(2);
+        checkForMainThreadException();
+    }
+
+    private TestAdapter createPayloadAdapter() {
+        return new TestAdapter(10) {
+            @Override
+            public void onBindViewHolder(TestViewHolder holder,
+                    int position, List<Object> payloads) {
+                super.onBindViewHolder(holder, position);
+                holder.setData(payloads.isEmpty() ? null : payloads.get(0));
+            }
+        };
+    }
+
     @Test
     public void invalidateAllDecorOffsets() throws Throwable {
         final TestAdapter adapter = new TestAdapter(10);